@@ -0,0 +1,178 @@
+package com.luigisgro.cqf.curve;
+
+import java.util.Arrays;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A {@link CurveTimeSeries} with a fixed calendar, storing all the curves in a single flat array:
+ * the point of tenor i at the calendar position step is stored at index step * numberOfTenors + i.
+ * It is meant to hold simulated scenarios: the same object can be filled again and again
+ * without allocating new memory, by writing directly into the array returned by {@link #getPoints()}
+ * and calling {@link #pathChanged()} afterwards.
+ * The cumulative sums of the short rate are calculated at most once per path, and shared by
+ * all the operators discounting on the same scenario.
+ * The methods inherited from {@link CurveTimeSeries} returning {@link Curve} objects create copies
+ * of the stored values, and should be avoided in performance critical code.
+ * @author Luigi Sgro
+ *
+ * @param <T>
+ */
+public class ArrayCurveTimeSeries<T extends TimePoint> extends CurveTimeSeries<T> {
+	private T[] calendar;
+	private int numberOfTenors;
+	private double[] points;
+	private SortedMap<T, Curve> curvesView;
+	private double[] cumulativeShortRates;
+	private boolean cumulativeShortRatesValid = false;
+
+	/**
+	 * Constructor
+	 * @param termStructure The {@link TermStructure} of this curve series
+	 * @param timeStep The fraction of year represented by the {@link TimePoint} used
+	 * @param calendar The ordered time points of the series
+	 */
+	public ArrayCurveTimeSeries(TermStructure termStructure, double timeStep, T[] calendar) {
+		super(termStructure, timeStep);
+		this.calendar = calendar;
+		numberOfTenors = termStructure.getTenors().length;
+		points = new double[calendar.length * numberOfTenors];
+	}
+
+	/**
+	 * @return The ordered time points of the series
+	 */
+	public T[] getCalendar() {
+		return calendar;
+	}
+
+	/**
+	 * @return The number of tenors of each curve, i.e. the length of a row in the array of points
+	 */
+	public int getNumberOfTenors() {
+		return numberOfTenors;
+	}
+
+	/**
+	 * The array backing the series. Values can be written directly to it, as long
+	 * as {@link #pathChanged()} is called when done
+	 * @return The values of all the curves, one after the other in calendar order
+	 */
+	public double[] getPoints() {
+		return points;
+	}
+
+	/**
+	 * @param step The position in the calendar
+	 * @param tenorIndex The index of the tenor in the term structure
+	 * @return The value of the curve at the given calendar position and tenor
+	 */
+	public double getPoint(int step, int tenorIndex) {
+		return points[step * numberOfTenors + tenorIndex];
+	}
+
+	/**
+	 * The position of a time point in the calendar of the series
+	 * @param timePoint A point in time
+	 * @return The position in the calendar, or -1 if the time point is not in the calendar
+	 */
+	public int indexOf(T timePoint) {
+		int index = Arrays.binarySearch(calendar, timePoint);
+		return index >= 0 ? index : -1;
+	}
+
+	/**
+	 * @param calendar A calendar
+	 * @return true if this series uses exactly the given calendar array, so that the positions
+	 * resolved on that calendar can be used directly to access the values of this series
+	 */
+	public boolean hasCalendar(T[] calendar) {
+		return this.calendar == calendar;
+	}
+
+	/**
+	 * The position of the first element of an ordered calendar not before a given time point
+	 * @param calendar An ordered calendar
+	 * @param timePoint A point in time
+	 * @return The position of the first time point greater or equal to the one given,
+	 * or the length of the calendar if all the time points are before it
+	 */
+	public static <T extends TimePoint> int ceilingIndex(T[] calendar, T timePoint) {
+		int index = Arrays.binarySearch(calendar, timePoint);
+		return index >= 0 ? index : -index - 1;
+	}
+
+	/**
+	 * Signals that the values of the array have been changed, invalidating the
+	 * objects previously returned by {@link #getCurves()} and the cumulative short rates
+	 */
+	public void pathChanged() {
+		curvesView = null;
+		cumulativeShortRatesValid = false;
+	}
+
+	/**
+	 * The running sums of the short rate (first point of each curve) along the calendar:
+	 * element k is the sum of the short rates at the positions 0 to k - 1, so that the
+	 * sum between two positions is the difference of two elements.
+	 * The array is calculated at the first call after each change of the path, and must not be modified
+	 * @return An array with one element more than the calendar, the first being 0
+	 */
+	public double[] getCumulativeShortRates() {
+		if (!cumulativeShortRatesValid) {
+			if (cumulativeShortRates == null)
+				cumulativeShortRates = new double[calendar.length + 1];
+			double sum = 0.0;
+			int index = 0;
+			for (int step = 0; step < calendar.length; step++) {
+				sum += points[index];
+				cumulativeShortRates[step + 1] = sum;
+				index += numberOfTenors;
+			}
+			cumulativeShortRatesValid = true;
+		}
+		return cumulativeShortRates;
+	}
+
+	/**
+	 * @param step The position in the calendar
+	 * @return A new {@link Curve} object, with a copy of the values at the given calendar position
+	 */
+	public Curve getCurve(int step) {
+		double[] curvePoints = new double[numberOfTenors];
+		System.arraycopy(points, step * numberOfTenors, curvePoints, 0, numberOfTenors);
+		return new Curve(curvePoints, getTermStructure());
+	}
+
+	@Override
+	public void put(T timePoint, Curve curve) {
+		if (!getTermStructure().equals(curve.getTermStructure()))
+			throw new IllegalArgumentException("Wrong term structure: " + curve.getTermStructure());
+		int step = indexOf(timePoint);
+		if (step < 0)
+			throw new IllegalArgumentException("Time point: " + timePoint + " not in calendar");
+		System.arraycopy(curve.getPoints(), 0, points, step * numberOfTenors, numberOfTenors);
+		pathChanged();
+	}
+
+	@Override
+	public Curve get(T timePoint) {
+		int step = indexOf(timePoint);
+		return step >= 0 ? getCurve(step) : null;
+	}
+
+	/**
+	 * A {@link java.util.SortedMap} containing a copy of all the curves, in order of date.
+	 * The map is created at the first call after each change of the path
+	 * @return A SortedMap of curves by time point
+	 */
+	@Override
+	public SortedMap<T, Curve> getCurves() {
+		if (curvesView == null) {
+			curvesView = new TreeMap<T, Curve>();
+			for (int step = 0; step < calendar.length; step++)
+				curvesView.put(calendar[step], getCurve(step));
+		}
+		return curvesView;
+	}
+}
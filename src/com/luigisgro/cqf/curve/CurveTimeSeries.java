@@ -82,7 +82,7 @@ public class CurveTimeSeries<T extends TimePoint> {
 	 * @param printer A {@link java.io.PrintWriter} to be used as output object
 	 */
 	public void print(PrintWriter printer) {
-		for (Map.Entry<T, Curve> item : curves.entrySet()) {
+		for (Map.Entry<T, Curve> item : getCurves().entrySet()) {
 			printer.print(item.getKey() + ":");
 			double[] points = item.getValue().getPoints();
 			for (int i = 0; i < points.length - 1;  i++) {
@@ -0,0 +1,37 @@
+package com.luigisgro.cqf.curve;
+
+import com.luigisgro.cqf.function.Function;
+
+/**
+ * A {@link CurveTimeSeriesOperator} for derivatives that can be exercised at a set of dates before maturity.
+ * The holder exercises at the first date where the value of exercising is positive and not less than the value
+ * of holding the derivative, estimated as a function of a single state variable by the exercise rule.
+ * The rule is usually fitted by regression on a set of scenarios, from the values provided
+ * by {@link #evaluateExercise(CurveTimeSeries, double[], double[], int)}, and must be set before the evaluation
+ * @author Luigi Sgro
+ *
+ * @param <T>
+ */
+public interface ExercisableCurveTimeSeriesOperator<T extends TimePoint> extends CurveTimeSeriesOperator<T> {
+	/**
+	 * @return The number of dates when the derivative can be exercised
+	 */
+	public int getNumberOfExerciseDates();
+
+	/**
+	 * Calculates, at each exercise date of a scenario, the value of exercising discounted to the
+	 * start of the scenario, and the state variable the exercise decision depends on
+	 * @param scenario The input scenario, not modified
+	 * @param exerciseValues The array where the discounted values of exercising are written, 0 where exercising is worthless
+	 * @param stateVariables The array where the state variables are written
+	 * @param offset The index where the values of the first exercise date must be written in both arrays
+	 */
+	public void evaluateExercise(CurveTimeSeries<T> scenario, double[] exerciseValues, double[] stateVariables, int offset);
+
+	/**
+	 * Sets the exercise rule used by {@link #evaluate(CurveTimeSeries)}
+	 * @param continuationValues For each exercise date, the value of holding the derivative, discounted to the start
+	 * of the scenario, as a function of the state variable; a null element means that the derivative is never exercised at that date
+	 */
+	public void setExerciseRule(Function[] continuationValues);
+}
@@ -0,0 +1,87 @@
+package com.luigisgro.cqf.curve;
+
+import java.util.Arrays;
+
+/**
+ * The list of values that the operators evaluated in streaming mode need from each scenario.
+ * Operators register the positions of the calendar where they need a complete curve, or the
+ * running sum of the short rate, and receive in return a slot: the index of the value in the
+ * {@link Fixings} filled by the simulation. Requests for the same value share the same slot
+ * @author Luigi Sgro
+ *
+ * @param <T>
+ */
+public class FixingSchedule<T extends TimePoint> {
+	private T[] calendar;
+	private int[] curveSlots;
+	private int[] cumulativeShortRateSlots;
+	private int numberOfCurveFixings = 0;
+	private int numberOfCumulativeShortRates = 0;
+
+	/**
+	 * Creates an empty schedule
+	 * @param calendar The calendar of the scenarios
+	 */
+	public FixingSchedule(T[] calendar) {
+		this.calendar = calendar;
+		curveSlots = new int[calendar.length];
+		Arrays.fill(curveSlots, -1);
+		cumulativeShortRateSlots = new int[calendar.length + 1];
+		Arrays.fill(cumulativeShortRateSlots, -1);
+	}
+
+	/**
+	 * @return The calendar of the scenarios
+	 */
+	public T[] getCalendar() {
+		return calendar;
+	}
+
+	/**
+	 * Registers the need for the complete curve at a position of the calendar
+	 * @param position The position in the calendar
+	 * @return The slot of the curve in the {@link Fixings}
+	 */
+	public int requireCurve(int position) {
+		if (curveSlots[position] < 0)
+			curveSlots[position] = numberOfCurveFixings++;
+		return curveSlots[position];
+	}
+
+	/**
+	 * Registers the need for the sum of the short rates at the positions before the one given,
+	 * as defined in {@link ArrayCurveTimeSeries#getCumulativeShortRates()}
+	 * @param position The position in the calendar, up to the length of the calendar included
+	 * @return The slot of the sum in the {@link Fixings}
+	 */
+	public int requireCumulativeShortRate(int position) {
+		if (cumulativeShortRateSlots[position] < 0)
+			cumulativeShortRateSlots[position] = numberOfCumulativeShortRates++;
+		return cumulativeShortRateSlots[position];
+	}
+
+	/**
+	 * @param position The position in the calendar
+	 * @return The slot of the curve at the given position, or -1 if not required
+	 */
+	public int getCurveSlot(int position) {
+		return curveSlots[position];
+	}
+
+	/**
+	 * @param position The position in the calendar, up to the length of the calendar included
+	 * @return The slot of the sum of the short rates before the given position, or -1 if not required
+	 */
+	public int getCumulativeShortRateSlot(int position) {
+		return cumulativeShortRateSlots[position];
+	}
+
+	/**
+	 * Creates a container for the values required so far
+	 * @param termStructure The term structure of the curves
+	 * @return A new, empty, set of fixings
+	 */
+	public Fixings createFixings(TermStructure termStructure) {
+		return new Fixings(termStructure, numberOfCurveFixings, numberOfCumulativeShortRates);
+	}
+}
@@ -0,0 +1,77 @@
+package com.luigisgro.cqf.curve;
+
+/**
+ * The values extracted from a scenario according to a {@link FixingSchedule}: the curves at
+ * a few positions of the calendar and the running sums of the short rate. It is all that
+ * a {@link StreamingCurveTimeSeriesOperator} sees of a scenario
+ * @author Luigi Sgro
+ *
+ */
+public class Fixings {
+	private TermStructure termStructure;
+	private int numberOfTenors;
+	private double[] curvePoints;
+	private double[] cumulativeShortRates;
+
+	/**
+	 * Creates a new, empty, set of fixings
+	 * @param termStructure The term structure of the curves
+	 * @param numberOfCurves The number of curve slots
+	 * @param numberOfCumulativeShortRates The number of slots for the sums of the short rate
+	 */
+	public Fixings(TermStructure termStructure, int numberOfCurves, int numberOfCumulativeShortRates) {
+		this.termStructure = termStructure;
+		numberOfTenors = termStructure.getTenors().length;
+		curvePoints = new double[numberOfCurves * numberOfTenors];
+		cumulativeShortRates = new double[numberOfCumulativeShortRates];
+	}
+
+	/**
+	 * @return The term structure of the curves
+	 */
+	public TermStructure getTermStructure() {
+		return termStructure;
+	}
+
+	/**
+	 * The array containing the points of all the curves, one after the other in order of slot
+	 * @return The points of the curves
+	 */
+	public double[] getCurvePoints() {
+		return curvePoints;
+	}
+
+	/**
+	 * @param slot The slot of a curve
+	 * @return The index in {@link #getCurvePoints()} of the first point of the curve
+	 */
+	public int getCurveOffset(int slot) {
+		return slot * numberOfTenors;
+	}
+
+	/**
+	 * Copies a curve into its slot
+	 * @param slot The slot of the curve
+	 * @param points The array containing the curve
+	 * @param offset The index of the first point of the curve
+	 */
+	public void setCurve(int slot, double[] points, int offset) {
+		System.arraycopy(points, offset, curvePoints, slot * numberOfTenors, numberOfTenors);
+	}
+
+	/**
+	 * @param slot The slot of the sum
+	 * @return The sum of the short rates
+	 */
+	public double getCumulativeShortRate(int slot) {
+		return cumulativeShortRates[slot];
+	}
+
+	/**
+	 * @param slot The slot of the sum
+	 * @param value The sum of the short rates
+	 */
+	public void setCumulativeShortRate(int slot, double value) {
+		cumulativeShortRates[slot] = value;
+	}
+}
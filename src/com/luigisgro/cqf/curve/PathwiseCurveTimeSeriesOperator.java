@@ -0,0 +1,22 @@
+package com.luigisgro.cqf.curve;
+
+/**
+ * A {@link CurveTimeSeriesOperator} that can also calculate the derivatives of its value
+ * with respect to the points of the scenario, on the same path. Combined with the adjoint
+ * of the model generating the scenarios, they give the sensitivities of the price to
+ * the starting curve and to the parameters of the model in a single simulation
+ * @author Luigi Sgro
+ *
+ * @param <T>
+ */
+public interface PathwiseCurveTimeSeriesOperator<T extends TimePoint> extends CurveTimeSeriesOperator<T> {
+	/**
+	 * Evaluates the operator on a scenario, adding its derivatives multiplied by the given weight to the adjoint.
+	 * The scenario must use the calendar the operator was created on
+	 * @param scenario The input scenario, not modified
+	 * @param weight The factor applied to the derivatives, e.g. the derivative of the final result with respect to the value of this operator
+	 * @param adjoint The derivatives with respect to the points of the scenario, to be updated
+	 * @return The value of the operator on the scenario
+	 */
+	public double evaluate(ArrayCurveTimeSeries<T> scenario, double weight, ScenarioAdjoint adjoint);
+}
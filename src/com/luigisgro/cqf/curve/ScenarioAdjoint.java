@@ -0,0 +1,94 @@
+package com.luigisgro.cqf.curve;
+
+import java.util.Arrays;
+
+/**
+ * The derivatives of a scalar function of a scenario with respect to all the points of the scenario,
+ * stored with the same layout as the points of an {@link ArrayCurveTimeSeries}: the derivative with
+ * respect to the point of tenor i at the calendar position step is at index step * numberOfTenors + i.
+ * Operators discounting on the cumulative short rates of the scenario can add their derivatives with
+ * respect to the cumulative sums in constant time, instead of adding them to every short rate
+ * in the range: they are spread on the short rates only once, when the derivatives are read
+ * @author Luigi Sgro
+ *
+ */
+public class ScenarioAdjoint {
+	private int calendarLength;
+	private int numberOfTenors;
+	private double[] points;
+	private double[] cumulativeShortRates;
+	private boolean resolved = true;
+
+	/**
+	 * Creates an adjoint with all the derivatives set to zero
+	 * @param calendarLength The number of time points of the scenarios
+	 * @param numberOfTenors The number of tenors of each curve
+	 */
+	public ScenarioAdjoint(int calendarLength, int numberOfTenors) {
+		this.calendarLength = calendarLength;
+		this.numberOfTenors = numberOfTenors;
+		points = new double[calendarLength * numberOfTenors];
+		cumulativeShortRates = new double[calendarLength + 1];
+	}
+
+	/**
+	 * @return The number of time points of the scenarios
+	 */
+	public int getCalendarLength() {
+		return calendarLength;
+	}
+
+	/**
+	 * @return The number of tenors of each curve
+	 */
+	public int getNumberOfTenors() {
+		return numberOfTenors;
+	}
+
+	/**
+	 * @param step The position in the calendar
+	 * @param tenorIndex The index of the tenor in the term structure
+	 * @param value The value added to the derivative with respect to the point
+	 */
+	public void addToPoint(int step, int tenorIndex, double value) {
+		points[step * numberOfTenors + tenorIndex] += value;
+	}
+
+	/**
+	 * Adds to the derivative with respect to an element of the cumulative short rates
+	 * @param index The index of the element, as in {@link ArrayCurveTimeSeries#getCumulativeShortRates()}
+	 * @param value The value added to the derivative with respect to the element
+	 */
+	public void addToCumulativeShortRate(int index, double value) {
+		cumulativeShortRates[index] += value;
+		resolved = false;
+	}
+
+	/**
+	 * The derivatives with respect to the points of the scenario, including the ones
+	 * added through the cumulative short rates. The array can be modified by the caller
+	 * @return An array with the layout of {@link ArrayCurveTimeSeries#getPoints()}
+	 */
+	public double[] getPoints() {
+		if (!resolved) {
+			// the element k of the cumulative short rates is the sum of the short rates before position k
+			double sum = 0.0;
+			for (int step = calendarLength - 1; step >= 0; step--) {
+				sum += cumulativeShortRates[step + 1];
+				points[step * numberOfTenors] += sum;
+			}
+			Arrays.fill(cumulativeShortRates, 0.0);
+			resolved = true;
+		}
+		return points;
+	}
+
+	/**
+	 * Sets all the derivatives to zero, so that the adjoint can be used for a new scenario
+	 */
+	public void clear() {
+		Arrays.fill(points, 0.0);
+		Arrays.fill(cumulativeShortRates, 0.0);
+		resolved = true;
+	}
+}
@@ -0,0 +1,24 @@
+package com.luigisgro.cqf.curve;
+
+/**
+ * A {@link CurveTimeSeriesOperator} that can be evaluated without a complete time series.
+ * Before the simulation the operator registers the values it needs in a {@link FixingSchedule};
+ * for each scenario it is then evaluated on the {@link Fixings} collected while the scenario is generated
+ * @author Luigi Sgro
+ *
+ * @param <T>
+ */
+public interface StreamingCurveTimeSeriesOperator<T extends TimePoint> extends CurveTimeSeriesOperator<T> {
+	/**
+	 * Registers the values needed for the evaluation. It must be called once, before any call to {@link #evaluate(Fixings)}
+	 * @param schedule The schedule of the simulation
+	 */
+	public void registerFixings(FixingSchedule<T> schedule);
+
+	/**
+	 * The evaluation of the operator, taking the values registered in the schedule as input
+	 * @param fixings The values of a scenario
+	 * @return A floating point value
+	 */
+	public double evaluate(Fixings fixings);
+}
@@ -30,6 +30,27 @@ public abstract class BaseGrid implements Grid {
 		numT = (int)((this.tMax - this.tMin) / this.tStep) + 1;
 		numS = (int)((this.sMax - this.sMin) / this.sStep) + 1;
 	}
+
+	/**
+	 * Creates a grid with a given number of stock steps, whose stock values are defined by the subclass
+	 * @param tStep The time step
+	 * @param tMin The time range minimum value
+	 * @param tMax The time range maximum value
+	 * @param sMin The minimum value of the stock range
+	 * @param sMax The maximum value of the stock range
+	 * @param numS The number of stock steps
+	 */
+	protected BaseGrid(double tStep, double tMin, double tMax, double sMin, double sMax, int numS) {
+		this.tStep = tStep;
+		this.tMin = tMin;
+		this.tMax = tMax;
+		this.sStep = (sMax - sMin) / (numS - 1);
+		this.sMin = sMin;
+		this.sMax = sMax;
+		this.numS = numS;
+
+		numT = (int)((this.tMax - this.tMin) / this.tStep) + 1;
+	}
 	@Override
 	public boolean validate(double vol, Derivative d) {
 		int criticalTPoints = (int) (d.timeToNearestCashflow() / tStep);
@@ -61,20 +82,35 @@ public abstract class BaseGrid implements Grid {
 	}
 	@Override
 	public double getPresentInterpolated(double s) {
+		return interpolate(getPresentRow(), s);
+	}
+	@Override
+	public double interpolate(double[] row, double s) {
 		double v;
 		if (s <= sMin)
-			v = getPresent(0);
+			v = row[0];
 		else if (s >= sMax)
-			v = getPresent(numS - 1);
+			v = row[numS - 1];
 		else {
 			int is = getIndexOfS(s);
 			double s1 = getS(is);
-			double v1 = getPresent(is);
-			double v2 = getPresent(is + 1);
+			double v1 = row[is];
+			double v2 = row[is + 1];
 			v = v1 + (v2 - v1) * (s - s1) / sStep;
 		}
 		return v;
 	}
+
+	/**
+	 * The values for time = 0
+	 * @return The values of the present time step, indexed by stock step
+	 */
+	protected double[] getPresentRow() {
+		double[] row = new double[numS];
+		for (int is = 0; is < numS; is++)
+			row[is] = getPresent(is);
+		return row;
+	}
 	@Override
 	public double getSMin() {
 		return sMin;
@@ -23,7 +23,7 @@ public class BinaryCashOrNothingOption extends Option implements Derivative {
 
 	@Override
 	public double cashflow(double t, double tStep, double s) {
-		if (t > maturity - tStep / 2 && t < maturity + tStep / 2) {
+		if (isMaturity(t, tStep)) {
 			if (Direction.CALL.equals(direction))
 				return s >= strike ? 1 : 0;
 			else
@@ -32,6 +32,19 @@ public class BinaryCashOrNothingOption extends Option implements Derivative {
 			return 0;
 	}
 
+	@Override
+	public void addCashflows(double t, double tStep, double[] s, double weight, double[] cashflows) {
+		if (weight == 0.0 || !isMaturity(t, tStep))
+			return;
+		if (Direction.CALL.equals(direction)) {
+			for (int is = 0; is < s.length; is++)
+				cashflows[is] += s[is] >= strike ? weight : 0;
+		} else {
+			for (int is = 0; is < s.length; is++)
+				cashflows[is] += s[is] < strike ? weight : 0;
+		}
+	}
+
 	@Override
 	public double boundaryValue(double t, double tStep, double s, double r) {
 		if (t > maturity + tStep / 2)
@@ -0,0 +1,47 @@
+package com.luigisgro.cqf.fdm;
+
+import java.util.Arrays;
+
+/**
+ * The times of the cash flows of a {@link Derivative}, used by the Finite Difference methods
+ * to evaluate the cash flows only at the time steps that contain one
+ * @author Luigi Sgro
+ *
+ */
+public class CashflowSchedule {
+	private final double[] times;
+
+	/**
+	 * Creates the schedule of a derivative
+	 * @param derivative The derivative, whose schedule must not change during the pricing
+	 */
+	public CashflowSchedule(Derivative derivative) {
+		times = derivative.cashflowTimes();
+		Arrays.sort(times);
+	}
+
+	/**
+	 * @param t The time
+	 * @param tStep The time step
+	 * @return True if a cash flow occurs within t +- tStep / 2
+	 */
+	public boolean hasCashflow(double t, double tStep) {
+		for (double time : times) {
+			if (t > time - tStep / 2 && t < time + tStep / 2)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Creates the row of the stock values of a grid, to be passed to {@link Derivative#addCashflows(double, double, double[], double, double[])}
+	 * @param grid The grid
+	 * @return The stock values of the grid, indexed by stock step
+	 */
+	public static double[] stockValues(Grid grid) {
+		double[] s = new double[grid.numS()];
+		for (int is = 0; is < s.length; is++)
+			s[is] = grid.getS(is);
+		return s;
+	}
+}
@@ -40,6 +40,24 @@ public interface Derivative {
 	 */
 	double cashflow(double t, double tStep, double s);
 	
+	/**
+	 * The schedule of the cash flows of the derivative. The Finite Difference methods
+	 * only evaluate the cash flows at the time steps containing one of these times.
+	 * After the last cash flow the derivative has no value, and its boundary values are 0
+	 * @return The times of all the cash flows, in any order
+	 */
+	double[] cashflowTimes();
+	
+	/**
+	 * Adds the cash flows generated in a specific time period to a whole row of stock values
+	 * @param t The time of cashflow
+	 * @param tStep The time step
+	 * @param s The stock values
+	 * @param weight The factor applied to the cash flows, typically a position
+	 * @param cashflows The amounts, for each stock value, the weighted cash flows are added to
+	 */
+	void addCashflows(double t, double tStep, double[] s, double weight, double[] cashflows);
+	
 	/**
 	 * The boundary value for extreme values of the stock. This method must be called with
 	 * parameters which satisfy the criteria for boundary value (high or low stock value).
@@ -1,15 +1,35 @@
 package com.luigisgro.cqf.fdm;
 
+import java.util.Arrays;
 
 /**
  * Implementation of the Explicit method for Finite Difference Method.
  * It performs calculation of partial derivatives, and return the value of the next
  * time step, using the three grid point in the previous time step, and the stock
- * boundary value at the highest and lowest stock step index
+ * boundary value at the highest and lowest stock step index.
+ * On a {@link TwoStepsGrid} the next time step is calculated directly on the rows of the grid,
+ * with the coefficients of each stock step calculated once per grid.
+ * The stock steps can be non uniform, as in a {@link NonUniformGrid}: delta and gamma are then
+ * calculated with the {@link Stencils} of the grid.
+ * The cash flows are only evaluated at the time steps of the {@link CashflowSchedule} of the derivative.
+ * The method can also calculate the sensitivity of the value of the derivative to the position of one of its instruments
+ * (tangent linear step): the sensitivity follows the same steps as the value, with the volatilities chosen
+ * from the gamma of the value
  * @author Luigi Sgro
  *
  */
 public abstract class ExplicitMethod implements FiniteDifferenceModel {
+	private Grid coefficientsGrid;
+	private double coefficientsRate;
+	private Stencils stencils;
+	private double[] lowerOfPositiveGamma, middleOfPositiveGamma, upperOfPositiveGamma;
+	private double[] lowerOfNegativeGamma, middleOfNegativeGamma, upperOfNegativeGamma;
+	private double[] stockValues;
+	private double[] cashflows;
+	private double[] tangentCashflows;
+	private CashflowSchedule schedule;
+	private Grid scheduleGrid;
+	private int lastStep;
 	
 	/**
 	 * Calculates the delta of the instrument
@@ -19,7 +39,10 @@ public abstract class ExplicitMethod implements FiniteDifferenceModel {
 	 * @return The approximated value of the partial derivative with respect to the stock value
 	 */
 	public static double delta(Grid grid, int it, int is) {
-		return (grid.get(it, is + 1) - grid.get(it, is - 1)) / (grid.sStep() * 2);
+		double hLower = grid.getS(is) - grid.getS(is - 1);
+		double hUpper = grid.getS(is + 1) - grid.getS(is);
+		return (-hUpper * hUpper * grid.get(it, is - 1) + (hUpper * hUpper - hLower * hLower) * grid.get(it, is) + hLower * hLower * grid.get(it, is + 1))
+				/ (hLower * hUpper * (hLower + hUpper));
 	}
 	
 	/**
@@ -30,7 +53,10 @@ public abstract class ExplicitMethod implements FiniteDifferenceModel {
 	 * @return The approximated value of the second partial derivative with respect to the stock value
 	 */
 	public static double gamma(Grid grid, int it, int is) {
-		return (grid.get(it, is + 1) - 2 * grid.get(it, is) + grid.get(it, is - 1)) / (grid.sStep() * grid.sStep());
+		double hLower = grid.getS(is) - grid.getS(is - 1);
+		double hUpper = grid.getS(is + 1) - grid.getS(is);
+		return 2 * (hUpper * grid.get(it, is - 1) - (hLower + hUpper) * grid.get(it, is) + hLower * grid.get(it, is + 1))
+				/ (hLower * hUpper * (hLower + hUpper));
 	}
 	
 	/**
@@ -46,15 +72,156 @@ public abstract class ExplicitMethod implements FiniteDifferenceModel {
 	 */
 	public abstract double theta(double s, double value, double delta, double gamma, double r);
 
+	/**
+	 * The volatility used in the theta of a grid point. It can only depend on the sign of gamma
+	 * @param gamma The value of gamma at the grid point
+	 * @return The volatility, for positive gamma or for gamma not positive
+	 */
+	public abstract double vol(double gamma);
+
+	/**
+	 * The explicit method is only stable if the time step is small compared to the square of the stock step
+	 */
+	@Override
+	public boolean validate(Grid grid, Derivative derivative) {
+		return grid.validate(maxVol(), derivative);
+	}
+
+	/**
+	 * Calculates the coefficients of the values of the current time step in the next one, for each stock step,
+	 * with the volatility of positive gamma and the volatility of negative gamma
+	 * @param grid The grid
+	 * @param r The interest rate
+	 */
+	private void calculateCoefficients(Grid grid, double r) {
+		int numS = grid.numS();
+		stencils = new Stencils(grid);
+		lowerOfPositiveGamma = new double[numS];
+		middleOfPositiveGamma = new double[numS];
+		upperOfPositiveGamma = new double[numS];
+		lowerOfNegativeGamma = new double[numS];
+		middleOfNegativeGamma = new double[numS];
+		upperOfNegativeGamma = new double[numS];
+		stockValues = CashflowSchedule.stockValues(grid);
+		cashflows = new double[numS];
+		tangentCashflows = new double[numS];
+		double volOfPositiveGamma = vol(1.0);
+		double volOfNegativeGamma = vol(-1.0);
+		double tStep = grid.tStep();
+		for (int is = 1; is < numS - 1; is++) {
+			double s = grid.getS(is);
+			double diffusionOfPositiveGamma = 0.5 * volOfPositiveGamma * volOfPositiveGamma * s * s * tStep;
+			double diffusionOfNegativeGamma = 0.5 * volOfNegativeGamma * volOfNegativeGamma * s * s * tStep;
+			double drift = r * s * tStep;
+			lowerOfPositiveGamma[is] = diffusionOfPositiveGamma * stencils.gammaLower[is] + drift * stencils.deltaLower[is];
+			middleOfPositiveGamma[is] = 1 - r * tStep + diffusionOfPositiveGamma * stencils.gammaMiddle[is] + drift * stencils.deltaMiddle[is];
+			upperOfPositiveGamma[is] = diffusionOfPositiveGamma * stencils.gammaUpper[is] + drift * stencils.deltaUpper[is];
+			lowerOfNegativeGamma[is] = diffusionOfNegativeGamma * stencils.gammaLower[is] + drift * stencils.deltaLower[is];
+			middleOfNegativeGamma[is] = 1 - r * tStep + diffusionOfNegativeGamma * stencils.gammaMiddle[is] + drift * stencils.deltaMiddle[is];
+			upperOfNegativeGamma[is] = diffusionOfNegativeGamma * stencils.gammaUpper[is] + drift * stencils.deltaUpper[is];
+		}
+		coefficientsGrid = grid;
+		coefficientsRate = r;
+	}
+	
+	/**
+	 * Calculates the inner values of the next time step of a row
+	 * @param gammaSource The values whose gamma chooses the volatility
+	 * @param current The values of the current time step
+	 * @param next The destination of the values of the next time step
+	 */
+	private void calculateInnerValues(double[] gammaSource, double[] current, double[] next) {
+		for (int is = 1; is < current.length - 1; is++) {
+			if (stencils.gamma(gammaSource, is) > 0.0)
+				next[is] = lowerOfPositiveGamma[is] * current[is - 1] + middleOfPositiveGamma[is] * current[is] + upperOfPositiveGamma[is] * current[is + 1];
+			else
+				next[is] = lowerOfNegativeGamma[is] * current[is - 1] + middleOfNegativeGamma[is] * current[is] + upperOfNegativeGamma[is] * current[is + 1];
+		}
+	}
+
+	/**
+	 * Evaluates the cash flows of the next time step, if any is scheduled
+	 * @return True if the next time step has cash flows
+	 */
+	private boolean calculateCashflows(int it, Grid grid, Derivative derivative, double r) {
+		if (coefficientsGrid != grid || coefficientsRate != r)
+			calculateCoefficients(grid, r);
+		// a new pricing can start after the first time steps, if they have no cash flows
+		if (schedule == null || grid != scheduleGrid || it <= lastStep) {
+			schedule = new CashflowSchedule(derivative);
+			scheduleGrid = grid;
+		}
+		lastStep = it;
+		double t = grid.getT(it + 1);
+		if (!schedule.hasCashflow(t, grid.tStep()))
+			return false;
+		Arrays.fill(cashflows, 0.0);
+		derivative.addCashflows(t, grid.tStep(), stockValues, 1.0, cashflows);
+		return true;
+	}
+
+	/**
+	 * Calculates the next step on the rows of a {@link TwoStepsGrid}
+	 */
+	private void calculateNextRow(int it, TwoStepsGrid grid, Derivative derivative, double r) {
+		boolean hasCashflows = calculateCashflows(it, grid, derivative, r);
+		int numS = grid.numS();
+		double t = grid.getT(it + 1);
+		double tStep = grid.tStep();
+		double[] current = grid.getRow(it);
+		double[] next = grid.getRowForWriting(it + 1);
+		calculateInnerValues(current, current, next);
+		if (hasCashflows) {
+			for (int is = 1; is < numS - 1; is++)
+				next[is] += cashflows[is];
+		}
+		next[0] = derivative.boundaryValue(t, tStep, grid.getSMin(), r);
+		next[numS - 1] = derivative.boundaryValue(t, tStep, grid.getSMax(), r);
+	}
+
+	/**
+	 * Calculates the next step of the sensitivity of the derivative value to the position of one of its instruments.
+	 * It must be called after {@link #calculateNextStep(int, Grid, Derivative, double)} has calculated the same step of the value
+	 * @param it The time step index
+	 * @param grid The grid of the derivative value
+	 * @param tangent The grid of the sensitivity
+	 * @param instrument The instrument, whose unit position contributes cash flows and boundary values to the sensitivity
+	 * @param r The interest rate
+	 */
+	public void calculateNextTangentStep(int it, TwoStepsGrid grid, TwoStepsGrid tangent, Derivative instrument, double r) {
+		if (coefficientsGrid != grid || coefficientsRate != r)
+			throw new IllegalStateException("The step " + it + " of the value has not been calculated");
+		int numS = grid.numS();
+		double t = grid.getT(it + 1);
+		double tStep = grid.tStep();
+		double[] value = grid.getRow(it);
+		double[] current = tangent.getRow(it);
+		double[] next = tangent.getRowForWriting(it + 1);
+		calculateInnerValues(value, current, next);
+		if (schedule.hasCashflow(t, tStep)) {
+			Arrays.fill(tangentCashflows, 0.0);
+			instrument.addCashflows(t, tStep, stockValues, 1.0, tangentCashflows);
+			for (int is = 1; is < numS - 1; is++)
+				next[is] += tangentCashflows[is];
+		}
+		next[0] = instrument.boundaryValue(t, tStep, grid.getSMin(), r);
+		next[numS - 1] = instrument.boundaryValue(t, tStep, grid.getSMax(), r);
+	}
+
 	@Override
 	public void calculateNextStep(int it, Grid grid, Derivative derivative, double r) {
+		if (grid instanceof TwoStepsGrid) {
+			calculateNextRow(it, (TwoStepsGrid)grid, derivative, r);
+			return;
+		}
+		boolean hasCashflows = calculateCashflows(it, grid, derivative, r);
 		grid.set(it + 1, 0, derivative.boundaryValue(grid.getT(it + 1), grid.tStep(), grid.getSMin(), r));		
 		//grid.set(it + 1, 0, derivative.boundaryValueOpt(it + 1, 0, grid));		
 		for (int is = 1; is < grid.numS() - 1; is++) {
 			double value = grid.get(it, is);
 			double delta = delta(grid, it, is);
 			double gamma = gamma(grid, it, is);
-			double cf = derivative.cashflow(grid.getT(it + 1), grid.tStep(), grid.getS(is));
+			double cf = hasCashflows ? cashflows[is] : 0.0;
 			double theta = theta(grid.getS(is), value, delta, gamma, r);
 			double nextValue = value - theta * grid.tStep() + cf;
 			grid.set(it + 1, is, nextValue);
@@ -17,6 +17,21 @@ public class ExplicitMethodConstantVolatility extends ExplicitMethod {
 		return - 0.5 * vol * vol * s * s * gamma - r * s * delta + r * value;
 	}
 
+	@Override
+	public double vol(double gamma) {
+		return vol;
+	}
+
+	@Override
+	public FiniteDifferenceModel copy() {
+		return new ExplicitMethodConstantVolatility(vol);
+	}
+
+	@Override
+	public boolean isLinear() {
+		return true;
+	}
+
 	@Override
 	public double maxVol() {
 		return vol;
@@ -23,10 +23,28 @@ public class ExplicitMethodUncertainVolatility extends ExplicitMethod {
 
 	@Override
 	public double theta(double s, double value, double delta, double gamma, double r) {
-		double vol = gamma > 0.0 ? volMin : volMax;
+		double vol = vol(gamma);
 		return r * value - r * s * delta - 0.5 * vol * vol * s * s * gamma;
 	}
 
+	@Override
+	public double vol(double gamma) {
+		return gamma > 0.0 ? volMin : volMax;
+	}
+
+	@Override
+	public FiniteDifferenceModel copy() {
+		return new ExplicitMethodUncertainVolatility(volMin, volMax);
+	}
+
+	/**
+	 * The method is linear only when the volatility range is a single value
+	 */
+	@Override
+	public boolean isLinear() {
+		return volMin == volMax;
+	}
+
 	@Override
 	public double maxVol() {
 		return volMax;
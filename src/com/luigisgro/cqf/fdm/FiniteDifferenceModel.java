@@ -21,6 +21,29 @@ public interface FiniteDifferenceModel {
 	 */
 	void calculateNextStep(int ti, Grid grid, Derivative derivative, double r);
 	
+	/**
+	 * Checks that the method is stable on the grid for the derivative to be priced
+	 * @param grid The {@link Grid} object
+	 * @param derivative The {@link Derivative} to be priced
+	 * @return True if the method would converge, false otherwise
+	 */
+	boolean validate(Grid grid, Derivative derivative);
+	
+	/**
+	 * Creates a new instance of the method with the same parameters, so that different grids
+	 * can be calculated concurrently
+	 * @return A copy of the method
+	 */
+	FiniteDifferenceModel copy();
+	
+	/**
+	 * Tells if the equation solved by the method is linear in the value of the derivative:
+	 * in that case the value of a portfolio is the sum of the values of its instruments,
+	 * multiplied by their positions
+	 * @return True if the method is linear
+	 */
+	boolean isLinear();
+	
 	/**
 	 * Returns the vo
 	 * @return The maximum volatility used by the method
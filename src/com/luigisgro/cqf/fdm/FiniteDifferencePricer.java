@@ -9,9 +9,27 @@ import java.io.PrintStream;
  */
 public class FiniteDifferencePricer {
 	
+	/**
+	 * The index of the first time step to be calculated: the values at the times after the last cash flow
+	 * of the derivative are 0, and the grid does not need to be calculated there
+	 * @param grid The grid
+	 * @param derivative The derivative to be priced
+	 * @return The index of the last time step after the last cash flow, or 0 if the grid starts with a cash flow
+	 */
+	public static int firstActiveStep(Grid grid, Derivative derivative) {
+		double lastCashflow = Double.NEGATIVE_INFINITY;
+		for (double t : derivative.cashflowTimes())
+			lastCashflow = Math.max(lastCashflow, t);
+		int first = 0;
+		while (first < grid.numT() - 1 && grid.getT(first + 1) > lastCashflow + grid.tStep() / 2)
+			first++;
+		return first;
+	}
+	
 	/**
 	 * Performs a complete Finite Difference Method pricing, starting from the maturity of the
-	 * instrument evaluated to the present time
+	 * instrument evaluated to the present time. The time steps after the last cash flow are left to 0
+	 * without being calculated, unless the steps must be printed
 	 * @param grid The grid
 	 * @param derivative The derivative to be priced
 	 * @param method A {@link FiniteDifferenceModel} implementation
@@ -22,11 +40,12 @@ public class FiniteDifferencePricer {
 	 * @return True if the pricing was successful, false otherwise
 	 */
 	public static boolean evaluate(Grid grid, Derivative derivative, FiniteDifferenceModel method, double r, boolean printProgress, PrintStream ps) {
-		if (!grid.validate(method.maxVol(), derivative))
+		if (!method.validate(grid, derivative))
 			return false;
-		grid.reset();
+		int first = ps == null ? firstActiveStep(grid, derivative) : 0;
+		grid.reset(first);
 		int lastProgressStep = 0;
-		for (int it = 0; it < grid.numT() - 1; it++) {
+		for (int it = first; it < grid.numT() - 1; it++) {
 			if (printProgress) {
 				int progressStep = (int)(((double)it / grid.numT()) * 100);
 				if (progressStep > lastProgressStep) {
@@ -42,4 +61,32 @@ public class FiniteDifferencePricer {
 			System.out.println();
 		return true;
 	}
+	
+	/**
+	 * Performs a complete Finite Difference Method pricing with the explicit method, calculating at the same time
+	 * the sensitivities of the value of the derivative to the positions of some of its instruments
+	 * @param grid The grid of the value
+	 * @param tangents The grids of the sensitivities, one for each instrument
+	 * @param derivative The derivative to be priced
+	 * @param instruments The instruments whose positions the sensitivities refer to
+	 * @param method The explicit method
+	 * @param r The interest rate
+	 * @return True if the pricing was successful, false otherwise
+	 */
+	public static boolean evaluateWithTangents(TwoStepsGrid grid, TwoStepsGrid[] tangents, Derivative derivative, Derivative[] instruments, ExplicitMethod method, double r) {
+		if (tangents.length != instruments.length)
+			throw new IllegalArgumentException("Wrong number of tangent grids: " + tangents.length + " instead of: " + instruments.length);
+		if (!method.validate(grid, derivative))
+			return false;
+		int first = firstActiveStep(grid, derivative);
+		grid.reset(first);
+		for (TwoStepsGrid tangent : tangents)
+			tangent.reset(first);
+		for (int it = first; it < grid.numT() - 1; it++) {
+			method.calculateNextStep(it, grid, derivative, r);
+			for (int k = 0; k < tangents.length; k++)
+				method.calculateNextTangentStep(it, grid, tangents[k], instruments[k], r);
+		}
+		return true;
+	}
 }
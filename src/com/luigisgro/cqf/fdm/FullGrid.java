@@ -57,8 +57,16 @@ public class FullGrid extends BaseGrid {
 		return lines;
 	}
 	@Override
+	public Grid createEmptyGrid() {
+		return new FullGrid(tStep, tMin, tMax, sStep, sMin, sMax);
+	}
+	@Override
 	public void reset() {
 		for (int i = 0; i < nodes.length; i++)
 			nodes[i] = 0;		
 	}
+	@Override
+	public void reset(int firstStep) {
+		reset();
+	}
 }
@@ -0,0 +1,204 @@
+package com.luigisgro.cqf.fdm;
+
+import org.apache.commons.math.FunctionEvaluationException;
+import org.apache.commons.math.MathException;
+import org.apache.commons.math.MaxIterationsExceededException;
+import org.apache.commons.math.analysis.MultivariateVectorialFunction;
+import org.apache.commons.math.optimization.GoalType;
+import org.apache.commons.math.optimization.RealPointValuePair;
+
+/**
+ * Optimizer of the hedge positions of a {@link StaticHedgingStrategy} using the gradient of the P&L
+ * calculated by {@link StaticHedgingStrategy#runPricingWithGradient()}.
+ * It implements the BFGS quasi-Newton method: the inverse of the Hessian is approximated from the changes of the gradient,
+ * and each step is shortened until the P&L improves enough (Armijo condition).
+ * The trial steps of the line search are tested on the P&L alone, with a single grid:
+ * the gradient, which needs a pricing on every tangent grid, is calculated only at the accepted steps
+ * @author Luigi Sgro
+ *
+ */
+public class GradientHedgingOptimizer {
+	/**
+	 * Default maximum number of iterations
+	 */
+	public static final int DEFAULT_MAX_ITERATIONS = 100;
+
+	/**
+	 * The P&L change, relative to the P&L, that stops the optimization
+	 */
+	public static final double RELATIVE_THRESHOLD = 1e-10;
+
+	/**
+	 * The P&L change that stops the optimization
+	 */
+	public static final double ABSOLUTE_THRESHOLD = 1e-10;
+
+	/**
+	 * The fraction of the improvement predicted by the gradient that a step must achieve
+	 */
+	public static final double ARMIJO_FRACTION = 1e-4;
+
+	/**
+	 * The maximum number of times a step is halved
+	 */
+	public static final int MAX_STEP_HALVINGS = 30;
+
+	private final StaticHedgingStrategyOptimizationAdapter adapter;
+	private int maxIterations = DEFAULT_MAX_ITERATIONS;
+	private int iterations;
+	private int evaluations;
+
+	/**
+	 * Creates a new optimizer
+	 * @param adapter The adapter of the strategy to be optimized
+	 * @throws IllegalArgumentException If the strategy has no gradient
+	 */
+	public GradientHedgingOptimizer(StaticHedgingStrategyOptimizationAdapter adapter) {
+		if (!adapter.getStrategy().hasGradient())
+			throw new IllegalArgumentException("The gradient is not available for the method and the grid of the strategy");
+		this.adapter = adapter;
+	}
+
+	/**
+	 * @param maxIterations The maximum number of iterations
+	 */
+	public void setMaxIterations(int maxIterations) {
+		if (maxIterations < 1)
+			throw new IllegalArgumentException("Invalid maximum number of iterations: " + maxIterations);
+		this.maxIterations = maxIterations;
+	}
+
+	/**
+	 * Runs the optimization. At the end the strategy is priced with the best positions
+	 * @param goal The goal of the optimization
+	 * @param start The starting hedge positions
+	 * @return The best positions and P&L
+	 * @throws FunctionEvaluationException If a pricing fails
+	 * @throws MaxIterationsExceededException If the maximum number of iterations is exceeded
+	 */
+	public RealPointValuePair optimize(GoalType goal, double[] start) throws MathException {
+		// the P&L is maximized: a minimization maximizes its opposite
+		double sign = goal == GoalType.MAXIMIZE ? 1.0 : -1.0;
+		MultivariateVectorialFunction gradientFunction = adapter.gradient();
+		int n = start.length;
+		iterations = 0;
+		evaluations = 0;
+
+		double[] x = start.clone();
+		double[] g = gradient(gradientFunction, x, sign);
+		double f = sign * adapter.value(x);
+		double[][] h = new double[n][n];
+		for (int i = 0; i < n; i++)
+			h[i][i] = 1.0;
+		boolean scaled = false;
+
+		while (true) {
+			if (++iterations > maxIterations)
+				throw new MaxIterationsExceededException(maxIterations);
+
+			// ascent direction and slope along it
+			double[] d = new double[n];
+			double slope = 0;
+			for (int i = 0; i < n; i++) {
+				for (int j = 0; j < n; j++)
+					d[i] += h[i][j] * g[j];
+				slope += d[i] * g[i];
+			}
+			if (slope <= 0) {
+				// the approximation lost positive definiteness: restart from the identity, along the gradient
+				slope = 0;
+				for (int i = 0; i < n; i++) {
+					for (int j = 0; j < n; j++)
+						h[i][j] = i == j ? 1.0 : 0.0;
+					d[i] = g[i];
+					slope += g[i] * g[i];
+				}
+				scaled = false;
+				if (slope <= 0)
+					break;
+			}
+
+			// backtracking line search
+			double step = 1.0;
+			double[] xNew = new double[n];
+			double fNew = f;
+			int halvings = 0;
+			for (; halvings <= MAX_STEP_HALVINGS; halvings++, step /= 2) {
+				for (int i = 0; i < n; i++)
+					xNew[i] = x[i] + step * d[i];
+				fNew = sign * value(xNew);
+				if (fNew >= f + ARMIJO_FRACTION * step * slope)
+					break;
+			}
+			if (halvings > MAX_STEP_HALVINGS)
+				break;
+			double[] gNew = gradient(gradientFunction, xNew, sign);
+
+			// update of the approximated inverse Hessian (of the opposite of the P&L)
+			double[] s = new double[n];
+			double[] y = new double[n];
+			double sy = 0;
+			double yy = 0;
+			for (int i = 0; i < n; i++) {
+				s[i] = xNew[i] - x[i];
+				y[i] = g[i] - gNew[i];
+				sy += s[i] * y[i];
+				yy += y[i] * y[i];
+			}
+			if (sy > 0) {
+				if (!scaled) {
+					for (int i = 0; i < n; i++)
+						h[i][i] = sy / yy;
+					scaled = true;
+				}
+				double[] hy = new double[n];
+				double yhy = 0;
+				for (int i = 0; i < n; i++) {
+					for (int j = 0; j < n; j++)
+						hy[i] += h[i][j] * y[j];
+					yhy += y[i] * hy[i];
+				}
+				for (int i = 0; i < n; i++) {
+					for (int j = 0; j < n; j++)
+						h[i][j] += ((sy + yhy) * s[i] * s[j] / sy - hy[i] * s[j] - s[i] * hy[j]) / sy;
+				}
+			}
+
+			boolean converged = Math.abs(fNew - f) <= Math.max(RELATIVE_THRESHOLD * Math.abs(f), ABSOLUTE_THRESHOLD);
+			x = xNew;
+			g = gNew;
+			f = fNew;
+			if (converged)
+				break;
+		}
+		double value = adapter.value(x);
+		return new RealPointValuePair(x, value);
+	}
+
+	private double value(double[] x) throws FunctionEvaluationException {
+		evaluations++;
+		return adapter.value(x);
+	}
+
+	private double[] gradient(MultivariateVectorialFunction gradientFunction, double[] x, double sign) throws FunctionEvaluationException {
+		evaluations++;
+		double[] gradient = gradientFunction.value(x);
+		for (int i = 0; i < gradient.length; i++)
+			gradient[i] *= sign;
+		return gradient;
+	}
+
+	/**
+	 * @return The number of iterations of the last optimization
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * @return The number of pricings of the last optimization, of the P&L alone or with its gradient
+	 */
+	public int getEvaluations() {
+		return evaluations;
+	}
+}
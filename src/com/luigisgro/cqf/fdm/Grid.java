@@ -68,6 +68,15 @@ public interface Grid {
 	 */
 	double getPresentInterpolated(double s);
 
+	/**
+	 * Interpolates linearly a row of values defined on the stock steps of the grid, for any value of s
+	 * within the stock range. Values of s outside the range take the value of the nearest end of the row
+	 * @param row The values, indexed by stock step
+	 * @param s The stock value
+	 * @return The interpolated value at s
+	 */
+	double interpolate(double[] row, double s);
+
 	/**
 	 * Sets a value in the grid
 	 * @param it Time step index
@@ -113,4 +122,16 @@ public interface Grid {
 	 * Resets all grid values to 0
 	 */
 	void reset();
+	
+	/**
+	 * Resets all grid values to 0, for a calculation starting from a later time step than the first one
+	 * @param firstStep The index of the first time step that will be read
+	 */
+	void reset(int firstStep);
+	
+	/**
+	 * Creates a new grid of the same type and dimensions, independent of this one
+	 * @return An empty grid
+	 */
+	Grid createEmptyGrid();
 }
\ No newline at end of file
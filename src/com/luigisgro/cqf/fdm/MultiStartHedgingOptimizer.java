@@ -0,0 +1,138 @@
+package com.luigisgro.cqf.fdm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.math.FunctionEvaluationException;
+import org.apache.commons.math.MathException;
+import org.apache.commons.math.analysis.MultivariateRealFunction;
+import org.apache.commons.math.optimization.GoalType;
+import org.apache.commons.math.optimization.RealPointValuePair;
+import org.apache.commons.math.optimization.direct.NelderMead;
+import org.apache.commons.math.random.JDKRandomGenerator;
+import org.apache.commons.math.random.RandomGenerator;
+
+/**
+ * Optimizer of the hedge positions of a {@link StaticHedgingStrategy}, running a Nelder-Mead
+ * optimization from each of several starting points. The optimizations run concurrently:
+ * each thread evaluates the strategy on its own copy, with grid and portfolio,
+ * created once by {@link StaticHedgingStrategyOptimizationAdapter#concurrentFunction()}.
+ * At the end the best positions are set in the strategy, and the strategy is priced with them
+ * @author Luigi Sgro
+ *
+ */
+public class MultiStartHedgingOptimizer {
+	private final StaticHedgingStrategyOptimizationAdapter adapter;
+	private final int numberOfThreads;
+	private int iterations;
+	private int evaluations;
+
+	/**
+	 * Creates a new optimizer
+	 * @param adapter The adapter of the strategy to be optimized
+	 * @param numberOfThreads The number of optimizations running at the same time
+	 */
+	public MultiStartHedgingOptimizer(StaticHedgingStrategyOptimizationAdapter adapter, int numberOfThreads) {
+		if (numberOfThreads < 1)
+			throw new IllegalArgumentException("Invalid number of threads: " + numberOfThreads);
+		this.adapter = adapter;
+		this.numberOfThreads = numberOfThreads;
+	}
+
+	/**
+	 * Creates starting points around the current hedge positions: the first is the current positions,
+	 * the others are perturbed by normal variates, with standard deviation equal to the size of each position (at least 1)
+	 * @param start The current hedge positions
+	 * @param numberOfStarts The number of starting points
+	 * @param seed The seed of the perturbations
+	 * @return The starting points
+	 */
+	public static double[][] startingPoints(double[] start, int numberOfStarts, long seed) {
+		if (numberOfStarts < 1)
+			throw new IllegalArgumentException("Invalid number of starting points: " + numberOfStarts);
+		RandomGenerator random = new JDKRandomGenerator();
+		random.setSeed(seed);
+		double[][] points = new double[numberOfStarts][];
+		points[0] = start.clone();
+		for (int i = 1; i < numberOfStarts; i++) {
+			points[i] = new double[start.length];
+			for (int k = 0; k < start.length; k++)
+				points[i][k] = start[k] + Math.max(Math.abs(start[k]), 1.0) * random.nextGaussian();
+		}
+		return points;
+	}
+
+	/**
+	 * Runs an optimization from each starting point
+	 * @param goal The goal of the optimization
+	 * @param startingPoints The starting points
+	 * @return The best result over all the optimizations
+	 * @throws FunctionEvaluationException If a pricing fails
+	 * @throws MathException If an optimization fails
+	 * @throws IllegalStateException If the optimizations are interrupted
+	 */
+	public RealPointValuePair optimize(final GoalType goal, double[][] startingPoints) throws MathException {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(numberOfThreads, startingPoints.length));
+		List<Future<Object[]>> results = new ArrayList<Future<Object[]>>(startingPoints.length);
+		// the copy of the strategy of each thread is reused by all the optimizations running on it
+		final ThreadLocal<MultivariateRealFunction> functions = new ThreadLocal<MultivariateRealFunction>() {
+			@Override
+			protected MultivariateRealFunction initialValue() {
+				return adapter.concurrentFunction();
+			}
+		};
+		try {
+			for (final double[] start : startingPoints) {
+				results.add(executor.submit(new Callable<Object[]>() {
+					@Override
+					public Object[] call() throws Exception {
+						NelderMead optimizer = new NelderMead();
+						RealPointValuePair result = optimizer.optimize(functions.get(), goal, start);
+						return new Object[] { result, optimizer.getIterations(), optimizer.getEvaluations() };
+					}
+				}));
+			}
+			RealPointValuePair best = null;
+			evaluations = 0;
+			for (Future<Object[]> future : results) {
+				Object[] result = future.get();
+				RealPointValuePair pair = (RealPointValuePair)result[0];
+				evaluations += (Integer)result[2];
+				if (best == null || (goal == GoalType.MAXIMIZE ? pair.getValue() > best.getValue() : pair.getValue() < best.getValue())) {
+					best = pair;
+					iterations = (Integer)result[1];
+				}
+			}
+			adapter.value(best.getPoint());
+			return best;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Optimization interrupted");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof MathException)
+				throw (MathException)e.getCause();
+			throw new IllegalStateException("An error occurred in an optimization thread [" + e.getCause().getMessage() + "]", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return The number of iterations of the optimization giving the best result
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * @return The number of evaluations of all the optimizations
+	 */
+	public int getEvaluations() {
+		return evaluations;
+	}
+}
@@ -0,0 +1,152 @@
+package com.luigisgro.cqf.fdm;
+
+import java.util.Arrays;
+
+/**
+ * A memory optimized grid whose stock values are not equally spaced, so that the resolution
+ * can be concentrated where the payoffs are not smooth, typically around the strikes and the spot value.
+ * The Finite Difference methods calculate delta and gamma with the {@link Stencils} of the grid.
+ * The stability of the explicit method depends on the smallest ratio between the square of the stock step and the square of the stock value
+ * @author Luigi Sgro
+ *
+ */
+public class NonUniformGrid extends TwoStepsGrid {
+	private static final int BISECTION_ITERATIONS = 100;
+
+	private final double[] s;
+	private final double minStep;
+	private final double maxStabilityRatio;
+
+	/**
+	 * Creates a grid on given stock values
+	 * @param tStep The time step
+	 * @param tMin The time range minimum value
+	 * @param tMax The time range maximum value
+	 * @param s The stock values, in increasing order
+	 */
+	public NonUniformGrid(double tStep, double tMin, double tMax, double[] s) {
+		super(tStep, tMin, tMax, s[0], s[s.length - 1], s.length);
+		if (s.length < 3)
+			throw new IllegalArgumentException("At least 3 stock values are needed: " + s.length);
+		double min = Double.MAX_VALUE;
+		double maxRatio = 0;
+		for (int is = 1; is < s.length; is++) {
+			if (s[is] <= s[is - 1])
+				throw new IllegalArgumentException("Stock values not increasing at index " + is + ": " + s[is - 1] + ", " + s[is]);
+			min = Math.min(min, s[is] - s[is - 1]);
+			if (is < s.length - 1)
+				maxRatio = Math.max(maxRatio, s[is] * s[is] / ((s[is] - s[is - 1]) * (s[is + 1] - s[is])));
+		}
+		this.s = s.clone();
+		minStep = min;
+		maxStabilityRatio = maxRatio;
+	}
+
+	/**
+	 * Creates a grid whose stock values are concentrated around some centres. The density of the stock values
+	 * is proportional to the sum over the centres c of 1 / sqrt(1 + ((S - c) / concentration)^2):
+	 * with a single centre the stock values are the sinh transformation of equally spaced points.
+	 * The stock step nearest to each centre is moved onto the centre
+	 * @param tStep The time step
+	 * @param tMin The time range minimum value
+	 * @param tMax The time range maximum value
+	 * @param sMin The minimum value of the stock range
+	 * @param sMax The maximum value of the stock range
+	 * @param numS The number of stock steps
+	 * @param centres The stock values around which the stock steps are concentrated, typically the strikes and the spot value
+	 * @param concentration The width of the region of fine resolution around each centre: the smaller, the finer
+	 * @return The grid
+	 */
+	public static NonUniformGrid sinhStretched(double tStep, double tMin, double tMax, double sMin, double sMax, int numS, double[] centres, double concentration) {
+		if (numS < 3)
+			throw new IllegalArgumentException("At least 3 stock values are needed: " + numS);
+		if (centres.length == 0)
+			throw new IllegalArgumentException("At least a centre is needed");
+		if (concentration <= 0)
+			throw new IllegalArgumentException("Invalid concentration: " + concentration);
+		double[] s = new double[numS];
+		s[0] = sMin;
+		s[numS - 1] = sMax;
+		double total = cumulativeDensity(sMax, sMin, centres, concentration);
+		for (int is = 1; is < numS - 1; is++) {
+			// the cumulative density is increasing: the stock value is found by bisection
+			double target = total * is / (numS - 1);
+			double lo = s[is - 1];
+			double hi = sMax;
+			for (int i = 0; i < BISECTION_ITERATIONS && hi - lo > 0; i++) {
+				double mid = 0.5 * (lo + hi);
+				if (cumulativeDensity(mid, sMin, centres, concentration) < target)
+					lo = mid;
+				else
+					hi = mid;
+			}
+			s[is] = 0.5 * (lo + hi);
+		}
+		for (double centre : centres) {
+			if (centre <= sMin || centre >= sMax)
+				continue;
+			int nearest = Arrays.binarySearch(s, centre);
+			if (nearest >= 0)
+				continue;
+			int upper = -nearest - 1;
+			nearest = centre - s[upper - 1] < s[upper] - centre ? upper - 1 : upper;
+			if (nearest > 0 && nearest < numS - 1 && s[nearest - 1] < centre && centre < s[nearest + 1])
+				s[nearest] = centre;
+		}
+		return new NonUniformGrid(tStep, tMin, tMax, s);
+	}
+
+	/**
+	 * The integral of the density of the stock values from sMin to x
+	 */
+	private static double cumulativeDensity(double x, double sMin, double[] centres, double concentration) {
+		double c = 0;
+		for (double centre : centres)
+			c += asinh((x - centre) / concentration) - asinh((sMin - centre) / concentration);
+		return c;
+	}
+
+	private static double asinh(double x) {
+		return x >= 0 ? Math.log(x + Math.sqrt(x * x + 1)) : -Math.log(-x + Math.sqrt(x * x + 1));
+	}
+
+	/**
+	 * The explicit method is stable if the time step is small compared to the ratio between
+	 * the square of the stock step and the square of the stock value, at every stock step
+	 */
+	@Override
+	public boolean validate(double vol, Derivative d) {
+		int criticalTPoints = (int) (d.timeToNearestCashflow() / tStep);
+		return criticalTPoints > vol * vol * maxStabilityRatio;
+	}
+
+	/**
+	 * @return The smallest stock step
+	 */
+	@Override
+	public double sStep() {
+		return minStep;
+	}
+	@Override
+	public double getS(int is) {
+		return s[is];
+	}
+	@Override
+	public double interpolate(double[] row, double value) {
+		if (value <= sMin)
+			return row[0];
+		if (value >= sMax)
+			return row[numS - 1];
+		int is = Arrays.binarySearch(s, value);
+		if (is >= 0)
+			return row[is];
+		is = -is - 2;
+		double v1 = row[is];
+		double v2 = row[is + 1];
+		return v1 + (v2 - v1) * (value - s[is]) / (s[is + 1] - s[is]);
+	}
+	@Override
+	public Grid createEmptyGrid() {
+		return new NonUniformGrid(tStep, tMin, tMax, s);
+	}
+}
@@ -40,4 +40,22 @@ public abstract class Option {
 	public double getMaturity() {
 		return maturity;
 	}
+	
+	/**
+	 * An option has a single cash flow, at maturity
+	 * @return The maturity of the option
+	 */
+	public double[] cashflowTimes() {
+		return new double[] { maturity };
+	}
+	
+	/**
+	 * Checks whether the maturity is within a time step
+	 * @param t The time
+	 * @param tStep The time step
+	 * @return True if the maturity is within t +- tStep / 2
+	 */
+	protected boolean isMaturity(double t, double tStep) {
+		return t > maturity - tStep / 2 && t < maturity + tStep / 2;
+	}
 }
@@ -2,6 +2,7 @@ package com.luigisgro.cqf.fdm;
 
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -60,6 +61,30 @@ public class Portfolio implements Derivative {
 		return cf;
 	}
 
+	/**
+	 * The union of the cash flow schedules of the instruments
+	 */
+	@Override
+	public double[] cashflowTimes() {
+		Set<Double> times = new LinkedHashSet<Double>();
+		for (Derivative d : items.keySet()) {
+			for (double time : d.cashflowTimes())
+				times.add(time);
+		}
+		double[] cashflowTimes = new double[times.size()];
+		int i = 0;
+		for (double time : times)
+			cashflowTimes[i++] = time;
+		return cashflowTimes;
+	}
+
+	@Override
+	public void addCashflows(double t, double tStep, double[] s, double weight, double[] cashflows) {
+		for (Map.Entry<Derivative, Item> item : items.entrySet()) {
+			item.getKey().addCashflows(t, tStep, s, weight * item.getValue().position, cashflows);
+		}
+	}
+
 	@Override
 	public double boundaryValue(double t, double tStep, double s, double r) {
 		double bv = 0.0;
@@ -79,6 +104,18 @@ public class Portfolio implements Derivative {
 		return items.get(d).position;
 	}
 	
+	/**
+	 * Creates a portfolio of the same derivatives, with its own positions and prices
+	 * @return A copy of the portfolio
+	 */
+	public Portfolio copy() {
+		Portfolio copy = new Portfolio();
+		for (Map.Entry<Derivative, Item> item : items.entrySet()) {
+			copy.items.put(item.getKey(), copy.new Item(item.getValue().position, item.getValue().unitPrice, item.getValue().isHedge));
+		}
+		return copy;
+	}
+	
 	public void invertPositions() {
 		for (Item item : items.values()) {
 			item.position = -item.position;
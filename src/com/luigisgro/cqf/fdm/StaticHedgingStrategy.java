@@ -1,13 +1,24 @@
 package com.luigisgro.cqf.fdm;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 
 /**
  * High level class representing a trading strategy with static hedging.
  * It is also the access point to run the FDM pricing when used with
  * portfolios with static hedge.
+ * When the Finite Difference method is linear, each instrument is priced only once:
+ * the present values of the portfolio are the sum of the present values of the instruments,
+ * multiplied by their current positions.
+ * The strategy can also calculate the gradient of the P&L with respect to the hedge positions:
+ * for a linear method it is given by the values of the hedge instruments, for the explicit method
+ * on a {@link TwoStepsGrid} by a tangent linear pricing.
+ * A pricing is not repeated if the positions of the portfolio have not changed since the last one:
+ * the instruments of the portfolio must not change after the strategy has been created
  * @author Luigi Sgro
  *
  */
@@ -18,6 +29,12 @@ public class StaticHedgingStrategy {
 	private double r;
 	private boolean printProgress;
 	private Portfolio.Item[] hedgeItems;
+	private Derivative[] hedgeInstruments;
+	private TwoStepsGrid[] tangentGrids;
+	private double[][] hedgeSensitivities;
+	private Map<Derivative, double[]> instrumentValues = new HashMap<Derivative, double[]>();
+	private double[] presentValues;
+	private double[] pricedPositions;
 	
 	/**
 	 * Creates a new static hedging strategy object
@@ -32,12 +49,26 @@ public class StaticHedgingStrategy {
 		this.method = method;
 		this.r = r;
 		List<Portfolio.Item> hedgeItemList = new ArrayList<Portfolio.Item>();
-		for (Portfolio.Item item : portfolio.getItems().values()) {
-			if (item.isHedge) {
-				hedgeItemList.add(item);
+		List<Derivative> hedgeInstrumentList = new ArrayList<Derivative>();
+		for (Map.Entry<Derivative, Portfolio.Item> item : portfolio.getItems().entrySet()) {
+			if (item.getValue().isHedge) {
+				hedgeItemList.add(item.getValue());
+				hedgeInstrumentList.add(item.getKey());
 			}
 		}
 		hedgeItems = hedgeItemList.toArray(new Portfolio.Item[hedgeItemList.size()]);
+		hedgeInstruments = hedgeInstrumentList.toArray(new Derivative[hedgeInstrumentList.size()]);
+	}
+
+	/**
+	 * Creates a strategy with a new grid, method and copy of the portfolio, that can be priced
+	 * concurrently with this one
+	 * @return A copy of the strategy
+	 */
+	public StaticHedgingStrategy copy() {
+		StaticHedgingStrategy copy = new StaticHedgingStrategy(grid.createEmptyGrid(), portfolio.copy(), method.copy(), r);
+		copy.instrumentValues.putAll(instrumentValues);
+		return copy;
 	}
 
 	/**
@@ -91,7 +122,9 @@ public class StaticHedgingStrategy {
 	 * @return The value of the portfolio at s
 	 */
 	public double getValueAt(double s) {
-		return grid.getPresentInterpolated(s);
+		if (presentValues == null)
+			return grid.getPresentInterpolated(s);
+		return grid.interpolate(presentValues, s);
 	}
 	
 	/**
@@ -110,7 +143,124 @@ public class StaticHedgingStrategy {
 	 * @return True if the pricing succeeded, false otherwise
 	 */
 	public boolean runPricing() {
-		return FiniteDifferencePricer.evaluate(grid, portfolio, method, r, printProgress, null);
+		double[] positions = positions();
+		if (Arrays.equals(positions, pricedPositions))
+			return true;
+		pricedPositions = null;
+		hedgeSensitivities = null;
+		if (!method.isLinear()) {
+			presentValues = null;
+			if (!FiniteDifferencePricer.evaluate(grid, portfolio, method, r, printProgress, null))
+				return false;
+			pricedPositions = positions;
+			return true;
+		}
+		if (!method.validate(grid, portfolio))
+			return false;
+		double[] values = new double[grid.numS()];
+		for (Map.Entry<Derivative, Portfolio.Item> item : portfolio.getItems().entrySet()) {
+			double[] instrument = instrumentValues(item.getKey());
+			if (instrument == null)
+				return false;
+			for (int is = 0; is < values.length; is++)
+				values[is] += item.getValue().position * instrument[is];
+		}
+		presentValues = values;
+		pricedPositions = positions;
+		return true;
+	}
+	
+	/**
+	 * The positions of all the instruments of the portfolio
+	 */
+	private double[] positions() {
+		double[] positions = new double[portfolio.getItems().size()];
+		int i = 0;
+		for (Portfolio.Item item : portfolio.getItems().values())
+			positions[i++] = item.position;
+		return positions;
+	}
+
+	/**
+	 * Tells if the gradient of the P&L with respect to the hedge positions can be calculated
+	 * @return True if the method is linear, or if it is an {@link ExplicitMethod} on a {@link TwoStepsGrid}
+	 */
+	public boolean hasGradient() {
+		return method.isLinear() || (method instanceof ExplicitMethod && grid instanceof TwoStepsGrid);
+	}
+	
+	/**
+	 * Runs the FDM to evaluate the portfolio and the sensitivity of its value to the position
+	 * of each hedging instrument. The sensitivities are available through {@link #getPnLGradientAt(double)}
+	 * @return True if the pricing succeeded, false otherwise
+	 * @throws IllegalStateException If the gradient cannot be calculated with the method and the grid of the strategy
+	 */
+	public boolean runPricingWithGradient() {
+		if (!hasGradient())
+			throw new IllegalStateException("The gradient is not available for the method and the grid of the strategy");
+		double[] positions = positions();
+		if (hedgeSensitivities != null && Arrays.equals(positions, pricedPositions))
+			return true;
+		pricedPositions = null;
+		hedgeSensitivities = null;
+		if (method.isLinear()) {
+			if (!runPricing())
+				return false;
+			double[][] sensitivities = new double[hedgeInstruments.length][];
+			for (int k = 0; k < hedgeInstruments.length; k++)
+				sensitivities[k] = instrumentValues(hedgeInstruments[k]);
+			hedgeSensitivities = sensitivities;
+			return true;
+		}
+		if (tangentGrids == null) {
+			tangentGrids = new TwoStepsGrid[hedgeInstruments.length];
+			for (int k = 0; k < tangentGrids.length; k++)
+				tangentGrids[k] = (TwoStepsGrid)grid.createEmptyGrid();
+		}
+		presentValues = null;
+		if (!FiniteDifferencePricer.evaluateWithTangents((TwoStepsGrid)grid, tangentGrids, portfolio, hedgeInstruments, (ExplicitMethod)method, r))
+			return false;
+		double[][] sensitivities = new double[hedgeInstruments.length][grid.numS()];
+		for (int k = 0; k < hedgeInstruments.length; k++) {
+			for (int is = 0; is < grid.numS(); is++)
+				sensitivities[k][is] = tangentGrids[k].getPresent(is);
+		}
+		hedgeSensitivities = sensitivities;
+		pricedPositions = positions;
+		return true;
+	}
+	
+	/**
+	 * The gradient of the P&L with respect to the hedge positions, calculated by the last call of {@link #runPricingWithGradient()}
+	 * @param s The value of stock
+	 * @return The derivative of the P&L at s with respect to the position of each hedging instrument
+	 * @throws IllegalStateException If the gradient has not been calculated
+	 */
+	public double[] getPnLGradientAt(double s) {
+		if (hedgeSensitivities == null)
+			throw new IllegalStateException("The gradient has not been calculated");
+		double[] gradient = new double[hedgeItems.length];
+		for (int k = 0; k < hedgeItems.length; k++)
+			gradient[k] = grid.interpolate(hedgeSensitivities[k], s) - hedgeItems[k].unitPrice;
+		return gradient;
+	}
+	
+	/**
+	 * The present values of a unit position of an instrument, priced on the first request
+	 * @param derivative The instrument
+	 * @return The present values, indexed by stock step, or null if the pricing failed
+	 */
+	private double[] instrumentValues(Derivative derivative) {
+		double[] values = instrumentValues.get(derivative);
+		if (values == null) {
+			if (!FiniteDifferencePricer.evaluate(grid, derivative, method, r, printProgress, null))
+				return null;
+			values = new double[grid.numS()];
+			for (int is = 0; is < values.length; is++)
+				values[is] = grid.getPresent(is);
+			instrumentValues.put(derivative, values);
+		}
+		return values;
 	}
 
 	/**
@@ -125,6 +275,17 @@ public class StaticHedgingStrategy {
 		return positions;
 	}
 
+	/**
+	 * Sets the position of each hedging instrument
+	 * @param positions The positions, in the same order as {@link #hedgePositions()}
+	 */
+	public void setHedgePositions(double[] positions) {
+		if (positions.length != hedgeItems.length)
+			throw new IllegalArgumentException("Wrong dimension: " + positions.length + " instead of: " + hedgeItems.length);
+		for (int k = 0; k < positions.length; k++)
+			hedgeItems[k].position = positions[k];
+	}
+
 	/**
 	 * Utility method to allow a pretty print 
 	 * @return A string representing the current position of the hedge instruments
@@ -1,15 +1,24 @@
 package com.luigisgro.cqf.fdm;
 
 import org.apache.commons.math.FunctionEvaluationException;
+import org.apache.commons.math.analysis.DifferentiableMultivariateRealFunction;
 import org.apache.commons.math.analysis.MultivariateRealFunction;
+import org.apache.commons.math.analysis.MultivariateVectorialFunction;
 
 /**
  * An adapter that makes a {@link StaticHedgingStrategy} suitable for optimization
- * by a {@link org.apache.commons.math.optimization.MultivariateRealOptimizer}
+ * by a {@link org.apache.commons.math.optimization.MultivariateRealOptimizer}.
+ * The method {@link #value(double[])} prices the strategy itself, changing its hedge positions,
+ * while {@link #evaluate(double[])} prices a copy of the strategy, and can be called concurrently.
+ * A function returned by {@link #concurrentFunction()} prices its own copy at every call, so that the grid,
+ * the coefficients of the method and the values of the instruments are reused by the thread calling it.
+ * When the strategy has a gradient, the adapter can be used by a
+ * {@link org.apache.commons.math.optimization.DifferentiableMultivariateRealOptimizer}:
+ * the strategy does not repeat the pricing if the optimizer asks for the value at the point of the last gradient
  * @author Luigi Sgro
  *
  */
-public class StaticHedgingStrategyOptimizationAdapter implements MultivariateRealFunction {
+public class StaticHedgingStrategyOptimizationAdapter implements DifferentiableMultivariateRealFunction {
 	private StaticHedgingStrategy strategy;
 	private double s;
 	
@@ -25,15 +34,78 @@ public class StaticHedgingStrategyOptimizationAdapter implements MultivariateRea
 	
 	@Override
 	public double value(double[] point) throws FunctionEvaluationException, IllegalArgumentException {
-		Portfolio.Item[] hedgeItems = strategy.getHedgeItems();
-		if (point.length != hedgeItems.length)
-			throw new IllegalArgumentException("Wrong dimension: " + point.length + " instead of: " + hedgeItems.length);
-		for (int k = 0; k < point.length; k++) {
-			hedgeItems[k].position = point[k];
-		}
-		if (!strategy.runPricing()) {
+		return price(strategy, point);
+	}
+	
+	/**
+	 * The gradient of the P&L with respect to the hedge positions, calculated by {@link StaticHedgingStrategy#runPricingWithGradient()}
+	 * @throws IllegalStateException If the strategy has no gradient
+	 */
+	@Override
+	public MultivariateVectorialFunction gradient() {
+		if (!strategy.hasGradient())
+			throw new IllegalStateException("The strategy has no gradient");
+		return new MultivariateVectorialFunction() {
+			@Override
+			public double[] value(double[] point) throws FunctionEvaluationException {
+				strategy.setHedgePositions(point);
+				if (!strategy.runPricingWithGradient())
+					throw new FunctionEvaluationException(point, "An error occurred during calculation");
+				return strategy.getPnLGradientAt(s);
+			}
+		};
+	}
+	
+	@Override
+	public MultivariateRealFunction partialDerivative(final int k) {
+		final MultivariateVectorialFunction gradient = gradient();
+		return new MultivariateRealFunction() {
+			@Override
+			public double value(double[] point) throws FunctionEvaluationException {
+				return gradient.value(point)[k];
+			}
+		};
+	}
+	
+	/**
+	 * Evaluates the strategy with the given hedge positions on its own grid and copy of the portfolio,
+	 * leaving the strategy unchanged. The strategy must not be modified while this method runs
+	 * @param point The hedge positions
+	 * @return The P&L of the strategy at the stock value of the optimization
+	 * @throws FunctionEvaluationException If the pricing fails
+	 */
+	public double evaluate(double[] point) throws FunctionEvaluationException {
+		return price(strategy.copy(), point);
+	}
+	
+	/**
+	 * Creates a function pricing a copy of the strategy, made once and reused at every call.
+	 * Different functions can be called concurrently, but each one must be called by one thread at a time.
+	 * The strategy must not be modified while the function is created
+	 * @return A function evaluating the strategy like {@link #evaluate(double[])}, for one of several concurrent optimizers
+	 */
+	public MultivariateRealFunction concurrentFunction() {
+		final StaticHedgingStrategy copy = strategy.copy();
+		return new MultivariateRealFunction() {
+			@Override
+			public double value(double[] point) throws FunctionEvaluationException {
+				return price(copy, point);
+			}
+		};
+	}
+	
+	/**
+	 * @return The strategy being optimized
+	 */
+	public StaticHedgingStrategy getStrategy() {
+		return strategy;
+	}
+	
+	private double price(StaticHedgingStrategy trial, double[] point) throws FunctionEvaluationException {
+		trial.setHedgePositions(point);
+		if (!trial.runPricing()) {
 			throw new FunctionEvaluationException(point, "An error occurred during calculation");
 		}
-		return strategy.getPnLAt(s);
+		return trial.getPnLAt(s);
 	}
 }
@@ -0,0 +1,66 @@
+package com.luigisgro.cqf.fdm;
+
+/**
+ * The weights of the three point approximations of delta and gamma at each inner stock step of a grid.
+ * With the distances h- and h+ of the previous and the next stock values:
+ * <ul>
+ * <li>delta = (-h+ V(i-1) / (h- (h- + h+)) + (h+ - h-) V(i) / (h- h+) + h- V(i+1) / (h+ (h- + h+))</li>
+ * <li>gamma = 2 (V(i-1) / (h- (h- + h+)) - V(i) / (h- h+) + V(i+1) / (h+ (h- + h+)))</li>
+ * </ul>
+ * On a grid with a uniform stock step they are the usual central differences
+ * @author Luigi Sgro
+ *
+ */
+public class Stencils {
+	/**
+	 * The weights of the previous, current and next value in delta, indexed by stock step
+	 */
+	public final double[] deltaLower, deltaMiddle, deltaUpper;
+
+	/**
+	 * The weights of the previous, current and next value in gamma, indexed by stock step
+	 */
+	public final double[] gammaLower, gammaMiddle, gammaUpper;
+
+	/**
+	 * Calculates the weights of the inner stock steps of a grid. The weights of the boundaries are 0
+	 * @param grid The grid
+	 */
+	public Stencils(Grid grid) {
+		int numS = grid.numS();
+		deltaLower = new double[numS];
+		deltaMiddle = new double[numS];
+		deltaUpper = new double[numS];
+		gammaLower = new double[numS];
+		gammaMiddle = new double[numS];
+		gammaUpper = new double[numS];
+		for (int is = 1; is < numS - 1; is++) {
+			double hLower = grid.getS(is) - grid.getS(is - 1);
+			double hUpper = grid.getS(is + 1) - grid.getS(is);
+			deltaLower[is] = -hUpper / (hLower * (hLower + hUpper));
+			deltaMiddle[is] = (hUpper - hLower) / (hLower * hUpper);
+			deltaUpper[is] = hLower / (hUpper * (hLower + hUpper));
+			gammaLower[is] = 2 / (hLower * (hLower + hUpper));
+			gammaMiddle[is] = -2 / (hLower * hUpper);
+			gammaUpper[is] = 2 / (hUpper * (hLower + hUpper));
+		}
+	}
+
+	/**
+	 * @param values The values of a time step
+	 * @param is The stock step index
+	 * @return The delta at the stock step
+	 */
+	public double delta(double[] values, int is) {
+		return deltaLower[is] * values[is - 1] + deltaMiddle[is] * values[is] + deltaUpper[is] * values[is + 1];
+	}
+
+	/**
+	 * @param values The values of a time step
+	 * @param is The stock step index
+	 * @return The gamma at the stock step
+	 */
+	public double gamma(double[] values, int is) {
+		return gammaLower[is] * values[is - 1] + gammaMiddle[is] * values[is] + gammaUpper[is] * values[is + 1];
+	}
+}
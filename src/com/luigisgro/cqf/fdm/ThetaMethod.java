@@ -0,0 +1,252 @@
+package com.luigisgro.cqf.fdm;
+
+import java.util.Arrays;
+
+/**
+ * Implementation of the theta scheme for Finite Difference Method: the next time step is the weighted average
+ * of the explicit and the fully implicit discretisation of the Black-Scholes operator, with weight theta
+ * on the implicit one. The implicit part is a tridiagonal system, solved with the Thomas algorithm.
+ * With theta = 1 (fully implicit) or theta = 0.5 (Crank-Nicolson) the method is stable for any time step.
+ * Crank-Nicolson is second order in time, but it propagates the oscillations produced by a non-smooth payoff:
+ * after each cash flow of the {@link CashflowSchedule} a few fully implicit steps are performed instead (Rannacher start-up).
+ * The volatility can depend on the sign of gamma: the implicit part is then non linear,
+ * and it is solved by policy iteration, solving the linear system with the volatilities chosen from the gamma
+ * of the last solution until the choice does not change, or up to a maximum number of iterations:
+ * the time steps where the choice was still changing are counted, and the count of the last pricing
+ * is returned by {@link #getUnconvergedSteps()}.
+ * The stock steps can be non uniform: delta and gamma are calculated with the {@link Stencils} of the grid
+ * @author Luigi Sgro
+ *
+ */
+public abstract class ThetaMethod implements FiniteDifferenceModel {
+	/**
+	 * The weight of the fully implicit method
+	 */
+	public static final double IMPLICIT = 1.0;
+
+	/**
+	 * The weight of the Crank-Nicolson method
+	 */
+	public static final double CRANK_NICOLSON = 0.5;
+
+	/**
+	 * Default number of fully implicit steps after each cash flow
+	 */
+	public static final int DEFAULT_RANNACHER_STEPS = 2;
+
+	/**
+	 * Default maximum number of policy iterations in a time step
+	 */
+	public static final int MAX_POLICY_ITERATIONS = 20;
+
+	private final double theta;
+	private final int rannacherSteps;
+	private int maxPolicyIterations = MAX_POLICY_ITERATIONS;
+	private int unconvergedSteps;
+	private int implicitStepsLeft;
+	private double[] previous;
+	private double[] next;
+	private double[] rhs;
+	private double[] lower;
+	private double[] diagonal;
+	private double[] upper;
+	private double[] scratch;
+	private double[] vols;
+	private Grid stockValuesGrid;
+	private double[] stockValues;
+	private Stencils stencils;
+	private double[] cashflows;
+	private CashflowSchedule schedule;
+	private Grid scheduleGrid;
+	private int lastStep;
+
+	/**
+	 * Creates a new theta scheme
+	 * @param theta The weight of the implicit discretisation, between 0.5 and 1
+	 * @param rannacherSteps The number of fully implicit steps after each cash flow
+	 */
+	public ThetaMethod(double theta, int rannacherSteps) {
+		if (theta < 0.5 || theta > 1.0)
+			throw new IllegalArgumentException("Invalid theta: " + theta + " (allowed: 0.5 - 1)");
+		if (rannacherSteps < 0)
+			throw new IllegalArgumentException("Invalid number of Rannacher steps: " + rannacherSteps);
+		this.theta = theta;
+		this.rannacherSteps = rannacherSteps;
+	}
+
+	/**
+	 * The volatility used at a grid point
+	 * @param gamma The value of gamma at the grid point
+	 * @return The volatility
+	 */
+	public abstract double vol(double gamma);
+
+	/**
+	 * @param maxPolicyIterations The maximum number of policy iterations in a time step
+	 */
+	public void setMaxPolicyIterations(int maxPolicyIterations) {
+		if (maxPolicyIterations < 1)
+			throw new IllegalArgumentException("Invalid maximum number of policy iterations: " + maxPolicyIterations);
+		this.maxPolicyIterations = maxPolicyIterations;
+	}
+
+	/**
+	 * @return The maximum number of policy iterations in a time step
+	 */
+	public int getMaxPolicyIterations() {
+		return maxPolicyIterations;
+	}
+
+	/**
+	 * @return The number of time steps of the last pricing where the policy iteration stopped at the maximum
+	 * number of iterations, with volatilities not consistent with the gamma of the solution
+	 */
+	public int getUnconvergedSteps() {
+		return unconvergedSteps;
+	}
+
+	/**
+	 * @return The weight of the implicit discretisation
+	 */
+	public double getTheta() {
+		return theta;
+	}
+
+	/**
+	 * The method is stable for any time step: the grid only needs a time step before the nearest cash flow
+	 */
+	@Override
+	public boolean validate(Grid grid, Derivative derivative) {
+		return derivative.timeToNearestCashflow() >= grid.tStep();
+	}
+
+	private void allocate(int numS) {
+		if (previous != null && previous.length == numS)
+			return;
+		previous = new double[numS];
+		next = new double[numS];
+		rhs = new double[numS];
+		lower = new double[numS];
+		diagonal = new double[numS];
+		upper = new double[numS];
+		scratch = new double[numS];
+		vols = new double[numS];
+		cashflows = new double[numS];
+	}
+
+	/**
+	 * Chooses the volatility of each inner point from the gamma of the values
+	 * @param values The values of a time step
+	 * @param v The destination of the volatilities
+	 * @return True if the volatilities changed
+	 */
+	private boolean chooseVols(double[] values, double[] v) {
+		boolean changed = false;
+		for (int is = 1; is < values.length - 1; is++) {
+			double vol = vol(stencils.gamma(values, is));
+			if (vol != v[is]) {
+				v[is] = vol;
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	@Override
+	public void calculateNextStep(int it, Grid grid, Derivative derivative, double r) {
+		int numS = grid.numS();
+		allocate(numS);
+		if (stockValuesGrid != grid) {
+			stockValues = CashflowSchedule.stockValues(grid);
+			stencils = new Stencils(grid);
+			stockValuesGrid = grid;
+		}
+		// a new pricing can start after the first time steps, if they have no cash flows
+		if (schedule == null || grid != scheduleGrid || it <= lastStep) {
+			schedule = new CashflowSchedule(derivative);
+			scheduleGrid = grid;
+			unconvergedSteps = 0;
+			implicitStepsLeft = 0;
+		}
+		lastStep = it;
+		double w = implicitStepsLeft > 0 ? IMPLICIT : theta;
+		double tStep = grid.tStep();
+
+		for (int is = 0; is < numS; is++)
+			previous[is] = grid.get(it, is);
+		next[0] = derivative.boundaryValue(grid.getT(it + 1), tStep, grid.getSMin(), r);
+		next[numS - 1] = derivative.boundaryValue(grid.getT(it + 1), tStep, grid.getSMax(), r);
+
+		// explicit part, with the volatilities of the current step
+		chooseVols(previous, vols);
+		for (int is = 1; is < numS - 1; is++) {
+			double s = stockValues[is];
+			double l = 0.5 * vols[is] * vols[is] * s * s * stencils.gamma(previous, is) + r * s * stencils.delta(previous, is) - r * previous[is];
+			rhs[is] = previous[is] + (1 - w) * tStep * l;
+		}
+
+		// implicit part, starting from the volatilities of the current step
+		int iterations = 0;
+		boolean changed;
+		do {
+			for (int is = 1; is < numS - 1; is++) {
+				double s = stockValues[is];
+				double diffusion = 0.5 * vols[is] * vols[is] * s * s;
+				double drift = r * s;
+				lower[is] = -w * tStep * (diffusion * stencils.gammaLower[is] + drift * stencils.deltaLower[is]);
+				diagonal[is] = 1 - w * tStep * (diffusion * stencils.gammaMiddle[is] + drift * stencils.deltaMiddle[is] - r);
+				upper[is] = -w * tStep * (diffusion * stencils.gammaUpper[is] + drift * stencils.deltaUpper[is]);
+			}
+			double first = rhs[1];
+			double last = rhs[numS - 2];
+			rhs[1] -= lower[1] * next[0];
+			rhs[numS - 2] -= upper[numS - 2] * next[numS - 1];
+			solveTridiagonal(lower, diagonal, upper, rhs, next, scratch, 1, numS - 1);
+			rhs[1] = first;
+			rhs[numS - 2] = last;
+			iterations++;
+			changed = chooseVols(next, vols);
+		} while (changed && iterations < maxPolicyIterations);
+		if (changed)
+			unconvergedSteps++;
+
+		boolean cashflow = schedule.hasCashflow(grid.getT(it + 1), tStep);
+		if (cashflow) {
+			Arrays.fill(cashflows, 0.0);
+			derivative.addCashflows(grid.getT(it + 1), tStep, stockValues, 1.0, cashflows);
+			for (int is = 1; is < numS - 1; is++)
+				next[is] += cashflows[is];
+		}
+		for (int is = 1; is < numS - 1; is++)
+			grid.set(it + 1, is, next[is]);
+		grid.set(it + 1, 0, next[0]);
+		grid.set(it + 1, numS - 1, next[numS - 1]);
+		if (cashflow)
+			implicitStepsLeft = rannacherSteps;
+		else if (implicitStepsLeft > 0)
+			implicitStepsLeft--;
+	}
+
+	/**
+	 * Solves a tridiagonal system of equations with the Thomas algorithm. The system must be diagonally dominant
+	 * @param lower The coefficients below the diagonal (the first is ignored)
+	 * @param diagonal The coefficients on the diagonal
+	 * @param upper The coefficients above the diagonal (the last is ignored)
+	 * @param rhs The right hand side of the system
+	 * @param x The destination of the solution
+	 * @param scratch A buffer for the modified coefficients above the diagonal
+	 * @param from The index of the first equation of the system
+	 * @param to The index after the last equation of the system
+	 */
+	public static void solveTridiagonal(double[] lower, double[] diagonal, double[] upper, double[] rhs, double[] x, double[] scratch, int from, int to) {
+		scratch[from] = upper[from] / diagonal[from];
+		x[from] = rhs[from] / diagonal[from];
+		for (int i = from + 1; i < to; i++) {
+			double pivot = diagonal[i] - lower[i] * scratch[i - 1];
+			scratch[i] = upper[i] / pivot;
+			x[i] = (rhs[i] - lower[i] * x[i - 1]) / pivot;
+		}
+		for (int i = to - 2; i >= from; i--)
+			x[i] -= scratch[i] * x[i + 1];
+	}
+}
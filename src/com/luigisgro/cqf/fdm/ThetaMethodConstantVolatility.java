@@ -0,0 +1,47 @@
+package com.luigisgro.cqf.fdm;
+
+/**
+ * Implementation of {@link ThetaMethod} with constant volatility.
+ * The implicit part is linear, and it is solved once per time step
+ * @author Luigi Sgro
+ *
+ */
+public class ThetaMethodConstantVolatility extends ThetaMethod {
+	private double vol;
+
+	/**
+	 * 
+	 * @param vol The volatility to use for pricing
+	 * @param theta The weight of the implicit discretisation: {@link ThetaMethod#IMPLICIT} or {@link ThetaMethod#CRANK_NICOLSON}
+	 */
+	public ThetaMethodConstantVolatility(double vol, double theta) {
+		super(theta, theta < IMPLICIT ? DEFAULT_RANNACHER_STEPS : 0);
+		this.vol = vol;
+	}
+
+	@Override
+	public double vol(double gamma) {
+		return vol;
+	}
+
+	@Override
+	public FiniteDifferenceModel copy() {
+		ThetaMethodConstantVolatility copy = new ThetaMethodConstantVolatility(vol, getTheta());
+		copy.setMaxPolicyIterations(getMaxPolicyIterations());
+		return copy;
+	}
+
+	/**
+	 * The fully implicit steps follow the cash flows of the derivative being priced: the sum of the values
+	 * of the instruments differs from the value of the portfolio by less than the discretisation error
+	 */
+	@Override
+	public boolean isLinear() {
+		return true;
+	}
+
+	@Override
+	public double maxVol() {
+		return vol;
+	}
+}
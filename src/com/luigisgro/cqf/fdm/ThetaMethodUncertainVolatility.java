@@ -0,0 +1,51 @@
+package com.luigisgro.cqf.fdm;
+
+/**
+ * Implementation of {@link ThetaMethod} for uncertain volatility.
+ * As in {@link ExplicitMethodUncertainVolatility}, the volatility is either the minimum or the maximum,
+ * depending on the sign of gamma, minimizing the value of the derivative to price.
+ * The gamma of the implicit part is the one of the unknown values, found by policy iteration
+ * @author Luigi Sgro
+ *
+ */
+public class ThetaMethodUncertainVolatility extends ThetaMethod {
+	private double volMin;
+	private double volMax;
+
+	/**
+	 * 
+	 * @param volMin The minimum volatility to use for pricing
+	 * @param volMax The maximum volatility to use for pricing
+	 * @param theta The weight of the implicit discretisation: {@link ThetaMethod#IMPLICIT} or {@link ThetaMethod#CRANK_NICOLSON}
+	 */
+	public ThetaMethodUncertainVolatility(double volMin, double volMax, double theta) {
+		super(theta, theta < IMPLICIT ? DEFAULT_RANNACHER_STEPS : 0);
+		this.volMin = volMin;
+		this.volMax = volMax;
+	}
+
+	@Override
+	public double vol(double gamma) {
+		return gamma > 0.0 ? volMin : volMax;
+	}
+
+	@Override
+	public FiniteDifferenceModel copy() {
+		ThetaMethodUncertainVolatility copy = new ThetaMethodUncertainVolatility(volMin, volMax, getTheta());
+		copy.setMaxPolicyIterations(getMaxPolicyIterations());
+		return copy;
+	}
+
+	/**
+	 * The method is linear only when the volatility range is a single value
+	 */
+	@Override
+	public boolean isLinear() {
+		return volMin == volMax;
+	}
+
+	@Override
+	public double maxVol() {
+		return volMax;
+	}
+}
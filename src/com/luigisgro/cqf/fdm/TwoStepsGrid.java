@@ -1,18 +1,21 @@
 package com.luigisgro.cqf.fdm;
 
+import java.util.Arrays;
+
 
 /**
  * A memory optimized implementation of {@link Grid} that can run any number of time step
  * using the same amount of memory, by discarding the old steps.
+ * The two time steps retained are plain rows of values, that can be accessed directly
+ * by the Finite Difference methods
  * @author Luigi Sgro
  *
  */
 public class TwoStepsGrid extends BaseGrid {
-	private double[] nodes;
-	private boolean[] valid;
+	private double[][] rows;
+	private boolean[][] valid;
 	private int minIndexOfT;
-	private final int NUM_OF_NODES;
-	
+
 	/**
 	 * Creates a memory-optimized grid.
 	 * @param tStep The time step
@@ -24,44 +27,98 @@ public class TwoStepsGrid extends BaseGrid {
 	 */
 	public TwoStepsGrid(double tStep, double tMin, double tMax, double sStep, double sMin, double sMax) {
 		super(tStep, tMin, tMax, sStep, sMin, sMax);
-		NUM_OF_NODES = 2 * numS;
-		nodes = new double[NUM_OF_NODES];
-		valid = new boolean[NUM_OF_NODES];
+		rows = new double[2][numS];
+		valid = new boolean[2][numS];
+		reset();
+	}
+
+	/**
+	 * Creates a memory-optimized grid with a given number of stock steps, whose stock values are defined by the subclass
+	 * @param tStep The time step
+	 * @param tMin The time range minimum value
+	 * @param tMax The time range maximum value
+	 * @param sMin The minimum value of the stock range
+	 * @param sMax The maximum value of the stock range
+	 * @param numS The number of stock steps
+	 */
+	protected TwoStepsGrid(double tStep, double tMin, double tMax, double sMin, double sMax, int numS) {
+		super(tStep, tMin, tMax, sMin, sMax, numS);
+		rows = new double[2][numS];
+		valid = new boolean[2][numS];
 		reset();
 	}
 	@Override
 	public double get(int it, int is) {
-		int containerIndex = containerIndex(it, is);
-		if (!valid[containerIndex])
+		int row = rowIndex(it);
+		if (!valid[row][is])
 			throw new IllegalArgumentException("Element (" + it + "," + is + ") not set!");
-		return nodes[containerIndex];
+		return rows[row][is];
 	}
 	@Override
 	public void set(int it, int is, double value) {
-		int containerIndex = containerIndex(it, is);
-		nodes[containerIndex] = value;
-		valid[containerIndex] = true;
+		int row = rowIndex(it);
+		rows[row][is] = value;
+		valid[row][is] = true;
+	}
+
+	/**
+	 * Direct access to the values of a time step, for reading
+	 * @param it Time step index
+	 * @return The values of the time step, indexed by stock step
+	 */
+	public double[] getRow(int it) {
+		return rows[rowIndex(it)];
+	}
+
+	/**
+	 * Direct access to the values of a time step, to be written. All the values of the row
+	 * are considered set: the caller must write each of them
+	 * @param it Time step index
+	 * @return The values of the time step, indexed by stock step
+	 */
+	public double[] getRowForWriting(int it) {
+		int row = rowIndex(it);
+		Arrays.fill(valid[row], true);
+		return rows[row];
+	}
+
+	/**
+	 * The present time step is one of the rows retained, no copy is needed
+	 */
+	@Override
+	protected double[] getPresentRow() {
+		return getRow(numT - 1);
+	}
+	@Override
+	public Grid createEmptyGrid() {
+		return new TwoStepsGrid(tStep, tMin, tMax, sStep, sMin, sMax);
 	}
 	@Override
 	public void reset() {
-		for (int i = 0; i < NUM_OF_NODES; i++) {
-			nodes[i] = 0;
-			valid[i] = true;
-			minIndexOfT = 0;
+		for (int row = 0; row < 2; row++) {
+			Arrays.fill(rows[row], 0);
+			Arrays.fill(valid[row], true);
 		}
+		minIndexOfT = 0;
+	}
+	/**
+	 * The two time steps retained start from the first step
+	 */
+	@Override
+	public void reset(int firstStep) {
+		reset();
+		minIndexOfT = firstStep;
 	}
-	private int containerIndex(int it, int is) {
+	private int rowIndex(int it) {
 		if (it < minIndexOfT)
 			throw new IllegalArgumentException("Low T index: " + minIndexOfT + " requested: " + it);
 		if (it > minIndexOfT + 2)
 			throw new IllegalArgumentException("Low T index: " + minIndexOfT + " requested: " + it);
-		int internalIndexOfT = it % 2;
+		int row = it % 2;
 		if (it == minIndexOfT + 2) {
 			minIndexOfT++;
-			for (int tis = 0; tis < numS; tis++){
-				valid[internalIndexOfT * numS + tis] = false;
-			}
+			Arrays.fill(valid[row], false);
 		}
-		return internalIndexOfT * numS + is;
+		return row;
 	}
 }
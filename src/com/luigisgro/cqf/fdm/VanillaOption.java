@@ -14,7 +14,7 @@ public class VanillaOption extends Option implements Derivative {
 
 	@Override
 	public double cashflow(double t, double tStep, double s) {
-		if (t > maturity - tStep / 2 && t < maturity + tStep / 2) {
+		if (isMaturity(t, tStep)) {
 			if (Direction.CALL.equals(direction))
 				return Math.max(s - strike, 0);
 			else
@@ -23,6 +23,19 @@ public class VanillaOption extends Option implements Derivative {
 			return 0;
 	}
 
+	@Override
+	public void addCashflows(double t, double tStep, double[] s, double weight, double[] cashflows) {
+		if (weight == 0.0 || !isMaturity(t, tStep))
+			return;
+		if (Direction.CALL.equals(direction)) {
+			for (int is = 0; is < s.length; is++)
+				cashflows[is] += weight * Math.max(s[is] - strike, 0);
+		} else {
+			for (int is = 0; is < s.length; is++)
+				cashflows[is] += weight * Math.max(strike - s[is], 0);
+		}
+	}
+
 	@Override
 	public double boundaryValue(double t, double tStep, double s, double r) {
 		if (t > maturity + tStep / 2)
@@ -0,0 +1,134 @@
+package com.luigisgro.cqf.hjm;
+
+import com.luigisgro.cqf.curve.ArrayCurveTimeSeries;
+import com.luigisgro.cqf.curve.Curve;
+import com.luigisgro.cqf.curve.CurveTimeSeries;
+import com.luigisgro.cqf.curve.ExercisableCurveTimeSeriesOperator;
+import com.luigisgro.cqf.curve.TimePoint;
+import com.luigisgro.cqf.function.Function;
+
+/**
+ * A Bermudan payer swaption: the right to enter, at any payment date of a swap after the first period,
+ * into the remaining part of the swap, paying the fixed strike rate and receiving the floating rate on a unit notional.
+ * At an exercise date the value of the remaining swap is calculated from the curve of the scenario, with the same
+ * piecewise constant forward rates used by {@link ForwardInterestRate}: the swap rate is the state variable of the
+ * exercise decision, and the value of exercising is the annuity times the positive part of swap rate minus strike,
+ * discounted along the short rate of the scenario by a {@link ZCB} operator.
+ * The remaining swap must not be longer than the last tenor of the term structure of the scenarios
+ * @author Luigi Sgro
+ *
+ * @param <T>
+ */
+public class BermudanSwaption<T extends TimePoint> implements ExercisableCurveTimeSeriesOperator<T> {
+	private double strike;
+	private double tenor;
+	private int numberOfPeriods;
+	private T[] calendar;
+	private int[] exerciseIndexes;
+	private ZCB<T>[] discountOps;
+	private Function[] continuationValues;
+
+	/**
+	 * Creates a new Bermudan swaption
+	 * @param strike The fixed rate of the swap
+	 * @param tenor The time between two payments of the swap, and between two exercise dates
+	 * @param maturity Maturity of the swap
+	 * @param calendar Calendar used for the pricing
+	 * @param timeStep Fraction of year corresponding to a calendar day
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public BermudanSwaption(double strike, double tenor, double maturity, T[] calendar, double timeStep) {
+		this.strike = strike;
+		this.tenor = tenor;
+		this.calendar = calendar;
+		numberOfPeriods = (int)(maturity / tenor);
+		if (numberOfPeriods < 2)
+			throw new IllegalArgumentException("The swap must have at least two periods: maturity " + maturity + ", tenor " + tenor);
+		int numberOfTimePointsPerPeriod = (int)(tenor / timeStep);
+		exerciseIndexes = new int[numberOfPeriods - 1];
+		discountOps = (ZCB<T>[])(new ZCB[numberOfPeriods - 1]);
+		for (int date = 0; date < exerciseIndexes.length; date++) {
+			exerciseIndexes[date] = numberOfTimePointsPerPeriod * (date + 1);
+			if (exerciseIndexes[date] >= calendar.length)
+				throw new IllegalArgumentException("Exercise date " + (date + 1) + " outside range of calendar: " + calendar[0] + " - " + calendar[calendar.length - 1]);
+			discountOps[date] = new ZCB<T>(calendar[0], calendar[exerciseIndexes[date]], timeStep, calendar);
+		}
+	}
+
+	@Override
+	public int getNumberOfExerciseDates() {
+		return exerciseIndexes.length;
+	}
+
+	@Override
+	public void setExerciseRule(Function[] continuationValues) {
+		if (continuationValues.length != exerciseIndexes.length)
+			throw new IllegalArgumentException("Exercise rule for " + continuationValues.length + " dates, " + exerciseIndexes.length + " expected");
+		this.continuationValues = continuationValues;
+	}
+
+	@Override
+	public double evaluate(CurveTimeSeries<T> scenario) {
+		if (continuationValues == null)
+			throw new IllegalStateException("Exercise rule of the Bermudan swaption not set");
+		double[] swapRate = new double[1];
+		for (int date = 0; date < exerciseIndexes.length; date++) {
+			double exerciseValue = evaluateExercise(scenario, date, swapRate);
+			if (exerciseValue > 0 && continuationValues[date] != null && exerciseValue >= continuationValues[date].value(swapRate[0]))
+				return exerciseValue;
+		}
+		return 0.0;
+	}
+
+	@Override
+	public void evaluateExercise(CurveTimeSeries<T> scenario, double[] exerciseValues, double[] stateVariables, int offset) {
+		double[] swapRate = new double[1];
+		for (int date = 0; date < exerciseIndexes.length; date++) {
+			exerciseValues[offset + date] = evaluateExercise(scenario, date, swapRate);
+			stateVariables[offset + date] = swapRate[0];
+		}
+	}
+
+	private double evaluateExercise(CurveTimeSeries<T> scenario, int date, double[] swapRate) {
+		double[] curveTenors;
+		double[] rates;
+		int offset;
+		if (scenario instanceof ArrayCurveTimeSeries && ((ArrayCurveTimeSeries<T>)scenario).hasCalendar(calendar)) {
+			ArrayCurveTimeSeries<T> arrayScenario = (ArrayCurveTimeSeries<T>)scenario;
+			curveTenors = arrayScenario.getTermStructure().getTenors();
+			rates = arrayScenario.getPoints();
+			offset = exerciseIndexes[date] * arrayScenario.getNumberOfTenors();
+		} else {
+			Curve curve = scenario.getCurves().get(calendar[exerciseIndexes[date]]);
+			if (curve == null)
+				throw new IllegalArgumentException("Exercise date: " + calendar[exerciseIndexes[date]] + " not found in scenario: " + scenario.getCurves().firstKey() + " - " + scenario.getCurves().lastKey());
+			curveTenors = curve.getTermStructure().getTenors();
+			rates = curve.getPoints();
+			offset = 0;
+		}
+		int numberOfPayments = numberOfPeriods - date - 1;
+		if (numberOfPayments * tenor > curveTenors[curveTenors.length - 1] + 1e-9)
+			throw new IllegalArgumentException("The remaining swap of " + numberOfPayments * tenor + " years is longer than the term structure");
+
+		// discount factors at the payment dates, integrating the piecewise constant forward rates
+		double annuity = 0.0;
+		double integral = 0.0;
+		double position = 0.0;
+		int tenorIndex = 0;
+		for (int payment = 1; payment <= numberOfPayments; payment++) {
+			double paymentTime = payment * tenor;
+			while (paymentTime - position > 1e-9) {
+				double segmentEnd = Math.min(curveTenors[tenorIndex], paymentTime);
+				integral += rates[offset + tenorIndex] * (segmentEnd - position);
+				position = segmentEnd;
+				if (curveTenors[tenorIndex] - position <= 1e-9)
+					tenorIndex++;
+			}
+			annuity += tenor * Math.exp(-integral);
+		}
+		swapRate[0] = (1 - Math.exp(-integral)) / annuity;
+		if (swapRate[0] <= strike)
+			return 0.0;
+		return (swapRate[0] - strike) * annuity * discountOps[date].evaluate(scenario);
+	}
+}
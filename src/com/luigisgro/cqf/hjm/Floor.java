@@ -24,10 +24,14 @@ public class Floor<T extends TimePoint> extends SeriesOfOptions<T> {
 
 	@Override
 	public Xlet<T> createXlet(T present, T evaluationTime, T cashflowTime, double tenor, double timeStep) {
-		return new Xlet<T>(present, evaluationTime, cashflowTime, tenor, timeStep){
+		return new Xlet<T>(present, evaluationTime, cashflowTime, tenor, timeStep, calendar){
 			@Override
 			protected double payoff(double forwardInterestRate) {
 				return Math.max(strike - forwardInterestRate, 0);
+			}
+			@Override
+			protected double payoffDerivative(double forwardInterestRate) {
+				return forwardInterestRate < strike ? -1 : 0;
 			}};
 	}
 }
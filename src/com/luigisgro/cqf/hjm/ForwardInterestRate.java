@@ -1,8 +1,15 @@
 package com.luigisgro.cqf.hjm;
 
+import java.util.Arrays;
+
+import com.luigisgro.cqf.curve.ArrayCurveTimeSeries;
 import com.luigisgro.cqf.curve.Curve;
 import com.luigisgro.cqf.curve.CurveTimeSeries;
-import com.luigisgro.cqf.curve.CurveTimeSeriesOperator;
+import com.luigisgro.cqf.curve.FixingSchedule;
+import com.luigisgro.cqf.curve.Fixings;
+import com.luigisgro.cqf.curve.PathwiseCurveTimeSeriesOperator;
+import com.luigisgro.cqf.curve.ScenarioAdjoint;
+import com.luigisgro.cqf.curve.StreamingCurveTimeSeriesOperator;
 import com.luigisgro.cqf.curve.TimePoint;
 
 /**
@@ -11,15 +18,23 @@ import com.luigisgro.cqf.curve.TimePoint;
  * The rate is calculated by selecting from the scenario the curve corresponding to the
  * evaluation date, then by integrating the instantaneous rates on the curve from spot to the desired tenor.
  * The forward rate curve is assumed piecewise constant, therefore the integration is simply a sum
- * of product of rate * (next_tenor - tenor)
+ * of product of rate * (next_tenor - tenor).
+ * When created with the calendar of the simulation, the evaluation date is resolved to a position
+ * in the calendar once, and the scenarios stored in an {@link ArrayCurveTimeSeries} with that
+ * calendar are evaluated by direct array access. It can also be evaluated in streaming mode,
+ * or together with its derivatives with respect to the points of the scenario: the rate is a weighted
+ * sum of the points of one curve, so the derivatives are the weights.
  * 
  * @author Luigi Sgro
  *
  * @param <T>
  */
-public class ForwardInterestRate<T extends TimePoint> implements CurveTimeSeriesOperator<T> {
+public class ForwardInterestRate<T extends TimePoint> implements StreamingCurveTimeSeriesOperator<T>, PathwiseCurveTimeSeriesOperator<T> {
 	private T future;
 	private double tenor;
+	private T[] calendar;
+	private int futureIndex;
+	private int futureSlot;
 	
 	/**
 	 * Creates a new forward interest rate operator
@@ -30,15 +45,66 @@ public class ForwardInterestRate<T extends TimePoint> implements CurveTimeSeries
 		this.future = future;
 		this.tenor = tenor;
 	}
+
+	/**
+	 * Creates a new forward interest rate operator, resolving the time point on the calendar of the simulation
+	 * @param future The time when the rate is to be calculated
+	 * @param tenor The tenor of the rate
+	 * @param calendar The calendar of the scenarios to be evaluated
+	 */
+	public ForwardInterestRate(T future, double tenor, T[] calendar) {
+		this(future, tenor);
+		futureIndex = Arrays.binarySearch(calendar, future);
+		if (futureIndex < 0)
+			throw new IllegalArgumentException("Future time point: " + future + " not found in calendar: " + calendar[0] + " - " + calendar[calendar.length - 1]);
+		this.calendar = calendar;
+	}
+
 	@Override
 	public double evaluate(CurveTimeSeries<T> scenario) {
+		if (calendar != null && scenario instanceof ArrayCurveTimeSeries) {
+			ArrayCurveTimeSeries<T> arrayScenario = (ArrayCurveTimeSeries<T>)scenario;
+			if (arrayScenario.hasCalendar(calendar))
+				return integrate(arrayScenario.getTermStructure().getTenors(), arrayScenario.getPoints(), futureIndex * arrayScenario.getNumberOfTenors());
+		}
+
 		Curve curve = scenario.getCurves().get(future);
 		if (curve == null)
 			throw new IllegalArgumentException("Future time point: " + future + " not found in scenario: " + scenario.getCurves().firstKey() + " - " + scenario.getCurves().lastKey());
 
-		double[] curveTenors = curve.getTermStructure().getTenors();
-		double[] rates = curve.getPoints();
-		
+		return integrate(curve.getTermStructure().getTenors(), curve.getPoints(), 0);
+	}
+
+	@Override
+	public void registerFixings(FixingSchedule<T> schedule) {
+		if (calendar == null || schedule.getCalendar() != calendar)
+			throw new IllegalStateException("Forward interest rate operator not created on the calendar of the simulation");
+		futureSlot = schedule.requireCurve(futureIndex);
+	}
+
+	@Override
+	public double evaluate(Fixings fixings) {
+		return integrate(fixings.getTermStructure().getTenors(), fixings.getCurvePoints(), fixings.getCurveOffset(futureSlot));
+	}
+
+	@Override
+	public double evaluate(ArrayCurveTimeSeries<T> scenario, double weight, ScenarioAdjoint adjoint) {
+		if (calendar == null || !scenario.hasCalendar(calendar))
+			throw new IllegalStateException("Forward interest rate operator not created on the calendar of the scenario");
+		double[] curveTenors = scenario.getTermStructure().getTenors();
+		double previousTenor = 0.0;
+		double currentTenor;
+		int tenorIndex = 0;
+		do {
+			currentTenor = curveTenors[tenorIndex];
+			adjoint.addToPoint(futureIndex, tenorIndex, weight * (Math.min(tenor, currentTenor) - previousTenor) / tenor);
+			previousTenor = currentTenor;
+			tenorIndex++;
+		} while (currentTenor < tenor);
+		return integrate(curveTenors, scenario.getPoints(), futureIndex * scenario.getNumberOfTenors());
+	}
+
+	private double integrate(double[] curveTenors, double[] rates, int offset) {
 		double accumulator = 0.0;
 		
 		double currentTenor;
@@ -47,7 +113,7 @@ public class ForwardInterestRate<T extends TimePoint> implements CurveTimeSeries
 		int tenorIndex = 0;
 		do {
 			currentTenor = curveTenors[tenorIndex];
-			accumulator += rates[tenorIndex] * (Math.min(tenor, currentTenor) - previousTenor); // integration of piecewise constant
+			accumulator += rates[offset + tenorIndex] * (Math.min(tenor, currentTenor) - previousTenor); // integration of piecewise constant
 			previousTenor = currentTenor;
 			tenorIndex++;
 		} while (currentTenor < tenor);
@@ -4,65 +4,312 @@ import com.luigisgro.cqf.curve.Curve;
 import com.luigisgro.cqf.curve.TermStructure;
 import com.luigisgro.cqf.function.Function;
 import com.luigisgro.cqf.function.IntegrableFunction;
+import com.luigisgro.cqf.montecarlo.BatchMultiFactorModel;
 import com.luigisgro.cqf.montecarlo.MultiFactorModel;
+import com.luigisgro.cqf.montecarlo.PathwiseMultiFactorModel;
 
 /**
  * An implementation of {@link MultiFactorModel} providing the Heath Jarrow Morton / Musiela model
- * for evolution of interest rates
+ * for evolution of interest rates.
+ * The evolution is linear in the curve, so it also implements {@link PathwiseMultiFactorModel}:
+ * the random vector driving a step is recovered from the stochastic increment of the curve
+ * by least squares on the volatilities of the factors. Batches of paths can be advanced at once,
+ * as a {@link BatchMultiFactorModel}
  * @author Luigi Sgro
  *
  */
-public class MultiFactorHJM implements MultiFactorModel {
-	private IntegrableFunction[] volatilityFunctions;
-	private Function[] volatilityIntegrals;
+public class MultiFactorHJM implements PathwiseMultiFactorModel, BatchMultiFactorModel {
 	private double[] tenors;
+	private int numberOfFactors;
+	// volatility of factor j at tenor i, stored at i * numberOfFactors + j
+	private double[] volatilities;
+	// first term of the Musiela drift: sum over the factors of volatility times its integral
+	private double[] volatilityDrift;
+	// inverse of the distance to the next tenor, 0 at the last tenor where dF/dTau is not calculated
+	private double[] inverseTenorSpacings;
+	// contribution of factor j to the drift at tenor i, stored at i * numberOfFactors + j
+	private double[] factorDrifts;
+	// least squares solution for the random vector from the stochastic increment: element j * numberOfTenors + i,
+	// null if the volatilities of the factors are not linearly independent on the tenors
+	private double[] randomVectorRecovery;
 
 	/**
-	 * Creates a new HJM model
+	 * Creates a new HJM model. All the terms that depend only on the tenors are calculated here,
+	 * so that the evolution of the curve does not need to evaluate the volatility functions
 	 * @param volatilityFunctions The array of integrable volatility function of the model
 	 * @param termStructure The term structure for this implementation
 	 */
 	public MultiFactorHJM(IntegrableFunction[] volatilityFunctions, TermStructure termStructure) {
-		this.volatilityFunctions = volatilityFunctions;
-		volatilityIntegrals = new Function[volatilityFunctions.length];
-		for (int i = 0; i < volatilityFunctions.length; i++)
-			volatilityIntegrals[i] = volatilityFunctions[i].integrate();
 		tenors = termStructure.getTenors();
+		numberOfFactors = volatilityFunctions.length;
+		Function[] volatilityIntegrals = new Function[numberOfFactors];
+		for (int j = 0; j < numberOfFactors; j++)
+			volatilityIntegrals[j] = volatilityFunctions[j].integrate();
+
+		volatilities = new double[tenors.length * numberOfFactors];
+		volatilityDrift = new double[tenors.length];
+		inverseTenorSpacings = new double[tenors.length];
+		factorDrifts = new double[tenors.length * numberOfFactors];
+		for (int i = 0; i < tenors.length; i++) {
+			double drift = 0.0;
+			for (int j = 0; j < numberOfFactors; j++) {
+				double factorVolatility = volatilityFunctions[j].value(tenors[i]);
+				double integralOfFactorVolatility = volatilityIntegrals[j].value(tenors[i]); // definite integral: integral of polynomial at 0 always 0
+				volatilities[i * numberOfFactors + j] = factorVolatility;
+				factorDrifts[i * numberOfFactors + j] = factorVolatility * integralOfFactorVolatility;
+				drift += factorVolatility * integralOfFactorVolatility;
+			}
+			volatilityDrift[i] = drift;
+			// the derivative w.r.t. maturity can not be calculated at the right extreme
+			inverseTenorSpacings[i] = i + 1 < tenors.length ? 1.0 / (tenors[i + 1] - tenors[i]) : 0.0;
+		}
+		randomVectorRecovery = pseudoInverse(volatilities, tenors.length, numberOfFactors);
+	}
+
+	/**
+	 * The Moore-Penrose pseudo-inverse (A'A)^-1 A' of a matrix with independent columns,
+	 * by Gauss-Jordan elimination with partial pivoting on A'A
+	 * @param matrix The elements of the matrix, row after row
+	 * @param rows The number of rows
+	 * @param columns The number of columns
+	 * @return The elements of the pseudo-inverse, row after row, or null if the columns are not independent
+	 */
+	private static double[] pseudoInverse(double[] matrix, int rows, int columns) {
+		if (rows < columns)
+			return null;
+		// normal matrix A'A, followed on each row by the identity
+		int width = 2 * columns;
+		double[] augmented = new double[columns * width];
+		double largestDiagonal = 0.0;
+		for (int j = 0; j < columns; j++) {
+			for (int k = 0; k < columns; k++) {
+				double product = 0.0;
+				for (int i = 0; i < rows; i++)
+					product += matrix[i * columns + j] * matrix[i * columns + k];
+				augmented[j * width + k] = product;
+			}
+			augmented[j * width + columns + j] = 1.0;
+			largestDiagonal = Math.max(largestDiagonal, augmented[j * width + j]);
+		}
+		for (int pivot = 0; pivot < columns; pivot++) {
+			int pivotRow = pivot;
+			for (int row = pivot + 1; row < columns; row++)
+				if (Math.abs(augmented[row * width + pivot]) > Math.abs(augmented[pivotRow * width + pivot]))
+					pivotRow = row;
+			double pivotValue = augmented[pivotRow * width + pivot];
+			if (Math.abs(pivotValue) <= 1e-12 * largestDiagonal)
+				return null;
+			for (int k = 0; k < width; k++) {
+				double swap = augmented[pivot * width + k];
+				augmented[pivot * width + k] = augmented[pivotRow * width + k];
+				augmented[pivotRow * width + k] = swap;
+				augmented[pivot * width + k] /= pivotValue;
+			}
+			for (int row = 0; row < columns; row++) {
+				double factor = augmented[row * width + pivot];
+				if (row == pivot || factor == 0.0)
+					continue;
+				for (int k = 0; k < width; k++)
+					augmented[row * width + k] -= factor * augmented[pivot * width + k];
+			}
+		}
+		// (A'A)^-1 A'
+		double[] inverse = new double[columns * rows];
+		for (int j = 0; j < columns; j++)
+			for (int i = 0; i < rows; i++) {
+				double value = 0.0;
+				for (int k = 0; k < columns; k++)
+					value += augmented[j * width + columns + k] * matrix[i * columns + k];
+				inverse[j * rows + i] = value;
+			}
+		return inverse;
 	}
 
 	@Override
 	public Curve nextCurve(Curve currentCurve, double[] randomVector, double timeStep) {
 		double points[] = new double[tenors.length];
-		
+		nextCurve(currentCurve.getPoints(), 0, points, 0, randomVector, 0, timeStep);
+		return new Curve(points, currentCurve.getTermStructure());
+	}
+
+	@Override
+	public void nextCurve(double[] currentPoints, int currentOffset, double[] nextPoints, int nextOffset, double[] randomVector, int randomOffset, double timeStep) {
+		double squareRootOfTimeStep = Math.sqrt(timeStep);
+		int lastTenor = tenors.length - 1;
+		int volatilityIndex = 0;
 		for (int i = 0; i < tenors.length; i++) {
+			double currentPoint = currentPoints[currentOffset + i];
 			
-			// calculate the first term of the drift, and the stochastic increment, from volatility
-			double drift = 0.0;
+			// stochastic increment from the precomputed volatilities
 			double stochasticIncrement = 0.0;
-			for (int j = 0; j < volatilityFunctions.length; j++) {
-				double factorVolatility = volatilityFunctions[j].value(tenors[i]);
-				double integralOfFactorVolatility = volatilityIntegrals[j].value(tenors[i]); // definite integral: integral of polynomial at 0 always 0
-				drift += factorVolatility * integralOfFactorVolatility;
-				stochasticIncrement += randomVector[j] * factorVolatility;
-			}
+			for (int j = 0; j < numberOfFactors; j++)
+				stochasticIncrement += randomVector[randomOffset + j] * volatilities[volatilityIndex++];
 			
 			// add the second term of the drift from the derivative of curve values w.r.t. maturity (term due to Musiela parameterization)
-			double dFdTau;
-			if (i + 1 < tenors.length) {
-				dFdTau = (currentCurve.getPoints()[i + 1] - currentCurve.getPoints()[i]) / (tenors[i + 1] - tenors[i]);
-			} else {
-				dFdTau = 0;
-			}
-			drift += dFdTau;
+			double drift = volatilityDrift[i];
+			if (i < lastTenor)
+				drift += (currentPoints[currentOffset + i + 1] - currentPoint) * inverseTenorSpacings[i];
 			
 			// calculate the next step in time for the curve point
-			points[i] = currentCurve.getPoints()[i] + drift * timeStep + stochasticIncrement * Math.sqrt(timeStep);
+			nextPoints[nextOffset + i] = currentPoint + drift * timeStep + stochasticIncrement * squareRootOfTimeStep;
 		}
-		return new Curve(points, currentCurve.getTermStructure());
+	}
+
+	/**
+	 * The operations on each path are the same, in the same order, as in the single path evolution, so the results are identical
+	 */
+	@Override
+	public void nextCurves(double[][] currentCurves, double[][] nextCurves, double[][] randomVectors, int numberOfPaths, double timeStep) {
+		double squareRootOfTimeStep = Math.sqrt(timeStep);
+		int lastTenor = tenors.length - 1;
+		for (int i = 0; i < tenors.length; i++) {
+			double[] current = currentCurves[i];
+			double[] next = nextCurves[i];
+
+			// stochastic increment, accumulated factor by factor over all the paths
+			double volatility = volatilities[i * numberOfFactors];
+			double[] randomComponent = randomVectors[0];
+			for (int p = 0; p < numberOfPaths; p++)
+				next[p] = randomComponent[p] * volatility;
+			for (int j = 1; j < numberOfFactors; j++) {
+				volatility = volatilities[i * numberOfFactors + j];
+				randomComponent = randomVectors[j];
+				for (int p = 0; p < numberOfPaths; p++)
+					next[p] += randomComponent[p] * volatility;
+			}
+
+			double drift = volatilityDrift[i];
+			if (i < lastTenor) {
+				double[] following = currentCurves[i + 1];
+				double inverseTenorSpacing = inverseTenorSpacings[i];
+				for (int p = 0; p < numberOfPaths; p++)
+					next[p] = current[p] + (drift + (following[p] - current[p]) * inverseTenorSpacing) * timeStep + next[p] * squareRootOfTimeStep;
+			} else {
+				for (int p = 0; p < numberOfPaths; p++)
+					next[p] = current[p] + drift * timeStep + next[p] * squareRootOfTimeStep;
+			}
+		}
+	}
+
+	/**
+	 * The sensitivities to the volatilities are defined for a proportional change of the volatility function
+	 * of each factor: the contribution of the factor to the drift changes with the square of the volatility,
+	 * the stochastic increment linearly, with the random vector recovered from the two curves of the step
+	 */
+	@Override
+	public void propagateAdjoint(double[] points, int currentOffset, int nextOffset, double[] adjoint, double timeStep, double[] volatilitySensitivities) {
+		if (randomVectorRecovery == null)
+			throw new IllegalStateException("The volatilities of the factors are not linearly independent on the tenors: the random vectors can not be recovered");
+		int numberOfTenors = tenors.length;
+		int lastTenor = numberOfTenors - 1;
+		for (int j = 0; j < numberOfFactors; j++) {
+			double driftExposure = 0.0;
+			double volatilityExposure = 0.0;
+			// random component j times the square root of the time step
+			double scaledRandom = 0.0;
+			for (int i = 0; i < numberOfTenors; i++) {
+				double nextAdjoint = adjoint[nextOffset + i];
+				driftExposure += nextAdjoint * factorDrifts[i * numberOfFactors + j];
+				volatilityExposure += nextAdjoint * volatilities[i * numberOfFactors + j];
+				double currentPoint = points[currentOffset + i];
+				double drift = volatilityDrift[i];
+				if (i < lastTenor)
+					drift += (points[currentOffset + i + 1] - currentPoint) * inverseTenorSpacings[i];
+				double stochasticIncrement = points[nextOffset + i] - currentPoint - drift * timeStep;
+				scaledRandom += randomVectorRecovery[j * numberOfTenors + i] * stochasticIncrement;
+			}
+			volatilitySensitivities[j] += 2 * driftExposure * timeStep + volatilityExposure * scaledRandom;
+		}
+		// transpose of the evolution: the curve at the next step depends linearly on the curve at the current step
+		for (int i = 0; i < numberOfTenors; i++) {
+			double value = adjoint[nextOffset + i];
+			if (i < lastTenor)
+				value -= adjoint[nextOffset + i] * inverseTenorSpacings[i] * timeStep;
+			if (i > 0)
+				value += adjoint[nextOffset + i - 1] * inverseTenorSpacings[i - 1] * timeStep;
+			adjoint[currentOffset + i] += value;
+		}
+	}
+
+	/**
+	 * @param tenorIndex The index of the tenor in the term structure
+	 * @param factor The index of the factor
+	 * @return The volatility of the factor at the given tenor
+	 */
+	public double getVolatility(int tenorIndex, int factor) {
+		return volatilities[tenorIndex * numberOfFactors + factor];
+	}
+
+	/**
+	 * @param tenorIndex The index of the tenor in the term structure
+	 * @return The part of the drift not depending on the shape of the curve, at the given tenor
+	 */
+	public double getVolatilityDrift(int tenorIndex) {
+		return volatilityDrift[tenorIndex];
+	}
+
+	/**
+	 * The exact expected value of exp(-discountTimeStep * sum of the short rates at the steps from startStep included
+	 * to endStep excluded), for scenarios starting from the given curve and driven by independent standard normal vectors.
+	 * The evolution of the curve is linear, so the sum is normally distributed: its mean is the sum along the path
+	 * generated with null random vectors, and its variance is the sum of the squared sensitivities to each random
+	 * vector, propagated backwards from the last step. The result is therefore free from the discretisation bias
+	 * of the simulation, and can be used as the expected value of a control variate
+	 * @param initialCurve The starting point of the simulation
+	 * @param timeStep The time step of the simulation
+	 * @param startStep The first step whose short rate is accumulated
+	 * @param endStep The step after the last one whose short rate is accumulated
+	 * @param discountTimeStep The fraction of year applied to each short rate
+	 * @return The expected value of the discount factor
+	 */
+	public double expectedDiscountFactor(Curve initialCurve, double timeStep, int startStep, int endStep, double discountTimeStep) {
+		int numberOfTenors = tenors.length;
+		double[] meanCurve = initialCurve.getPoints().clone();
+		double[] nextMeanCurve = new double[numberOfTenors];
+		double[] nullVector = new double[numberOfFactors];
+		double meanYield = 0.0;
+		for (int step = 0; step < endStep; step++) {
+			if (step >= startStep)
+				meanYield += meanCurve[0] * discountTimeStep;
+			nextCurve(meanCurve, 0, nextMeanCurve, 0, nullVector, 0, timeStep);
+			double[] swap = meanCurve;
+			meanCurve = nextMeanCurve;
+			nextMeanCurve = swap;
+		}
+
+		// sensitivity of the yield to the curve at each step, from the last step backwards
+		double[] sensitivity = new double[numberOfTenors];
+		double[] previousSensitivity = new double[numberOfTenors];
+		int lastTenor = numberOfTenors - 1;
+		double varianceOfYield = 0.0;
+		for (int step = endStep - 1; step >= 1; step--) {
+			// transpose of the evolution: the curve at step + 1 depends on the curve at step
+			for (int i = 0; i < numberOfTenors; i++) {
+				double value = sensitivity[i];
+				if (i < lastTenor)
+					value -= sensitivity[i] * inverseTenorSpacings[i] * timeStep;
+				if (i > 0)
+					value += sensitivity[i - 1] * inverseTenorSpacings[i - 1] * timeStep;
+				previousSensitivity[i] = value;
+			}
+			if (step >= startStep)
+				previousSensitivity[0] += discountTimeStep;
+			double[] swap = sensitivity;
+			sensitivity = previousSensitivity;
+			previousSensitivity = swap;
+			// the random vector of this step enters the curve at this step
+			for (int j = 0; j < numberOfFactors; j++) {
+				double exposure = 0.0;
+				for (int i = 0; i < numberOfTenors; i++)
+					exposure += sensitivity[i] * volatilities[i * numberOfFactors + j];
+				varianceOfYield += exposure * exposure * timeStep;
+			}
+		}
+		return Math.exp(-meanYield + varianceOfYield / 2);
 	}
 
 	@Override
 	public int getDimension() {
-		return volatilityFunctions.length;
+		return numberOfFactors;
 	}
 }
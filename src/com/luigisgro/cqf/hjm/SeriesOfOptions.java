@@ -1,7 +1,12 @@
 package com.luigisgro.cqf.hjm;
 
+import com.luigisgro.cqf.curve.ArrayCurveTimeSeries;
 import com.luigisgro.cqf.curve.CurveTimeSeries;
-import com.luigisgro.cqf.curve.CurveTimeSeriesOperator;
+import com.luigisgro.cqf.curve.FixingSchedule;
+import com.luigisgro.cqf.curve.Fixings;
+import com.luigisgro.cqf.curve.PathwiseCurveTimeSeriesOperator;
+import com.luigisgro.cqf.curve.ScenarioAdjoint;
+import com.luigisgro.cqf.curve.StreamingCurveTimeSeriesOperator;
 import com.luigisgro.cqf.curve.TimePoint;
 
 /**
@@ -11,11 +16,15 @@ import com.luigisgro.cqf.curve.TimePoint;
  * @see Xlet
  * @param <T>
  */
-public abstract class SeriesOfOptions<T extends TimePoint> implements CurveTimeSeriesOperator<T>, XletFactory<T> {
+public abstract class SeriesOfOptions<T extends TimePoint> implements StreamingCurveTimeSeriesOperator<T>, PathwiseCurveTimeSeriesOperator<T>, XletFactory<T> {
 	private int numberOfPeriods;
 	private int numberOfTimePointsPerPeriod;
 	private Xlet<T>[] xlets;
 	protected double strike;
+	/**
+	 * The calendar used for the evaluation, available to the factory method
+	 */
+	protected T[] calendar;
 	
 	/**
 	 * Creates a new Cap or Floor
@@ -28,6 +37,7 @@ public abstract class SeriesOfOptions<T extends TimePoint> implements CurveTimeS
 	@SuppressWarnings("unchecked")
 	public SeriesOfOptions(double strike, double tenor, double maturity, T[] calendar, double timeStep) {
 		this.strike = strike;
+		this.calendar = calendar;
 		numberOfPeriods = (int)(maturity / tenor);
 		numberOfTimePointsPerPeriod = (int)(tenor / timeStep);
 		xlets = (Xlet<T>[])(new Xlet[numberOfPeriods]);
@@ -47,4 +57,29 @@ public abstract class SeriesOfOptions<T extends TimePoint> implements CurveTimeS
 		}
 		return value;
 	}
+	
+	@Override
+	public double evaluate(ArrayCurveTimeSeries<T> scenario, double weight, ScenarioAdjoint adjoint) {
+		double value = 0.0;
+		for (int period = 0; period < numberOfPeriods; period++) {
+			value += xlets[period].evaluate(scenario, weight, adjoint);
+		}
+		return value;
+	}
+	
+	@Override
+	public void registerFixings(FixingSchedule<T> schedule) {
+		for (int period = 0; period < numberOfPeriods; period++) {
+			xlets[period].registerFixings(schedule);
+		}
+	}
+	
+	@Override
+	public double evaluate(Fixings fixings) {
+		double value = 0.0;
+		for (int period = 0; period < numberOfPeriods; period++) {
+			value += xlets[period].evaluate(fixings);
+		}
+		return value;
+	}
 }
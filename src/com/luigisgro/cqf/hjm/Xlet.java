@@ -1,17 +1,24 @@
 package com.luigisgro.cqf.hjm;
 
+import com.luigisgro.cqf.curve.ArrayCurveTimeSeries;
 import com.luigisgro.cqf.curve.CurveTimeSeries;
-import com.luigisgro.cqf.curve.CurveTimeSeriesOperator;
+import com.luigisgro.cqf.curve.FixingSchedule;
+import com.luigisgro.cqf.curve.Fixings;
+import com.luigisgro.cqf.curve.PathwiseCurveTimeSeriesOperator;
+import com.luigisgro.cqf.curve.ScenarioAdjoint;
+import com.luigisgro.cqf.curve.StreamingCurveTimeSeriesOperator;
 import com.luigisgro.cqf.curve.TimePoint;
 
 /**
  * This class embeds the common logic of a caplet and floorlet.
  * The evaluation uses a {@link ForwardInterestRate} operator and a {@link ZCB} discount operator.
+ * Streaming mode is available when the xlet is created on the calendar of the simulation, and so is the
+ * pathwise evaluation of the derivatives, when the concrete class provides the derivative of the payoff.
  * @author Luigi Sgro
  *
  * @param <T>
  */
-public abstract class Xlet<T extends TimePoint> implements CurveTimeSeriesOperator<T> {
+public abstract class Xlet<T extends TimePoint> implements StreamingCurveTimeSeriesOperator<T>, PathwiseCurveTimeSeriesOperator<T> {
 	private ForwardInterestRate<T> forwardInterestRateOp;
 	private ZCB<T> discountOp;
 	private double tenor;
@@ -30,6 +37,21 @@ public abstract class Xlet<T extends TimePoint> implements CurveTimeSeriesOperat
 		this.tenor = tenor;
 	}
 	
+	/**
+	 * Creates a new caplet or floorlet, whose operators resolve the time points on the calendar of the simulation
+	 * @param present The present time, for discounting
+	 * @param evaluationTime The evaluation time, where the interest rate is evaluated and the payoff calculated
+	 * @param cashflowTime The time of the corresponding cashflow
+	 * @param tenor The tenor of the caplet/floorlet
+	 * @param timeStep The fraction of year corresponding to a calendar day
+	 * @param calendar The calendar of the scenarios to be evaluated
+	 */
+	public Xlet(T present, T evaluationTime, T cashflowTime, double tenor, double timeStep, T[] calendar) {
+		forwardInterestRateOp = new ForwardInterestRate<T>(evaluationTime, tenor, calendar);
+		discountOp = new ZCB<T>(present, cashflowTime, timeStep, calendar);
+		this.tenor = tenor;
+	}
+	
 	/**
 	 * The caplet/floorlet un-discounted, unscaled payoff:
 	 * i.e. max(rate - strike, 0) for caplet; max(strike - rate, 0) for floorlet
@@ -38,6 +60,16 @@ public abstract class Xlet<T extends TimePoint> implements CurveTimeSeriesOperat
 	 */
 	protected abstract double payoff(double forwardInterestRate);
 	
+	/**
+	 * The derivative of {@link #payoff(double)} with respect to the rate, needed by the pathwise evaluation:
+	 * i.e. 1 above the strike for caplet; -1 below the strike for floorlet
+	 * @param forwardInterestRate
+	 * @return The derivative of the payoff
+	 */
+	protected double payoffDerivative(double forwardInterestRate) {
+		throw new IllegalStateException("Derivative of the payoff not available for " + getClass().getName());
+	}
+	
 	@Override
 	public double evaluate(CurveTimeSeries<T> scenario) {
 		double forwardInterestRate = forwardInterestRateOp.evaluate(scenario);
@@ -47,4 +79,33 @@ public abstract class Xlet<T extends TimePoint> implements CurveTimeSeriesOperat
 		else
 			return 0; 
 	}
+
+	@Override
+	public double evaluate(ArrayCurveTimeSeries<T> scenario, double weight, ScenarioAdjoint adjoint) {
+		double forwardInterestRate = forwardInterestRateOp.evaluate(scenario);
+		double payoff = payoff(forwardInterestRate);
+		if (payoff > 0) {
+			double discountFactor = discountOp.evaluate(scenario, weight * payoff * tenor, adjoint);
+			forwardInterestRateOp.evaluate(scenario, weight * payoffDerivative(forwardInterestRate) * discountFactor * tenor, adjoint);
+			return payoff * discountFactor * tenor;
+		} else {
+			return 0;
+		}
+	}
+
+	@Override
+	public void registerFixings(FixingSchedule<T> schedule) {
+		forwardInterestRateOp.registerFixings(schedule);
+		discountOp.registerFixings(schedule);
+	}
+	
+	@Override
+	public double evaluate(Fixings fixings) {
+		double forwardInterestRate = forwardInterestRateOp.evaluate(fixings);
+		double payoff = payoff(forwardInterestRate);
+		if (payoff > 0)
+			return payoff * discountOp.evaluate(fixings) * tenor;
+		else
+			return 0; 
+	}
 }
@@ -3,9 +3,14 @@ package com.luigisgro.cqf.hjm;
 import java.util.Iterator;
 import java.util.Map;
 
+import com.luigisgro.cqf.curve.ArrayCurveTimeSeries;
 import com.luigisgro.cqf.curve.Curve;
 import com.luigisgro.cqf.curve.CurveTimeSeries;
-import com.luigisgro.cqf.curve.CurveTimeSeriesOperator;
+import com.luigisgro.cqf.curve.FixingSchedule;
+import com.luigisgro.cqf.curve.Fixings;
+import com.luigisgro.cqf.curve.PathwiseCurveTimeSeriesOperator;
+import com.luigisgro.cqf.curve.ScenarioAdjoint;
+import com.luigisgro.cqf.curve.StreamingCurveTimeSeriesOperator;
 import com.luigisgro.cqf.curve.TimePoint;
 
 /**
@@ -14,14 +19,24 @@ import com.luigisgro.cqf.curve.TimePoint;
  * The pricing implementation discounts along the instantaneous spot interest rates of the given
  * scenario by calculating the weighted average of the spot rate (integration of piecewise
  * constant evolution of the spot rate) and discounting a unit price with the resulting rate.
+ * When created with the calendar of the simulation, the time points are resolved to positions
+ * in the calendar once, and the scenarios stored in an {@link ArrayCurveTimeSeries} with that
+ * calendar are evaluated in constant time, from the cumulative short rates of the scenario,
+ * shared by all the operators evaluating the same path, and can be evaluated in streaming mode
+ * or together with its derivatives with respect to the short rates of the scenario.
  * @author Luigi Sgro
  *
  * @param <T>
  */
-public class ZCB<T extends TimePoint> implements CurveTimeSeriesOperator<T> {
+public class ZCB<T extends TimePoint> implements StreamingCurveTimeSeriesOperator<T>, PathwiseCurveTimeSeriesOperator<T> {
 	private T present;
 	private T future;
 	private double timeStep;
+	private T[] calendar;
+	private int presentIndex;
+	private int futureIndex;
+	private int presentSlot;
+	private int futureSlot;
 	
 	/**
 	 * Creates a new discount operator
@@ -34,8 +49,31 @@ public class ZCB<T extends TimePoint> implements CurveTimeSeriesOperator<T> {
 		this.future = future;
 		this.timeStep = timeStep;
 	}
+
+	/**
+	 * Creates a new discount operator, resolving the time points on the calendar of the simulation
+	 * @param present Present time for discounting
+	 * @param future Maturity of the ZCB
+	 * @param timeStep Fraction of year corresponding by a calendar day
+	 * @param calendar The calendar of the scenarios to be evaluated
+	 */
+	public ZCB(T present, T future, double timeStep, T[] calendar) {
+		this(present, future, timeStep);
+		if (calendar[0].compareTo(present) > 0 || calendar[calendar.length - 1].compareTo(future) < 0)
+			throw new IllegalArgumentException("Time arguments outside range of calendar: " + calendar[0] + " - " + calendar[calendar.length - 1]);
+		this.calendar = calendar;
+		// same range as the iteration on the curves: at least one spot rate is always accumulated
+		presentIndex = Math.min(ArrayCurveTimeSeries.ceilingIndex(calendar, present), calendar.length - 1);
+		futureIndex = Math.min(Math.max(ArrayCurveTimeSeries.ceilingIndex(calendar, future), presentIndex + 1), calendar.length);
+	}
+
 	@Override
 	public double evaluate(CurveTimeSeries<T> scenario) {
+		if (calendar != null && scenario instanceof ArrayCurveTimeSeries) {
+			ArrayCurveTimeSeries<T> arrayScenario = (ArrayCurveTimeSeries<T>)scenario;
+			if (arrayScenario.hasCalendar(calendar))
+				return evaluate(arrayScenario);
+		}
 		if (scenario.getCurves().firstKey().compareTo(present) > 0 || scenario.getCurves().lastKey().compareTo(future) < 0)
 			throw new IllegalArgumentException("Time arguments outside range of scenario: " + scenario.getCurves().firstKey() + " - " + scenario.getCurves().lastKey());
 
@@ -62,4 +100,51 @@ public class ZCB<T extends TimePoint> implements CurveTimeSeriesOperator<T> {
 		// discount with the yield just found
 		return Math.exp(-yield);
 	}
+
+	/**
+	 * The exact expected value of the operator in a simulation of the given model,
+	 * to be used when the ZCB is a control variate
+	 * @param model The model generating the scenarios
+	 * @param initialCurve The starting point of the simulation
+	 * @param simulationTimeStep The time step of the simulation
+	 * @return The expected value of the discount factor
+	 * @see MultiFactorHJM#expectedDiscountFactor(Curve, double, int, int, double)
+	 */
+	public double getExpectedValue(MultiFactorHJM model, Curve initialCurve, double simulationTimeStep) {
+		if (calendar == null)
+			throw new IllegalStateException("Discount operator not created on the calendar of the simulation");
+		return model.expectedDiscountFactor(initialCurve, simulationTimeStep, presentIndex, futureIndex, timeStep);
+	}
+
+	@Override
+	public void registerFixings(FixingSchedule<T> schedule) {
+		if (calendar == null || schedule.getCalendar() != calendar)
+			throw new IllegalStateException("Discount operator not created on the calendar of the simulation");
+		presentSlot = schedule.requireCumulativeShortRate(presentIndex);
+		futureSlot = schedule.requireCumulativeShortRate(futureIndex);
+	}
+
+	@Override
+	public double evaluate(Fixings fixings) {
+		double yield = (fixings.getCumulativeShortRate(futureSlot) - fixings.getCumulativeShortRate(presentSlot)) * timeStep;
+		return Math.exp(-yield);
+	}
+
+	@Override
+	public double evaluate(ArrayCurveTimeSeries<T> scenario, double weight, ScenarioAdjoint adjoint) {
+		if (calendar == null || !scenario.hasCalendar(calendar))
+			throw new IllegalStateException("Discount operator not created on the calendar of the scenario");
+		double discountFactor = evaluate(scenario);
+		// the yield is the difference of two cumulative short rates
+		double derivative = weight * discountFactor * timeStep;
+		adjoint.addToCumulativeShortRate(futureIndex, -derivative);
+		adjoint.addToCumulativeShortRate(presentIndex, derivative);
+		return discountFactor;
+	}
+
+	private double evaluate(ArrayCurveTimeSeries<T> scenario) {
+		double[] cumulativeShortRates = scenario.getCumulativeShortRates();
+		double yield = (cumulativeShortRates[futureIndex] - cumulativeShortRates[presentIndex]) * timeStep;
+		return Math.exp(-yield);
+	}
 }
@@ -1,22 +1,29 @@
 package com.luigisgro.cqf.job;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.math.MathException;
 import org.apache.commons.math.optimization.GoalType;
-import org.apache.commons.math.optimization.direct.NelderMead;
 
 import com.luigisgro.cqf.fdm.BinaryCashOrNothingOption;
 import com.luigisgro.cqf.fdm.Derivative;
-import com.luigisgro.cqf.fdm.ExplicitMethod;
 import com.luigisgro.cqf.fdm.ExplicitMethodConstantVolatility;
 import com.luigisgro.cqf.fdm.ExplicitMethodUncertainVolatility;
+import com.luigisgro.cqf.fdm.FiniteDifferenceModel;
+import com.luigisgro.cqf.fdm.GradientHedgingOptimizer;
 import com.luigisgro.cqf.fdm.Grid;
+import com.luigisgro.cqf.fdm.MultiStartHedgingOptimizer;
+import com.luigisgro.cqf.fdm.NonUniformGrid;
 import com.luigisgro.cqf.fdm.Option.Direction;
 import com.luigisgro.cqf.fdm.Portfolio;
 import com.luigisgro.cqf.fdm.StaticHedgingStrategy;
 import com.luigisgro.cqf.fdm.StaticHedgingStrategyOptimizationAdapter;
+import com.luigisgro.cqf.fdm.ThetaMethod;
+import com.luigisgro.cqf.fdm.ThetaMethodConstantVolatility;
+import com.luigisgro.cqf.fdm.ThetaMethodUncertainVolatility;
 import com.luigisgro.cqf.fdm.TwoStepsGrid;
 import com.luigisgro.cqf.fdm.VanillaOption;
 import com.luigisgro.cqf.util.BlackScholes;
@@ -78,6 +85,18 @@ public class FDMJob implements Job {
 		 * @return The step of the underlying used for the calculations
 		 */
 		Double getUnderlyingStep();
+		/**
+		 * @return The grid of the underlying: "uniform" for equally spaced values, "sinh" for values concentrated around the strikes and the underlying value
+		 */
+		String getUnderlyingGrid();
+		/**
+		 * @return The number of underlying values of the "sinh" grid
+		 */
+		Integer getUnderlyingNodes();
+		/**
+		 * @return The width of the region of fine resolution of the "sinh" grid around each strike, as a fraction of the maximum strike
+		 */
+		Double getUnderlyingConcentration();
 		/**
 		 * @return The time step used for the calculations
 		 */
@@ -86,6 +105,22 @@ public class FDMJob implements Job {
 		 * @return The type of pricing to perform: "uncertain" for uncertain volatility, "constant" for constant volatility
 		 */
 		String getVolatilityType();
+		/**
+		 * @return The Finite Difference method: "explicit", "implicit" or "cranknicolson"
+		 */
+		String getMethod();
+		/**
+		 * @return The number of hedge optimizations running at the same time
+		 */
+		Integer getOptimizerThreads();
+		/**
+		 * @return The number of starting points of the hedge optimization
+		 */
+		Integer getOptimizerStarts();
+		/**
+		 * @return The hedge optimizer: "neldermead" or "gradient"
+		 */
+		String getOptimizer();
 		/**
 		 * @return The strike of the i-th hedge instrument
 		 */
@@ -122,6 +157,7 @@ public class FDMJob implements Job {
 	private double maxStrike;
 	private double sMin;
 	private double sMax;
+	private List<Double> strikes = new ArrayList<Double>();
 	
 	private Map<String, Object> results;
 	
@@ -157,6 +193,7 @@ public class FDMJob implements Job {
 		
 		if (derivativeStrike > maxStrike)
 			maxStrike = derivativeStrike;
+		strikes.add(derivativeStrike);
 		
 		return true;
 	}
@@ -178,6 +215,7 @@ public class FDMJob implements Job {
 			
 			if (hedgeStrike > maxStrike)
 				maxStrike = hedgeStrike;
+			strikes.add(hedgeStrike);
 			
 			hedgeDirection = jobConfiguration.getHedgeDirection(i);
 			hedgePosition = jobConfiguration.getHedgePosition(i);
@@ -209,6 +247,19 @@ public class FDMJob implements Job {
 		return true;
 	}
 	
+	/**
+	 * Creates the FDM grid on the current range of the underlying
+	 */
+	private Grid createGrid(double timeStep, double underlyingStep, double underlyingValue) {
+		if (!"sinh".equals(jobConfiguration.getUnderlyingGrid()))
+			return new TwoStepsGrid(timeStep, 0, maxMaturity + 1, underlyingStep, sMin, sMax);
+		double[] centres = new double[strikes.size() + 1];
+		for (int i = 0; i < strikes.size(); i++)
+			centres[i] = strikes.get(i);
+		centres[strikes.size()] = underlyingValue;
+		return NonUniformGrid.sinhStretched(timeStep, 0, maxMaturity + 1, sMin, sMax, jobConfiguration.getUnderlyingNodes(), centres, jobConfiguration.getUnderlyingConcentration() * maxStrike);
+	}
+	
 	@Override
 	public boolean execute() throws MathException {
 		// Load parameters from configuration
@@ -219,30 +270,44 @@ public class FDMJob implements Job {
 		Double underlyingStep = jobConfiguration.getUnderlyingStep();
 		Double timeStep = jobConfiguration.getTimeStep();
 		String volatilityType = jobConfiguration.getVolatilityType();
+		String method = jobConfiguration.getMethod();
 		
 		// Create a new results map
 		results = new HashMap<String, Object>();
 		
 		// calculationMethod is responsible for calculating the next step of Finite Difference Method
-		ExplicitMethod calculationMethod;
+		FiniteDifferenceModel calculationMethod;
 		double hedgePriceVolatility;
+		double theta = "implicit".equals(method) ? ThetaMethod.IMPLICIT : ThetaMethod.CRANK_NICOLSON;
 		if ("uncertain".equals(volatilityType)) {
-			calculationMethod = new ExplicitMethodUncertainVolatility(minVol, maxVol);
+			if ("explicit".equals(method))
+				calculationMethod = new ExplicitMethodUncertainVolatility(minVol, maxVol);
+			else
+				calculationMethod = new ThetaMethodUncertainVolatility(minVol, maxVol, theta);
 			hedgePriceVolatility = (minVol + maxVol) / 2;
 		} else {
-			calculationMethod = new ExplicitMethodConstantVolatility(maxVol);
+			if ("explicit".equals(method))
+				calculationMethod = new ExplicitMethodConstantVolatility(maxVol);
+			else
+				calculationMethod = new ThetaMethodConstantVolatility(maxVol, theta);
 			hedgePriceVolatility = maxVol;
 		}
 		
 		// Dump parameters to screen
+		System.out.println("Method: " + method);
 		System.out.println("Vol type: " + volatilityType);
 		if ("uncertain".equals(volatilityType))
 			System.out.println("Min vol: " + minVol);
 		System.out.println("Max vol: " + maxVol);
 		System.out.println("Interest rate:" + interestRate);
 		System.out.println("Underlying value: " + underlyingValue);
-		System.out.println("Underlying increment step: " + underlyingStep);
+		if ("sinh".equals(jobConfiguration.getUnderlyingGrid()))
+			System.out.println("Underlying grid: sinh, " + jobConfiguration.getUnderlyingNodes() + " values, concentration: " + jobConfiguration.getUnderlyingConcentration());
+		else
+			System.out.println("Underlying increment step: " + underlyingStep);
 		System.out.println("Time increment step: " + timeStep);
+		if (calculationMethod.isLinear())
+			System.out.println("Linear model: each instrument is priced once, and the portfolio values are combined by position");
 		System.out.println();
 
 		// Create the empty portfolio
@@ -259,9 +324,9 @@ public class FDMJob implements Job {
 		updateUnderlyingRange(); // Update the range of the underlying to suit boundary criteria
 
 		// Create and validate the FDM grid
-		Grid gridNakedDerivative = new TwoStepsGrid(timeStep, 0, maxMaturity + 1, underlyingStep, sMin, sMax);
-		if (!gridNakedDerivative.validate(maxVol, portfolio)) {
-			System.err.println("underlying step: " + underlyingStep + ", timeStep: " + timeStep + ", volatility: " + maxVol + " will not converge");
+		Grid gridNakedDerivative = createGrid(timeStep, underlyingStep, underlyingValue);
+		if (!calculationMethod.validate(gridNakedDerivative, portfolio)) {
+			System.err.println("underlying step: " + gridNakedDerivative.sStep() + ", timeStep: " + timeStep + ", volatility: " + maxVol + " will not converge");
 			return false;
 		}
 
@@ -273,6 +338,7 @@ public class FDMJob implements Job {
 		
 		// Get and print FDM result
 		double longNoHedge = strategyNakedDerivative.getPnLAt(underlyingValue);
+		warnUnconverged(calculationMethod);
 		System.out.println("Long derivative value: " + longNoHedge);
 		
 		// Store result in results map
@@ -286,6 +352,7 @@ public class FDMJob implements Job {
 		
 		// Get and print FDM result
 		double shortNoHedge = strategyNakedDerivative.getPnLAt(underlyingValue);
+		warnUnconverged(calculationMethod);
 		System.out.println("Short derivative value: " + shortNoHedge);		
 
 		// Store result in results map
@@ -308,9 +375,9 @@ public class FDMJob implements Job {
 		updateUnderlyingRange(); // Update the range of the underlying to suit boundary criteria
 
 		// Create and validate a new FDM grid
-		Grid gridDerivativePlusHedge = new TwoStepsGrid(timeStep, 0, maxMaturity + 1, underlyingStep, sMin, sMax);		
-		if (!gridDerivativePlusHedge.validate(maxVol, portfolio)) {
-			System.err.println("underlying step: " + underlyingStep + ", timeStep: " + timeStep + ", volatility: " + maxVol + " will not converge");
+		Grid gridDerivativePlusHedge = createGrid(timeStep, underlyingStep, underlyingValue);
+		if (!calculationMethod.validate(gridDerivativePlusHedge, portfolio)) {
+			System.err.println("underlying step: " + gridDerivativePlusHedge.sStep() + ", timeStep: " + timeStep + ", volatility: " + maxVol + " will not converge");
 			return false;
 		}
 
@@ -322,6 +389,7 @@ public class FDMJob implements Job {
 
 		// Get and print FDM result
 		double longHedge = strategyDerivativePlusHedge.getPnLAt(underlyingValue);
+		warnUnconverged(calculationMethod);
 		System.out.println("Long derivative, hedge: " + strategyDerivativePlusHedge.hedgePositionsDesc() + " Value: " + longHedge);
 		
 		// Store result in results map
@@ -335,6 +403,7 @@ public class FDMJob implements Job {
 
 		// Get and print FDM result
 		double shortHedge = strategyDerivativePlusHedge.getPnLAt(underlyingValue);
+		warnUnconverged(calculationMethod);
 		System.out.println("Short derivative, hedge: " + strategyDerivativePlusHedge.hedgePositionsDesc() + " Value: " + shortHedge);
 		
 		// Store result in results map
@@ -354,14 +423,23 @@ public class FDMJob implements Job {
 		// Create an adapter to use the Commons Math standard optimized against the static hedging strategy
 		StaticHedgingStrategyOptimizationAdapter adapter = new StaticHedgingStrategyOptimizationAdapter(strategyDerivativePlusHedge, underlyingValue);
 		
-		// Create the Commons Math optimizer
-		NelderMead optimizer = new NelderMead();
+		// The gradient optimizer needs the sensitivities of the strategy to the hedge positions
+		if ("gradient".equals(jobConfiguration.getOptimizer())) {
+			if (!strategyDerivativePlusHedge.hasGradient()) {
+				System.err.println("The gradient optimizer is not available with method: " + method + ", volatility type: " + volatilityType);
+				return false;
+			}
+			System.out.println("Optimizer: gradient");
+		} else {
+			System.out.println("Optimizer: neldermead, starting points: " + jobConfiguration.getOptimizerStarts() + ", threads: " + jobConfiguration.getOptimizerThreads());
+		}
+		int iterations;
 		
 		// Run the optimization for the long position
 		long startOptimize = System.currentTimeMillis();
 		System.out.println("Long derivative: running optimizer on hedge positions...");
 		try {
-			optimizer.optimize(adapter, GoalType.MAXIMIZE, strategyDerivativePlusHedge.hedgePositions());
+			iterations = optimizeHedge(adapter, 1);
 		} catch (Exception e) {
 			System.err.println("An error occurred during the optimization [" + e.getMessage() + "]");
 			e.printStackTrace();
@@ -369,13 +447,14 @@ public class FDMJob implements Job {
 		} 
 
 		// Output optimization results for the long position
-		System.out.println("Long derivative: optimizer converged in " + optimizer.getIterations() + " iterations, time elapsed: " + (System.currentTimeMillis() - startOptimize) + "ms");
+		System.out.println("Long derivative: optimizer converged in " + iterations + " iterations, time elapsed: " + (System.currentTimeMillis() - startOptimize) + "ms");
 		double longOptimizedHedge = strategyDerivativePlusHedge.getPnLAt(underlyingValue);
+		warnUnconverged(calculationMethod);
 		System.out.println("Long derivative, hedge: " + strategyDerivativePlusHedge.hedgePositionsDesc() + " Value: " + longOptimizedHedge);
 		
 		// Store result in results map
 		results.put("optimizedHedgeLongDerivativeValue", longOptimizedHedge);
-		results.put("optimizedHedgeLongIterations", optimizer.getIterations());
+		results.put("optimizedHedgeLongIterations", iterations);
 
 		// Invert positions in the portfolio to calculate the short value
 		portfolio.invertPositions();
@@ -384,26 +463,56 @@ public class FDMJob implements Job {
 		startOptimize = System.currentTimeMillis();
 		System.out.println("\nShort derivative: running optimizer on hedge positions...");
 		try {
-			optimizer.optimize(adapter, GoalType.MAXIMIZE, strategyDerivativePlusHedge.hedgePositions());
+			iterations = optimizeHedge(adapter, 2);
 		} catch (Exception e) {
 			System.err.println("An error occurred during the optimization [" + e.getMessage() + "]");
 			return false;
 		} 
 
 		// Output optimization results for the long position
-		System.out.println("Short derivative: optimizer converged in " + optimizer.getIterations() + " iterations, time elapsed: " + (System.currentTimeMillis() - startOptimize) + "ms");
+		System.out.println("Short derivative: optimizer converged in " + iterations + " iterations, time elapsed: " + (System.currentTimeMillis() - startOptimize) + "ms");
 		double shortOptimizedHedge = strategyDerivativePlusHedge.getPnLAt(underlyingValue);
+		warnUnconverged(calculationMethod);
 		System.out.println("Short derivative, hedge: " + strategyDerivativePlusHedge.hedgePositionsDesc() + " Value: " + shortOptimizedHedge);
 
 		// Store result in results map
 		results.put("optimizedHedgeShortDerivativeValue", shortOptimizedHedge);
-		results.put("optimizedHedgeShortIterations", optimizer.getIterations());
+		results.put("optimizedHedgeShortIterations", iterations);
 
 		// Consolidate long and short values in a bid-ask quote
 		System.out.println("\nProposed bid: " + longOptimizedHedge + ", ask: " + (-shortOptimizedHedge) + "\n");
 
 		return true;
 	}
+	
+	/**
+	 * Warns if the policy iteration of a theta method did not converge in some time steps of the last pricing
+	 */
+	private void warnUnconverged(FiniteDifferenceModel method) {
+		if (method instanceof ThetaMethod && ((ThetaMethod)method).getUnconvergedSteps() > 0)
+			System.err.println("Warning: the volatilities of " + ((ThetaMethod)method).getUnconvergedSteps() + " time steps are not consistent with gamma after "
+					+ ((ThetaMethod)method).getMaxPolicyIterations() + " policy iterations");
+	}
+
+	/**
+	 * Optimizes the hedge positions with the configured optimizer, starting from the current positions
+	 * @param adapter The adapter of the strategy
+	 * @param seed The seed of the starting points of the Nelder-Mead optimizer
+	 * @return The number of iterations of the optimization
+	 * @throws MathException If the optimization fails
+	 */
+	private int optimizeHedge(StaticHedgingStrategyOptimizationAdapter adapter, long seed) throws MathException {
+		double[] start = adapter.getStrategy().hedgePositions();
+		if ("gradient".equals(jobConfiguration.getOptimizer())) {
+			GradientHedgingOptimizer optimizer = new GradientHedgingOptimizer(adapter);
+			optimizer.optimize(GoalType.MAXIMIZE, start);
+			System.out.println("Pricings: " + optimizer.getEvaluations());
+			return optimizer.getIterations();
+		}
+		MultiStartHedgingOptimizer optimizer = new MultiStartHedgingOptimizer(adapter, jobConfiguration.getOptimizerThreads());
+		optimizer.optimize(GoalType.MAXIMIZE, MultiStartHedgingOptimizer.startingPoints(start, jobConfiguration.getOptimizerStarts(), seed));
+		return optimizer.getIterations();
+	}
 
 	@Override
 	public Map<String, Object> getResults() {
@@ -4,8 +4,10 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 
@@ -14,14 +16,30 @@ import com.luigisgro.cqf.curve.CurveApproximatingPolynomial;
 import com.luigisgro.cqf.curve.CurveTimeSeries;
 import com.luigisgro.cqf.curve.CurveTimeSeriesOperator;
 import com.luigisgro.cqf.curve.DayTimePoint;
+import com.luigisgro.cqf.curve.ExercisableCurveTimeSeriesOperator;
 import com.luigisgro.cqf.curve.TermStructure;
 import com.luigisgro.cqf.curve.loaders.CurveTimeSeriesLoader;
 import com.luigisgro.cqf.function.Polynomial;
 import com.luigisgro.cqf.hjm.MultiFactorHJM;
+import com.luigisgro.cqf.hjm.ZCB;
+import com.luigisgro.cqf.montecarlo.BatchMonteCarloSimulation;
+import com.luigisgro.cqf.montecarlo.BookEvaluator;
+import com.luigisgro.cqf.montecarlo.ControlVariateEvaluator;
+import com.luigisgro.cqf.montecarlo.JumpableRandomVectorGenerator;
+import com.luigisgro.cqf.montecarlo.LongstaffSchwartzRegression;
+import com.luigisgro.cqf.montecarlo.MergeableMonteCarloEvaluator;
 import com.luigisgro.cqf.montecarlo.MonteCarloEvaluator;
 import com.luigisgro.cqf.montecarlo.MonteCarloSimulation;
+import com.luigisgro.cqf.montecarlo.ParallelMonteCarloSimulation;
 import com.luigisgro.cqf.montecarlo.RandomVectorGenerator;
+import com.luigisgro.cqf.montecarlo.RandomizedQMCEvaluator;
+import com.luigisgro.cqf.montecarlo.SensitivityEvaluator;
+import com.luigisgro.cqf.montecarlo.ShardCoordinator;
+import com.luigisgro.cqf.montecarlo.ShardEvaluator;
 import com.luigisgro.cqf.montecarlo.StandardErrorEvaluator;
+import com.luigisgro.cqf.montecarlo.StreamingMonteCarloEvaluator;
+import com.luigisgro.cqf.montecarlo.StreamingMonteCarloSimulation;
+import com.luigisgro.cqf.montecarlo.Xoshiro256StarStar;
 import com.luigisgro.cqf.pca.PCA;
 
 /**
@@ -82,6 +100,87 @@ public class HJMJob implements Job {
 		 * @see com.luigisgro.cqf.montecarlo
 		 */
 		Class<? extends RandomVectorGenerator> getStochasticGeneratorClass();
+		/**
+		 * @return The seed of the stochastic number generator, or null for a different sequence at each run.
+		 * When more threads are used, each thread receives a different seed derived from this one, unless the
+		 * generator is a {@link com.luigisgro.cqf.montecarlo.JumpableRandomVectorGenerator}
+		 */
+		Integer getRandomSeed();
+		/**
+		 * @return The index of the random stream used by this run: a jumpable generator is advanced by this number of long jumps,
+		 * so that runs with different stream indexes never share random numbers
+		 */
+		Integer getRandomStream();
+		/**
+		 * @return The number of threads running the Monte Carlo simulation
+		 */
+		Integer getNumberOfThreads();
+		/**
+		 * @return true if the scenarios must not be stored, and the derivative evaluated on the fixings
+		 * collected while each scenario is generated
+		 * @see com.luigisgro.cqf.montecarlo.StreamingMonteCarloSimulation
+		 */
+		boolean isStreamingScenarios();
+		/**
+		 * @return The number of paths advanced together by a {@link BatchMonteCarloSimulation}, or null if the paths are generated one at a time
+		 */
+		Integer getBatchSize();
+		/**
+		 * @return The file where the state of the simulation is saved periodically, and restored from when it exists,
+		 * or null if no checkpoint is used
+		 */
+		File getCheckpointFile();
+		/**
+		 * @return The number of iterations between two checkpoints
+		 */
+		Integer getCheckpointInterval();
+		/**
+		 * @return The directory shared by the shards of a simulation split across processes, or null if the simulation is not split.
+		 * The index of a shard is its random stream
+		 * @see ShardCoordinator
+		 */
+		File getShardDirectory();
+		/**
+		 * @return true if this job coordinates the shards, false if it is one of the shards
+		 */
+		boolean isShardCoordinator();
+		/**
+		 * @return The number of shards waited for by the coordinator
+		 */
+		Integer getNumberOfShards();
+		/**
+		 * @return The number of iterations between two summaries written by a shard
+		 */
+		Integer getShardRoundSize();
+		/**
+		 * @return The time after which the coordinator considers lost a shard not writing its summary, in milliseconds
+		 */
+		long getShardTimeout();
+		/**
+		 * @return true if the scenarios are generated in antithetic pairs
+		 */
+		boolean isAntitheticPaths();
+		/**
+		 * @return The ZCB used as control variate by a {@link ControlVariateEvaluator}, or null if no control variate is used.
+		 * Its expected value is calculated exactly from the model and the starting curve of the simulation
+		 */
+		ZCB<DayTimePoint> getControlVariate();
+		/**
+		 * @return The number of independently randomised sequences of a randomised quasi-Monte Carlo simulation, or null
+		 * if the simulation is not randomised QMC
+		 * @see com.luigisgro.cqf.montecarlo.RandomizedQMCEvaluator
+		 */
+		Integer getReplications();
+		/**
+		 * @return The number of scenarios used to fit the exercise rule of callable derivatives. The memory needed
+		 * is proportional to this number times the number of exercise dates
+		 * @see com.luigisgro.cqf.montecarlo.LongstaffSchwartzRegression
+		 */
+		Integer getRegressionPaths();
+		/**
+		 * @return The degree of the polynomials approximating the value of holding a callable derivative
+		 */
+		Integer getRegressionDegree();
 		/**
 		 * @return An array of {@link com.luigisgro.cqf.curve.DayTimePoint}. It defines
 		 * the calendar of the scenario in the Monte Carlo simulation
@@ -126,6 +225,69 @@ public class HJMJob implements Job {
 		}
 	}
 	
+	private RandomVectorGenerator createStochasticGenerator(Class<? extends RandomVectorGenerator> stochasticGeneratorClass, int dimension, int numberOfSteps, Long seed, Integer replications) throws Exception {
+		// quasi-random generators drawing whole paths need the number of steps
+		Constructor<? extends RandomVectorGenerator> pathConstructor = null;
+		try {
+			pathConstructor = stochasticGeneratorClass.getDeclaredConstructor(Integer.class, Integer.class, Long.class, Integer.class);
+		} catch (NoSuchMethodException e) {
+			if (replications != null)
+				throw new IllegalArgumentException("The generator " + stochasticGeneratorClass.getName() + " does not support randomised QMC replications");
+		}
+		if (pathConstructor != null) {
+			return pathConstructor.newInstance(dimension, numberOfSteps, seed, replications);
+		} else if (seed == null) {
+			Constructor<? extends RandomVectorGenerator> constructor = stochasticGeneratorClass.getDeclaredConstructor(Integer.class);
+			return constructor.newInstance(dimension);
+		} else {
+			Constructor<? extends RandomVectorGenerator> constructor = stochasticGeneratorClass.getDeclaredConstructor(Integer.class, Long.class);
+			return constructor.newInstance(dimension, seed);
+		}
+	}
+	
+	/**
+	 * Prints the results of the simulation, and stores them in the results map
+	 */
+	private void presentResults(MonteCarloEvaluator<DayTimePoint> evaluator, TermStructure termStructure, Integer replications, int numberOfSimulations) {
+		if (evaluator instanceof StandardErrorEvaluator) {
+			System.out.println("Standard error estimate: " + Math.sqrt(((StandardErrorEvaluator<DayTimePoint>)evaluator).squareStdErr()));
+			if (evaluator instanceof SensitivityEvaluator) {
+				SensitivityEvaluator<DayTimePoint> sensitivityEvaluator = (SensitivityEvaluator<DayTimePoint>)evaluator;
+				double[] curveDeltas = sensitivityEvaluator.getDeltas();
+				double[] factorVegas = sensitivityEvaluator.getVegas();
+				System.out.println("\nCurve deltas (derivatives w.r.t. the starting forward rates):");
+				for (int i = 0; i < curveDeltas.length; i++)
+					System.out.println("Tenor " + termStructure.getTenors()[i] + ": " + curveDeltas[i]);
+				System.out.println("Factor vegas (derivatives w.r.t. a proportional change of the factor volatility):");
+				for (int j = 0; j < factorVegas.length; j++)
+					System.out.println("Factor " + (j + 1) + ": " + factorVegas[j]);
+				results.put("curveDeltas", curveDeltas);
+				results.put("factorVegas", factorVegas);
+			}
+		} else if (evaluator instanceof BookEvaluator) {
+			BookEvaluator<DayTimePoint> bookEvaluator = (BookEvaluator<DayTimePoint>)evaluator;
+			double[] bookValues = new double[bookEvaluator.getNumberOfInstruments()];
+			double[] bookStdErrors = new double[bookEvaluator.getNumberOfInstruments()];
+			for (int i = 0; i < bookValues.length; i++) {
+				bookValues[i] = bookEvaluator.getResult(i);
+				bookStdErrors[i] = Math.sqrt(bookEvaluator.squareStdErr(i));
+				System.out.println("Instrument " + i + " (" + bookEvaluator.getInstrument(i).getClass().getSimpleName() + "): " + bookValues[i] + " - std error: " + bookStdErrors[i]);
+			}
+			results.put("bookValues", bookValues);
+			results.put("bookStdErrors", bookStdErrors);
+			System.out.println("\nBook value: " + bookEvaluator.getResult());
+		} else if (evaluator instanceof RandomizedQMCEvaluator) {
+			System.out.println("Standard error estimate (from " + replications + " replications): " + Math.sqrt(((RandomizedQMCEvaluator<DayTimePoint>)evaluator).squareStdErr()));
+		}
+		// the first instrument of a book is the configured derivative
+		double derivativeValue = evaluator instanceof BookEvaluator ? ((BookEvaluator<DayTimePoint>)evaluator).getResult(0) : evaluator.getResult();
+		System.out.println("\nDerivative value: " + derivativeValue);	
+		
+		// Store result in results map
+		results.put("derivativeValue", derivativeValue);
+		results.put("montecarloIterations", numberOfSimulations);
+	}
+	
 	public boolean execute() {
 		// Load variables from configuration
 		double timeStep = jobConfiguration.getTimeStep();
@@ -137,6 +299,15 @@ public class HJMJob implements Job {
 		Class< ? extends RandomVectorGenerator> stochasticGeneratorClass = jobConfiguration.getStochasticGeneratorClass();
 		MonteCarloEvaluator<DayTimePoint> evaluator = jobConfiguration.getEvaluator();
 		DayTimePoint[] scenarioCalendar = jobConfiguration.getScenarioCalendar();
+		Integer randomSeed = jobConfiguration.getRandomSeed();
+		int randomStream = jobConfiguration.getRandomStream();
+		int numberOfThreads = jobConfiguration.getNumberOfThreads();
+		boolean streamingScenarios = jobConfiguration.isStreamingScenarios();
+		Integer batchSize = jobConfiguration.getBatchSize();
+		boolean antitheticPaths = jobConfiguration.isAntitheticPaths();
+		ZCB<DayTimePoint> controlVariate = jobConfiguration.getControlVariate();
+		Integer replications = jobConfiguration.getReplications();
+		File shardDirectory = jobConfiguration.getShardDirectory();
 		
 		// Create a new results map
 		results = new HashMap<String, Object>();
@@ -201,36 +372,180 @@ public class HJMJob implements Job {
 		// Create model for the generation of scenarios
 		MultiFactorHJM hjm = new MultiFactorHJM(volatilityFunctions, termStructure);
 
-		// Create the stochastic generator
-		Constructor<? extends RandomVectorGenerator> constructor;
-		RandomVectorGenerator stochasticGenerator;
+		// Exact expected value of the control variate in the model
+		if (controlVariate != null) {
+			double controlMean = controlVariate.getExpectedValue(hjm, baseScenario, timeStep);
+			((ControlVariateEvaluator<DayTimePoint>)evaluator).setControlMean(controlMean);
+			System.out.println("\nControl variate expected value: " + controlMean);
+		}
+		
+		// The sensitivities are propagated backwards along the paths through the model
+		if (evaluator instanceof SensitivityEvaluator)
+			((SensitivityEvaluator<DayTimePoint>)evaluator).setModel(hjm);
+
+		// The coordinator of the shards merges their results, without simulating any scenario
+		if (shardDirectory != null && jobConfiguration.isShardCoordinator()) {
+			System.out.println("\nCoordinating " + jobConfiguration.getNumberOfShards() + " shards in " + shardDirectory + "...");
+			start = System.currentTimeMillis();
+			int numberOfSimulations;
+			try {
+				ShardCoordinator<DayTimePoint> coordinator = new ShardCoordinator<DayTimePoint>((MergeableMonteCarloEvaluator<DayTimePoint>)evaluator, shardDirectory, jobConfiguration.getNumberOfShards());
+				coordinator.setStaleTimeout(jobConfiguration.getShardTimeout());
+				numberOfSimulations = coordinator.coordinate();
+			} catch (IllegalArgumentException e) {
+				System.err.println("The simulation can not be split into shards [" + e.getMessage() + "]");
+				return false;
+			} catch (IllegalStateException e) {
+				System.err.println("The coordination of the shards failed [" + e.getMessage() + "]");
+				return false;
+			}
+			if (antitheticPaths)
+				numberOfSimulations *= 2;
+			System.out.println("Finished in " + numberOfSimulations + " iterations. Time elapsed: " + (System.currentTimeMillis() - start) + "ms");
+			presentResults(evaluator, termStructure, replications, numberOfSimulations);
+			return true;
+		}
+
+		// Create the stochastic generators: a single one split into substreams if it is jumpable, one for each thread otherwise
+		boolean substreams = JumpableRandomVectorGenerator.class.isAssignableFrom(stochasticGeneratorClass)
+				&& !streamingScenarios && shardDirectory == null && evaluator instanceof MergeableMonteCarloEvaluator;
+		RandomVectorGenerator[] stochasticGenerators = new RandomVectorGenerator[substreams ? 1 : numberOfThreads];
+		Long baseSeed = randomSeed != null ? Long.valueOf(randomSeed) : (stochasticGenerators.length > 1 ? Long.valueOf(System.nanoTime()) : null);
 		try {
-			constructor = stochasticGeneratorClass.getDeclaredConstructor(Integer.class);
-			stochasticGenerator = constructor.newInstance(numOfComponents);
+			for (int thread = 0; thread < stochasticGenerators.length; thread++) {
+				// adjacent seeds give correlated streams with some generators: the seed of each thread is mixed
+				Long seed = baseSeed == null ? null : Long.valueOf(stochasticGenerators.length > 1 ? Xoshiro256StarStar.streamSeed(baseSeed, thread) : baseSeed);
+				stochasticGenerators[thread] = createStochasticGenerator(stochasticGeneratorClass, numOfComponents, scenarioCalendar.length - 1, seed, replications);
+			}
 		} catch (Exception e) {
 			System.err.println("An error occurred while trying to istantiate random generator class [" + e.getMessage() + "]");
 			return false;
 		}
+		if (randomStream > 0) {
+			if (!(stochasticGenerators[0] instanceof JumpableRandomVectorGenerator)) {
+				System.err.println("The generator " + stochasticGeneratorClass.getName() + " can not be split into random streams");
+				return false;
+			}
+			for (int i = 0; i < randomStream; i++)
+				((JumpableRandomVectorGenerator)stochasticGenerators[0]).longJump();
+			System.out.println("\nUsing random stream: " + randomStream);
+		}
+		
+		// Fit the exercise rules of the callable derivatives on scenarios not used for the pricing
+		List<CurveTimeSeriesOperator<DayTimePoint>> instruments = new ArrayList<CurveTimeSeriesOperator<DayTimePoint>>();
+		if (evaluator instanceof BookEvaluator) {
+			BookEvaluator<DayTimePoint> bookEvaluator = (BookEvaluator<DayTimePoint>)evaluator;
+			for (int i = 0; i < bookEvaluator.getNumberOfInstruments(); i++)
+				instruments.add(bookEvaluator.getInstrument(i));
+		} else {
+			instruments.add(jobConfiguration.getDerivative());
+		}
+		for (CurveTimeSeriesOperator<DayTimePoint> instrument : instruments) {
+			if (instrument instanceof ExercisableCurveTimeSeriesOperator) {
+				System.out.println("\nFitting the exercise rule of " + instrument.getClass().getSimpleName() + " on " + jobConfiguration.getRegressionPaths() + " scenarios...");
+				start = System.currentTimeMillis();
+				LongstaffSchwartzRegression<DayTimePoint> regression = new LongstaffSchwartzRegression<DayTimePoint>((ExercisableCurveTimeSeriesOperator<DayTimePoint>)instrument, jobConfiguration.getRegressionPaths(), jobConfiguration.getRegressionDegree());
+				new MonteCarloSimulation<DayTimePoint>(hjm, regression, stochasticGenerators[0], baseScenario, scenarioCalendar, timeStep).simulate();
+				regression.applyExerciseRule();
+				System.out.println("Value on the regression scenarios: " + regression.getResult() + ". Time elapsed: " + (System.currentTimeMillis() - start) + "ms");
+			}
+		}
+		
+		// A shard accumulates its scenarios in a partial evaluator, and shares the summary with the coordinator
+		MonteCarloEvaluator<DayTimePoint> simulationEvaluator = evaluator;
+		ShardEvaluator<DayTimePoint> shardEvaluator = null;
+		if (shardDirectory != null) {
+			if (numberOfThreads > 1) {
+				System.err.println("A shard can only run one thread");
+				return false;
+			}
+			try {
+				shardEvaluator = new ShardEvaluator<DayTimePoint>((MergeableMonteCarloEvaluator<DayTimePoint>)evaluator, shardDirectory, randomStream, jobConfiguration.getShardRoundSize());
+			} catch (IllegalArgumentException e) {
+				System.err.println("The simulation can not be split into shards [" + e.getMessage() + "]");
+				return false;
+			}
+			simulationEvaluator = shardEvaluator;
+			System.out.println("\nRunning shard " + randomStream + ", sharing the results in " + shardDirectory);
+		}
 		
 		// Create the Monte Carlo simulation infrastructure
-		MonteCarloSimulation<DayTimePoint> mc = new MonteCarloSimulation<DayTimePoint>(hjm, evaluator, stochasticGenerator, baseScenario, scenarioCalendar, timeStep);
+		MonteCarloSimulation<DayTimePoint> mc;
+		if (streamingScenarios) {
+			if (numberOfThreads > 1) {
+				System.err.println("Streaming scenarios can only be used with one thread");
+				return false;
+			}
+			if (!(simulationEvaluator instanceof StreamingMonteCarloEvaluator)) {
+				System.err.println("The evaluator " + simulationEvaluator.getClass().getName() + " can not be used with streaming scenarios");
+				return false;
+			}
+			try {
+				mc = new StreamingMonteCarloSimulation<DayTimePoint>(hjm, (StreamingMonteCarloEvaluator<DayTimePoint>)simulationEvaluator, stochasticGenerators[0], baseScenario, scenarioCalendar, timeStep);
+			} catch (IllegalStateException e) {
+				System.err.println("An error occurred while registering the fixings of the derivative [" + e.getMessage() + "]");
+				return false;
+			}
+			System.out.println("\nUsing streaming scenarios for the Monte Carlo simulation");
+		} else if (batchSize != null) {
+			if (numberOfThreads > 1) {
+				System.err.println("Batch scenarios can only be used with one thread");
+				return false;
+			}
+			System.out.println("\nUsing batches of " + batchSize + " scenarios for the Monte Carlo simulation");
+			mc = new BatchMonteCarloSimulation<DayTimePoint>(hjm, simulationEvaluator, stochasticGenerators[0], baseScenario, scenarioCalendar, timeStep, batchSize);
+		} else if (substreams) {
+			System.out.println("\nUsing " + numberOfThreads + " threads and independent random substreams for the Monte Carlo simulation");
+			mc = new ParallelMonteCarloSimulation<DayTimePoint>(hjm, (MergeableMonteCarloEvaluator<DayTimePoint>)simulationEvaluator, (JumpableRandomVectorGenerator)stochasticGenerators[0], numberOfThreads, baseScenario, scenarioCalendar, timeStep);
+		} else if (numberOfThreads > 1) {
+			if (!(simulationEvaluator instanceof MergeableMonteCarloEvaluator)) {
+				System.err.println("The evaluator " + simulationEvaluator.getClass().getName() + " can not be used with more than one thread");
+				return false;
+			}
+			System.out.println("\nUsing " + numberOfThreads + " threads for the Monte Carlo simulation");
+			mc = new ParallelMonteCarloSimulation<DayTimePoint>(hjm, (MergeableMonteCarloEvaluator<DayTimePoint>)simulationEvaluator, stochasticGenerators, baseScenario, scenarioCalendar, timeStep);
+		} else {
+			mc = new MonteCarloSimulation<DayTimePoint>(hjm, simulationEvaluator, stochasticGenerators[0], baseScenario, scenarioCalendar, timeStep);
+		}
+		if (antitheticPaths) {
+			try {
+				mc.setAntitheticPaths(true);
+			} catch (IllegalArgumentException e) {
+				System.err.println("Antithetic paths can not be used [" + e.getMessage() + "]");
+				return false;
+			}
+			System.out.println("Using antithetic pairs of scenarios");
+		}
+		File checkpointFile = jobConfiguration.getCheckpointFile();
+		if (checkpointFile != null) {
+			try {
+				mc.setCheckpoint(checkpointFile, jobConfiguration.getCheckpointInterval());
+			} catch (IllegalArgumentException e) {
+				System.err.println("Checkpoints can not be used [" + e.getMessage() + "]");
+				return false;
+			}
+			System.out.println("Saving checkpoints to " + checkpointFile);
+		}
 
 		// Perform Monte Carlo simulation
 		System.out.println("\nExecuting Monte Carlo simulation...");
 		start = System.currentTimeMillis();
-		int numberOfSimulations = mc.simulate();
+		int numberOfSimulations;
+		try {
+			numberOfSimulations = mc.simulate();
+		} catch (IllegalStateException e) {
+			System.err.println("The Monte Carlo simulation failed [" + e.getMessage() + "]");
+			return false;
+		}
+		if (antitheticPaths)
+			numberOfSimulations *= 2;
 		System.out.println("Finished in " + numberOfSimulations + " iterations. Time elapsed: " + (System.currentTimeMillis() - start) + "ms");
 		
-		// Presentation of results
-		if (evaluator instanceof StandardErrorEvaluator) {
-			System.out.println("Standard error estimate: " + Math.sqrt(((StandardErrorEvaluator<DayTimePoint>)evaluator).squareStdErr()));
+		if (shardEvaluator != null) {
+			((MergeableMonteCarloEvaluator<DayTimePoint>)evaluator).merge(shardEvaluator.getPartialEvaluator());
+			System.out.println("Results of shard " + randomStream + " only");
 		}
-		System.out.println("\nDerivative value: " + evaluator.getResult());	
-		
-		// Store result in results map
-		results.put("derivativeValue", evaluator.getResult());
-		results.put("montecarloIterations", numberOfSimulations);
-
+		presentResults(evaluator, termStructure, replications, numberOfSimulations);
 		return true;
 	}
 
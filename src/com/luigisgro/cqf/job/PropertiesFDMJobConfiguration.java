@@ -1,5 +1,6 @@
 package com.luigisgro.cqf.job;
 
+import static com.luigisgro.cqf.util.PropertiesAdapter.Type.INT;
 import static com.luigisgro.cqf.util.PropertiesAdapter.Type.REAL;
 import static com.luigisgro.cqf.util.PropertiesAdapter.Type.STRING;
 
@@ -25,8 +26,15 @@ public class PropertiesFDMJobConfiguration implements FDMJob.Configuration, Prop
 	private static final String UNDERLYING_VOL_MAX = "fdm.underlying.volmax";
 	private static final String UNDERLYING_VALUE = "fdm.underlying.value";
 	private static final String UNDERLYING_STEP = "fdm.underlying.step";
+	private static final String UNDERLYING_GRID = "fdm.underlying.grid";
+	private static final String UNDERLYING_NODES = "fdm.underlying.nodes";
+	private static final String UNDERLYING_CONCENTRATION = "fdm.underlying.concentration";
 	private static final String INTEREST_RATE = "fdm.ir";
 	private static final String VOLATILITY_TYPE = "fdm.volatility.type";
+	private static final String METHOD = "fdm.method";
+	private static final String OPTIMIZER = "fdm.optimizer";
+	private static final String OPTIMIZER_THREADS = "fdm.optimizer.threads";
+	private static final String OPTIMIZER_STARTS = "fdm.optimizer.starts";
 	
 	private static final String DERIVATIVE_TYPE = "fdm.option.type";
 	private static final String DERIVATIVE_MATURITY = "fdm.option.maturity";
@@ -48,8 +56,15 @@ public class PropertiesFDMJobConfiguration implements FDMJob.Configuration, Prop
 		{ UNDERLYING_VOL_MAX, REAL, true },
 		{ UNDERLYING_VALUE, REAL, true },
 		{ UNDERLYING_STEP, REAL, true },
+		{ UNDERLYING_GRID, STRING, false },
+		{ UNDERLYING_NODES, INT, false },
+		{ UNDERLYING_CONCENTRATION, REAL, false },
 		{ INTEREST_RATE, REAL, true },
 		{ VOLATILITY_TYPE, STRING, true },
+		{ METHOD, STRING, false },
+		{ OPTIMIZER, STRING, false },
+		{ OPTIMIZER_THREADS, INT, false },
+		{ OPTIMIZER_STARTS, INT, false },
 		{ DERIVATIVE_TYPE, STRING, true },
 		{ DERIVATIVE_MATURITY, REAL, true },
 		{ DERIVATIVE_POSITION, REAL, true },
@@ -71,8 +86,15 @@ public class PropertiesFDMJobConfiguration implements FDMJob.Configuration, Prop
 	private Double underlyingVolMax;
 	private Double underlyingValue;
 	private Double underlyingStep;
+	private String underlyingGrid;
+	private Integer underlyingNodes;
+	private Double underlyingConcentration;
 	private Double interestRate;
 	private String volatilityType;
+	private String method;
+	private String optimizer;
+	private Integer optimizerThreads;
+	private Integer optimizerStarts;
 	private String derivativeType;
 	private Double derivativeMaturity;
 	private Double derivativePosition;
@@ -109,7 +131,54 @@ public class PropertiesFDMJobConfiguration implements FDMJob.Configuration, Prop
 		underlyingValue = (Double)adapter.getParameters().get(UNDERLYING_VALUE);
 		underlyingStep = (Double)adapter.getParameters().get(UNDERLYING_STEP);
 		interestRate = (Double)adapter.getParameters().get(INTEREST_RATE);
+		underlyingGrid = (String)adapter.getParameters().get(UNDERLYING_GRID);
+		if (underlyingGrid == null) {
+			underlyingGrid = "uniform";
+		} else if (!"uniform".equals(underlyingGrid) && !"sinh".equals(underlyingGrid)) {
+			System.err.println("Invalid underlying grid: " + underlyingGrid + " (allowed: uniform, sinh)");
+			return false;
+		}
+		underlyingNodes = (Integer)adapter.getParameters().get(UNDERLYING_NODES);
+		if ("sinh".equals(underlyingGrid) && (underlyingNodes == null || underlyingNodes < 3)) {
+			System.err.println("Invalid number of underlying nodes for the sinh grid: " + underlyingNodes + " (at least 3)");
+			return false;
+		}
+		underlyingConcentration = (Double)adapter.getParameters().get(UNDERLYING_CONCENTRATION);
+		if (underlyingConcentration == null) {
+			underlyingConcentration = 0.1;
+		} else if (underlyingConcentration <= 0) {
+			System.err.println("Invalid underlying concentration: " + underlyingConcentration);
+			return false;
+		}
 		volatilityType = (String)adapter.getParameters().get(VOLATILITY_TYPE);
+		method = (String)adapter.getParameters().get(METHOD);
+		if (method == null) {
+			method = "explicit";
+		} else if (!"explicit".equals(method) && !"implicit".equals(method) && !"cranknicolson".equals(method)) {
+			System.err.println("Invalid Finite Difference method: " + method + " (allowed: explicit, implicit, cranknicolson)");
+			return false;
+		}
+		optimizer = (String)adapter.getParameters().get(OPTIMIZER);
+		if (optimizer == null) {
+			optimizer = "neldermead";
+		} else if (!"neldermead".equals(optimizer) && !"gradient".equals(optimizer)) {
+			System.err.println("Invalid hedge optimizer: " + optimizer + " (allowed: neldermead, gradient)");
+			return false;
+		}
+		optimizerThreads = (Integer)adapter.getParameters().get(OPTIMIZER_THREADS);
+		if (optimizerThreads == null) {
+			optimizerThreads = 1;
+		} else if (optimizerThreads < 1) {
+			System.err.println("Invalid number of optimizer threads: " + optimizerThreads);
+			return false;
+		}
+		optimizerStarts = (Integer)adapter.getParameters().get(OPTIMIZER_STARTS);
+		if (optimizerStarts == null) {
+			optimizerStarts = 1;
+		} else if (optimizerStarts < 1) {
+			System.err.println("Invalid number of optimizer starting points: " + optimizerStarts);
+			return false;
+		}
 		derivativeType = (String)adapter.getParameters().get(DERIVATIVE_TYPE);
 		derivativeMaturity = (Double)adapter.getParameters().get(DERIVATIVE_MATURITY);
 		derivativePosition = (Double)adapter.getParameters().get(DERIVATIVE_POSITION);
@@ -188,11 +257,46 @@ public class PropertiesFDMJobConfiguration implements FDMJob.Configuration, Prop
 		return underlyingStep;
 	}
 
+	@Override
+	public String getUnderlyingGrid() {
+		return underlyingGrid;
+	}
+
+	@Override
+	public Integer getUnderlyingNodes() {
+		return underlyingNodes;
+	}
+
+	@Override
+	public Double getUnderlyingConcentration() {
+		return underlyingConcentration;
+	}
+
 	@Override
 	public String getVolatilityType() {
 		return volatilityType;
 	}
 
+	@Override
+	public String getMethod() {
+		return method;
+	}
+
+	@Override
+	public String getOptimizer() {
+		return optimizer;
+	}
+
+	@Override
+	public Integer getOptimizerThreads() {
+		return optimizerThreads;
+	}
+
+	@Override
+	public Integer getOptimizerStarts() {
+		return optimizerStarts;
+	}
+
 	@Override
 	public Double getHedgeStrike(int i) {
 		return hedgeStrike.get(i - 1);
@@ -10,19 +10,32 @@ import static com.luigisgro.cqf.util.PropertiesAdapter.Type.STRING;
 import java.io.File;
 import java.io.IOException;
 import java.util.Calendar;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 
 import com.luigisgro.cqf.curve.CurveTimeSeriesOperator;
 import com.luigisgro.cqf.curve.DayTimePoint;
+import com.luigisgro.cqf.curve.ExercisableCurveTimeSeriesOperator;
+import com.luigisgro.cqf.curve.PathwiseCurveTimeSeriesOperator;
 import com.luigisgro.cqf.curve.loaders.CurveTimeSeriesLoader;
+import com.luigisgro.cqf.hjm.BermudanSwaption;
 import com.luigisgro.cqf.hjm.Cap;
 import com.luigisgro.cqf.hjm.Floor;
 import com.luigisgro.cqf.hjm.ForwardInterestRate;
 import com.luigisgro.cqf.hjm.ZCB;
+import com.luigisgro.cqf.montecarlo.BatchMonteCarloSimulation;
+import com.luigisgro.cqf.montecarlo.BookEvaluator;
+import com.luigisgro.cqf.montecarlo.ControlVariateEvaluator;
 import com.luigisgro.cqf.montecarlo.CurveTimeSeriesOperatorEvaluator;
+import com.luigisgro.cqf.montecarlo.MergeableMonteCarloEvaluator;
 import com.luigisgro.cqf.montecarlo.MonteCarloEvaluator;
 import com.luigisgro.cqf.montecarlo.RandomVectorGenerator;
+import com.luigisgro.cqf.montecarlo.RandomizedQMCEvaluator;
+import com.luigisgro.cqf.montecarlo.SensitivityEvaluator;
+import com.luigisgro.cqf.montecarlo.ShardCoordinator;
+import com.luigisgro.cqf.montecarlo.ShardEvaluator;
 import com.luigisgro.cqf.montecarlo.StandardErrorEvaluator;
 import com.luigisgro.cqf.util.PropertiesAdapter;
 import com.luigisgro.cqf.util.PropertyLoader;
@@ -49,15 +62,41 @@ public class PropertiesHJMJobConfiguration implements HJMJob.Configuration, Prop
 	private static final String HJM_DERIVATIVE_STRIKE_KEY = "hjm.derivative.strike";
 	private static final String HJM_DERIVATIVE_TENOR_KEY = "hjm.derivative.tenor";
 	private static final String HJM_DERIVATIVE_MATURITY_KEY = "hjm.derivative.maturity";
+	private static final String HJM_BOOK_TYPE_KEY = "hjm.book.derivative.type";
+	private static final String HJM_BOOK_STRIKE_KEY = "hjm.book.derivative.strike";
+	private static final String HJM_BOOK_TENOR_KEY = "hjm.book.derivative.tenor";
+	private static final String HJM_BOOK_MATURITY_KEY = "hjm.book.derivative.maturity";
 
 	private static final String MC_RANDOM_GENERATOR_CLASS_KEY = "hjm.mc.random.generator.class";
+	private static final String MC_RANDOM_SEED_KEY = "hjm.mc.random.seed";
+	private static final String MC_RANDOM_STREAM_KEY = "hjm.mc.random.stream";
+	private static final String MC_THREADS_KEY = "hjm.mc.threads";
+	private static final String MC_SCENARIO_MODE_KEY = "hjm.mc.scenario.mode";
+	private static final String MC_BATCH_SIZE_KEY = "hjm.mc.batch.size";
+	private static final String MC_CHECKPOINT_FILE_KEY = "hjm.mc.checkpoint.file";
+	private static final String MC_CHECKPOINT_INTERVAL_KEY = "hjm.mc.checkpoint.interval";
+	private static final String MC_SHARD_DIRECTORY_KEY = "hjm.mc.shard.directory";
+	private static final String MC_SHARD_ROLE_KEY = "hjm.mc.shard.role";
+	private static final String MC_SHARD_COUNT_KEY = "hjm.mc.shard.count";
+	private static final String MC_SHARD_ROUND_KEY = "hjm.mc.shard.round";
+	private static final String MC_SHARD_TIMEOUT_KEY = "hjm.mc.shard.timeout";
+	private static final String MC_ANTITHETIC_KEY = "hjm.mc.antithetic";
 	private static final String MC_CALENDAR_MONTHS_KEY = "hjm.mc.calendar.months";
 	private static final String MC_CALENDAR_START_DATE_KEY = "hjm.mc.calendar.start";
 	private static final String MC_EVALUATOR_TYPE_KEY = "hjm.mc.evaluator.type";
 	private static final String MC_EVALUATOR_STDERR_KEY = "hjm.mc.evaluator.stderr";
+	private static final String MC_EVALUATOR_CHECK_INTERVAL_KEY = "hjm.mc.evaluator.check.interval";
+	private static final String MC_RQMC_REPLICATIONS_KEY = "hjm.mc.rqmc.replications";
+	private static final String MC_LSM_PATHS_KEY = "hjm.mc.lsm.paths";
+	private static final String MC_LSM_DEGREE_KEY = "hjm.mc.lsm.degree";
 	private static final String MC_ITERATIONS_KEY = "hjm.mc.iterations.max";
 	private static final String MC_TIMESTEP_KEY = "hjm.mc.timestep";
 	
+	private static final int DEFAULT_RQMC_REPLICATIONS = 16;
+	private static final int DEFAULT_LSM_PATHS = 10000;
+	private static final int DEFAULT_LSM_DEGREE = 2;
+	private static final int DEFAULT_CHECKPOINT_INTERVAL = 10000;
+
 	private static final Object[][] parameterConfiguration = {
 		{ INPUT_FILE_KEY, FILE, true },
 		{ INPUT_LOADER_CLASS_KEY, CLASS, true },
@@ -71,14 +110,39 @@ public class PropertiesHJMJobConfiguration implements HJMJob.Configuration, Prop
 		{ HJM_DERIVATIVE_TENOR_KEY, REAL, false },
 		{ HJM_DERIVATIVE_MATURITY_KEY, REAL, true },
 		{ MC_RANDOM_GENERATOR_CLASS_KEY, CLASS, true },
+		{ MC_RANDOM_SEED_KEY, INT, false },
+		{ MC_RANDOM_STREAM_KEY, INT, false },
+		{ MC_THREADS_KEY, INT, false },
+		{ MC_SCENARIO_MODE_KEY, STRING, false },
+		{ MC_BATCH_SIZE_KEY, INT, false },
+		{ MC_CHECKPOINT_FILE_KEY, FILE, false },
+		{ MC_CHECKPOINT_INTERVAL_KEY, INT, false },
+		{ MC_SHARD_DIRECTORY_KEY, FILE, false },
+		{ MC_SHARD_ROLE_KEY, STRING, false },
+		{ MC_SHARD_COUNT_KEY, INT, false },
+		{ MC_SHARD_ROUND_KEY, INT, false },
+		{ MC_SHARD_TIMEOUT_KEY, INT, false },
+		{ MC_ANTITHETIC_KEY, STRING, false },
 		{ MC_CALENDAR_START_DATE_KEY, DATE, false },
 		{ MC_CALENDAR_MONTHS_KEY, INT, true },
 		{ MC_EVALUATOR_TYPE_KEY, STRING, true },
 		{ MC_EVALUATOR_STDERR_KEY, REAL, false },
+		{ MC_EVALUATOR_CHECK_INTERVAL_KEY, INT, false },
+		{ MC_RQMC_REPLICATIONS_KEY, INT, false },
+		{ MC_LSM_PATHS_KEY, INT, false },
+		{ MC_LSM_DEGREE_KEY, INT, false },
 		{ MC_ITERATIONS_KEY, INT, true },
 		{ MC_TIMESTEP_KEY, REAL, true }
 	};
 	
+	// additional instruments priced on the same scenarios, numbered from 1
+	private static final Object[][] multiParameterConfiguration = {
+		{ HJM_BOOK_TYPE_KEY, STRING, true },
+		{ HJM_BOOK_STRIKE_KEY, REAL, false },
+		{ HJM_BOOK_TENOR_KEY, REAL, false },
+		{ HJM_BOOK_MATURITY_KEY, REAL, true }
+	};
+	
 	private File inputFile;
 	private double inputTimeStep;
 	private CurveTimeSeriesLoader inputDataLoader;
@@ -92,6 +156,23 @@ public class PropertiesHJMJobConfiguration implements HJMJob.Configuration, Prop
 	private double minVariance;
 	private int polyDegree;
 	private Class<RandomVectorGenerator> stochasticGeneratorClass;
+	private Integer randomSeed;
+	private int randomStream;
+	private int numberOfThreads;
+	private boolean streamingScenarios;
+	private Integer batchSize;
+	private File checkpointFile;
+	private int checkpointInterval;
+	private File shardDirectory;
+	private boolean shardCoordinator;
+	private Integer numberOfShards;
+	private int shardRoundSize;
+	private long shardTimeout;
+	private boolean antitheticPaths;
+	private ZCB<DayTimePoint> controlVariate;
+	private Integer replications;
+	private int regressionPaths;
+	private int regressionDegree;
 	private MonteCarloEvaluator<DayTimePoint> evaluator;
 	private DayTimePoint[] scenarioCalendar;
 	private CurveTimeSeriesOperator<DayTimePoint> derivative;
@@ -106,6 +187,12 @@ public class PropertiesHJMJobConfiguration implements HJMJob.Configuration, Prop
 			return false;
 		}
 		
+		success = adapter.loadMultiParameters(multiParameterConfiguration);
+		if (!success) {
+			System.err.println(adapter.getMessage());
+			return false;
+		}
+		
 		Class<CurveTimeSeriesLoader> loaderClass;
 		try {
 			loaderClass = (Class<CurveTimeSeriesLoader>) adapter.getParameters().get(INPUT_LOADER_CLASS_KEY);
@@ -158,7 +245,7 @@ public class PropertiesHJMJobConfiguration implements HJMJob.Configuration, Prop
 		String derivativeType = (String)adapter.getParameters().get(HJM_DERIVATIVE_TYPE_KEY);
 		System.out.println("Derivative: " + derivativeType);
 		
-		if ("cap".equals(derivativeType) || "floor".equals(derivativeType)) {
+		if ("cap".equals(derivativeType) || "floor".equals(derivativeType) || "bermudan".equals(derivativeType)) {
 			strike = (Double)adapter.getParameters().get(HJM_DERIVATIVE_STRIKE_KEY);
 			System.out.println("Strike: " + strike);
 		}
@@ -168,44 +255,238 @@ public class PropertiesHJMJobConfiguration implements HJMJob.Configuration, Prop
 			System.out.println("Tenor: " + tenor);
 		}
 
-		CurveTimeSeriesOperator<DayTimePoint> derivative = null;
-		if ("cap".equals(derivativeType)) {
-			derivative = new Cap<DayTimePoint>(strike, tenor, maturity, scenarioCalendar, timeStep);
-		} else if ("floor".equals(derivativeType)) {
-			derivative = new Floor<DayTimePoint>(strike, tenor, maturity, scenarioCalendar, timeStep);
-		} else if ("zcb".equals(derivativeType)) {
-			int cashflowTimeIndex = (int)(maturity / timeStep);
-			derivative = new ZCB<DayTimePoint>(scenarioCalendar[0], scenarioCalendar[cashflowTimeIndex], timeStep);
-		} else if ("fwd".equals(derivativeType)) {
-			int cashflowTimeIndex = (int)(maturity / timeStep);
-			derivative = new ForwardInterestRate<DayTimePoint>(scenarioCalendar[cashflowTimeIndex], tenor);
-		} else {
-			System.err.println("Unknown derivative type: " + derivativeType);
+		derivative = createDerivative(derivativeType, strike, tenor, maturity);
+		if (derivative == null)
 			return false;
+		
+		List<CurveTimeSeriesOperator<DayTimePoint>> book = new ArrayList<CurveTimeSeriesOperator<DayTimePoint>>();
+		book.add(derivative);
+		for (int group = 1; group <= adapter.getNumberOfGroups(); group++) {
+			String bookType = (String)adapter.getParameters().get(HJM_BOOK_TYPE_KEY + "." + group);
+			Double bookStrike = (Double)adapter.getParameters().get(HJM_BOOK_STRIKE_KEY + "." + group);
+			Double bookTenor = (Double)adapter.getParameters().get(HJM_BOOK_TENOR_KEY + "." + group);
+			Double bookMaturity = (Double)adapter.getParameters().get(HJM_BOOK_MATURITY_KEY + "." + group);
+			System.out.println("Book instrument " + group + ": " + bookType + ", strike: " + bookStrike + ", tenor: " + bookTenor + ", maturity: " + bookMaturity);
+			if ((bookStrike == null && ("cap".equals(bookType) || "floor".equals(bookType) || "bermudan".equals(bookType))) || (bookTenor == null && !"zcb".equals(bookType))) {
+				System.err.println("Missing strike or tenor for book instrument " + group);
+				return false;
+			}
+			CurveTimeSeriesOperator<DayTimePoint> instrument = createDerivative(bookType, bookStrike != null ? bookStrike : 0.0, bookTenor != null ? bookTenor : 0.0, bookMaturity);
+			if (instrument == null)
+				return false;
+			book.add(instrument);
 		}
 		
 		String evaluatorType = (String)adapter.getParameters().get(MC_EVALUATOR_TYPE_KEY);
 		
 		double maxStdError = 0;
-		if ("stderr".equals(evaluatorType)) {
+		if ("stderr".equals(evaluatorType) || "control".equals(evaluatorType) || "rqmc".equals(evaluatorType) || "sensitivity".equals(evaluatorType)) {
 			maxStdError = (Double)adapter.getParameters().get(MC_EVALUATOR_STDERR_KEY);
 		}
 		
+		String antithetic = (String)adapter.getParameters().get(MC_ANTITHETIC_KEY);
+		if (antithetic == null || "false".equals(antithetic)) {
+			antitheticPaths = false;
+		} else if ("true".equals(antithetic)) {
+			antitheticPaths = true;
+		} else {
+			System.err.println("Invalid value for antithetic paths: " + antithetic + " (allowed: true, false)");
+			return false;
+		}
+		System.out.println("Antithetic paths: " + antitheticPaths);
+		
 		numberOfScenarios = (Integer)adapter.getParameters().get(MC_ITERATIONS_KEY);
-		if ("stderr".equals(evaluatorType)) {
-			evaluator = new StandardErrorEvaluator<DayTimePoint>(derivative, maxStdError, numberOfScenarios);
+		// with antithetic paths each iteration evaluates a pair of scenarios
+		int maxIterations = antitheticPaths ? Math.max(numberOfScenarios / 2, 1) : numberOfScenarios;
+		if (book.size() > 1) {
+			if ("control".equals(evaluatorType) || "rqmc".equals(evaluatorType) || "sensitivity".equals(evaluatorType)) {
+				System.err.println("The evaluator type " + evaluatorType + " can not be used with a book of derivatives");
+				return false;
+			}
+			evaluator = new BookEvaluator<DayTimePoint>(book, maxStdError, maxIterations);
+			System.out.println("Book evaluator (" + book.size() + " instruments) - max error: " + maxStdError + ", max number of scenarios: " + numberOfScenarios) ;
+		} else if ("control".equals(evaluatorType)) {
+			int maturityIndex = (int)(maturity / timeStep);
+			controlVariate = new ZCB<DayTimePoint>(scenarioCalendar[0], scenarioCalendar[maturityIndex], timeStep, scenarioCalendar);
+			evaluator = new ControlVariateEvaluator<DayTimePoint>(derivative, controlVariate, maxStdError, maxIterations);
+			System.out.println("Control variate evaluator (ZCB with maturity: " + maturity + ") - max error: " + maxStdError + ", max number of scenarios: " + numberOfScenarios) ;
+		} else if ("rqmc".equals(evaluatorType)) {
+			if (derivative instanceof ExercisableCurveTimeSeriesOperator) {
+				// the regression scenarios would shift the replications of the generator
+				System.err.println("The evaluator type " + evaluatorType + " can not be used with a callable derivative");
+				return false;
+			}
+			Integer rqmcReplications = (Integer)adapter.getParameters().get(MC_RQMC_REPLICATIONS_KEY);
+			replications = rqmcReplications != null ? rqmcReplications : DEFAULT_RQMC_REPLICATIONS;
+			if (replications < 2) {
+				System.err.println("Invalid number of replications: " + replications + " (at least 2 needed)");
+				return false;
+			}
+			evaluator = new RandomizedQMCEvaluator<DayTimePoint>(derivative, replications, maxStdError, maxIterations);
+			System.out.println("Randomised QMC evaluator (" + replications + " replications) - max error: " + maxStdError + ", max number of scenarios: " + numberOfScenarios) ;
+		} else if ("sensitivity".equals(evaluatorType)) {
+			if (!(derivative instanceof PathwiseCurveTimeSeriesOperator)) {
+				System.err.println("Sensitivities can not be calculated for the derivative: " + derivativeType);
+				return false;
+			}
+			evaluator = new SensitivityEvaluator<DayTimePoint>((PathwiseCurveTimeSeriesOperator<DayTimePoint>)derivative, maxStdError, maxIterations);
+			System.out.println("Sensitivity evaluator (curve deltas and factor vegas) - max error: " + maxStdError + ", max number of scenarios: " + numberOfScenarios) ;
+		} else if ("stderr".equals(evaluatorType)) {
+			evaluator = new StandardErrorEvaluator<DayTimePoint>(derivative, maxStdError, maxIterations);
 			System.out.println("Standard error evaluator - max error: " + maxStdError + ", max number of scenarios: " + numberOfScenarios) ;
 		} else {
-			evaluator = new CurveTimeSeriesOperatorEvaluator<DayTimePoint>(derivative, numberOfScenarios);
+			evaluator = new CurveTimeSeriesOperatorEvaluator<DayTimePoint>(derivative, maxIterations);
 			System.out.println("Fixed scenarios evaluator - max number of scenarios: " + numberOfScenarios) ;
 		}
 		
+		Integer checkInterval = (Integer)adapter.getParameters().get(MC_EVALUATOR_CHECK_INTERVAL_KEY);
+		if (checkInterval != null && (evaluator instanceof StandardErrorEvaluator || evaluator instanceof BookEvaluator)) {
+			if (checkInterval < 1) {
+				System.err.println("Invalid check interval of the standard error: " + checkInterval);
+				return false;
+			}
+			if (evaluator instanceof BookEvaluator)
+				((BookEvaluator<DayTimePoint>)evaluator).setCheckInterval(checkInterval);
+			else
+				((StandardErrorEvaluator<DayTimePoint>)evaluator).setCheckInterval(checkInterval);
+			System.out.println("Standard error checked every " + checkInterval + " iterations");
+		}
+		
 		stochasticGeneratorClass = (Class<RandomVectorGenerator>)adapter.getParameters().get(MC_RANDOM_GENERATOR_CLASS_KEY);
 		System.out.println("Stochastic generator class: " + stochasticGeneratorClass.getName());
 		
+		randomSeed = (Integer)adapter.getParameters().get(MC_RANDOM_SEED_KEY);
+		if (randomSeed != null)
+			System.out.println("Stochastic generator seed: " + randomSeed);
+		
+		Integer stream = (Integer)adapter.getParameters().get(MC_RANDOM_STREAM_KEY);
+		randomStream = stream != null ? stream : 0;
+		if (randomStream < 0) {
+			System.err.println("Invalid random stream: " + randomStream);
+			return false;
+		}
+		if (randomStream > 0)
+			System.out.println("Stochastic generator stream: " + randomStream);
+		
+		Integer threads = (Integer)adapter.getParameters().get(MC_THREADS_KEY);
+		numberOfThreads = threads != null ? threads : 1;
+		if (numberOfThreads < 1) {
+			System.err.println("Invalid number of threads: " + numberOfThreads);
+			return false;
+		}
+		System.out.println("Monte Carlo threads: " + numberOfThreads);
+		
+		String scenarioMode = (String)adapter.getParameters().get(MC_SCENARIO_MODE_KEY);
+		if (scenarioMode == null)
+			scenarioMode = "full";
+		streamingScenarios = "streaming".equals(scenarioMode);
+		if (!streamingScenarios && !"full".equals(scenarioMode) && !"batch".equals(scenarioMode)) {
+			System.err.println("Invalid scenario mode: " + scenarioMode + " (allowed: full, streaming, batch)");
+			return false;
+		}
+		System.out.println("Monte Carlo scenario mode: " + scenarioMode);
+		Integer batch = (Integer)adapter.getParameters().get(MC_BATCH_SIZE_KEY);
+		if ("batch".equals(scenarioMode)) {
+			batchSize = batch != null ? batch : BatchMonteCarloSimulation.DEFAULT_BATCH_SIZE;
+			if (batchSize < 1) {
+				System.err.println("Invalid batch size: " + batchSize);
+				return false;
+			}
+			System.out.println("Monte Carlo batch size: " + batchSize);
+		} else if (batch != null) {
+			System.err.println("The batch size can only be used with the batch scenario mode");
+			return false;
+		}
+		
+		checkpointFile = (File)adapter.getParameters().get(MC_CHECKPOINT_FILE_KEY);
+		Integer interval = (Integer)adapter.getParameters().get(MC_CHECKPOINT_INTERVAL_KEY);
+		checkpointInterval = interval != null ? interval : DEFAULT_CHECKPOINT_INTERVAL;
+		if (checkpointInterval < 1) {
+			System.err.println("Invalid checkpoint interval: " + checkpointInterval);
+			return false;
+		}
+		if (checkpointFile != null)
+			System.out.println("Monte Carlo checkpoint: " + checkpointFile + " every " + checkpointInterval + " iterations");
+		
+		shardDirectory = (File)adapter.getParameters().get(MC_SHARD_DIRECTORY_KEY);
+		if (shardDirectory != null) {
+			if (!shardDirectory.isDirectory()) {
+				System.err.println("Shard directory not found: " + shardDirectory);
+				return false;
+			}
+			if (!(evaluator instanceof MergeableMonteCarloEvaluator)) {
+				System.err.println("The evaluator type " + evaluatorType + " can not be split into shards");
+				return false;
+			}
+			String shardRole = (String)adapter.getParameters().get(MC_SHARD_ROLE_KEY);
+			if ("coordinator".equals(shardRole)) {
+				shardCoordinator = true;
+			} else if (!"shard".equals(shardRole)) {
+				System.err.println("Invalid shard role: " + shardRole + " (allowed: shard, coordinator)");
+				return false;
+			}
+			numberOfShards = (Integer)adapter.getParameters().get(MC_SHARD_COUNT_KEY);
+			if (shardCoordinator && (numberOfShards == null || numberOfShards < 1)) {
+				System.err.println("Invalid number of shards: " + numberOfShards);
+				return false;
+			}
+			Integer round = (Integer)adapter.getParameters().get(MC_SHARD_ROUND_KEY);
+			shardRoundSize = round != null ? round : ShardEvaluator.DEFAULT_ROUND_SIZE;
+			if (shardRoundSize < 1) {
+				System.err.println("Invalid shard round: " + shardRoundSize);
+				return false;
+			}
+			Integer timeout = (Integer)adapter.getParameters().get(MC_SHARD_TIMEOUT_KEY);
+			shardTimeout = timeout != null ? timeout * 1000L : ShardCoordinator.DEFAULT_STALE_TIMEOUT;
+			if (shardTimeout <= 0) {
+				System.err.println("Invalid shard timeout: " + timeout);
+				return false;
+			}
+			if (shardCoordinator)
+				System.out.println("Coordinator of " + numberOfShards + " shards in: " + shardDirectory + ", shards lost after " + shardTimeout / 1000 + "s without a summary");
+			else
+				System.out.println("Shard " + randomStream + " in: " + shardDirectory + ", summary every " + shardRoundSize + " iterations");
+		}
+		
+		Integer lsmPaths = (Integer)adapter.getParameters().get(MC_LSM_PATHS_KEY);
+		regressionPaths = lsmPaths != null ? lsmPaths : DEFAULT_LSM_PATHS;
+		Integer lsmDegree = (Integer)adapter.getParameters().get(MC_LSM_DEGREE_KEY);
+		regressionDegree = lsmDegree != null ? lsmDegree : DEFAULT_LSM_DEGREE;
+		if (regressionDegree < 0 || regressionPaths <= regressionDegree + 1) {
+			System.err.println("Invalid exercise regression: " + regressionPaths + " paths, degree " + regressionDegree);
+			return false;
+		}
+		
 		return true;
 	}
 	
+	/**
+	 * Creates a derivative on the scenario calendar
+	 * @param derivativeType One of "cap", "floor", "zcb", "fwd", "bermudan"
+	 * @param strike The strike of caps and floors, the fixed rate of Bermudan swaptions
+	 * @param tenor The tenor of caps, floors, forward rates and swap periods
+	 * @param maturity The maturity of the derivative
+	 * @return The derivative, or null if the type is unknown
+	 */
+	private CurveTimeSeriesOperator<DayTimePoint> createDerivative(String derivativeType, double strike, double tenor, double maturity) {
+		if ("cap".equals(derivativeType)) {
+			return new Cap<DayTimePoint>(strike, tenor, maturity, scenarioCalendar, timeStep);
+		} else if ("floor".equals(derivativeType)) {
+			return new Floor<DayTimePoint>(strike, tenor, maturity, scenarioCalendar, timeStep);
+		} else if ("zcb".equals(derivativeType)) {
+			int cashflowTimeIndex = (int)(maturity / timeStep);
+			return new ZCB<DayTimePoint>(scenarioCalendar[0], scenarioCalendar[cashflowTimeIndex], timeStep, scenarioCalendar);
+		} else if ("bermudan".equals(derivativeType)) {
+			return new BermudanSwaption<DayTimePoint>(strike, tenor, maturity, scenarioCalendar, timeStep);
+		} else if ("fwd".equals(derivativeType)) {
+			int cashflowTimeIndex = (int)(maturity / timeStep);
+			return new ForwardInterestRate<DayTimePoint>(scenarioCalendar[cashflowTimeIndex], tenor, scenarioCalendar);
+		} else {
+			System.err.println("Unknown derivative type: " + derivativeType);
+			return null;
+		}
+	}
+	
 	@Override
 	public Double getTimeStep() {
 		return timeStep;
@@ -261,6 +542,91 @@ public class PropertiesHJMJobConfiguration implements HJMJob.Configuration, Prop
 		return stochasticGeneratorClass;
 	}
 
+	@Override
+	public Integer getRandomSeed() {
+		return randomSeed;
+	}
+
+	@Override
+	public Integer getRandomStream() {
+		return randomStream;
+	}
+
+	@Override
+	public Integer getNumberOfThreads() {
+		return numberOfThreads;
+	}
+
+	@Override
+	public boolean isAntitheticPaths() {
+		return antitheticPaths;
+	}
+
+	@Override
+	public ZCB<DayTimePoint> getControlVariate() {
+		return controlVariate;
+	}
+
+	@Override
+	public Integer getReplications() {
+		return replications;
+	}
+
+	@Override
+	public Integer getRegressionPaths() {
+		return regressionPaths;
+	}
+
+	@Override
+	public Integer getRegressionDegree() {
+		return regressionDegree;
+	}
+
+	@Override
+	public boolean isStreamingScenarios() {
+		return streamingScenarios;
+	}
+
+	@Override
+	public Integer getBatchSize() {
+		return batchSize;
+	}
+
+	@Override
+	public File getCheckpointFile() {
+		return checkpointFile;
+	}
+
+	@Override
+	public Integer getCheckpointInterval() {
+		return checkpointInterval;
+	}
+
+	@Override
+	public File getShardDirectory() {
+		return shardDirectory;
+	}
+
+	@Override
+	public boolean isShardCoordinator() {
+		return shardCoordinator;
+	}
+
+	@Override
+	public Integer getNumberOfShards() {
+		return numberOfShards;
+	}
+
+	@Override
+	public Integer getShardRoundSize() {
+		return shardRoundSize;
+	}
+
+	@Override
+	public long getShardTimeout() {
+		return shardTimeout;
+	}
+
 	@Override
 	public CurveTimeSeriesOperator<DayTimePoint> getDerivative() {
 		return derivative;
@@ -0,0 +1,23 @@
+package com.luigisgro.cqf.montecarlo;
+
+import com.luigisgro.cqf.curve.CurveTimeSeries;
+import com.luigisgro.cqf.curve.TimePoint;
+
+/**
+ * A {@link MonteCarloEvaluator} accepting pairs of antithetic scenarios, driven by opposite random vectors.
+ * The average of the two evaluations is accumulated as a single sample, so that the number of iterations
+ * and the standard error refer to the pairs
+ * @author Luigi Sgro
+ *
+ * @param <T>
+ */
+public interface AntitheticMonteCarloEvaluator<T extends TimePoint> extends MonteCarloEvaluator<T> {
+
+	/**
+	 * Same as {@link MonteCarloEvaluator#evaluateAndAccumulate(CurveTimeSeries)}, for a pair of antithetic scenarios
+	 * @param scenario A scenario
+	 * @param antitheticScenario The scenario driven by the opposite random vectors
+	 * @return The average of the evaluations of the two scenarios
+	 */
+	double evaluateAndAccumulate(CurveTimeSeries<T> scenario, CurveTimeSeries<T> antitheticScenario);
+}
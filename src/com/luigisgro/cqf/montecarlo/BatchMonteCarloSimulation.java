@@ -0,0 +1,172 @@
+package com.luigisgro.cqf.montecarlo;
+
+import com.luigisgro.cqf.curve.ArrayCurveTimeSeries;
+import com.luigisgro.cqf.curve.Curve;
+import com.luigisgro.cqf.curve.TimePoint;
+
+/**
+ * A {@link MonteCarloSimulation} advancing a batch of paths at once with a {@link BatchMultiFactorModel}.
+ * At each step the curves of all the paths of the batch are stored tenor by tenor, so that the model
+ * runs simple loops over contiguous arrays, then they are copied into one scenario per path, and the scenarios
+ * are fed to the evaluator one at a time as in the base simulation.
+ * Each path consumes the same random vectors, in the same order, as in the base simulation, so the results are identical.
+ * When the evaluator is a {@link MergeableMonteCarloEvaluator}, the last batch is shortened to the remaining
+ * number of iterations, so that no random vectors are wasted
+ * @author Luigi Sgro
+ *
+ * @param <T>
+ */
+public class BatchMonteCarloSimulation<T extends TimePoint> extends MonteCarloSimulation<T> {
+	/**
+	 * Number of paths advanced at once when not specified
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 32;
+	private BatchMultiFactorModel batchModel;
+	private MonteCarloEvaluator<T> evaluator;
+	private int numberOfSteps;
+	private double timeStep;
+	private int batchSize;
+
+	/**
+	 * Creates a new batch Monte Carlo simulation framework, with the default batch size
+	 * @param batchModel The model that provides all the calculation to generate scenarios
+	 * @param evaluator The object responsible for evaluating the derivative value and stop the simulation
+	 * @param randomVectorGenerator A generator to feed the model with suitably distributed vectors
+	 * @param baseScenario The starting point for the simulation
+	 * @param pointDates The points that define the time horizon of the simulation
+	 * @param timeStep The time step (fraction of year) to be used in the simulation
+	 */
+	public BatchMonteCarloSimulation(BatchMultiFactorModel batchModel,
+			MonteCarloEvaluator<T> evaluator,
+			RandomVectorGenerator randomVectorGenerator,
+			Curve baseScenario,
+			T[] pointDates,
+			double timeStep) {
+		this(batchModel, evaluator, randomVectorGenerator, baseScenario, pointDates, timeStep, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Creates a new batch Monte Carlo simulation framework
+	 * @param batchModel The model that provides all the calculation to generate scenarios
+	 * @param evaluator The object responsible for evaluating the derivative value and stop the simulation
+	 * @param randomVectorGenerator A generator to feed the model with suitably distributed vectors
+	 * @param baseScenario The starting point for the simulation
+	 * @param pointDates The points that define the time horizon of the simulation
+	 * @param timeStep The time step (fraction of year) to be used in the simulation
+	 * @param batchSize The number of paths advanced at once
+	 */
+	public BatchMonteCarloSimulation(BatchMultiFactorModel batchModel,
+			MonteCarloEvaluator<T> evaluator,
+			RandomVectorGenerator randomVectorGenerator,
+			Curve baseScenario,
+			T[] pointDates,
+			double timeStep,
+			int batchSize) {
+		super(batchModel, evaluator, randomVectorGenerator, baseScenario, pointDates, timeStep);
+		if (batchSize < 1)
+			throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+		this.batchModel = batchModel;
+		this.evaluator = evaluator;
+		this.numberOfSteps = pointDates.length - 1;
+		this.timeStep = timeStep;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Antithetic paths are not available in batch mode
+	 * @param antitheticPaths Must be false
+	 */
+	@Override
+	public void setAntitheticPaths(boolean antitheticPaths) {
+		if (antitheticPaths)
+			throw new IllegalArgumentException("Antithetic paths are not supported by the batch simulation");
+	}
+
+	/**
+	 * Fills a batch of scenarios with new paths, in the order the random vectors are drawn from the generator
+	 * @param scenarios The scenarios to be overwritten, from the first one
+	 * @param numberOfPaths The number of scenarios to be filled
+	 * @param generator The generator of the random vectors
+	 * @param randomBlocks One buffer obtained from {@link #createRandomBlock()} for each path
+	 * @param randomVectors A buffer for the random vectors of one step: element [j][p] is the component j for the path p
+	 * @param curves A buffer for the curves of one step: element [i][p] is the point of tenor i for the path p
+	 * @param nextCurves A second buffer like curves
+	 */
+	protected void fillScenarios(ArrayCurveTimeSeries<T>[] scenarios, int numberOfPaths, RandomVectorGenerator generator, double[][] randomBlocks, double[][] randomVectors, double[][] curves, double[][] nextCurves) {
+		double[] basePoints = getBaseScenario().getPoints();
+		int numberOfTenors = basePoints.length;
+		int dimension = batchModel.getDimension();
+		for (int p = 0; p < numberOfPaths; p++) {
+			fillRandomBlock(generator, randomBlocks[p]);
+			System.arraycopy(basePoints, 0, scenarios[p].getPoints(), 0, numberOfTenors);
+		}
+		for (int i = 0; i < numberOfTenors; i++)
+			for (int p = 0; p < numberOfPaths; p++)
+				curves[i][p] = basePoints[i];
+		for (int step = 1; step <= numberOfSteps; step++) {
+			int randomOffset = (step - 1) * dimension;
+			for (int j = 0; j < dimension; j++) {
+				double[] randomComponent = randomVectors[j];
+				for (int p = 0; p < numberOfPaths; p++)
+					randomComponent[p] = randomBlocks[p][randomOffset + j];
+			}
+			batchModel.nextCurves(curves, nextCurves, randomVectors, numberOfPaths, timeStep);
+			double[][] swap = curves;
+			curves = nextCurves;
+			nextCurves = swap;
+			// copy the new curves into the scenarios
+			int offset = step * numberOfTenors;
+			for (int p = 0; p < numberOfPaths; p++) {
+				double[] points = scenarios[p].getPoints();
+				for (int i = 0; i < numberOfTenors; i++)
+					points[offset + i] = curves[i][p];
+			}
+		}
+		for (int p = 0; p < numberOfPaths; p++)
+			scenarios[p].pathChanged();
+	}
+
+	/**
+	 * This method executes a complete Monte Carlo simulation, generating the scenarios a batch at a time,
+	 * and stops as soon as the evaluator is satisfied, even in the middle of a batch.
+	 * Checkpoints are saved only at the end of a batch, when all the random vectors drawn have been used
+	 * @return The number of completed iterations, including the ones restored from a checkpoint
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Override
+	public int simulate() {
+		int numberOfTenors = getBaseScenario().getPoints().length;
+		ArrayCurveTimeSeries<T>[] scenarios = (ArrayCurveTimeSeries<T>[])(new ArrayCurveTimeSeries[batchSize]);
+		double[][] randomBlocks = new double[batchSize][];
+		for (int p = 0; p < batchSize; p++) {
+			scenarios[p] = createScenarioBuffer();
+			randomBlocks[p] = createRandomBlock();
+		}
+		double[][] randomVectors = new double[batchModel.getDimension()][batchSize];
+		double[][] curves = new double[numberOfTenors][batchSize];
+		double[][] nextCurves = new double[numberOfTenors][batchSize];
+
+		int numOfIterations = restoreCheckpoint();
+		while (evaluator.moreIterationsNeeded()) {
+			int previousIterations = numOfIterations;
+			int numberOfPaths = batchSize;
+			if (evaluator instanceof MergeableMonteCarloEvaluator)
+				numberOfPaths = Math.max(Math.min(numberOfPaths, ((MergeableMonteCarloEvaluator<T>)evaluator).remainingIterations()), 1);
+			fillScenarios(scenarios, numberOfPaths, getStochasticVectorGenerator(), randomBlocks, randomVectors, curves, nextCurves);
+			for (int p = 0; p < numberOfPaths && evaluator.moreIterationsNeeded(); p++) {
+				evaluator.evaluateAndAccumulate(scenarios[p]);
+				if ((numOfIterations + 1) % 1000 == 0) {
+					evaluator.printProgress();
+				}
+				numOfIterations++;
+			}
+			if (numOfIterations - previousIterations == numberOfPaths) {
+				if (evaluator.moreIterationsNeeded())
+					checkpoint(previousIterations, numOfIterations);
+				else
+					saveCheckpoint(numOfIterations);
+			}
+		}
+		return numOfIterations;
+	}
+}
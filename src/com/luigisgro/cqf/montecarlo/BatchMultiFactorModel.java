@@ -0,0 +1,21 @@
+package com.luigisgro.cqf.montecarlo;
+
+/**
+ * A {@link MultiFactorModel} able to advance a batch of paths at once. The states of the paths are stored
+ * tenor by tenor: each array holds the same point of the curve for all the paths of the batch, so that the
+ * evolution is a sequence of simple loops over contiguous arrays, that the compiler can vectorise
+ * @author Luigi Sgro
+ *
+ */
+public interface BatchMultiFactorModel extends MultiFactorModel {
+	/**
+	 * Batch version of {@link #nextCurve(double[], int, double[], int, double[], int, double)}: the results for each path
+	 * must be the same as the ones of the single path evolution
+	 * @param currentCurves The current curves: element [i][p] is the point of tenor i of the path p
+	 * @param nextCurves The arrays to be filled with the next curves, with the same layout. They must not be the same as the current ones
+	 * @param randomVectors The vectors driving the evolution: element [j][p] is the component j of the vector of the path p
+	 * @param numberOfPaths The number of paths to be advanced, from the first element of each array
+	 * @param timeStep The fraction of year from one state to the next
+	 */
+	void nextCurves(double[][] currentCurves, double[][] nextCurves, double[][] randomVectors, int numberOfPaths, double timeStep);
+}
@@ -0,0 +1,24 @@
+package com.luigisgro.cqf.montecarlo;
+
+/**
+ * A {@link RandomVectorGenerator} able to write many vectors at once into an array provided by the caller,
+ * typically all the vectors driving a complete path. Filling a block produces the same values as
+ * the same number of calls to {@link #generateNextVector()}, without allocating memory
+ * @author Luigi Sgro
+ *
+ */
+public interface BlockRandomVectorGenerator extends RandomVectorGenerator {
+
+	/**
+	 * @return The number of components of each vector
+	 */
+	int getDimension();
+
+	/**
+	 * Writes the next vectors of the sequence one after the other: the component j of the vector i
+	 * is written at position i * dimension + j
+	 * @param block The array to be filled, of length at least numberOfVectors * dimension
+	 * @param numberOfVectors The number of vectors to be generated
+	 */
+	void generateNextBlock(double[] block, int numberOfVectors);
+}
@@ -0,0 +1,222 @@
+package com.luigisgro.cqf.montecarlo;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.luigisgro.cqf.curve.CurveTimeSeries;
+import com.luigisgro.cqf.curve.CurveTimeSeriesOperator;
+import com.luigisgro.cqf.curve.FixingSchedule;
+import com.luigisgro.cqf.curve.Fixings;
+import com.luigisgro.cqf.curve.StreamingCurveTimeSeriesOperator;
+import com.luigisgro.cqf.curve.TimePoint;
+
+/**
+ * Evaluator of a book of derivatives on the same scenarios: each scenario is evaluated by all the operators,
+ * so that the cost of generating the paths is shared by the whole book.
+ * Mean and standard error are calculated for each instrument by {@link SampleStatistics}, as in {@link StandardErrorEvaluator},
+ * and the simulation stops when the standard error of the worst instrument falls below the given threshold,
+ * or at the maximum number of iterations. The standard errors are checked every given number of iterations.
+ * The result of the evaluator is the value of the whole book, i.e. the sum of the values of the instruments
+ * @author Luigi Sgro
+ *
+ * @param <T>
+ */
+public class BookEvaluator<T extends TimePoint> implements MergeableMonteCarloEvaluator<T>, StreamingMonteCarloEvaluator<T>, AntitheticMonteCarloEvaluator<T>, Checkpointable {
+	private final List<CurveTimeSeriesOperator<T>> operators;
+	private final double stdErrThreshold;
+	private final int maxNumberOfIterations;
+	private SampleStatistics statistics;
+	private final double[] evaluations;
+
+	/**
+	 * Creates a new evaluator
+	 * @param operators The derivatives of the book
+	 * @param stdErrThreshold The threshold of standard error, for every instrument, considered acceptable for terminating the simulation
+	 * @param maxNumberOfIterations The maximum number of iteration to be performed
+	 */
+	public BookEvaluator(List<? extends CurveTimeSeriesOperator<T>> operators, Double stdErrThreshold, Integer maxNumberOfIterations) {
+		if (operators.isEmpty())
+			throw new IllegalArgumentException("The book must contain at least one instrument");
+		this.operators = new ArrayList<CurveTimeSeriesOperator<T>>(operators);
+		this.stdErrThreshold = stdErrThreshold;
+		this.maxNumberOfIterations = maxNumberOfIterations;
+		statistics = new SampleStatistics(operators.size());
+		evaluations = new double[operators.size()];
+	}
+
+	/**
+	 * @param checkInterval The number of iterations between two checks of the standard errors
+	 */
+	public void setCheckInterval(int checkInterval) {
+		statistics.setCheckInterval(checkInterval);
+	}
+
+	/**
+	 * @return The number of instruments of the book
+	 */
+	public int getNumberOfInstruments() {
+		return operators.size();
+	}
+
+	/**
+	 * @param instrument The index of the instrument in the book
+	 * @return The derivative at the given position in the book
+	 */
+	public CurveTimeSeriesOperator<T> getInstrument(int instrument) {
+		return operators.get(instrument);
+	}
+
+	/**
+	 * Accumulates the evaluations of the instruments in the current iteration
+	 * @return The value of the book
+	 */
+	private double accumulate() {
+		statistics.accumulate(evaluations);
+		double bookEvaluation = 0.0;
+		for (int i = 0; i < evaluations.length; i++)
+			bookEvaluation += evaluations[i];
+		return bookEvaluation;
+	}
+
+	@Override
+	public double evaluateAndAccumulate(CurveTimeSeries<T> scenario) {
+		for (int i = 0; i < evaluations.length; i++)
+			evaluations[i] = operators.get(i).evaluate(scenario);
+		return accumulate();
+	}
+
+	@Override
+	public double evaluateAndAccumulate(CurveTimeSeries<T> scenario, CurveTimeSeries<T> antitheticScenario) {
+		for (int i = 0; i < evaluations.length; i++) {
+			CurveTimeSeriesOperator<T> operator = operators.get(i);
+			evaluations[i] = 0.5 * (operator.evaluate(scenario) + operator.evaluate(antitheticScenario));
+		}
+		return accumulate();
+	}
+
+	@Override
+	public void registerFixings(FixingSchedule<T> schedule) {
+		for (CurveTimeSeriesOperator<T> operator : operators) {
+			if (!(operator instanceof StreamingCurveTimeSeriesOperator))
+				throw new IllegalStateException("The operator " + operator.getClass().getName() + " can not be evaluated in streaming mode");
+			((StreamingCurveTimeSeriesOperator<T>)operator).registerFixings(schedule);
+		}
+	}
+
+	@Override
+	public double evaluateAndAccumulate(Fixings fixings) {
+		for (int i = 0; i < evaluations.length; i++)
+			evaluations[i] = ((StreamingCurveTimeSeriesOperator<T>)operators.get(i)).evaluate(fixings);
+		return accumulate();
+	}
+
+	/**
+	 * @param instrument The index of the instrument in the book
+	 * @return The estimated value of the instrument
+	 */
+	public double getResult(int instrument) {
+		return statistics.getMean(instrument);
+	}
+
+	/**
+	 * @param instrument The index of the instrument in the book
+	 * @return An estimate of the current square standard error of the value of the instrument
+	 */
+	public double squareStdErr(int instrument) {
+		return statistics.squareStdErr(instrument);
+	}
+
+	/**
+	 * @return The index of the instrument with the largest standard error
+	 */
+	public int getWorstInstrument() {
+		return statistics.getWorstQuantity();
+	}
+
+	/**
+	 * The standard errors are only checked after the first 100 iterations, and then every check interval:
+	 * between two checks the outcome of the last one is returned
+	 */
+	@Override
+	public boolean moreIterationsNeeded() {
+		if (statistics.getNumberOfIterations() >= maxNumberOfIterations)
+			return false;
+		if (statistics.isCheckDue())
+			statistics.check(squareStdErr(getWorstInstrument()), stdErrThreshold, maxNumberOfIterations);
+		return !statistics.isConverged();
+	}
+
+	/**
+	 * Predicts the total number of iterations needed to bring the standard error of every instrument below the threshold,
+	 * assuming that the variances stay at their current estimates
+	 * @return The predicted number of iterations, or {@link Integer#MAX_VALUE} if the threshold can not be reached
+	 */
+	public int getPredictedIterations() {
+		return statistics.getPredictedIterations(squareStdErr(getWorstInstrument()), stdErrThreshold);
+	}
+
+	/**
+	 * @return The predicted number of iterations still needed, limited by the maximum number of iterations
+	 */
+	public int getPredictedRemainingIterations() {
+		return Math.min(getPredictedIterations() - statistics.getNumberOfIterations(), remainingIterations());
+	}
+
+	/**
+	 * Estimates the time needed by the remaining iterations from the speed of the iterations performed so far
+	 * @return The estimated time to completion, in milliseconds, or -1 if no iteration has been timed yet
+	 */
+	public long getEstimatedTimeToCompletion() {
+		return statistics.getEstimatedTime(getPredictedRemainingIterations());
+	}
+
+	/**
+	 * The value of the whole book
+	 */
+	@Override
+	public double getResult() {
+		double bookValue = 0.0;
+		for (int i = 0; i < evaluations.length; i++)
+			bookValue += getResult(i);
+		return bookValue;
+	}
+
+	@Override
+	public void printProgress() {
+		int worst = getWorstInstrument();
+		long timeToCompletion = getEstimatedTimeToCompletion();
+		System.out.println("Iteration: " + statistics.getNumberOfIterations() + "; book value: " + getResult() + "; worst std error: " + Math.sqrt(squareStdErr(worst)) + " (instrument " + (worst + 1) + ")"
+				+ "; predicted remaining iterations: " + getPredictedRemainingIterations()
+				+ (timeToCompletion >= 0 ? "; ETA: " + timeToCompletion / 1000 + "s" : ""));
+	}
+
+	@Override
+	public MergeableMonteCarloEvaluator<T> createPartialEvaluator() {
+		BookEvaluator<T> partialEvaluator = new BookEvaluator<T>(operators, stdErrThreshold, maxNumberOfIterations);
+		partialEvaluator.statistics = statistics.createEmpty();
+		return partialEvaluator;
+	}
+
+	@Override
+	public void merge(MergeableMonteCarloEvaluator<T> partialEvaluator) {
+		statistics.merge(((BookEvaluator<T>)partialEvaluator).statistics);
+	}
+
+	@Override
+	public int remainingIterations() {
+		return Math.max(maxNumberOfIterations - statistics.getNumberOfIterations(), 0);
+	}
+
+	@Override
+	public void writeState(DataOutput out) throws IOException {
+		statistics.writeState(out);
+	}
+
+	@Override
+	public void readState(DataInput in) throws IOException {
+		statistics.readState(in);
+	}
+}
@@ -0,0 +1,97 @@
+package com.luigisgro.cqf.montecarlo;
+
+/**
+ * Brownian bridge construction of a discretised Brownian motion with unit time steps.
+ * The first normal variate determines the final point of the path, the second one the point
+ * in the middle, and so on, bisecting the intervals. When the variates come from a low-discrepancy
+ * sequence, the first (most uniform) coordinates determine most of the variance of the path
+ * @author Luigi Sgro
+ *
+ */
+public class BrownianBridge {
+	private int numberOfSteps;
+	private int[] leftIndex;
+	private int[] rightIndex;
+	private int[] bridgeIndex;
+	private double[] leftWeight;
+	private double[] rightWeight;
+	private double[] stdDev;
+	private double[] path;
+
+	/**
+	 * Creates the construction for a given number of steps
+	 * @param numberOfSteps The number of steps of the path
+	 */
+	public BrownianBridge(int numberOfSteps) {
+		if (numberOfSteps < 1)
+			throw new IllegalArgumentException("Number of steps must be positive: " + numberOfSteps);
+		this.numberOfSteps = numberOfSteps;
+		leftIndex = new int[numberOfSteps];
+		rightIndex = new int[numberOfSteps];
+		bridgeIndex = new int[numberOfSteps];
+		leftWeight = new double[numberOfSteps];
+		rightWeight = new double[numberOfSteps];
+		stdDev = new double[numberOfSteps];
+		path = new double[numberOfSteps];
+		// the point at position i is at time i + 1
+		int[] map = new int[numberOfSteps];
+		map[numberOfSteps - 1] = 1;
+		bridgeIndex[0] = numberOfSteps - 1;
+		stdDev[0] = Math.sqrt(numberOfSteps);
+		int j = 0;
+		for (int i = 1; i < numberOfSteps; i++) {
+			// first free point, and the next filled one
+			while (map[j] != 0)
+				j++;
+			int k = j;
+			while (map[k] == 0)
+				k++;
+			int l = j + ((k - 1 - j) >> 1);
+			map[l] = i + 1;
+			bridgeIndex[i] = l;
+			leftIndex[i] = j;
+			rightIndex[i] = k;
+			double leftTime = j; // time of the point at position j - 1, or 0
+			double time = l + 1;
+			double rightTime = k + 1;
+			leftWeight[i] = (rightTime - time) / (rightTime - leftTime);
+			rightWeight[i] = (time - leftTime) / (rightTime - leftTime);
+			stdDev[i] = Math.sqrt((time - leftTime) * (rightTime - time) / (rightTime - leftTime));
+			j = k + 1;
+			if (j >= numberOfSteps)
+				j = 0;
+		}
+	}
+
+	/**
+	 * @return The number of steps of the path
+	 */
+	public int getNumberOfSteps() {
+		return numberOfSteps;
+	}
+
+	/**
+	 * Transforms independent standard normal variates into the increments of a Brownian path.
+	 * The increments are again independent standard normal variates, but their order is changed
+	 * @param normals The input variates, read at offset + i * stride, for i from 0 to the number of steps - 1
+	 * @param offset The position of the first input variate
+	 * @param stride The distance between two consecutive input variates
+	 * @param increments The output array, written at the same positions of the input
+	 */
+	public void buildIncrements(double[] normals, int offset, int stride, double[] increments) {
+		path[numberOfSteps - 1] = stdDev[0] * normals[offset];
+		for (int i = 1; i < numberOfSteps; i++) {
+			int j = leftIndex[i];
+			int k = rightIndex[i];
+			int l = bridgeIndex[i];
+			double z = normals[offset + i * stride];
+			if (j > 0)
+				path[l] = leftWeight[i] * path[j - 1] + rightWeight[i] * path[k] + stdDev[i] * z;
+			else
+				path[l] = rightWeight[i] * path[k] + stdDev[i] * z;
+		}
+		increments[offset] = path[0];
+		for (int i = 1; i < numberOfSteps; i++)
+			increments[offset + i * stride] = path[i] - path[i - 1];
+	}
+}
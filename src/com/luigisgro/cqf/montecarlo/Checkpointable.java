@@ -0,0 +1,28 @@
+package com.luigisgro.cqf.montecarlo;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * An object of the simulation whose state can be saved to a checkpoint and restored later,
+ * so that an interrupted simulation can be resumed with the same results as an uninterrupted one
+ * @author Luigi Sgro
+ * @see MonteCarloSimulation#setCheckpoint(java.io.File, int)
+ */
+public interface Checkpointable {
+	/**
+	 * Writes the current state in binary form
+	 * @param out The destination of the state
+	 * @throws IOException If the state can not be written
+	 */
+	void writeState(DataOutput out) throws IOException;
+
+	/**
+	 * Replaces the current state with one written by {@link #writeState(DataOutput)}
+	 * on an object created with the same parameters
+	 * @param in The source of the state
+	 * @throws IOException If the state can not be read
+	 */
+	void readState(DataInput in) throws IOException;
+}
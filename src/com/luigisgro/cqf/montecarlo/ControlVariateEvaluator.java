@@ -0,0 +1,173 @@
+package com.luigisgro.cqf.montecarlo;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import com.luigisgro.cqf.curve.CurveTimeSeries;
+import com.luigisgro.cqf.curve.CurveTimeSeriesOperator;
+import com.luigisgro.cqf.curve.FixingSchedule;
+import com.luigisgro.cqf.curve.Fixings;
+import com.luigisgro.cqf.curve.StreamingCurveTimeSeriesOperator;
+import com.luigisgro.cqf.curve.TimePoint;
+
+/**
+ * A {@link StandardErrorEvaluator} using a control variate: a second operator, evaluated on the same scenarios,
+ * whose expected value is known. The result is the sample mean of the derivative corrected by the error
+ * of the sample mean of the control, scaled by the regression coefficient of the derivative on the control
+ * estimated from the same samples. The standard error is the one of the residuals of the regression,
+ * so the simulation stops earlier when derivative and control are strongly correlated.
+ * Variance of the control and covariance are accumulated with the Welford algorithm, like the variance of the derivative
+ * @author Luigi Sgro
+ *
+ * @param <T>
+ */
+public class ControlVariateEvaluator<T extends TimePoint> extends StandardErrorEvaluator<T> {
+	private final CurveTimeSeriesOperator<T> control;
+	private Double controlMean;
+	private double meanOfControls = 0.0;
+	private double sumOfSquaredControlDeviations = 0.0;
+	private double sumOfProductsOfDeviations = 0.0;
+
+	/**
+	 * Creates a new evaluator. The expected value of the control must be set before the simulation
+	 * @param operator The derivative to be priced
+	 * @param control The control variate
+	 * @param stdErrdThreshold The threshold of standard error considered acceptable for terminating the simulation
+	 * @param maxNumberOfIterations The maximum number of iteration to be performed
+	 */
+	public ControlVariateEvaluator(CurveTimeSeriesOperator<T> operator, CurveTimeSeriesOperator<T> control, Double stdErrdThreshold, Integer maxNumberOfIterations) {
+		super(operator, stdErrdThreshold, maxNumberOfIterations);
+		this.control = control;
+	}
+
+	/**
+	 * @return The control variate
+	 */
+	public CurveTimeSeriesOperator<T> getControl() {
+		return control;
+	}
+
+	/**
+	 * @param controlMean The exact expected value of the control
+	 */
+	public void setControlMean(double controlMean) {
+		this.controlMean = controlMean;
+	}
+
+	/**
+	 * Adds the evaluations of derivative and control in a scenario to the accumulators
+	 * @param scenarioEvaluation The value of the derivative in one scenario
+	 * @param controlEvaluation The value of the control in the same scenario
+	 */
+	protected void accumulate(double scenarioEvaluation, double controlEvaluation) {
+		double deviation = scenarioEvaluation - statistics.getMean(0);
+		accumulate(scenarioEvaluation);
+		double controlDeviation = controlEvaluation - meanOfControls;
+		meanOfControls += controlDeviation / numberOfIterations;
+		sumOfSquaredControlDeviations += controlDeviation * (controlEvaluation - meanOfControls);
+		sumOfProductsOfDeviations += deviation * (controlEvaluation - meanOfControls);
+	}
+
+	@Override
+	public double evaluateAndAccumulate(CurveTimeSeries<T> scenario) {
+		double scenarioEvaluation = operator.evaluate(scenario);
+		accumulate(scenarioEvaluation, control.evaluate(scenario));
+		return scenarioEvaluation;
+	}
+
+	@Override
+	public double evaluateAndAccumulate(CurveTimeSeries<T> scenario, CurveTimeSeries<T> antitheticScenario) {
+		double scenarioEvaluation = 0.5 * (operator.evaluate(scenario) + operator.evaluate(antitheticScenario));
+		accumulate(scenarioEvaluation, 0.5 * (control.evaluate(scenario) + control.evaluate(antitheticScenario)));
+		return scenarioEvaluation;
+	}
+
+	@Override
+	public void registerFixings(FixingSchedule<T> schedule) {
+		super.registerFixings(schedule);
+		if (!(control instanceof StreamingCurveTimeSeriesOperator))
+			throw new IllegalStateException("The control " + control.getClass().getName() + " can not be evaluated in streaming mode");
+		((StreamingCurveTimeSeriesOperator<T>)control).registerFixings(schedule);
+	}
+
+	@Override
+	public double evaluateAndAccumulate(Fixings fixings) {
+		double scenarioEvaluation = ((StreamingCurveTimeSeriesOperator<T>)operator).evaluate(fixings);
+		accumulate(scenarioEvaluation, ((StreamingCurveTimeSeriesOperator<T>)control).evaluate(fixings));
+		return scenarioEvaluation;
+	}
+
+	private double controlVariance() {
+		return sumOfSquaredControlDeviations / numberOfIterations;
+	}
+
+	private double covariance() {
+		return sumOfProductsOfDeviations / numberOfIterations;
+	}
+
+	/**
+	 * @return The estimate of the regression coefficient of the derivative on the control
+	 */
+	public double getControlCoefficient() {
+		double controlVariance = controlVariance();
+		return controlVariance > 0 ? covariance() / controlVariance : 0.0;
+	}
+
+	@Override
+	public double getResult() {
+		if (controlMean == null)
+			throw new IllegalStateException("Expected value of the control variate not set");
+		return statistics.getMean(0) - getControlCoefficient() * (meanOfControls - controlMean);
+	}
+
+	@Override
+	public double squareStdErr() {
+		double variance = statistics.getSumOfSquaredDeviations(0) / numberOfIterations;
+		double controlVariance = controlVariance();
+		if (controlVariance > 0) {
+			double covariance = covariance();
+			variance -= covariance * covariance / controlVariance;
+		}
+		return Math.abs(variance) / numberOfIterations;
+	}
+
+	@Override
+	public MergeableMonteCarloEvaluator<T> createPartialEvaluator() {
+		ControlVariateEvaluator<T> partialEvaluator = new ControlVariateEvaluator<T>(operator, control, stdErrdThreshold, maxNumberOfIterations);
+		partialEvaluator.controlMean = controlMean;
+		partialEvaluator.statistics = statistics.createEmpty();
+		return partialEvaluator;
+	}
+
+	@Override
+	public void merge(MergeableMonteCarloEvaluator<T> partialEvaluator) {
+		ControlVariateEvaluator<T> partial = (ControlVariateEvaluator<T>)partialEvaluator;
+		double deviation = partial.statistics.getMean(0) - statistics.getMean(0);
+		super.merge(partialEvaluator);
+		if (numberOfIterations == 0)
+			return;
+		double controlDeviation = partial.meanOfControls - meanOfControls;
+		double weight = (double)partial.numberOfIterations / numberOfIterations;
+		double previousIterations = numberOfIterations - partial.numberOfIterations;
+		meanOfControls += controlDeviation * weight;
+		sumOfSquaredControlDeviations += partial.sumOfSquaredControlDeviations + controlDeviation * controlDeviation * previousIterations * weight;
+		sumOfProductsOfDeviations += partial.sumOfProductsOfDeviations + deviation * controlDeviation * previousIterations * weight;
+	}
+
+	@Override
+	public void writeState(DataOutput out) throws IOException {
+		super.writeState(out);
+		out.writeDouble(meanOfControls);
+		out.writeDouble(sumOfSquaredControlDeviations);
+		out.writeDouble(sumOfProductsOfDeviations);
+	}
+
+	@Override
+	public void readState(DataInput in) throws IOException {
+		super.readState(in);
+		meanOfControls = in.readDouble();
+		sumOfSquaredControlDeviations = in.readDouble();
+		sumOfProductsOfDeviations = in.readDouble();
+	}
+}
@@ -1,21 +1,31 @@
 package com.luigisgro.cqf.montecarlo;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import com.luigisgro.cqf.curve.CurveTimeSeries;
 import com.luigisgro.cqf.curve.CurveTimeSeriesOperator;
+import com.luigisgro.cqf.curve.FixingSchedule;
+import com.luigisgro.cqf.curve.Fixings;
+import com.luigisgro.cqf.curve.StreamingCurveTimeSeriesOperator;
 import com.luigisgro.cqf.curve.TimePoint;
 
 /**
- * A simple evaluator that always stop at the given number of iterations
+ * A simple evaluator that always stop at the given number of iterations.
+ * It can be used in streaming mode when the operator is a {@link StreamingCurveTimeSeriesOperator},
+ * and with antithetic pairs of scenarios. The evaluations are accumulated in {@link SampleStatistics},
+ * and can be saved to a checkpoint
  * @author Luigi Sgro
  *
  * @param <T>
  */
-public class CurveTimeSeriesOperatorEvaluator<T extends TimePoint> implements MonteCarloEvaluator<T> {
-	private final CurveTimeSeriesOperator<T> operator;
-	private final int maxNumberOfIterations;
+public class CurveTimeSeriesOperatorEvaluator<T extends TimePoint> implements MergeableMonteCarloEvaluator<T>, StreamingMonteCarloEvaluator<T>, AntitheticMonteCarloEvaluator<T>, Checkpointable {
+	protected final CurveTimeSeriesOperator<T> operator;
+	protected final int maxNumberOfIterations;
 	protected int numberOfIterations = 0;
-	protected double accumulator = 0.0;
-	
+	protected SampleStatistics statistics = new SampleStatistics(1);
+
 	/**
 	 * Creates a new evaluator
 	 * @param operator The derivative to be priced
@@ -25,12 +35,41 @@ public class CurveTimeSeriesOperatorEvaluator<T extends TimePoint> implements Mo
 		this.operator = operator;
 		this.maxNumberOfIterations = maxNumberOfIterations;
 	}
-	
+
+	/**
+	 * Adds the evaluation of a scenario to the accumulators
+	 * @param scenarioEvaluation The value of the derivative in one scenario
+	 */
+	protected void accumulate(double scenarioEvaluation) {
+		numberOfIterations++;
+		statistics.accumulate(scenarioEvaluation);
+	}
+
 	@Override
 	public double evaluateAndAccumulate(CurveTimeSeries<T> scenario) {
-		numberOfIterations++;
 		double scenarioEvaluation = operator.evaluate(scenario);
-		accumulator += scenarioEvaluation;
+		accumulate(scenarioEvaluation);
+		return scenarioEvaluation;
+	}
+
+	@Override
+	public double evaluateAndAccumulate(CurveTimeSeries<T> scenario, CurveTimeSeries<T> antitheticScenario) {
+		double scenarioEvaluation = 0.5 * (operator.evaluate(scenario) + operator.evaluate(antitheticScenario));
+		accumulate(scenarioEvaluation);
+		return scenarioEvaluation;
+	}
+
+	@Override
+	public void registerFixings(FixingSchedule<T> schedule) {
+		if (!(operator instanceof StreamingCurveTimeSeriesOperator))
+			throw new IllegalStateException("The operator " + operator.getClass().getName() + " can not be evaluated in streaming mode");
+		((StreamingCurveTimeSeriesOperator<T>)operator).registerFixings(schedule);
+	}
+
+	@Override
+	public double evaluateAndAccumulate(Fixings fixings) {
+		double scenarioEvaluation = ((StreamingCurveTimeSeriesOperator<T>)operator).evaluate(fixings);
+		accumulate(scenarioEvaluation);
 		return scenarioEvaluation;
 	}
 
@@ -41,11 +80,39 @@ public class CurveTimeSeriesOperatorEvaluator<T extends TimePoint> implements Mo
 
 	@Override
 	public double getResult() {
-		return accumulator / numberOfIterations;
+		return statistics.getMean(0);
 	}
 
 	@Override
 	public void printProgress() {
 		System.out.println("Iteration: " + numberOfIterations + "; currentValue: " + getResult());
 	}
+
+	@Override
+	public MergeableMonteCarloEvaluator<T> createPartialEvaluator() {
+		return new CurveTimeSeriesOperatorEvaluator<T>(operator, maxNumberOfIterations);
+	}
+
+	@Override
+	public void merge(MergeableMonteCarloEvaluator<T> partialEvaluator) {
+		CurveTimeSeriesOperatorEvaluator<T> partial = (CurveTimeSeriesOperatorEvaluator<T>)partialEvaluator;
+		numberOfIterations += partial.numberOfIterations;
+		statistics.merge(partial.statistics);
+	}
+
+	@Override
+	public int remainingIterations() {
+		return Math.max(maxNumberOfIterations - numberOfIterations, 0);
+	}
+
+	@Override
+	public void writeState(DataOutput out) throws IOException {
+		statistics.writeState(out);
+	}
+
+	@Override
+	public void readState(DataInput in) throws IOException {
+		statistics.readState(in);
+		numberOfIterations = statistics.getNumberOfIterations();
+	}
 }
@@ -1,18 +1,26 @@
 package com.luigisgro.cqf.montecarlo;
 
-import org.apache.commons.math.random.GaussianRandomGenerator;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
 import org.apache.commons.math.random.JDKRandomGenerator;
-import org.apache.commons.math.random.UncorrelatedRandomVectorGenerator;
 
 /**
  * Basic implementation of {@link RandomVectorGenerator} that uses the native random
- * generator of the Java Virtual Machine
+ * generator of the Java Virtual Machine. Its state can be saved to a checkpoint
  * @author Luigi Sgro
  *
  */
-public class JDKUncorrelatedStandardVectorGenerator implements	RandomVectorGenerator {
+public class JDKUncorrelatedStandardVectorGenerator implements	BlockRandomVectorGenerator, Checkpointable {
 	int dimension = 1;
-	UncorrelatedRandomVectorGenerator generator;
+	Long seed;
+	JDKRandomGenerator generator;
+	double[] vector;
 
 	/**
 	 * Returns the dimension of the model, i.e. the number of stochastic components
@@ -22,10 +30,73 @@ public class JDKUncorrelatedStandardVectorGenerator implements	RandomVectorGener
 		this.dimension = dimension;
 	}
 
+	/**
+	 * Creates a generator that always produces the same sequence for the same seed
+	 * @param dimension The dimension of the model
+	 * @param seed The seed of the underlying random generator
+	 */
+	public JDKUncorrelatedStandardVectorGenerator(Integer dimension, Long seed) {
+		this.dimension = dimension;
+		this.seed = seed;
+	}
+
+	@Override
+	public int getDimension() {
+		return dimension;
+	}
+
+	@Override
+	public void generateNextBlock(double[] block, int numberOfVectors) {
+		if (generator == null) {
+			generator = new JDKRandomGenerator();
+			if (seed != null)
+				generator.setSeed(seed);
+		}
+		int length = numberOfVectors * dimension;
+		for (int i = 0; i < length; i++)
+			block[i] = generator.nextGaussian();
+	}
+
+	/**
+	 * The returned array is reused by the next call
+	 */
 	@Override
 	public double[] generateNextVector() {
-		if (generator == null)
-			generator = new UncorrelatedRandomVectorGenerator(dimension, new GaussianRandomGenerator(new JDKRandomGenerator()));
-		return generator.nextVector();
+		if (vector == null)
+			vector = new double[dimension];
+		generateNextBlock(vector, 1);
+		return vector;
+	}
+
+	@Override
+	public void writeState(DataOutput out) throws IOException {
+		if (generator == null) {
+			out.writeInt(0);
+			return;
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream objectOut = new ObjectOutputStream(bytes);
+		objectOut.writeObject(generator);
+		objectOut.close();
+		out.writeInt(bytes.size());
+		out.write(bytes.toByteArray());
+	}
+
+	@Override
+	public void readState(DataInput in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		if (bytes.length == 0) {
+			generator = null;
+			return;
+		}
+		in.readFully(bytes);
+		ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(bytes));
+		try {
+			generator = (JDKRandomGenerator)objectIn.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Invalid state of the generator [" + e.getMessage() + "]");
+		} finally {
+			objectIn.close();
+		}
 	}
 }
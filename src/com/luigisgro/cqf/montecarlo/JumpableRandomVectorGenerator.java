@@ -0,0 +1,25 @@
+package com.luigisgro.cqf.montecarlo;
+
+/**
+ * A {@link RandomVectorGenerator} whose sequence can be split into non-overlapping substreams.
+ * A simulation can draw one substream for each block of scenarios from a single seeded generator,
+ * so that the result is the same regardless of the number of threads evaluating the blocks
+ * @author Luigi Sgro
+ *
+ */
+public interface JumpableRandomVectorGenerator extends RandomVectorGenerator {
+
+	/**
+	 * Creates a copy of this generator, producing the sequence this generator would produce,
+	 * and then advances this generator far enough that the two sequences never overlap in practice
+	 * @return A new generator, independent of this one
+	 */
+	JumpableRandomVectorGenerator copyAndJump();
+
+	/**
+	 * Advances this generator much further than {@link #copyAndJump()}: the substreams obtained
+	 * after different numbers of long jumps never overlap in practice. It is used to give each
+	 * process of a distributed simulation its own set of substreams
+	 */
+	void longJump();
+}
@@ -0,0 +1,158 @@
+package com.luigisgro.cqf.montecarlo;
+
+import org.apache.commons.math.stat.regression.OLSMultipleLinearRegression;
+
+import com.luigisgro.cqf.curve.CurveTimeSeries;
+import com.luigisgro.cqf.curve.ExercisableCurveTimeSeriesOperator;
+import com.luigisgro.cqf.curve.TimePoint;
+import com.luigisgro.cqf.function.Function;
+import com.luigisgro.cqf.function.Polynomial;
+
+/**
+ * A {@link MonteCarloEvaluator} fitting the exercise rule of an {@link ExercisableCurveTimeSeriesOperator}
+ * with the least squares method of Longstaff and Schwartz.
+ * For each scenario only the discounted value of exercising and the state variable at each exercise date are stored,
+ * so the memory used is bounded by the number of regression paths times the number of exercise dates, regardless of the
+ * length of the scenarios. When all the paths are collected, the dates are processed backwards: the discounted cashflow
+ * of each path, following the rule found for the later dates, is regressed on a polynomial of the state variable over the
+ * paths where exercising has a value, and the path exercises where the value of exercising is not less than the regression.
+ * The rule is then set on the operator, and the price should be estimated by a separate simulation on new scenarios,
+ * since the value on the regression paths is biased by the foresight of the fitted rule
+ * @author Luigi Sgro
+ *
+ * @param <T>
+ */
+public class LongstaffSchwartzRegression<T extends TimePoint> implements MonteCarloEvaluator<T> {
+	private final ExercisableCurveTimeSeriesOperator<T> operator;
+	private final int numberOfPaths;
+	private final int degree;
+	private final int numberOfExerciseDates;
+	private final double[] exerciseValues;
+	private final double[] stateVariables;
+	private int numberOfIterations = 0;
+	private Function[] continuationValues;
+	private double result;
+
+	/**
+	 * Creates a new regression
+	 * @param operator The derivative whose exercise rule is fitted
+	 * @param numberOfPaths The number of scenarios used for the regression
+	 * @param degree The degree of the polynomials in the state variable approximating the value of holding the derivative
+	 */
+	public LongstaffSchwartzRegression(ExercisableCurveTimeSeriesOperator<T> operator, int numberOfPaths, int degree) {
+		if (numberOfPaths <= degree + 1)
+			throw new IllegalArgumentException("Not enough regression paths: " + numberOfPaths + " for polynomials of degree " + degree);
+		this.operator = operator;
+		this.numberOfPaths = numberOfPaths;
+		this.degree = degree;
+		numberOfExerciseDates = operator.getNumberOfExerciseDates();
+		exerciseValues = new double[numberOfPaths * numberOfExerciseDates];
+		stateVariables = new double[numberOfPaths * numberOfExerciseDates];
+	}
+
+	/**
+	 * Stores the values needed by the regression
+	 * @return The largest discounted value of exercising on the scenario
+	 */
+	@Override
+	public double evaluateAndAccumulate(CurveTimeSeries<T> scenario) {
+		if (numberOfIterations >= numberOfPaths)
+			throw new IllegalStateException("All the " + numberOfPaths + " regression paths have already been collected");
+		int offset = numberOfIterations * numberOfExerciseDates;
+		operator.evaluateExercise(scenario, exerciseValues, stateVariables, offset);
+		numberOfIterations++;
+		continuationValues = null;
+		double maxExerciseValue = 0.0;
+		for (int date = 0; date < numberOfExerciseDates; date++)
+			maxExerciseValue = Math.max(maxExerciseValue, exerciseValues[offset + date]);
+		return maxExerciseValue;
+	}
+
+	@Override
+	public boolean moreIterationsNeeded() {
+		return numberOfIterations < numberOfPaths;
+	}
+
+	/**
+	 * Fits the exercise rule on the paths collected so far, by backward induction
+	 * @return The continuation values for each exercise date, null where the paths
+	 * with a value of exercising are too few for the regression
+	 */
+	public Function[] getExerciseRule() {
+		if (continuationValues == null) {
+			if (numberOfIterations == 0)
+				throw new IllegalStateException("No regression paths collected");
+			continuationValues = new Function[numberOfExerciseDates];
+			// discounted cashflow of each path, exercising at the last date when it has a value
+			double[] cashflows = new double[numberOfIterations];
+			int lastDate = numberOfExerciseDates - 1;
+			for (int path = 0; path < numberOfIterations; path++)
+				cashflows[path] = exerciseValues[path * numberOfExerciseDates + lastDate];
+			continuationValues[lastDate] = new Polynomial(new double[] { 0.0 });
+
+			for (int date = lastDate - 1; date >= 0; date--) {
+				int inTheMoney = 0;
+				for (int path = 0; path < numberOfIterations; path++)
+					if (exerciseValues[path * numberOfExerciseDates + date] > 0)
+						inTheMoney++;
+				if (inTheMoney <= degree + 1)
+					continue;
+				double[] continuations = new double[inTheMoney];
+				double[][] regressors = new double[inTheMoney][];
+				int sample = 0;
+				for (int path = 0; path < numberOfIterations; path++) {
+					int index = path * numberOfExerciseDates + date;
+					if (exerciseValues[index] > 0) {
+						continuations[sample] = cashflows[path];
+						regressors[sample] = Polynomial.createRegressors(stateVariables[index], degree);
+						sample++;
+					}
+				}
+				OLSMultipleLinearRegression regression = new OLSMultipleLinearRegression();
+				regression.setNoIntercept(true);
+				regression.newSampleData(continuations, regressors);
+				Polynomial continuationValue = new Polynomial(regression.estimateRegressionParameters());
+				continuationValues[date] = continuationValue;
+				for (int path = 0; path < numberOfIterations; path++) {
+					int index = path * numberOfExerciseDates + date;
+					if (exerciseValues[index] > 0 && exerciseValues[index] >= continuationValue.value(stateVariables[index]))
+						cashflows[path] = exerciseValues[index];
+				}
+			}
+
+			double accumulator = 0.0;
+			for (int path = 0; path < numberOfIterations; path++)
+				accumulator += cashflows[path];
+			result = accumulator / numberOfIterations;
+		}
+		return continuationValues;
+	}
+
+	/**
+	 * Fits the exercise rule and sets it on the operator
+	 */
+	public void applyExerciseRule() {
+		operator.setExerciseRule(getExerciseRule());
+	}
+
+	/**
+	 * @return The value of the derivative on the regression paths, following the fitted exercise rule
+	 */
+	@Override
+	public double getResult() {
+		getExerciseRule();
+		return result;
+	}
+
+	/**
+	 * @return The number of regression paths collected
+	 */
+	public int getNumberOfIterations() {
+		return numberOfIterations;
+	}
+
+	@Override
+	public void printProgress() {
+		System.out.println("Regression path: " + numberOfIterations + " of " + numberOfPaths);
+	}
+}
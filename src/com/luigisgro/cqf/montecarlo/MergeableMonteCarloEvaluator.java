@@ -0,0 +1,34 @@
+package com.luigisgro.cqf.montecarlo;
+
+import com.luigisgro.cqf.curve.TimePoint;
+
+/**
+ * A {@link MonteCarloEvaluator} whose accumulators can be split into independent partial
+ * evaluators and merged back. It is used to run several workers on separate streams of scenarios,
+ * while the stopping criteria is always tested on the merged accumulators
+ * @author Luigi Sgro
+ *
+ * @param <T>
+ */
+public interface MergeableMonteCarloEvaluator<T extends TimePoint> extends MonteCarloEvaluator<T> {
+
+	/**
+	 * Creates a new evaluator for the same derivative and with the same stopping criteria,
+	 * with empty accumulators. The partial evaluator can be used by a different thread
+	 * than the one owning this evaluator
+	 * @return A new evaluator with no iterations
+	 */
+	MergeableMonteCarloEvaluator<T> createPartialEvaluator();
+
+	/**
+	 * Adds the accumulators of a partial evaluator to the ones of this evaluator
+	 * @param partialEvaluator An evaluator obtained from {@link #createPartialEvaluator()}
+	 */
+	void merge(MergeableMonteCarloEvaluator<T> partialEvaluator);
+
+	/**
+	 * @return The maximum number of iterations that can still be performed
+	 * before the simulation is stopped regardless of accuracy
+	 */
+	int remainingIterations();
+}
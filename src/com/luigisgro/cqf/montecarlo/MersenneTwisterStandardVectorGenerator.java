@@ -1,17 +1,30 @@
 package com.luigisgro.cqf.montecarlo;
 
-import org.apache.commons.math.random.GaussianRandomGenerator;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
 import org.apache.commons.math.random.MersenneTwister;
-import org.apache.commons.math.random.UncorrelatedRandomVectorGenerator;
 
 /**
- * Quasi random generator using the Commons Math library to generate Mersenne Twister sequences
+ * Quasi random generator using the Commons Math library to generate Mersenne Twister sequences.
+ * Its state can be saved to a checkpoint: since the normal variates are generated in pairs, and the second
+ * variate of a pair is cached by the library where it can not be saved, a pending variate is drawn when the state is written,
+ * and kept by this generator until the next call
  * @author Luigi Sgro
  * @see <a href="http://commons.apache.org/math/api-2.2/org/apache/commons/math/random/MersenneTwister.html">org.apache.commons.math.random.MersenneTwister</a>
  */
-public class MersenneTwisterStandardVectorGenerator implements	RandomVectorGenerator {
+public class MersenneTwisterStandardVectorGenerator implements	BlockRandomVectorGenerator, Checkpointable {
 	int dimension = 1;
-	UncorrelatedRandomVectorGenerator generator;
+	Long seed;
+	MersenneTwister generator;
+	double[] vector;
+	boolean pendingGaussian = false;
+	double cachedGaussian = Double.NaN;
 
 	/**
 	 * 
@@ -21,10 +34,84 @@ public class MersenneTwisterStandardVectorGenerator implements	RandomVectorGener
 		this.dimension = dimension;
 	}
 
+	/**
+	 * Creates a generator that always produces the same sequence for the same seed
+	 * @param dimension The dimension of the model
+	 * @param seed The seed of the underlying random generator
+	 */
+	public MersenneTwisterStandardVectorGenerator(Integer dimension, Long seed) {
+		this.dimension = dimension;
+		this.seed = seed;
+	}
+
 	@Override
-	public double[] generateNextVector() {
+	public int getDimension() {
+		return dimension;
+	}
+
+	@Override
+	public void generateNextBlock(double[] block, int numberOfVectors) {
 		if (generator == null)
-			generator = new UncorrelatedRandomVectorGenerator(dimension, new GaussianRandomGenerator(new MersenneTwister()));
-		return generator.nextVector();
+			generator = seed == null ? new MersenneTwister() : new MersenneTwister(seed);
+		int length = numberOfVectors * dimension;
+		int start = 0;
+		if (length > 0 && !Double.isNaN(cachedGaussian)) {
+			block[start++] = cachedGaussian;
+			cachedGaussian = Double.NaN;
+		}
+		for (int i = start; i < length; i++)
+			block[i] = generator.nextGaussian();
+		if (((length - start) & 1) == 1)
+			pendingGaussian = !pendingGaussian;
+	}
+
+	/**
+	 * The returned array is reused by the next call
+	 */
+	@Override
+	public double[] generateNextVector() {
+		if (vector == null)
+			vector = new double[dimension];
+		generateNextBlock(vector, 1);
+		return vector;
+	}
+
+	@Override
+	public void writeState(DataOutput out) throws IOException {
+		if (pendingGaussian) {
+			cachedGaussian = generator.nextGaussian();
+			pendingGaussian = false;
+		}
+		out.writeDouble(cachedGaussian);
+		if (generator == null) {
+			out.writeInt(0);
+			return;
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream objectOut = new ObjectOutputStream(bytes);
+		objectOut.writeObject(generator);
+		objectOut.close();
+		out.writeInt(bytes.size());
+		out.write(bytes.toByteArray());
+	}
+
+	@Override
+	public void readState(DataInput in) throws IOException {
+		cachedGaussian = in.readDouble();
+		pendingGaussian = false;
+		byte[] bytes = new byte[in.readInt()];
+		if (bytes.length == 0) {
+			generator = null;
+			return;
+		}
+		in.readFully(bytes);
+		ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(bytes));
+		try {
+			generator = (MersenneTwister)objectIn.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Invalid state of the generator [" + e.getMessage() + "]");
+		} finally {
+			objectIn.close();
+		}
 	}
 }
@@ -18,7 +18,9 @@ public interface MonteCarloEvaluator<T extends TimePoint> {
 	 * describes a complete time series for the underlying. Each time this method
 	 * is called, the evaluator performs an evaluation of the value of the
 	 * derivative, it updates its internal value, and decides if the simulation can stop
-	 * or if it must carry on for another iteration
+	 * or if it must carry on for another iteration.
+	 * The scenario object can be reused by the simulation for the following iterations,
+	 * therefore it must not be retained after the call
 	 * @param scenario The complete time series describing a possible scenario for the underlying
 	 * @return the evaluation of the current scenario
 	 */
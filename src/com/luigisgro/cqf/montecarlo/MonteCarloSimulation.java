@@ -1,13 +1,28 @@
 package com.luigisgro.cqf.montecarlo;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.luigisgro.cqf.curve.ArrayCurveTimeSeries;
 import com.luigisgro.cqf.curve.Curve;
-import com.luigisgro.cqf.curve.CurveTimeSeries;
+import com.luigisgro.cqf.curve.FixingSchedule;
+import com.luigisgro.cqf.curve.Fixings;
 import com.luigisgro.cqf.curve.TimePoint;
 
 /**
  * Skeleton of a Monte Carlo simulation. It implements the logic for creating scenarios based
  * on a {@link MultiFactorModel} and running iteratively until the {@link MonteCarloEvaluator}
- * provided doesn't stop the process
+ * provided doesn't stop the process.
+ * The state of the simulation can be saved periodically to a checkpoint file, so that a simulation
+ * interrupted and started again resumes from the last checkpoint and gives the same results
  * @author Luigi Sgro
  *
  * @param <T>
@@ -20,6 +35,12 @@ public class MonteCarloSimulation<T extends TimePoint> {
 	private RandomVectorGenerator stochasticVectorGenerator;
 	private MultiFactorModel multiFactorModel;
 	private MonteCarloEvaluator<T> evaluator;
+	private boolean antitheticPaths = false;
+	private File checkpointFile;
+	private int checkpointInterval;
+	
+	private static final int CHECKPOINT_MAGIC = 0x434b5054;
+	private static final int CHECKPOINT_VERSION = 1;
 	
 	/**
 	 * Creates a new Monte Carlo simulation framework
@@ -45,34 +66,293 @@ public class MonteCarloSimulation<T extends TimePoint> {
 		this.evaluator = evaluator;
 	}
 	
-	private CurveTimeSeries<T> createScenario() {
-		CurveTimeSeries<T> scenario = new CurveTimeSeries<T>(baseScenario.getTermStructure(), timeStep);
-		scenario.put(pointDates[0], baseScenario);
-		Curve currentCurve = baseScenario;
+	/**
+	 * Enables or disables antithetic paths: when enabled, each random vector drives two scenarios,
+	 * the second one with the opposite vector, and the evaluator receives the pair at once
+	 * @param antitheticPaths true to generate antithetic pairs of scenarios
+	 * @throws IllegalArgumentException if the evaluator can not accept antithetic pairs
+	 */
+	public void setAntitheticPaths(boolean antitheticPaths) {
+		if (antitheticPaths && !(evaluator instanceof AntitheticMonteCarloEvaluator))
+			throw new IllegalArgumentException("The evaluator " + evaluator.getClass().getName() + " does not accept antithetic scenarios");
+		this.antitheticPaths = antitheticPaths;
+	}
+	
+	/**
+	 * @return true if the simulation generates antithetic pairs of scenarios
+	 */
+	public boolean isAntitheticPaths() {
+		return antitheticPaths;
+	}
+	
+	/**
+	 * Enables checkpoints: the number of iterations and the states of evaluator and random generator are written
+	 * to the file every given number of iterations and at the end of the simulation. If the file exists when the simulation
+	 * starts, the simulation resumes from the state it contains
+	 * @param checkpointFile The checkpoint file, rewritten at each checkpoint
+	 * @param checkpointInterval The number of iterations between two checkpoints
+	 * @throws IllegalArgumentException if the evaluator or the generator can not be saved to a checkpoint
+	 */
+	public void setCheckpoint(File checkpointFile, int checkpointInterval) {
+		if (checkpointInterval < 1)
+			throw new IllegalArgumentException("Invalid checkpoint interval: " + checkpointInterval);
+		if (!(evaluator instanceof Checkpointable))
+			throw new IllegalArgumentException("The evaluator " + evaluator.getClass().getName() + " can not be saved to a checkpoint");
+		if (!(stochasticVectorGenerator instanceof Checkpointable))
+			throw new IllegalArgumentException("The generator " + stochasticVectorGenerator.getClass().getName() + " can not be saved to a checkpoint");
+		this.checkpointFile = checkpointFile;
+		this.checkpointInterval = checkpointInterval;
+	}
+	
+	private void writeCheckpointHeader(DataOutputStream out) throws IOException {
+		out.writeInt(CHECKPOINT_MAGIC);
+		out.writeInt(CHECKPOINT_VERSION);
+		out.writeUTF(evaluator.getClass().getName());
+		out.writeUTF(stochasticVectorGenerator.getClass().getName());
+		out.writeInt(multiFactorModel.getDimension());
+		out.writeInt(numberOfSteps);
+		out.writeDouble(timeStep);
+		out.writeBoolean(antitheticPaths);
+	}
+	
+	/**
+	 * Restores the state saved to the checkpoint file, if checkpoints are enabled and the file exists
+	 * @return The number of iterations completed before the checkpoint, 0 if nothing was restored
+	 * @throws IllegalStateException if the file can not be read, or was written by a different simulation
+	 */
+	protected int restoreCheckpoint() {
+		if (checkpointFile == null || !checkpointFile.exists())
+			return 0;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(checkpointFile)));
+			try {
+				ByteArrayOutputStream expected = new ByteArrayOutputStream();
+				writeCheckpointHeader(new DataOutputStream(expected));
+				byte[] header = new byte[expected.size()];
+				in.readFully(header);
+				if (!Arrays.equals(header, expected.toByteArray()))
+					throw new IllegalStateException("The checkpoint " + checkpointFile + " was not written by this simulation");
+				int numOfIterations = in.readInt();
+				((Checkpointable)evaluator).readState(in);
+				((Checkpointable)stochasticVectorGenerator).readState(in);
+				System.out.println("Resuming from checkpoint " + checkpointFile + " after " + numOfIterations + " iterations");
+				return numOfIterations;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to read the checkpoint " + checkpointFile + " [" + e.getMessage() + "]");
+		}
+	}
+	
+	/**
+	 * Writes the state of the simulation to the checkpoint file, if checkpoints are enabled.
+	 * The state is written to a temporary file first, so that an interruption while writing does not destroy the last checkpoint.
+	 * It must be called when the random vectors drawn so far are exactly the ones of the completed iterations
+	 * @param numOfIterations The number of completed iterations
+	 * @throws IllegalStateException if the file can not be written
+	 */
+	protected void saveCheckpoint(int numOfIterations) {
+		if (checkpointFile == null)
+			return;
+		File temporaryFile = new File(checkpointFile.getPath() + ".tmp");
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+			try {
+				writeCheckpointHeader(out);
+				out.writeInt(numOfIterations);
+				((Checkpointable)evaluator).writeState(out);
+				((Checkpointable)stochasticVectorGenerator).writeState(out);
+			} finally {
+				out.close();
+			}
+			if (!temporaryFile.renameTo(checkpointFile) && !(checkpointFile.delete() && temporaryFile.renameTo(checkpointFile)))
+				throw new IOException("can not rename " + temporaryFile);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to write the checkpoint " + checkpointFile + " [" + e.getMessage() + "]");
+		}
+	}
+	
+	/**
+	 * Saves a checkpoint if the last iterations completed a checkpoint interval
+	 * @param previousIterations The number of iterations completed before the last ones
+	 * @param numOfIterations The number of iterations completed so far
+	 */
+	protected void checkpoint(int previousIterations, int numOfIterations) {
+		if (checkpointFile != null && numOfIterations / checkpointInterval > previousIterations / checkpointInterval)
+			saveCheckpoint(numOfIterations);
+	}
+	
+	/**
+	 * Creates an empty scenario, that can be filled again and again by {@link #fillScenario(ArrayCurveTimeSeries, RandomVectorGenerator, double[])}
+	 * @return A new scenario covering the time horizon of the simulation
+	 */
+	protected ArrayCurveTimeSeries<T> createScenarioBuffer() {
+		return new ArrayCurveTimeSeries<T>(baseScenario.getTermStructure(), timeStep, pointDates);
+	}
+	
+	/**
+	 * Creates a buffer for all the random vectors driving one path, to be filled again and again
+	 * by {@link #fillRandomBlock(RandomVectorGenerator, double[])}
+	 * @return A new array of length number of steps times the dimension of the model
+	 */
+	protected double[] createRandomBlock() {
+		return new double[numberOfSteps * multiFactorModel.getDimension()];
+	}
+	
+	/**
+	 * Fills a buffer with the random vectors driving one path, one after the other.
+	 * A {@link BlockRandomVectorGenerator} writes them directly, without allocating memory
+	 * @param generator The generator of the random vectors
+	 * @param randomBlock The buffer obtained from {@link #createRandomBlock()}
+	 */
+	protected void fillRandomBlock(RandomVectorGenerator generator, double[] randomBlock) {
+		if (generator instanceof BlockRandomVectorGenerator) {
+			((BlockRandomVectorGenerator)generator).generateNextBlock(randomBlock, numberOfSteps);
+		} else {
+			int dimension = multiFactorModel.getDimension();
+			for (int step = 0; step < numberOfSteps; step++)
+				System.arraycopy(generator.generateNextVector(), 0, randomBlock, step * dimension, dimension);
+		}
+	}
+	
+	/**
+	 * Fills a scenario with a complete new path, driven by the vectors produced by the generator provided.
+	 * No memory is allocated, since the random vectors are written into the buffer provided
+	 * and the model writes each curve directly into the array of the scenario.
+	 * It does not change the state of the simulation, so it can be called concurrently
+	 * with different generators and buffers
+	 * @param scenario The scenario to be overwritten
+	 * @param generator The generator of the random vectors for this scenario
+	 * @param randomBlock A buffer obtained from {@link #createRandomBlock()}
+	 */
+	protected void fillScenario(ArrayCurveTimeSeries<T> scenario, RandomVectorGenerator generator, double[] randomBlock) {
+		double[] points = scenario.getPoints();
+		int numberOfTenors = scenario.getNumberOfTenors();
+		int dimension = multiFactorModel.getDimension();
+		fillRandomBlock(generator, randomBlock);
+		System.arraycopy(baseScenario.getPoints(), 0, points, 0, numberOfTenors);
+		for (int step = 1; step <= numberOfSteps; step++) {
+			multiFactorModel.nextCurve(points, (step - 1) * numberOfTenors, points, step * numberOfTenors, randomBlock, (step - 1) * dimension, timeStep);
+		}
+		scenario.pathChanged();
+	}
+	
+	/**
+	 * Fills two scenarios with a new pair of antithetic paths: the random vectors driving the second
+	 * scenario are the opposite of those driving the first one.
+	 * It does not change the state of the simulation, so it can be called concurrently
+	 * with different generators and scenarios
+	 * @param scenario The scenario to be overwritten with the path driven by the generator
+	 * @param antitheticScenario The scenario to be overwritten with the antithetic path
+	 * @param generator The generator of the random vectors for this pair of scenarios
+	 * @param randomBlock A buffer obtained from {@link #createRandomBlock()}
+	 * @param antitheticBlock A buffer obtained from {@link #createRandomBlock()}, for the opposite of the random vectors
+	 */
+	protected void fillAntitheticScenarios(ArrayCurveTimeSeries<T> scenario, ArrayCurveTimeSeries<T> antitheticScenario, RandomVectorGenerator generator, double[] randomBlock, double[] antitheticBlock) {
+		double[] points = scenario.getPoints();
+		double[] antitheticPoints = antitheticScenario.getPoints();
+		int numberOfTenors = scenario.getNumberOfTenors();
+		int dimension = multiFactorModel.getDimension();
+		fillRandomBlock(generator, randomBlock);
+		for (int j = 0; j < randomBlock.length; j++)
+			antitheticBlock[j] = -randomBlock[j];
+		System.arraycopy(baseScenario.getPoints(), 0, points, 0, numberOfTenors);
+		System.arraycopy(baseScenario.getPoints(), 0, antitheticPoints, 0, numberOfTenors);
 		for (int step = 1; step <= numberOfSteps; step++) {
-			double[] randomVector = stochasticVectorGenerator.generateNextVector();
-			currentCurve = multiFactorModel.nextCurve(currentCurve, randomVector, timeStep);
-			scenario.put(pointDates[step], currentCurve);
+			multiFactorModel.nextCurve(points, (step - 1) * numberOfTenors, points, step * numberOfTenors, randomBlock, (step - 1) * dimension, timeStep);
+			multiFactorModel.nextCurve(antitheticPoints, (step - 1) * numberOfTenors, antitheticPoints, step * numberOfTenors, antitheticBlock, (step - 1) * dimension, timeStep);
 		}
-		return scenario;
+		scenario.pathChanged();
+		antitheticScenario.pathChanged();
+	}
+	
+	/**
+	 * Generates a complete new path, like {@link #fillScenario(ArrayCurveTimeSeries, RandomVectorGenerator, double[])},
+	 * without storing it: only the values required by the schedule are copied into the fixings.
+	 * The running sum of the short rate is accumulated in the same order as in {@link ArrayCurveTimeSeries#getCumulativeShortRates()}
+	 * @param schedule The values to be collected
+	 * @param fixings The container of the values to be overwritten
+	 * @param curves A buffer for two curves, holding the current and the next state of the model
+	 * @param generator The generator of the random vectors for this scenario
+	 * @param randomBlock A buffer obtained from {@link #createRandomBlock()}
+	 */
+	protected void streamScenario(FixingSchedule<T> schedule, Fixings fixings, double[] curves, RandomVectorGenerator generator, double[] randomBlock) {
+		int numberOfTenors = baseScenario.getPoints().length;
+		int dimension = multiFactorModel.getDimension();
+		fillRandomBlock(generator, randomBlock);
+		System.arraycopy(baseScenario.getPoints(), 0, curves, 0, numberOfTenors);
+		int currentOffset = 0;
+		double cumulativeShortRate = 0.0;
+		for (int step = 0; step <= numberOfSteps; step++) {
+			int slot = schedule.getCurveSlot(step);
+			if (slot >= 0)
+				fixings.setCurve(slot, curves, currentOffset);
+			slot = schedule.getCumulativeShortRateSlot(step);
+			if (slot >= 0)
+				fixings.setCumulativeShortRate(slot, cumulativeShortRate);
+			cumulativeShortRate += curves[currentOffset];
+			if (step < numberOfSteps) {
+				int nextOffset = numberOfTenors - currentOffset;
+				multiFactorModel.nextCurve(curves, currentOffset, curves, nextOffset, randomBlock, step * dimension, timeStep);
+				currentOffset = nextOffset;
+			}
+		}
+		int slot = schedule.getCumulativeShortRateSlot(numberOfSteps + 1);
+		if (slot >= 0)
+			fixings.setCumulativeShortRate(slot, cumulativeShortRate);
+	}
+	
+	/**
+	 * @return The starting point for the simulation
+	 */
+	protected Curve getBaseScenario() {
+		return baseScenario;
+	}
+	
+	/**
+	 * @return The generator feeding the model
+	 */
+	protected RandomVectorGenerator getStochasticVectorGenerator() {
+		return stochasticVectorGenerator;
 	}
 	
 	/**
 	 * This method executes a complete Monte Carlo simulation. It runs up to a maximum number of
 	 * iterations by creating a new scenario, feeding it to the evaluator, and letting the evaluator
-	 * determine if the simulation can stop
-	 * @return The number of completed iterations
+	 * determine if the simulation can stop. With antithetic paths, each iteration consists of two scenarios
+	 * @return The number of completed iterations, including the ones restored from a checkpoint
 	 */
 	public int simulate() {
-		int numOfIterations = 0;
+		int numOfIterations = restoreCheckpoint();
+		ArrayCurveTimeSeries<T> scenario = createScenarioBuffer();
+		double[] randomBlock = createRandomBlock();
+		if (antitheticPaths) {
+			AntitheticMonteCarloEvaluator<T> antitheticEvaluator = (AntitheticMonteCarloEvaluator<T>)evaluator;
+			ArrayCurveTimeSeries<T> antitheticScenario = createScenarioBuffer();
+			double[] antitheticBlock = createRandomBlock();
+			while (evaluator.moreIterationsNeeded()) {
+				fillAntitheticScenarios(scenario, antitheticScenario, stochasticVectorGenerator, randomBlock, antitheticBlock);
+				antitheticEvaluator.evaluateAndAccumulate(scenario, antitheticScenario);
+				if ((numOfIterations + 1) % 1000 == 0) {
+					evaluator.printProgress();
+				}
+				numOfIterations++;
+				checkpoint(numOfIterations - 1, numOfIterations);
+			}
+			saveCheckpoint(numOfIterations);
+			return numOfIterations;
+		}
 		while (evaluator.moreIterationsNeeded()) {
-			CurveTimeSeries<T> scenario = createScenario();
+			fillScenario(scenario, stochasticVectorGenerator, randomBlock);
 			evaluator.evaluateAndAccumulate(scenario);
 			if ((numOfIterations + 1) % 1000 == 0) {
 				evaluator.printProgress();
 			}
 			numOfIterations++;
+			checkpoint(numOfIterations - 1, numOfIterations);
 		}
+		saveCheckpoint(numOfIterations);
 		return numOfIterations;
 	}
 }
@@ -21,6 +21,20 @@ public interface MultiFactorModel {
 	 */
 	Curve nextCurve(Curve currentCurve, double[] randomVector, double timeStep);
 	
+	/**
+	 * In-place version of {@link #nextCurve(Curve, double[], double)}: the next state of the
+	 * underlying is written into an array provided by the caller, so that no memory is allocated.
+	 * Current and next state can be stored in the same array, at non overlapping offsets
+	 * @param currentPoints The array containing the current curve
+	 * @param currentOffset The index of the first point of the current curve
+	 * @param nextPoints The array to be filled with the next curve
+	 * @param nextOffset The index where the first point of the next curve must be written
+	 * @param randomVector The array containing the vector to drive the evolution
+	 * @param randomOffset The index of the first element of the vector
+	 * @param timeStep The fraction of year from one state to the next
+	 */
+	void nextCurve(double[] currentPoints, int currentOffset, double[] nextPoints, int nextOffset, double[] randomVector, int randomOffset, double timeStep);
+	
 	/**
 	 * @return The dimension of the model, i.e. the dimension of randomVector to be provided
 	 */
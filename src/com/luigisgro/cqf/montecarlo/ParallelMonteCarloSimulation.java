@@ -0,0 +1,260 @@
+package com.luigisgro.cqf.montecarlo;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.luigisgro.cqf.curve.ArrayCurveTimeSeries;
+import com.luigisgro.cqf.curve.Curve;
+import com.luigisgro.cqf.curve.TimePoint;
+
+/**
+ * Multi-threaded version of {@link MonteCarloSimulation}. The iterations are performed in rounds:
+ * in each round the scenarios are divided into batches, the worker threads generate and evaluate the batches,
+ * each one with a partial evaluator obtained from the main {@link MergeableMonteCarloEvaluator}.
+ * At the end of the round the partial evaluators are merged, always in the same order, and the stopping
+ * criteria is tested on the merged result.
+ * With one {@link RandomVectorGenerator} for each thread, each thread evaluates one batch per round with its own generator:
+ * for a given set of seeded generators the result of the simulation is therefore always the same.
+ * With a single {@link JumpableRandomVectorGenerator}, every batch is driven by its own substream of the generator,
+ * and the batches have a fixed size: for a given seed the result is then the same regardless of the number of threads
+ * @author Luigi Sgro
+ *
+ * @param <T>
+ */
+public class ParallelMonteCarloSimulation<T extends TimePoint> extends MonteCarloSimulation<T> {
+	/**
+	 * Default number of scenarios evaluated in each round, by all the threads together
+	 */
+	public static final int DEFAULT_ROUND_SIZE = 1000;
+	/**
+	 * Default number of scenarios driven by each substream of a {@link JumpableRandomVectorGenerator}
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 100;
+
+	private RandomVectorGenerator[] stochasticVectorGenerators;
+	private JumpableRandomVectorGenerator substreamGenerator;
+	private int numberOfThreads;
+	private MergeableMonteCarloEvaluator<T> evaluator;
+	private int roundSize;
+	private int batchSize;
+
+	/**
+	 * Creates a new multi-threaded Monte Carlo simulation framework
+	 * @param multiFactorModel The model that provides all the calculation to generate scenarios
+	 * @param evaluator The object responsible for evaluating the derivative value and stop the simulation
+	 * @param randomVectorGenerators One independent generator for each worker thread
+	 * @param baseScenario The starting point for the simulation
+	 * @param pointDates The points that define the time horizon of the simulation
+	 * @param timeStep The time step (fraction of year) to be used in the simulation
+	 * @param roundSize The number of scenarios to be evaluated between two tests of the stopping criteria
+	 */
+	public ParallelMonteCarloSimulation(MultiFactorModel multiFactorModel,
+			MergeableMonteCarloEvaluator<T> evaluator,
+			RandomVectorGenerator[] randomVectorGenerators,
+			Curve baseScenario,
+			T[] pointDates,
+			double timeStep,
+			int roundSize) {
+		super(multiFactorModel, evaluator, randomVectorGenerators[0], baseScenario, pointDates, timeStep);
+		if (roundSize < 1)
+			throw new IllegalArgumentException("Round size must be positive: " + roundSize);
+		this.stochasticVectorGenerators = randomVectorGenerators;
+		this.numberOfThreads = randomVectorGenerators.length;
+		this.evaluator = evaluator;
+		this.roundSize = roundSize;
+	}
+
+	/**
+	 * Creates a new multi-threaded Monte Carlo simulation framework, with the default round size
+	 * @param multiFactorModel The model that provides all the calculation to generate scenarios
+	 * @param evaluator The object responsible for evaluating the derivative value and stop the simulation
+	 * @param randomVectorGenerators One independent generator for each worker thread
+	 * @param baseScenario The starting point for the simulation
+	 * @param pointDates The points that define the time horizon of the simulation
+	 * @param timeStep The time step (fraction of year) to be used in the simulation
+	 */
+	public ParallelMonteCarloSimulation(MultiFactorModel multiFactorModel,
+			MergeableMonteCarloEvaluator<T> evaluator,
+			RandomVectorGenerator[] randomVectorGenerators,
+			Curve baseScenario,
+			T[] pointDates,
+			double timeStep) {
+		this(multiFactorModel, evaluator, randomVectorGenerators, baseScenario, pointDates, timeStep, DEFAULT_ROUND_SIZE);
+	}
+
+	/**
+	 * Creates a new multi-threaded Monte Carlo simulation framework, driven by the substreams of a single generator
+	 * @param multiFactorModel The model that provides all the calculation to generate scenarios
+	 * @param evaluator The object responsible for evaluating the derivative value and stop the simulation
+	 * @param randomVectorGenerator The generator whose substreams drive the batches of scenarios
+	 * @param numberOfThreads The number of worker threads
+	 * @param baseScenario The starting point for the simulation
+	 * @param pointDates The points that define the time horizon of the simulation
+	 * @param timeStep The time step (fraction of year) to be used in the simulation
+	 * @param roundSize The number of scenarios to be evaluated between two tests of the stopping criteria
+	 * @param batchSize The number of scenarios driven by each substream
+	 */
+	public ParallelMonteCarloSimulation(MultiFactorModel multiFactorModel,
+			MergeableMonteCarloEvaluator<T> evaluator,
+			JumpableRandomVectorGenerator randomVectorGenerator,
+			int numberOfThreads,
+			Curve baseScenario,
+			T[] pointDates,
+			double timeStep,
+			int roundSize,
+			int batchSize) {
+		super(multiFactorModel, evaluator, randomVectorGenerator, baseScenario, pointDates, timeStep);
+		if (roundSize < 1 || batchSize < 1 || numberOfThreads < 1)
+			throw new IllegalArgumentException("Round size, batch size and number of threads must be positive: " + roundSize + ", " + batchSize + ", " + numberOfThreads);
+		this.substreamGenerator = randomVectorGenerator;
+		this.numberOfThreads = numberOfThreads;
+		this.evaluator = evaluator;
+		this.roundSize = roundSize;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Creates a new multi-threaded Monte Carlo simulation framework, driven by the substreams of a single generator,
+	 * with the default round and batch sizes
+	 * @param multiFactorModel The model that provides all the calculation to generate scenarios
+	 * @param evaluator The object responsible for evaluating the derivative value and stop the simulation
+	 * @param randomVectorGenerator The generator whose substreams drive the batches of scenarios
+	 * @param numberOfThreads The number of worker threads
+	 * @param baseScenario The starting point for the simulation
+	 * @param pointDates The points that define the time horizon of the simulation
+	 * @param timeStep The time step (fraction of year) to be used in the simulation
+	 */
+	public ParallelMonteCarloSimulation(MultiFactorModel multiFactorModel,
+			MergeableMonteCarloEvaluator<T> evaluator,
+			JumpableRandomVectorGenerator randomVectorGenerator,
+			int numberOfThreads,
+			Curve baseScenario,
+			T[] pointDates,
+			double timeStep) {
+		this(multiFactorModel, evaluator, randomVectorGenerator, numberOfThreads, baseScenario, pointDates, timeStep, DEFAULT_ROUND_SIZE, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * @return The number of worker threads used by the simulation
+	 */
+	public int getNumberOfThreads() {
+		return numberOfThreads;
+	}
+
+	/**
+	 * Checkpoints are not available with more threads, since each thread owns part of the state of the simulation
+	 */
+	@Override
+	public void setCheckpoint(File checkpointFile, int checkpointInterval) {
+		throw new IllegalArgumentException("Checkpoints are not supported by the parallel simulation");
+	}
+
+	/**
+	 * Creates the task of a worker thread, evaluating a list of batches with its own scenario buffers.
+	 * @param generators The generator of each batch
+	 * @param batchSizes The number of scenarios, or antithetic pairs, of each batch
+	 * @param scenario The scenario buffer of the thread
+	 * @param antitheticScenario The buffer for the antithetic scenarios, or null if antithetic paths are not used
+	 * @return A task returning one partial evaluator for each batch
+	 */
+	private Callable<List<MergeableMonteCarloEvaluator<T>>> createWorker(final List<RandomVectorGenerator> generators, final List<Integer> batchSizes, final ArrayCurveTimeSeries<T> scenario, final ArrayCurveTimeSeries<T> antitheticScenario) {
+		return new Callable<List<MergeableMonteCarloEvaluator<T>>>() {
+			@Override
+			public List<MergeableMonteCarloEvaluator<T>> call() {
+				List<MergeableMonteCarloEvaluator<T>> partialEvaluators = new ArrayList<MergeableMonteCarloEvaluator<T>>(generators.size());
+				double[] randomBlock = createRandomBlock();
+				double[] antitheticBlock = antitheticScenario != null ? createRandomBlock() : null;
+				for (int batch = 0; batch < generators.size(); batch++) {
+					RandomVectorGenerator generator = generators.get(batch);
+					int numberOfScenarios = batchSizes.get(batch);
+					MergeableMonteCarloEvaluator<T> partialEvaluator = evaluator.createPartialEvaluator();
+					if (antitheticScenario != null) {
+						AntitheticMonteCarloEvaluator<T> antitheticEvaluator = (AntitheticMonteCarloEvaluator<T>)partialEvaluator;
+						for (int i = 0; i < numberOfScenarios; i++) {
+							fillAntitheticScenarios(scenario, antitheticScenario, generator, randomBlock, antitheticBlock);
+							antitheticEvaluator.evaluateAndAccumulate(scenario, antitheticScenario);
+						}
+					} else {
+						for (int i = 0; i < numberOfScenarios; i++) {
+							fillScenario(scenario, generator, randomBlock);
+							partialEvaluator.evaluateAndAccumulate(scenario);
+						}
+					}
+					partialEvaluators.add(partialEvaluator);
+				}
+				return partialEvaluators;
+			}
+		};
+	}
+
+	/**
+	 * This method executes a complete Monte Carlo simulation, spreading the scenarios across the
+	 * worker threads. The stopping criteria is tested at the end of each round
+	 * @return The number of completed iterations
+	 */
+	@Override
+	public int simulate() {
+		ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+		int numOfIterations = 0;
+		// each thread fills its own scenario buffers
+		boolean antitheticPaths = isAntitheticPaths();
+		List<ArrayCurveTimeSeries<T>> scenarios = new ArrayList<ArrayCurveTimeSeries<T>>(numberOfThreads);
+		List<ArrayCurveTimeSeries<T>> antitheticScenarios = new ArrayList<ArrayCurveTimeSeries<T>>(numberOfThreads);
+		for (int thread = 0; thread < numberOfThreads; thread++) {
+			scenarios.add(createScenarioBuffer());
+			antitheticScenarios.add(antitheticPaths ? createScenarioBuffer() : null);
+		}
+		try {
+			while (evaluator.moreIterationsNeeded()) {
+				int scenariosInRound = Math.min(roundSize, evaluator.remainingIterations());
+				// batch i is evaluated by the thread i modulo the number of threads
+				List<List<RandomVectorGenerator>> generators = new ArrayList<List<RandomVectorGenerator>>(numberOfThreads);
+				List<List<Integer>> batchSizes = new ArrayList<List<Integer>>(numberOfThreads);
+				for (int thread = 0; thread < numberOfThreads; thread++) {
+					generators.add(new ArrayList<RandomVectorGenerator>());
+					batchSizes.add(new ArrayList<Integer>());
+				}
+				int numberOfBatches;
+				if (substreamGenerator != null) {
+					numberOfBatches = (scenariosInRound + batchSize - 1) / batchSize;
+					for (int batch = 0; batch < numberOfBatches; batch++) {
+						generators.get(batch % numberOfThreads).add(substreamGenerator.copyAndJump());
+						batchSizes.get(batch % numberOfThreads).add(Math.min(batchSize, scenariosInRound - batch * batchSize));
+					}
+				} else {
+					numberOfBatches = numberOfThreads;
+					for (int thread = 0; thread < numberOfThreads; thread++) {
+						generators.get(thread).add(stochasticVectorGenerators[thread]);
+						batchSizes.get(thread).add(scenariosInRound / numberOfThreads + (thread < scenariosInRound % numberOfThreads ? 1 : 0));
+					}
+				}
+				List<Callable<List<MergeableMonteCarloEvaluator<T>>>> workers = new ArrayList<Callable<List<MergeableMonteCarloEvaluator<T>>>>(numberOfThreads);
+				for (int thread = 0; thread < numberOfThreads; thread++)
+					workers.add(createWorker(generators.get(thread), batchSizes.get(thread), scenarios.get(thread), antitheticScenarios.get(thread)));
+				List<Future<List<MergeableMonteCarloEvaluator<T>>>> partialResults = executor.invokeAll(workers);
+				// merge in batch order, so that the result does not depend on scheduling
+				for (int batch = 0; batch < numberOfBatches; batch++) {
+					evaluator.merge(partialResults.get(batch % numberOfThreads).get().get(batch / numberOfThreads));
+				}
+				if ((numOfIterations + scenariosInRound) / 1000 > numOfIterations / 1000) {
+					evaluator.printProgress();
+				}
+				numOfIterations += scenariosInRound;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Simulation interrupted after " + numOfIterations + " iterations");
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("An error occurred in a simulation thread [" + e.getCause().getMessage() + "]", e.getCause());
+		} finally {
+			executor.shutdown();
+		}
+		return numOfIterations;
+	}
+}
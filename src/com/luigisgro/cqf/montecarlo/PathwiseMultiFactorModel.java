@@ -0,0 +1,27 @@
+package com.luigisgro.cqf.montecarlo;
+
+/**
+ * A {@link MultiFactorModel} able to propagate derivatives backwards along a generated path (adjoint mode):
+ * given the derivatives of a result with respect to the curve at one step, it calculates the derivatives with
+ * respect to the curve at the previous step and to the volatility of each factor.
+ * Repeated from the last step to the first one, it gives the sensitivities of the result to the starting
+ * curve and to the volatilities at a cost proportional to the generation of the path
+ * @author Luigi Sgro
+ *
+ */
+public interface PathwiseMultiFactorModel extends MultiFactorModel {
+	/**
+	 * Propagates the derivatives through one step of the evolution generated by
+	 * {@link #nextCurve(double[], int, double[], int, double[], int, double)}.
+	 * The random vector driving the step is not needed: it is recovered from the two curves
+	 * @param points The array containing the path
+	 * @param currentOffset The index of the first point of the curve at the current step
+	 * @param nextOffset The index of the first point of the curve at the next step
+	 * @param adjoint The derivatives with respect to the points of the path, with the same layout. The derivatives with respect
+	 * to the curve at the current step are increased by their dependence through the curve at the next step
+	 * @param timeStep The fraction of year from one state to the next
+	 * @param volatilitySensitivities An array with one element for each factor, increased by the derivatives with respect
+	 * to a proportional change of the volatility of the factor, at this step
+	 */
+	void propagateAdjoint(double[] points, int currentOffset, int nextOffset, double[] adjoint, double timeStep, double[] volatilitySensitivities);
+}
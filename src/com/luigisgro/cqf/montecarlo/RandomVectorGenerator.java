@@ -8,6 +8,7 @@ package com.luigisgro.cqf.montecarlo;
 public interface RandomVectorGenerator {
 	
 	/**
+	 * The returned array may be reused by the generator at the next call, so it must not be retained
 	 * @return The next vector from a specific random or quasi-random distribution
 	 */
 	double[] generateNextVector();
@@ -0,0 +1,138 @@
+package com.luigisgro.cqf.montecarlo;
+
+import com.luigisgro.cqf.curve.CurveTimeSeries;
+import com.luigisgro.cqf.curve.CurveTimeSeriesOperator;
+import com.luigisgro.cqf.curve.FixingSchedule;
+import com.luigisgro.cqf.curve.Fixings;
+import com.luigisgro.cqf.curve.StreamingCurveTimeSeriesOperator;
+import com.luigisgro.cqf.curve.TimePoint;
+
+/**
+ * Evaluator for randomised quasi-Monte Carlo simulations, driven by a {@link SobolVectorGenerator}
+ * with the same number of replications. The scenarios of a QMC simulation are not independent,
+ * so the usual standard error does not apply: the scenario n is accumulated in the replication n modulo the
+ * number of replications, and the error is estimated from the dispersion of the independent replication means.
+ * The stopping criteria is tested only when all the replications have the same number of scenarios,
+ * and the maximum number of iterations is rounded up to a multiple of the number of replications.
+ * The scenarios must be evaluated in the order they are generated, so the evaluator can only be used by a single thread
+ * @author Luigi Sgro
+ *
+ * @param <T>
+ */
+public class RandomizedQMCEvaluator<T extends TimePoint> implements StreamingMonteCarloEvaluator<T>, AntitheticMonteCarloEvaluator<T> {
+	private final CurveTimeSeriesOperator<T> operator;
+	private final double squareStdErrThreshold;
+	private final int maxNumberOfIterations;
+	private final double[] replicationAccumulators;
+	private int numberOfIterations = 0;
+
+	/**
+	 * Creates a new evaluator
+	 * @param operator The derivative to be priced
+	 * @param replications The number of replications of the generator
+	 * @param stdErrThreshold The threshold of standard error considered acceptable for terminating the simulation
+	 * @param maxNumberOfIterations The maximum number of iteration to be performed
+	 */
+	public RandomizedQMCEvaluator(CurveTimeSeriesOperator<T> operator, Integer replications, Double stdErrThreshold, Integer maxNumberOfIterations) {
+		if (replications < 2)
+			throw new IllegalArgumentException("At least two replications are needed to estimate the error: " + replications);
+		this.operator = operator;
+		this.squareStdErrThreshold = stdErrThreshold * stdErrThreshold;
+		// the simulation always ends with a complete round of replications
+		this.maxNumberOfIterations = (maxNumberOfIterations + replications - 1) / replications * replications;
+		replicationAccumulators = new double[replications];
+	}
+
+	private void accumulate(double scenarioEvaluation) {
+		replicationAccumulators[numberOfIterations % replicationAccumulators.length] += scenarioEvaluation;
+		numberOfIterations++;
+	}
+
+	@Override
+	public double evaluateAndAccumulate(CurveTimeSeries<T> scenario) {
+		double scenarioEvaluation = operator.evaluate(scenario);
+		accumulate(scenarioEvaluation);
+		return scenarioEvaluation;
+	}
+
+	@Override
+	public double evaluateAndAccumulate(CurveTimeSeries<T> scenario, CurveTimeSeries<T> antitheticScenario) {
+		double scenarioEvaluation = 0.5 * (operator.evaluate(scenario) + operator.evaluate(antitheticScenario));
+		accumulate(scenarioEvaluation);
+		return scenarioEvaluation;
+	}
+
+	@Override
+	public void registerFixings(FixingSchedule<T> schedule) {
+		if (!(operator instanceof StreamingCurveTimeSeriesOperator))
+			throw new IllegalStateException("The operator " + operator.getClass().getName() + " can not be evaluated in streaming mode");
+		((StreamingCurveTimeSeriesOperator<T>)operator).registerFixings(schedule);
+	}
+
+	@Override
+	public double evaluateAndAccumulate(Fixings fixings) {
+		double scenarioEvaluation = ((StreamingCurveTimeSeriesOperator<T>)operator).evaluate(fixings);
+		accumulate(scenarioEvaluation);
+		return scenarioEvaluation;
+	}
+
+	/**
+	 * @return The number of replications
+	 */
+	public int getReplications() {
+		return replicationAccumulators.length;
+	}
+
+	/**
+	 * @param replication The index of the replication
+	 * @return The mean value of the derivative in the scenarios of the replication
+	 */
+	public double getReplicationMean(int replication) {
+		int scenarios = numberOfIterations / replicationAccumulators.length + (replication < numberOfIterations % replicationAccumulators.length ? 1 : 0);
+		return replicationAccumulators[replication] / scenarios;
+	}
+
+	/**
+	 * Calculates the square of the standard error of the result, as the sample variance of the
+	 * replication means divided by the number of replications
+	 * @return The estimated square standard error
+	 */
+	public double squareStdErr() {
+		int replications = replicationAccumulators.length;
+		double mean = getResult();
+		double sumOfSquares = 0.0;
+		for (int r = 0; r < replications; r++) {
+			double deviation = getReplicationMean(r) - mean;
+			sumOfSquares += deviation * deviation;
+		}
+		return sumOfSquares / (replications - 1) / replications;
+	}
+
+	@Override
+	public boolean moreIterationsNeeded() {
+		if (numberOfIterations >= maxNumberOfIterations)
+			return false;
+		if (numberOfIterations < 100 || numberOfIterations % replicationAccumulators.length != 0) // complete rounds only
+			return true;
+		return squareStdErr() > squareStdErrThreshold;
+	}
+
+	/**
+	 * The mean of the replication means
+	 */
+	@Override
+	public double getResult() {
+		int replications = replicationAccumulators.length;
+		if (numberOfIterations < replications)
+			throw new IllegalStateException("Not enough scenarios for all the replications: " + numberOfIterations);
+		double sum = 0.0;
+		for (int r = 0; r < replications; r++)
+			sum += getReplicationMean(r);
+		return sum / replications;
+	}
+
+	@Override
+	public void printProgress() {
+		System.out.println("Iteration: " + numberOfIterations + "; currentValue: " + getResult() + "; std error: " + Math.sqrt(squareStdErr()));
+	}
+}
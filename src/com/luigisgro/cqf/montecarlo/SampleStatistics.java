@@ -0,0 +1,243 @@
+package com.luigisgro.cqf.montecarlo;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Mean and variance of one or more quantities evaluated on the same scenarios, accumulated with the Welford algorithm,
+ * which does not lose precision when the values are large compared to their dispersion.
+ * Partial statistics are combined with the formula of Chan, Golub and LeVeque.
+ * It also schedules the checks of the standard error made by the evaluators: the first after 100 iterations,
+ * then one every check interval, and predicts from the last standard error the iterations still needed
+ * @author Luigi Sgro
+ *
+ */
+public class SampleStatistics {
+	/**
+	 * Default number of iterations between two checks of the standard error
+	 */
+	public static final int DEFAULT_CHECK_INTERVAL = 100;
+
+	/**
+	 * Number of iterations before the first check of the standard error, letting the results wander around
+	 * for a while, building an error > 0
+	 */
+	public static final int MIN_ITERATIONS = 100;
+
+	private final double[] means;
+	private final double[] sumsOfSquaredDeviations;
+	private int numberOfIterations = 0;
+	private int checkInterval = DEFAULT_CHECK_INTERVAL;
+	private int iterationsAtLastCheck = 0;
+	private boolean converged = false;
+	private boolean runawayReported = false;
+	private long startTime = 0;
+	private int iterationsAtStart;
+
+	/**
+	 * Creates empty statistics
+	 * @param numberOfQuantities The number of quantities evaluated in each iteration
+	 */
+	public SampleStatistics(int numberOfQuantities) {
+		means = new double[numberOfQuantities];
+		sumsOfSquaredDeviations = new double[numberOfQuantities];
+	}
+
+	/**
+	 * Creates empty statistics with the same number of quantities and check interval
+	 * @return The new statistics
+	 */
+	public SampleStatistics createEmpty() {
+		SampleStatistics statistics = new SampleStatistics(means.length);
+		statistics.checkInterval = checkInterval;
+		return statistics;
+	}
+
+	/**
+	 * @param checkInterval The number of iterations between two checks of the standard error
+	 */
+	public void setCheckInterval(int checkInterval) {
+		if (checkInterval < 1)
+			throw new IllegalArgumentException("Invalid check interval: " + checkInterval);
+		this.checkInterval = checkInterval;
+	}
+
+	/**
+	 * Adds the value of the only quantity in one iteration
+	 * @param value The value
+	 */
+	public void accumulate(double value) {
+		numberOfIterations++;
+		add(0, value);
+	}
+
+	/**
+	 * Adds the values of all the quantities in one iteration
+	 * @param values The values, indexed by quantity
+	 */
+	public void accumulate(double[] values) {
+		numberOfIterations++;
+		for (int quantity = 0; quantity < means.length; quantity++)
+			add(quantity, values[quantity]);
+	}
+
+	private void add(int quantity, double value) {
+		double deviation = value - means[quantity];
+		means[quantity] += deviation / numberOfIterations;
+		sumsOfSquaredDeviations[quantity] += deviation * (value - means[quantity]);
+	}
+
+	/**
+	 * Adds partial statistics of the same quantities, accumulated on other scenarios
+	 * @param partial The partial statistics
+	 */
+	public void merge(SampleStatistics partial) {
+		int previousIterations = numberOfIterations;
+		numberOfIterations += partial.numberOfIterations;
+		if (numberOfIterations == 0)
+			return;
+		double weight = (double)partial.numberOfIterations / numberOfIterations;
+		for (int quantity = 0; quantity < means.length; quantity++) {
+			double deviation = partial.means[quantity] - means[quantity];
+			means[quantity] += deviation * weight;
+			sumsOfSquaredDeviations[quantity] += partial.sumsOfSquaredDeviations[quantity] + deviation * deviation * previousIterations * weight;
+		}
+	}
+
+	/**
+	 * @return The number of iterations accumulated
+	 */
+	public int getNumberOfIterations() {
+		return numberOfIterations;
+	}
+
+	/**
+	 * @param quantity The index of the quantity
+	 * @return The mean of the quantity
+	 */
+	public double getMean(int quantity) {
+		return means[quantity];
+	}
+
+	/**
+	 * @param quantity The index of the quantity
+	 * @return The sum of the squared deviations of the quantity from its mean
+	 */
+	public double getSumOfSquaredDeviations(int quantity) {
+		return sumsOfSquaredDeviations[quantity];
+	}
+
+	/**
+	 * @param quantity The index of the quantity
+	 * @return The square standard error of the mean of the quantity
+	 */
+	public double squareStdErr(int quantity) {
+		return sumsOfSquaredDeviations[quantity] / numberOfIterations / numberOfIterations;
+	}
+
+	/**
+	 * @return The index of the quantity with the largest standard error
+	 */
+	public int getWorstQuantity() {
+		int worst = 0;
+		for (int quantity = 1; quantity < means.length; quantity++) {
+			if (sumsOfSquaredDeviations[quantity] > sumsOfSquaredDeviations[worst])
+				worst = quantity;
+		}
+		return worst;
+	}
+
+	/**
+	 * Tells if the standard error is to be checked at the current iteration. The first call starts the timing of the iterations
+	 * @return true after the first 100 iterations, and then every check interval
+	 */
+	public boolean isCheckDue() {
+		if (startTime == 0) {
+			startTime = System.currentTimeMillis();
+			iterationsAtStart = numberOfIterations;
+		}
+		return numberOfIterations >= MIN_ITERATIONS && numberOfIterations - iterationsAtLastCheck >= checkInterval;
+	}
+
+	/**
+	 * Records the outcome of a check of the standard error, and reports once if the threshold will not be reached
+	 * within the maximum number of iterations
+	 * @param squareStdErr The current square standard error
+	 * @param stdErrThreshold The threshold of standard error considered acceptable for terminating the simulation
+	 * @param maxNumberOfIterations The maximum number of iterations
+	 */
+	public void check(double squareStdErr, double stdErrThreshold, int maxNumberOfIterations) {
+		iterationsAtLastCheck = numberOfIterations;
+		converged = squareStdErr <= stdErrThreshold * stdErrThreshold;
+		int predicted = getPredictedIterations(squareStdErr, stdErrThreshold);
+		if (!converged && !runawayReported && stdErrThreshold > 0 && predicted > maxNumberOfIterations) {
+			runawayReported = true;
+			System.out.println("About " + predicted + " iterations needed for a std error of " + stdErrThreshold
+					+ ": the simulation will stop at " + maxNumberOfIterations + " iterations");
+		}
+	}
+
+	/**
+	 * @return The outcome of the last check of the standard error: true if it was below the threshold
+	 */
+	public boolean isConverged() {
+		return converged;
+	}
+
+	/**
+	 * Predicts the total number of iterations needed to reach the threshold of standard error,
+	 * assuming that the variance stays at its current estimate
+	 * @param squareStdErr The current square standard error
+	 * @param stdErrThreshold The threshold of standard error
+	 * @return The predicted number of iterations, or {@link Integer#MAX_VALUE} if the threshold can not be reached
+	 */
+	public int getPredictedIterations(double squareStdErr, double stdErrThreshold) {
+		if (numberOfIterations == 0)
+			return Integer.MAX_VALUE;
+		double predicted = Math.ceil(squareStdErr * numberOfIterations / (stdErrThreshold * stdErrThreshold));
+		return predicted < Integer.MAX_VALUE ? Math.max((int)predicted, numberOfIterations) : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Estimates the time needed by the given number of iterations from the speed of the iterations timed so far
+	 * @param remainingIterations The number of iterations still to be performed
+	 * @return The estimated time, in milliseconds, or -1 if no iteration has been timed yet
+	 */
+	public long getEstimatedTime(int remainingIterations) {
+		int timedIterations = numberOfIterations - iterationsAtStart;
+		if (startTime == 0 || timedIterations <= 0)
+			return -1;
+		return (long)((double)(System.currentTimeMillis() - startTime) / timedIterations * remainingIterations);
+	}
+
+	/**
+	 * Writes the accumulators and the outcome of the last check
+	 * @param out The output
+	 * @throws IOException If the state can not be written
+	 */
+	public void writeState(DataOutput out) throws IOException {
+		out.writeInt(numberOfIterations);
+		for (int quantity = 0; quantity < means.length; quantity++) {
+			out.writeDouble(means[quantity]);
+			out.writeDouble(sumsOfSquaredDeviations[quantity]);
+		}
+		out.writeInt(iterationsAtLastCheck);
+		out.writeBoolean(converged);
+	}
+
+	/**
+	 * Reads the state written by {@link #writeState(DataOutput)}
+	 * @param in The input
+	 * @throws IOException If the state can not be read
+	 */
+	public void readState(DataInput in) throws IOException {
+		numberOfIterations = in.readInt();
+		for (int quantity = 0; quantity < means.length; quantity++) {
+			means[quantity] = in.readDouble();
+			sumsOfSquaredDeviations[quantity] = in.readDouble();
+		}
+		iterationsAtLastCheck = in.readInt();
+		converged = in.readBoolean();
+	}
+}
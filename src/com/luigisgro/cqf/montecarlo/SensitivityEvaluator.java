@@ -0,0 +1,194 @@
+package com.luigisgro.cqf.montecarlo;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import com.luigisgro.cqf.curve.ArrayCurveTimeSeries;
+import com.luigisgro.cqf.curve.CurveTimeSeries;
+import com.luigisgro.cqf.curve.FixingSchedule;
+import com.luigisgro.cqf.curve.PathwiseCurveTimeSeriesOperator;
+import com.luigisgro.cqf.curve.ScenarioAdjoint;
+import com.luigisgro.cqf.curve.TimePoint;
+
+/**
+ * A {@link StandardErrorEvaluator} calculating, on the same scenarios as the price, the sensitivities
+ * of the price to each point of the starting curve (bucketed deltas) and to a proportional change of the
+ * volatility of each factor of the model (factor vegas).
+ * On each scenario the derivatives of the payoff with respect to the points of the path are propagated
+ * backwards through the evolution of the model (adjoint mode), so that the cost of all the sensitivities
+ * is a small multiple of the cost of the price, regardless of the number of tenors and factors.
+ * The derivatives are taken pathwise, so the payoff must be continuous in the curve.
+ * The model generating the scenarios must be set before the simulation, and the scenarios must be
+ * {@link ArrayCurveTimeSeries} on the calendar of the operator: streaming mode is not supported
+ * @author Luigi Sgro
+ *
+ * @param <T>
+ */
+public class SensitivityEvaluator<T extends TimePoint> extends StandardErrorEvaluator<T> {
+	private final PathwiseCurveTimeSeriesOperator<T> pathwiseOperator;
+	private PathwiseMultiFactorModel model;
+	private ScenarioAdjoint adjoint;
+	private double[] deltaAccumulator;
+	private double[] vegaAccumulator;
+
+	/**
+	 * Creates a new evaluator. The model generating the scenarios must be set before the simulation
+	 * @param operator The derivative to be priced
+	 * @param stdErrdThreshold The threshold of standard error of the price considered acceptable for terminating the simulation
+	 * @param maxNumberOfIterations The maximum number of iteration to be performed
+	 */
+	public SensitivityEvaluator(PathwiseCurveTimeSeriesOperator<T> operator, Double stdErrdThreshold, Integer maxNumberOfIterations) {
+		super(operator, stdErrdThreshold, maxNumberOfIterations);
+		this.pathwiseOperator = operator;
+	}
+
+	/**
+	 * @param model The model generating the scenarios, used to propagate the derivatives along the paths
+	 */
+	public void setModel(PathwiseMultiFactorModel model) {
+		this.model = model;
+		deltaAccumulator = null;
+		vegaAccumulator = new double[model.getDimension()];
+	}
+
+	private ArrayCurveTimeSeries<T> checkScenario(CurveTimeSeries<T> scenario) {
+		if (model == null)
+			throw new IllegalStateException("Model of the simulation not set");
+		if (!(scenario instanceof ArrayCurveTimeSeries))
+			throw new IllegalArgumentException("Sensitivities can only be calculated on scenarios of type " + ArrayCurveTimeSeries.class.getName());
+		ArrayCurveTimeSeries<T> arrayScenario = (ArrayCurveTimeSeries<T>)scenario;
+		int calendarLength = arrayScenario.getCalendar().length;
+		int numberOfTenors = arrayScenario.getNumberOfTenors();
+		if (adjoint == null || adjoint.getCalendarLength() != calendarLength || adjoint.getNumberOfTenors() != numberOfTenors)
+			adjoint = new ScenarioAdjoint(calendarLength, numberOfTenors);
+		if (deltaAccumulator == null)
+			deltaAccumulator = new double[numberOfTenors];
+		return arrayScenario;
+	}
+
+	/**
+	 * Evaluates the operator on a scenario and adds its sensitivities, multiplied by the given weight, to the accumulators
+	 * @param scenario The scenario
+	 * @param weight The weight of the scenario in the iteration
+	 * @return The value of the operator on the scenario
+	 */
+	private double evaluateSensitivities(ArrayCurveTimeSeries<T> scenario, double weight) {
+		adjoint.clear();
+		double scenarioEvaluation = pathwiseOperator.evaluate(scenario, weight, adjoint);
+		double[] adjointPoints = adjoint.getPoints();
+		double[] points = scenario.getPoints();
+		int numberOfTenors = scenario.getNumberOfTenors();
+		double timeStep = scenario.getTimeStep();
+		for (int step = scenario.getCalendar().length - 2; step >= 0; step--)
+			model.propagateAdjoint(points, step * numberOfTenors, (step + 1) * numberOfTenors, adjointPoints, timeStep, vegaAccumulator);
+		for (int i = 0; i < numberOfTenors; i++)
+			deltaAccumulator[i] += adjointPoints[i];
+		return scenarioEvaluation;
+	}
+
+	@Override
+	public double evaluateAndAccumulate(CurveTimeSeries<T> scenario) {
+		double scenarioEvaluation = evaluateSensitivities(checkScenario(scenario), 1.0);
+		accumulate(scenarioEvaluation);
+		return scenarioEvaluation;
+	}
+
+	@Override
+	public double evaluateAndAccumulate(CurveTimeSeries<T> scenario, CurveTimeSeries<T> antitheticScenario) {
+		double scenarioEvaluation = 0.5 * evaluateSensitivities(checkScenario(scenario), 0.5);
+		scenarioEvaluation += 0.5 * evaluateSensitivities(checkScenario(antitheticScenario), 0.5);
+		accumulate(scenarioEvaluation);
+		return scenarioEvaluation;
+	}
+
+	@Override
+	public void registerFixings(FixingSchedule<T> schedule) {
+		throw new IllegalStateException("Sensitivities can not be calculated in streaming mode");
+	}
+
+	/**
+	 * @param tenorIndex The index of the tenor in the term structure
+	 * @return The derivative of the price with respect to the point of the starting curve at the given tenor
+	 */
+	public double getDelta(int tenorIndex) {
+		return deltaAccumulator != null ? deltaAccumulator[tenorIndex] / numberOfIterations : 0.0;
+	}
+
+	/**
+	 * @return The derivatives of the price with respect to all the points of the starting curve
+	 */
+	public double[] getDeltas() {
+		double[] deltas = new double[deltaAccumulator != null ? deltaAccumulator.length : 0];
+		for (int i = 0; i < deltas.length; i++)
+			deltas[i] = getDelta(i);
+		return deltas;
+	}
+
+	/**
+	 * @param factor The index of the factor
+	 * @return The derivative of the price with respect to a proportional change of the volatility of the factor
+	 */
+	public double getVega(int factor) {
+		return vegaAccumulator[factor] / numberOfIterations;
+	}
+
+	/**
+	 * @return The derivatives of the price with respect to a proportional change of the volatility of each factor
+	 */
+	public double[] getVegas() {
+		double[] vegas = new double[vegaAccumulator.length];
+		for (int j = 0; j < vegas.length; j++)
+			vegas[j] = getVega(j);
+		return vegas;
+	}
+
+	@Override
+	public MergeableMonteCarloEvaluator<T> createPartialEvaluator() {
+		SensitivityEvaluator<T> partialEvaluator = new SensitivityEvaluator<T>(pathwiseOperator, stdErrdThreshold, maxNumberOfIterations);
+		if (model != null)
+			partialEvaluator.setModel(model);
+		partialEvaluator.statistics = statistics.createEmpty();
+		return partialEvaluator;
+	}
+
+	@Override
+	public void merge(MergeableMonteCarloEvaluator<T> partialEvaluator) {
+		super.merge(partialEvaluator);
+		SensitivityEvaluator<T> partial = (SensitivityEvaluator<T>)partialEvaluator;
+		if (partial.deltaAccumulator != null) {
+			if (deltaAccumulator == null)
+				deltaAccumulator = new double[partial.deltaAccumulator.length];
+			for (int i = 0; i < deltaAccumulator.length; i++)
+				deltaAccumulator[i] += partial.deltaAccumulator[i];
+		}
+		for (int j = 0; j < vegaAccumulator.length; j++)
+			vegaAccumulator[j] += partial.vegaAccumulator[j];
+	}
+
+	@Override
+	public void writeState(DataOutput out) throws IOException {
+		if (model == null)
+			throw new IllegalStateException("Model of the simulation not set");
+		super.writeState(out);
+		out.writeInt(deltaAccumulator != null ? deltaAccumulator.length : -1);
+		if (deltaAccumulator != null)
+			for (int i = 0; i < deltaAccumulator.length; i++)
+				out.writeDouble(deltaAccumulator[i]);
+		for (int j = 0; j < vegaAccumulator.length; j++)
+			out.writeDouble(vegaAccumulator[j]);
+	}
+
+	@Override
+	public void readState(DataInput in) throws IOException {
+		if (model == null)
+			throw new IllegalStateException("Model of the simulation not set");
+		super.readState(in);
+		int numberOfTenors = in.readInt();
+		deltaAccumulator = numberOfTenors >= 0 ? new double[numberOfTenors] : null;
+		for (int i = 0; i < numberOfTenors; i++)
+			deltaAccumulator[i] = in.readDouble();
+		for (int j = 0; j < vegaAccumulator.length; j++)
+			vegaAccumulator[j] = in.readDouble();
+	}
+}
@@ -0,0 +1,211 @@
+package com.luigisgro.cqf.montecarlo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.luigisgro.cqf.curve.TimePoint;
+
+/**
+ * Coordinator of a Monte Carlo simulation split into shards, running in different processes or machines
+ * that share a directory. Each shard runs its own simulation, driven by an independent random stream,
+ * with a {@link ShardEvaluator} that periodically writes the summary of its accumulators to the directory.
+ * The coordinator polls the directory, merges the summaries of all the shards and applies the stopping criteria
+ * of the evaluator to the merged accumulators: when no more iterations are needed, it writes a stop file,
+ * waits for the final summaries of all the shards, and merges them into the evaluator.
+ * The coordination fails if a shard does not write any summary, or stops updating its summary before finishing,
+ * for longer than the stale timeout: the modification time of the summaries tells when they were last written.
+ * The directory should be empty when the shards and the coordinator start
+ * @author Luigi Sgro
+ *
+ * @param <T>
+ */
+public class ShardCoordinator<T extends TimePoint> {
+	/**
+	 * Default time between two readings of the summaries, in milliseconds
+	 */
+	public static final long DEFAULT_POLL_INTERVAL = 500;
+
+	/**
+	 * Default time after which a shard not writing its summary is considered lost, in milliseconds
+	 */
+	public static final long DEFAULT_STALE_TIMEOUT = 600000;
+
+	private static final int SUMMARY_MAGIC = 0x53484152;
+	private static final int SUMMARY_VERSION = 1;
+	private static final String SUMMARY_PREFIX = "shard-";
+	private static final String SUMMARY_SUFFIX = ".bin";
+	private static final String STOP_FILE = "stop";
+
+	private final MergeableMonteCarloEvaluator<T> evaluator;
+	private final File directory;
+	private final int numberOfShards;
+	private long pollInterval = DEFAULT_POLL_INTERVAL;
+	private long staleTimeout = DEFAULT_STALE_TIMEOUT;
+
+	/**
+	 * Creates a new coordinator
+	 * @param evaluator The evaluator receiving the merged results of the shards, with the stopping criteria of the whole simulation.
+	 * It must have no iterations, and its partial evaluators must be {@link Checkpointable}
+	 * @param directory The directory shared with the shards
+	 * @param numberOfShards The number of shards taking part in the simulation
+	 */
+	public ShardCoordinator(MergeableMonteCarloEvaluator<T> evaluator, File directory, int numberOfShards) {
+		if (numberOfShards < 1)
+			throw new IllegalArgumentException("Invalid number of shards: " + numberOfShards);
+		if (!(evaluator.createPartialEvaluator() instanceof Checkpointable))
+			throw new IllegalArgumentException("The evaluator " + evaluator.getClass().getName() + " can not be summarised by the shards");
+		this.evaluator = evaluator;
+		this.directory = directory;
+		this.numberOfShards = numberOfShards;
+	}
+
+	/**
+	 * @param pollInterval The time between two readings of the summaries, in milliseconds
+	 */
+	public void setPollInterval(long pollInterval) {
+		this.pollInterval = pollInterval;
+	}
+
+	/**
+	 * @param staleTimeout The time after which a shard not writing its summary is considered lost, in milliseconds.
+	 * It should be much longer than the time a shard takes to write two summaries
+	 */
+	public void setStaleTimeout(long staleTimeout) {
+		if (staleTimeout <= 0)
+			throw new IllegalArgumentException("Invalid stale timeout: " + staleTimeout);
+		this.staleTimeout = staleTimeout;
+	}
+
+	/**
+	 * Merges the summaries of the shards until the stopping criteria is met and all the shards are finished
+	 * @return The total number of iterations of the shards
+	 * @throws IllegalStateException if the directory contains the stop file of a previous simulation, if a summary
+	 * can not be read, if there are more summaries than shards, if some shards are lost, or if the thread is interrupted
+	 */
+	public int coordinate() {
+		File stopFile = getStopFile(directory);
+		if (stopFile.exists())
+			throw new IllegalStateException("The directory " + directory + " contains the stop file of a previous simulation");
+		long start = System.currentTimeMillis();
+		boolean stopped = false;
+		while (true) {
+			MergeableMonteCarloEvaluator<T> merged = evaluator.createPartialEvaluator();
+			List<String> staleShards = new ArrayList<String>();
+			int[] counts = mergeSummaries(merged, System.currentTimeMillis() - staleTimeout, staleShards);
+			if (counts[2] > numberOfShards)
+				throw new IllegalStateException(counts[2] + " summaries found in " + directory + " for " + numberOfShards + " shards");
+			if (!stopped && !merged.moreIterationsNeeded()) {
+				try {
+					if (!stopFile.createNewFile() && !stopFile.exists())
+						throw new IOException("can not create " + stopFile);
+				} catch (IOException e) {
+					throw new IllegalStateException("Unable to stop the shards [" + e.getMessage() + "]");
+				}
+				stopped = true;
+				System.out.println("Stopping the shards after " + counts[0] + " iterations");
+			}
+			if (counts[1] >= numberOfShards) {
+				evaluator.merge(merged);
+				return counts[0];
+			}
+			boolean missing = counts[2] < numberOfShards && System.currentTimeMillis() - start > staleTimeout;
+			if (missing || !staleShards.isEmpty()) {
+				throw new IllegalStateException("Shards lost after " + counts[0] + " iterations: "
+						+ (numberOfShards - counts[2]) + " of " + numberOfShards + " shards without a summary"
+						+ (staleShards.isEmpty() ? "" : ", summaries not updated for " + staleTimeout / 1000 + "s by the shards " + staleShards));
+			}
+			try {
+				Thread.sleep(pollInterval);
+			} catch (InterruptedException e) {
+				throw new IllegalStateException("Coordination interrupted after " + counts[0] + " iterations");
+			}
+		}
+	}
+
+	/**
+	 * Reads the summaries written so far and merges them
+	 * @param merged The evaluator receiving the accumulators of the shards
+	 * @param staleTime The time before which the summary of a shard not finished is stale
+	 * @param staleShards The list receiving the indexes of the shards with a stale summary
+	 * @return The total number of iterations, the number of finished shards and the number of summaries
+	 */
+	private int[] mergeSummaries(MergeableMonteCarloEvaluator<T> merged, long staleTime, List<String> staleShards) {
+		int[] counts = new int[3];
+		File[] files = directory.listFiles();
+		if (files == null)
+			return counts;
+		for (File file : files) {
+			String name = file.getName();
+			if (!name.startsWith(SUMMARY_PREFIX) || !name.endsWith(SUMMARY_SUFFIX))
+				continue;
+			MergeableMonteCarloEvaluator<T> partial = evaluator.createPartialEvaluator();
+			long lastModified = file.lastModified();
+			counts[2]++;
+			try {
+				DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+				try {
+					if (in.readInt() != SUMMARY_MAGIC || in.readInt() != SUMMARY_VERSION || !partial.getClass().getName().equals(in.readUTF()))
+						throw new IllegalStateException("The file " + file + " is not a summary of this simulation");
+					int shardIndex = in.readInt();
+					if (in.readBoolean())
+						counts[1]++;
+					else if (lastModified < staleTime)
+						staleShards.add(String.valueOf(shardIndex));
+					counts[0] += in.readInt();
+					((Checkpointable)partial).readState(in);
+				} finally {
+					in.close();
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException("Unable to read the summary " + file + " [" + e.getMessage() + "]");
+			}
+			merged.merge(partial);
+		}
+		return counts;
+	}
+
+	/**
+	 * @param directory The directory shared by the shards
+	 * @return The file whose presence tells the shards to stop
+	 */
+	static File getStopFile(File directory) {
+		return new File(directory, STOP_FILE);
+	}
+
+	/**
+	 * Writes the summary of a shard, replacing the previous one. The summary is written to a temporary file first,
+	 * so that the coordinator never reads an incomplete summary
+	 * @param directory The directory shared by the shards
+	 * @param shardIndex The index of the shard, unique in the simulation
+	 * @param finished true if the shard will not write any other summary
+	 * @param numberOfIterations The number of iterations of the shard
+	 * @param partialEvaluator The accumulators of the shard
+	 * @throws IOException If the summary can not be written
+	 */
+	static void writeSummary(File directory, int shardIndex, boolean finished, int numberOfIterations, MergeableMonteCarloEvaluator<?> partialEvaluator) throws IOException {
+		File file = new File(directory, SUMMARY_PREFIX + shardIndex + SUMMARY_SUFFIX);
+		File temporaryFile = new File(directory, SUMMARY_PREFIX + shardIndex + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+		try {
+			out.writeInt(SUMMARY_MAGIC);
+			out.writeInt(SUMMARY_VERSION);
+			out.writeUTF(partialEvaluator.getClass().getName());
+			out.writeInt(shardIndex);
+			out.writeBoolean(finished);
+			out.writeInt(numberOfIterations);
+			((Checkpointable)partialEvaluator).writeState(out);
+		} finally {
+			out.close();
+		}
+		if (!temporaryFile.renameTo(file) && !(file.delete() && temporaryFile.renameTo(file)))
+			throw new IOException("can not rename " + temporaryFile);
+	}
+}
@@ -0,0 +1,136 @@
+package com.luigisgro.cqf.montecarlo;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.luigisgro.cqf.curve.CurveTimeSeries;
+import com.luigisgro.cqf.curve.FixingSchedule;
+import com.luigisgro.cqf.curve.Fixings;
+import com.luigisgro.cqf.curve.TimePoint;
+
+/**
+ * The evaluator of one shard of a simulation coordinated by a {@link ShardCoordinator}.
+ * The scenarios are accumulated by a partial evaluator of the evaluator of the whole simulation,
+ * whose stopping criteria is ignored: every round of iterations the summary of the accumulators is written
+ * to the shared directory, and the shard stops when the coordinator writes the stop file, or when the shard alone
+ * reaches the maximum number of iterations of the whole simulation. The shard must be driven by a random stream
+ * not used by any other shard
+ * @author Luigi Sgro
+ *
+ * @param <T>
+ */
+public class ShardEvaluator<T extends TimePoint> implements StreamingMonteCarloEvaluator<T>, AntitheticMonteCarloEvaluator<T> {
+	/**
+	 * Default number of iterations between two summaries
+	 */
+	public static final int DEFAULT_ROUND_SIZE = 1000;
+
+	private final MergeableMonteCarloEvaluator<T> partialEvaluator;
+	private final File directory;
+	private final int shardIndex;
+	private final int roundSize;
+	private int numberOfIterations = 0;
+	private int iterationsInRound = 0;
+	private boolean finished = false;
+
+	/**
+	 * Creates a new evaluator for a shard
+	 * @param evaluator The evaluator of the whole simulation. Its partial evaluators must be {@link Checkpointable}
+	 * @param directory The directory shared with the coordinator
+	 * @param shardIndex The index of the shard, unique in the simulation
+	 * @param roundSize The number of iterations between two summaries
+	 */
+	public ShardEvaluator(MergeableMonteCarloEvaluator<T> evaluator, File directory, int shardIndex, int roundSize) {
+		if (roundSize < 1)
+			throw new IllegalArgumentException("Invalid round size: " + roundSize);
+		partialEvaluator = evaluator.createPartialEvaluator();
+		if (!(partialEvaluator instanceof Checkpointable))
+			throw new IllegalArgumentException("The evaluator " + evaluator.getClass().getName() + " can not be summarised by the shards");
+		this.directory = directory;
+		this.shardIndex = shardIndex;
+		this.roundSize = roundSize;
+	}
+
+	/**
+	 * @return The accumulators of this shard only
+	 */
+	public MergeableMonteCarloEvaluator<T> getPartialEvaluator() {
+		return partialEvaluator;
+	}
+
+	/**
+	 * @return The number of iterations of this shard
+	 */
+	public int getNumberOfIterations() {
+		return numberOfIterations;
+	}
+
+	private void accumulated() {
+		numberOfIterations++;
+		iterationsInRound++;
+	}
+
+	@Override
+	public double evaluateAndAccumulate(CurveTimeSeries<T> scenario) {
+		double scenarioEvaluation = partialEvaluator.evaluateAndAccumulate(scenario);
+		accumulated();
+		return scenarioEvaluation;
+	}
+
+	@Override
+	public double evaluateAndAccumulate(CurveTimeSeries<T> scenario, CurveTimeSeries<T> antitheticScenario) {
+		if (!(partialEvaluator instanceof AntitheticMonteCarloEvaluator))
+			throw new IllegalStateException("The evaluator " + partialEvaluator.getClass().getName() + " does not accept antithetic scenarios");
+		double scenarioEvaluation = ((AntitheticMonteCarloEvaluator<T>)partialEvaluator).evaluateAndAccumulate(scenario, antitheticScenario);
+		accumulated();
+		return scenarioEvaluation;
+	}
+
+	@Override
+	public void registerFixings(FixingSchedule<T> schedule) {
+		if (!(partialEvaluator instanceof StreamingMonteCarloEvaluator))
+			throw new IllegalStateException("The evaluator " + partialEvaluator.getClass().getName() + " can not be used with streaming scenarios");
+		((StreamingMonteCarloEvaluator<T>)partialEvaluator).registerFixings(schedule);
+	}
+
+	@Override
+	public double evaluateAndAccumulate(Fixings fixings) {
+		double scenarioEvaluation = ((StreamingMonteCarloEvaluator<T>)partialEvaluator).evaluateAndAccumulate(fixings);
+		accumulated();
+		return scenarioEvaluation;
+	}
+
+	/**
+	 * At the end of each round the summary is written, and the stop file is checked
+	 * @throws IllegalStateException if the summary can not be written
+	 */
+	@Override
+	public boolean moreIterationsNeeded() {
+		if (finished)
+			return false;
+		if (iterationsInRound >= roundSize || partialEvaluator.remainingIterations() == 0) {
+			iterationsInRound = 0;
+			finished = ShardCoordinator.getStopFile(directory).exists() || partialEvaluator.remainingIterations() == 0;
+			try {
+				ShardCoordinator.writeSummary(directory, shardIndex, finished, numberOfIterations, partialEvaluator);
+			} catch (IOException e) {
+				throw new IllegalStateException("Unable to write the summary of shard " + shardIndex + " [" + e.getMessage() + "]");
+			}
+		}
+		return !finished;
+	}
+
+	/**
+	 * @return The estimate of this shard only
+	 */
+	@Override
+	public double getResult() {
+		return partialEvaluator.getResult();
+	}
+
+	@Override
+	public void printProgress() {
+		System.out.print("Shard " + shardIndex + " - ");
+		partialEvaluator.printProgress();
+	}
+}
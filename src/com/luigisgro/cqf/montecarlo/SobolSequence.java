@@ -0,0 +1,195 @@
+package com.luigisgro.cqf.montecarlo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generator of the points of a Sobol low-discrepancy sequence, with 32 bits of precision, in Gray code order.
+ * The primitive polynomials defining each dimension are found by exhaustive search, in order of degree.
+ * The initial direction numbers of the first dimensions are the ones published by S. Joe and F. Y. Kuo;
+ * for higher dimensions they are random odd numbers, drawn from a fixed seed, so that the sequence is
+ * always the same for a given number of dimensions.
+ * A random digital shift (XOR of each coordinate with a random integer) can be applied to obtain
+ * a randomised sequence: each shifted sequence keeps the low discrepancy, and is an unbiased estimator
+ * @author Luigi Sgro
+ *
+ */
+public class SobolSequence {
+	private static final int BITS = 32;
+	private static final double NORMALIZATION = 1.0 / 4294967296.0; // 2^-32
+	private static final long DIRECTION_NUMBERS_SEED = 20120101L;
+	// degree, coefficients and initial direction numbers of the dimensions from the second one (Joe and Kuo)
+	private static final int[][] INITIAL_DIRECTION_NUMBERS = {
+		{ 1, 0, 1 },
+		{ 2, 1, 1, 3 },
+		{ 3, 1, 1, 3, 1 },
+		{ 3, 2, 1, 1, 1 },
+		{ 4, 1, 1, 1, 3, 3 },
+		{ 4, 4, 1, 3, 5, 13 },
+		{ 5, 2, 1, 1, 5, 5, 17 },
+		{ 5, 4, 1, 1, 5, 5, 5 },
+		{ 5, 7, 1, 1, 7, 11, 19 },
+		{ 5, 11, 1, 1, 5, 1, 1 },
+		{ 5, 13, 1, 1, 1, 3, 11 },
+		{ 5, 14, 1, 3, 5, 5, 31 }
+	};
+
+	private int dimension;
+	private int[][] directions;
+	private int[] shift;
+	private int[] state;
+	private int index = 0;
+
+	/**
+	 * Creates a new Sobol sequence
+	 * @param dimension The number of coordinates of each point
+	 * @param shiftGenerator The generator of the random digital shift, or null for the plain sequence
+	 */
+	public SobolSequence(int dimension, Random shiftGenerator) {
+		this.dimension = dimension;
+		directions = createDirections(dimension);
+		state = new int[dimension];
+		shift = new int[dimension];
+		if (shiftGenerator != null)
+			for (int i = 0; i < dimension; i++)
+				shift[i] = shiftGenerator.nextInt();
+	}
+
+	/**
+	 * Creates a new sequence with the same direction numbers of an existing one, restarting from the
+	 * beginning with a different digital shift. It avoids calculating the direction numbers again
+	 * @param sequence The sequence providing the direction numbers
+	 * @param shiftGenerator The generator of the random digital shift, or null for the plain sequence
+	 */
+	public SobolSequence(SobolSequence sequence, Random shiftGenerator) {
+		this.dimension = sequence.dimension;
+		directions = sequence.directions;
+		state = new int[dimension];
+		shift = new int[dimension];
+		if (shiftGenerator != null)
+			for (int i = 0; i < dimension; i++)
+				shift[i] = shiftGenerator.nextInt();
+	}
+
+	/**
+	 * @return The number of coordinates of each point
+	 */
+	public int getDimension() {
+		return dimension;
+	}
+
+	/**
+	 * Fills an array with the next point of the sequence. The first point of the sequence, the origin, is skipped
+	 * @param point The array to be filled with coordinates strictly between 0 and 1
+	 */
+	public void nextPoint(double[] point) {
+		// Gray code: only the direction of the rightmost zero bit of the previous index changes
+		int bit = Integer.numberOfTrailingZeros(~index);
+		index++;
+		for (int i = 0; i < dimension; i++) {
+			state[i] ^= directions[i][bit];
+			point[i] = (((state[i] ^ shift[i]) & 0xffffffffL) + 0.5) * NORMALIZATION;
+		}
+	}
+
+	private static int[][] createDirections(int dimension) {
+		int[][] directions = new int[dimension][BITS];
+		// first dimension: all the initial direction numbers are 1
+		for (int k = 0; k < BITS; k++)
+			directions[0][k] = 1 << (BITS - 1 - k);
+		List<int[]> polynomials = primitivePolynomials(dimension - 1);
+		Random random = new Random(DIRECTION_NUMBERS_SEED);
+		for (int i = 1; i < dimension; i++) {
+			int degree = polynomials.get(i - 1)[0];
+			int coefficients = polynomials.get(i - 1)[1];
+			long[] m = new long[BITS];
+			for (int k = 0; k < degree && k < BITS; k++) {
+				if (i <= INITIAL_DIRECTION_NUMBERS.length)
+					m[k] = INITIAL_DIRECTION_NUMBERS[i - 1][2 + k];
+				else
+					m[k] = 2 * random.nextInt(1 << k) + 1; // odd and less than 2^(k+1)
+			}
+			for (int k = degree; k < BITS; k++) {
+				m[k] = m[k - degree] ^ (m[k - degree] << degree);
+				for (int j = 1; j < degree; j++)
+					if (((coefficients >> (degree - 1 - j)) & 1) == 1)
+						m[k] ^= m[k - j] << j;
+			}
+			for (int k = 0; k < BITS; k++)
+				directions[i][k] = (int)(m[k] << (BITS - 1 - k));
+		}
+		return directions;
+	}
+
+	/**
+	 * Finds the first primitive polynomials over GF(2), excluding x, in order of degree and coefficients.
+	 * A polynomial of degree s is encoded as {s, a}, where the bits of a are the coefficients
+	 * of the powers from s - 1 down to 1
+	 * @param count The number of polynomials to be found
+	 * @return The list of polynomials
+	 */
+	static List<int[]> primitivePolynomials(int count) {
+		List<int[]> polynomials = new ArrayList<int[]>(count);
+		for (int degree = 1; polynomials.size() < count; degree++) {
+			for (int a = 0; a < (1 << (degree - 1)) && polynomials.size() < count; a++) {
+				long polynomial = (1L << degree) | ((long)a << 1) | 1L;
+				if (isPrimitive(polynomial, degree))
+					polynomials.add(new int[] { degree, a });
+			}
+		}
+		return polynomials;
+	}
+
+	private static boolean isPrimitive(long polynomial, int degree) {
+		if (degree == 1)
+			return true; // x + 1
+		// the order of x modulo the polynomial must be 2^degree - 1
+		long order = (1L << degree) - 1;
+		if (powerOfX(order, polynomial, degree) != 1)
+			return false;
+		for (long factor : primeFactors(order))
+			if (powerOfX(order / factor, polynomial, degree) == 1)
+				return false;
+		return true;
+	}
+
+	private static long powerOfX(long exponent, long polynomial, int degree) {
+		long result = 1;
+		long base = 2; // x
+		while (exponent > 0) {
+			if ((exponent & 1) == 1)
+				result = multiply(result, base, polynomial, degree);
+			base = multiply(base, base, polynomial, degree);
+			exponent >>= 1;
+		}
+		return result;
+	}
+
+	private static long multiply(long a, long b, long polynomial, int degree) {
+		long result = 0;
+		while (b != 0) {
+			if ((b & 1) == 1)
+				result ^= a;
+			b >>= 1;
+			a <<= 1;
+			if (((a >> degree) & 1) == 1)
+				a ^= polynomial;
+		}
+		return result;
+	}
+
+	private static List<Long> primeFactors(long n) {
+		List<Long> factors = new ArrayList<Long>();
+		for (long p = 2; p * p <= n; p++) {
+			if (n % p == 0) {
+				factors.add(p);
+				while (n % p == 0)
+					n /= p;
+			}
+		}
+		if (n > 1)
+			factors.add(n);
+		return factors;
+	}
+}
@@ -0,0 +1,124 @@
+package com.luigisgro.cqf.montecarlo;
+
+import java.util.Random;
+
+import com.luigisgro.cqf.util.InverseCumulativeNormal;
+
+/**
+ * Quasi-random generator of standard normal vectors, based on a {@link SobolSequence} and on the
+ * {@link BrownianBridge} construction of the paths.
+ * A whole path is drawn at once, as one point of a Sobol sequence with dimension equal to the number of factors
+ * times the number of steps, and the vectors are then returned one step at a time: the generator must be
+ * used to create complete paths of the given number of steps.
+ * With randomised QMC the paths are drawn alternately from a number of independent replications of the sequence,
+ * each one with its own random digital shift: the path n belongs to the replication n modulo the number of replications,
+ * as expected by {@link RandomizedQMCEvaluator}
+ * @author Luigi Sgro
+ *
+ */
+public class SobolVectorGenerator implements BlockRandomVectorGenerator {
+	private int dimension;
+	private int numberOfSteps;
+	private SobolSequence[] replications;
+	private BrownianBridge bridge;
+	private double[] pathVariates;
+	private double[] vector;
+	private int step;
+	private long pathCount = 0;
+
+	/**
+	 * Creates a generator of the plain Sobol sequence
+	 * @param dimension The dimension of the model
+	 * @param numberOfSteps The number of steps of each path
+	 */
+	public SobolVectorGenerator(Integer dimension, Integer numberOfSteps) {
+		this(dimension, numberOfSteps, null, null);
+	}
+
+	/**
+	 * Creates a generator of randomised Sobol sequences
+	 * @param dimension The dimension of the model
+	 * @param numberOfSteps The number of steps of each path
+	 * @param seed The seed of the digital shifts, or null for a random seed. If both seed and replications are null,
+	 * the plain sequence is used
+	 * @param replications The number of independently shifted sequences, or null for a single one
+	 */
+	public SobolVectorGenerator(Integer dimension, Integer numberOfSteps, Long seed, Integer replications) {
+		if (dimension < 1 || numberOfSteps < 1)
+			throw new IllegalArgumentException("Dimension and number of steps must be positive: " + dimension + ", " + numberOfSteps);
+		if (replications != null && replications < 1)
+			throw new IllegalArgumentException("Number of replications must be positive: " + replications);
+		this.dimension = dimension;
+		this.numberOfSteps = numberOfSteps;
+		Random shiftGenerator = null;
+		if (seed != null)
+			shiftGenerator = new Random(seed);
+		else if (replications != null)
+			shiftGenerator = new Random();
+		int numberOfReplications = replications != null ? replications : 1;
+		this.replications = new SobolSequence[numberOfReplications];
+		this.replications[0] = new SobolSequence(dimension * numberOfSteps, shiftGenerator);
+		for (int r = 1; r < numberOfReplications; r++)
+			this.replications[r] = new SobolSequence(this.replications[0], shiftGenerator);
+		bridge = new BrownianBridge(numberOfSteps);
+		pathVariates = new double[dimension * numberOfSteps];
+		vector = new double[dimension];
+		step = numberOfSteps;
+	}
+
+	@Override
+	public int getDimension() {
+		return dimension;
+	}
+
+	/**
+	 * @return The number of independently shifted sequences
+	 */
+	public int getReplications() {
+		return replications.length;
+	}
+
+	/**
+	 * @return The number of steps of each path
+	 */
+	public int getNumberOfSteps() {
+		return numberOfSteps;
+	}
+
+	/**
+	 * Draws the variates of a new path: the normal variate i of the factor f is
+	 * the coordinate i * dimension + f of the Sobol point, so that the first
+	 * coordinates drive the final points of all the factors
+	 */
+	private void nextPath() {
+		replications[(int)(pathCount % replications.length)].nextPoint(pathVariates);
+		pathCount++;
+		for (int i = 0; i < pathVariates.length; i++)
+			pathVariates[i] = InverseCumulativeNormal.value(pathVariates[i]);
+		for (int f = 0; f < dimension; f++)
+			bridge.buildIncrements(pathVariates, f, dimension, pathVariates);
+		step = 0;
+	}
+
+	@Override
+	public void generateNextBlock(double[] block, int numberOfVectors) {
+		for (int i = 0; i < numberOfVectors; i++) {
+			if (step == numberOfSteps)
+				nextPath();
+			System.arraycopy(pathVariates, step * dimension, block, i * dimension, dimension);
+			step++;
+		}
+	}
+
+	/**
+	 * The returned array is reused by the next call
+	 */
+	@Override
+	public double[] generateNextVector() {
+		if (step == numberOfSteps)
+			nextPath();
+		System.arraycopy(pathVariates, step * dimension, vector, 0, dimension);
+		step++;
+		return vector;
+	}
+}
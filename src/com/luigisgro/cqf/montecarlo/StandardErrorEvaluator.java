@@ -1,22 +1,27 @@
 package com.luigisgro.cqf.montecarlo;
 
-import com.luigisgro.cqf.curve.CurveTimeSeries;
 import com.luigisgro.cqf.curve.CurveTimeSeriesOperator;
 import com.luigisgro.cqf.curve.TimePoint;
 
 /**
  * An implementation of {@link MonteCarloEvaluator} based on the notion of "standard error".
- * At each iteration an approximation of the standard error is calculated, and the simulation
- * is deemed completed if the approximated standard error falls below a given threshold.
+ * Mean and variance of the evaluations are accumulated by {@link SampleStatistics} with the Welford algorithm, which does not lose
+ * precision when the evaluations are large compared to their dispersion. The standard error is checked
+ * every given number of iterations, and the simulation is deemed completed if it falls below a given threshold.
+ * From the current variance the evaluator predicts the number of iterations still needed, and the time they will take.
  * A maximum number of iterations is enforced thanks to the parent class: {@link CurveTimeSeriesOperatorEvaluator}
  * @author Luigi Sgro
  *
  * @param <T>
  */
 public class StandardErrorEvaluator<T extends TimePoint> extends CurveTimeSeriesOperatorEvaluator<T> {
-	private final double squareStdErrdThreshold;
-	private double accumulatorOfSquares = 0.0;
-	
+	/**
+	 * Default number of iterations between two checks of the standard error
+	 */
+	public static final int DEFAULT_CHECK_INTERVAL = SampleStatistics.DEFAULT_CHECK_INTERVAL;
+
+	protected final double stdErrdThreshold;
+
 	/**
 	 * Creates a new evaluator
 	 * @param operator The derivative to be priced
@@ -25,9 +30,16 @@ public class StandardErrorEvaluator<T extends TimePoint> extends CurveTimeSeries
 	 */
 	public StandardErrorEvaluator(CurveTimeSeriesOperator<T> operator, Double stdErrdThreshold, Integer maxNumberOfIterations) {
 		super(operator, maxNumberOfIterations);
-		this.squareStdErrdThreshold = stdErrdThreshold * stdErrdThreshold;
+		this.stdErrdThreshold = stdErrdThreshold;
 	}
-	
+
+	/**
+	 * @param checkInterval The number of iterations between two checks of the standard error
+	 */
+	public void setCheckInterval(int checkInterval) {
+		statistics.setCheckInterval(checkInterval);
+	}
+
 	/**
 	 * Calculates the estimated standard error at the present stage of the simulation
 	 * This value is used internally by the method {@link MonteCarloEvaluator#moreIterationsNeeded()}
@@ -35,30 +47,58 @@ public class StandardErrorEvaluator<T extends TimePoint> extends CurveTimeSeries
 	 * @return An estimate of the current standard error of the simulation
 	 */
 	public double squareStdErr() {
-		return Math.abs(accumulatorOfSquares / numberOfIterations  - accumulator * accumulator / numberOfIterations / numberOfIterations) / numberOfIterations;
-	}
-	
-	@Override
-	public double evaluateAndAccumulate(CurveTimeSeries<T> scenario) {
-		double scenarioEvaluation = super.evaluateAndAccumulate(scenario);
-		accumulatorOfSquares += scenarioEvaluation * scenarioEvaluation;
-		return scenarioEvaluation;
+		return statistics.squareStdErr(0);
 	}
 
+	/**
+	 * The standard error is only checked after the first 100 iterations, and then every check interval:
+	 * between two checks the outcome of the last one is returned
+	 */
 	@Override
 	public boolean moreIterationsNeeded() {
-		if (super.moreIterationsNeeded()) {
-			if (numberOfIterations < 100) // let the results wander around for a while, building an error > 0
-				return true;
-			else
-				return squareStdErr() > squareStdErrdThreshold;
-		} else {
+		if (!super.moreIterationsNeeded())
 			return false;
-		}
-	}	
+		if (statistics.isCheckDue())
+			statistics.check(squareStdErr(), stdErrdThreshold, maxNumberOfIterations);
+		return !statistics.isConverged();
+	}
+
+	/**
+	 * Predicts the total number of iterations needed to reach the threshold of standard error,
+	 * assuming that the variance of the evaluations stays at its current estimate
+	 * @return The predicted number of iterations, or {@link Integer#MAX_VALUE} if the threshold can not be reached
+	 */
+	public int getPredictedIterations() {
+		return statistics.getPredictedIterations(squareStdErr(), stdErrdThreshold);
+	}
+
+	/**
+	 * @return The predicted number of iterations still needed, limited by the maximum number of iterations
+	 */
+	public int getPredictedRemainingIterations() {
+		return Math.min(getPredictedIterations() - numberOfIterations, remainingIterations());
+	}
+
+	/**
+	 * Estimates the time needed by the remaining iterations from the speed of the iterations performed so far
+	 * @return The estimated time to completion, in milliseconds, or -1 if no iteration has been timed yet
+	 */
+	public long getEstimatedTimeToCompletion() {
+		return statistics.getEstimatedTime(getPredictedRemainingIterations());
+	}
+
+	@Override
+	public MergeableMonteCarloEvaluator<T> createPartialEvaluator() {
+		StandardErrorEvaluator<T> partialEvaluator = new StandardErrorEvaluator<T>(operator, stdErrdThreshold, maxNumberOfIterations);
+		partialEvaluator.statistics = statistics.createEmpty();
+		return partialEvaluator;
+	}
 
 	@Override
 	public void printProgress() {
-		System.out.println("Iteration: " + numberOfIterations + "; currentValue: " + getResult() + "; std error: " + Math.sqrt(squareStdErr()));
+		long timeToCompletion = getEstimatedTimeToCompletion();
+		System.out.println("Iteration: " + numberOfIterations + "; currentValue: " + getResult() + "; std error: " + Math.sqrt(squareStdErr())
+				+ "; predicted remaining iterations: " + getPredictedRemainingIterations()
+				+ (timeToCompletion >= 0 ? "; ETA: " + timeToCompletion / 1000 + "s" : ""));
 	}
 }
@@ -0,0 +1,30 @@
+package com.luigisgro.cqf.montecarlo;
+
+import com.luigisgro.cqf.curve.FixingSchedule;
+import com.luigisgro.cqf.curve.Fixings;
+import com.luigisgro.cqf.curve.TimePoint;
+
+/**
+ * A {@link MonteCarloEvaluator} that can work on the fixings of a scenario, instead of the complete
+ * time series. It is used by {@link StreamingMonteCarloSimulation}
+ * @author Luigi Sgro
+ *
+ * @param <T>
+ */
+public interface StreamingMonteCarloEvaluator<T extends TimePoint> extends MonteCarloEvaluator<T> {
+
+	/**
+	 * Registers the values needed for the evaluation of the scenarios
+	 * @param schedule The schedule of the simulation
+	 * @throws IllegalStateException if the derivative can not be evaluated in streaming mode
+	 */
+	void registerFixings(FixingSchedule<T> schedule);
+
+	/**
+	 * Same as {@link MonteCarloEvaluator#evaluateAndAccumulate(com.luigisgro.cqf.curve.CurveTimeSeries)},
+	 * for the values extracted from the scenario
+	 * @param fixings The values registered, for the current scenario
+	 * @return the evaluation of the current scenario
+	 */
+	double evaluateAndAccumulate(Fixings fixings);
+}
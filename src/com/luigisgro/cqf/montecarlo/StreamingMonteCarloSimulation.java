@@ -0,0 +1,75 @@
+package com.luigisgro.cqf.montecarlo;
+
+import com.luigisgro.cqf.curve.Curve;
+import com.luigisgro.cqf.curve.FixingSchedule;
+import com.luigisgro.cqf.curve.Fixings;
+import com.luigisgro.cqf.curve.TimePoint;
+
+/**
+ * A {@link MonteCarloSimulation} that never stores complete scenarios. The evaluator registers
+ * the values it needs in a {@link FixingSchedule}, and the simulation collects them while the model
+ * steps forward, keeping in memory only the current curve, the running sum of the short rate
+ * and the fixings. The random vectors used are the same as in the base simulation, so that
+ * the results of the two modes are the same, up to rounding
+ * @author Luigi Sgro
+ *
+ * @param <T>
+ */
+public class StreamingMonteCarloSimulation<T extends TimePoint> extends MonteCarloSimulation<T> {
+	private StreamingMonteCarloEvaluator<T> evaluator;
+	private FixingSchedule<T> schedule;
+
+	/**
+	 * Creates a new streaming Monte Carlo simulation framework, and registers the fixings needed by the evaluator
+	 * @param multiFactorModel The model that provides all the calculation to generate scenarios
+	 * @param evaluator The object responsible for evaluating the derivative value and stop the simulation
+	 * @param randomVectorGenerator A generator to feed the model with suitably distributed vectors
+	 * @param baseScenario The starting point for the simulation
+	 * @param pointDates The points that define the time horizon of the simulation
+	 * @param timeStep The time step (fraction of year) to be used in the simulation
+	 */
+	public StreamingMonteCarloSimulation(MultiFactorModel multiFactorModel,
+			StreamingMonteCarloEvaluator<T> evaluator,
+			RandomVectorGenerator randomVectorGenerator,
+			Curve baseScenario,
+			T[] pointDates,
+			double timeStep) {
+		super(multiFactorModel, evaluator, randomVectorGenerator, baseScenario, pointDates, timeStep);
+		this.evaluator = evaluator;
+		schedule = new FixingSchedule<T>(pointDates);
+		evaluator.registerFixings(schedule);
+	}
+
+	/**
+	 * Antithetic paths are not available in streaming mode
+	 * @param antitheticPaths Must be false
+	 */
+	@Override
+	public void setAntitheticPaths(boolean antitheticPaths) {
+		if (antitheticPaths)
+			throw new IllegalArgumentException("Antithetic paths are not supported by the streaming simulation");
+	}
+
+	/**
+	 * This method executes a complete Monte Carlo simulation, feeding the evaluator with the fixings of each scenario
+	 * @return The number of completed iterations, including the ones restored from a checkpoint
+	 */
+	@Override
+	public int simulate() {
+		int numOfIterations = restoreCheckpoint();
+		Fixings fixings = schedule.createFixings(getBaseScenario().getTermStructure());
+		double[] curves = new double[2 * getBaseScenario().getPoints().length];
+		double[] randomBlock = createRandomBlock();
+		while (evaluator.moreIterationsNeeded()) {
+			streamScenario(schedule, fixings, curves, getStochasticVectorGenerator(), randomBlock);
+			evaluator.evaluateAndAccumulate(fixings);
+			if ((numOfIterations + 1) % 1000 == 0) {
+				evaluator.printProgress();
+			}
+			numOfIterations++;
+			checkpoint(numOfIterations - 1, numOfIterations);
+		}
+		saveCheckpoint(numOfIterations);
+		return numOfIterations;
+	}
+}
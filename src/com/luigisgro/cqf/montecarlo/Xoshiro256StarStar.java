@@ -0,0 +1,218 @@
+package com.luigisgro.cqf.montecarlo;
+
+import org.apache.commons.math.random.BitsStreamGenerator;
+
+/**
+ * The xoshiro256** generator of D. Blackman and S. Vigna: 256 bits of state, period 2^256 - 1,
+ * and 64 good bits for each draw. The state can be advanced by 2^128 draws with {@link #jump()}
+ * and by 2^192 draws with {@link #longJump()}, to obtain non-overlapping streams for parallel
+ * and distributed simulations from a single seed.
+ * Seeds are expanded to the full state with the SplitMix64 generator
+ * @author Luigi Sgro
+ *
+ */
+public class Xoshiro256StarStar extends BitsStreamGenerator {
+	private static final long[] JUMP = { 0x180ec6d33cfd0abaL, 0xd5a61266f0c9392cL, 0xa9582618e03fc9aaL, 0x39abdc4529b1661cL };
+	private static final long[] LONG_JUMP = { 0x76e15d3efefdcbbfL, 0xc5004e441c522fb3L, 0x77710069854ee241L, 0x39109bb02acbe635L };
+
+	private long s0;
+	private long s1;
+	private long s2;
+	private long s3;
+	private double nextGaussian = Double.NaN;
+
+	/**
+	 * Creates a generator with a seed based on the current time
+	 */
+	public Xoshiro256StarStar() {
+		setSeed(System.nanoTime() ^ System.currentTimeMillis() << 32);
+	}
+
+	/**
+	 * Creates a generator that always produces the same sequence for the same seed
+	 * @param seed The seed
+	 */
+	public Xoshiro256StarStar(long seed) {
+		setSeed(seed);
+	}
+
+	/**
+	 * Creates a generator with the given state
+	 * @param state The four words of the state, not all 0
+	 */
+	public Xoshiro256StarStar(long[] state) {
+		setState(state);
+	}
+
+	/**
+	 * @return A new generator with the same state as this one, producing the same sequence
+	 */
+	public Xoshiro256StarStar copy() {
+		return new Xoshiro256StarStar(getState());
+	}
+
+	/**
+	 * @return A copy of the four words of the state
+	 */
+	public long[] getState() {
+		return new long[] { s0, s1, s2, s3 };
+	}
+
+	/**
+	 * @param state The four words of the state, not all 0
+	 */
+	public void setState(long[] state) {
+		if (state.length != 4)
+			throw new IllegalArgumentException("The state must have 4 words: " + state.length);
+		if ((state[0] | state[1] | state[2] | state[3]) == 0)
+			throw new IllegalArgumentException("The state must not be all 0");
+		s0 = state[0];
+		s1 = state[1];
+		s2 = state[2];
+		s3 = state[3];
+		clear();
+	}
+
+	@Override
+	public void setSeed(int seed) {
+		setSeed((long)seed);
+	}
+
+	@Override
+	public void setSeed(int[] seed) {
+		long combined = 0;
+		for (int i = 0; i < seed.length; i++)
+			combined = combined * 0x9e3779b97f4a7c15L + seed[i];
+		setSeed(combined);
+	}
+
+	@Override
+	public void setSeed(long seed) {
+		long x = seed;
+		x += 0x9e3779b97f4a7c15L;
+		s0 = splitMix(x);
+		x += 0x9e3779b97f4a7c15L;
+		s1 = splitMix(x);
+		x += 0x9e3779b97f4a7c15L;
+		s2 = splitMix(x);
+		x += 0x9e3779b97f4a7c15L;
+		s3 = splitMix(x);
+		clear();
+	}
+
+	/**
+	 * Derives the seed of a stream from a base seed with a step of the SplitMix64 generator,
+	 * so that the seeds of adjacent streams are uncorrelated, and different streams have different seeds.
+	 * It is meant for generators that can not jump to a new stream
+	 * @param seed The base seed
+	 * @param stream The index of the stream
+	 * @return The seed of the stream
+	 */
+	public static long streamSeed(long seed, int stream) {
+		return splitMix(seed + (stream + 1) * 0x9e3779b97f4a7c15L);
+	}
+
+	private static long splitMix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Discards the normal variate cached by {@link #nextGaussian()}
+	 */
+	private void clear() {
+		nextGaussian = Double.NaN;
+	}
+
+	/**
+	 * Normal variate with the polar method, caching the second variate of each pair.
+	 * The cache is discarded when the state is changed
+	 */
+	@Override
+	public double nextGaussian() {
+		if (!Double.isNaN(nextGaussian)) {
+			double result = nextGaussian;
+			nextGaussian = Double.NaN;
+			return result;
+		}
+		double x;
+		double y;
+		double r;
+		do {
+			x = 2 * nextDouble() - 1;
+			y = 2 * nextDouble() - 1;
+			r = x * x + y * y;
+		} while (r >= 1 || r == 0);
+		double scale = Math.sqrt(-2 * Math.log(r) / r);
+		nextGaussian = y * scale;
+		return x * scale;
+	}
+
+	@Override
+	public long nextLong() {
+		long result = Long.rotateLeft(s1 * 5, 7) * 9;
+		long t = s1 << 17;
+		s2 ^= s0;
+		s3 ^= s1;
+		s1 ^= s2;
+		s0 ^= s3;
+		s2 ^= t;
+		s3 = Long.rotateLeft(s3, 45);
+		return result;
+	}
+
+	@Override
+	public int nextInt() {
+		return (int)(nextLong() >>> 32);
+	}
+
+	@Override
+	public double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	@Override
+	protected int next(int bits) {
+		return (int)(nextLong() >>> (64 - bits));
+	}
+
+	/**
+	 * Advances the state by 2^128 draws. It can be used to generate 2^128 non-overlapping
+	 * sequences, each one of 2^128 draws
+	 */
+	public void jump() {
+		jump(JUMP);
+	}
+
+	/**
+	 * Advances the state by 2^192 draws. It can be used to generate 2^64 starting points,
+	 * each one the origin of 2^64 sequences obtained with {@link #jump()}
+	 */
+	public void longJump() {
+		jump(LONG_JUMP);
+	}
+
+	private void jump(long[] polynomial) {
+		long t0 = 0;
+		long t1 = 0;
+		long t2 = 0;
+		long t3 = 0;
+		for (int i = 0; i < polynomial.length; i++) {
+			for (int b = 0; b < 64; b++) {
+				if ((polynomial[i] & (1L << b)) != 0) {
+					t0 ^= s0;
+					t1 ^= s1;
+					t2 ^= s2;
+					t3 ^= s3;
+				}
+				nextLong();
+			}
+		}
+		s0 = t0;
+		s1 = t1;
+		s2 = t2;
+		s3 = t3;
+		clear();
+	}
+}
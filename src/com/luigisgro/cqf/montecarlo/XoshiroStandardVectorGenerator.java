@@ -0,0 +1,62 @@
+package com.luigisgro.cqf.montecarlo;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Generator of standard normal vectors with the Ziggurat method, drawing the uniform integers
+ * from a {@link Xoshiro256StarStar} generator. The generator can be split into non-overlapping substreams,
+ * and its state, the four words of the uniform generator, can be saved to a checkpoint
+ * @author Luigi Sgro
+ *
+ */
+public class XoshiroStandardVectorGenerator extends ZigguratStandardVectorGenerator implements JumpableRandomVectorGenerator, Checkpointable {
+
+	/**
+	 * @param dimension The dimension of the model
+	 */
+	public XoshiroStandardVectorGenerator(Integer dimension) {
+		super(dimension, new Xoshiro256StarStar());
+	}
+
+	/**
+	 * Creates a generator that always produces the same sequence for the same seed
+	 * @param dimension The dimension of the model
+	 * @param seed The seed of the underlying random generator
+	 */
+	public XoshiroStandardVectorGenerator(Integer dimension, Long seed) {
+		super(dimension, new Xoshiro256StarStar(seed));
+	}
+
+	private XoshiroStandardVectorGenerator(Integer dimension, Xoshiro256StarStar uniformGenerator) {
+		super(dimension, uniformGenerator);
+	}
+
+	@Override
+	public JumpableRandomVectorGenerator copyAndJump() {
+		Xoshiro256StarStar uniformGenerator = (Xoshiro256StarStar)getUniformGenerator();
+		XoshiroStandardVectorGenerator copy = new XoshiroStandardVectorGenerator(getDimension(), uniformGenerator.copy());
+		uniformGenerator.jump();
+		return copy;
+	}
+
+	@Override
+	public void longJump() {
+		((Xoshiro256StarStar)getUniformGenerator()).longJump();
+	}
+
+	@Override
+	public void writeState(DataOutput out) throws IOException {
+		for (long word : ((Xoshiro256StarStar)getUniformGenerator()).getState())
+			out.writeLong(word);
+	}
+
+	@Override
+	public void readState(DataInput in) throws IOException {
+		long[] state = new long[4];
+		for (int i = 0; i < state.length; i++)
+			state[i] = in.readLong();
+		((Xoshiro256StarStar)getUniformGenerator()).setState(state);
+	}
+}
@@ -0,0 +1,145 @@
+package com.luigisgro.cqf.montecarlo;
+
+import org.apache.commons.math.random.MersenneTwister;
+import org.apache.commons.math.random.RandomGenerator;
+
+/**
+ * Generator of standard normal vectors based on the Ziggurat method of G. Marsaglia and W. W. Tsang,
+ * with 128 layers. About 99% of the variates cost one uniform integer, a table look-up and a multiplication,
+ * which is much faster than the Box-Muller or polar transformations.
+ * The uniform integers are drawn from a Mersenne Twister, or from the generator given by a subclass:
+ * the upper 32 bits of each 64-bit draw give the value, and the lower bits select the layer, so that the two are independent
+ * @author Luigi Sgro
+ *
+ */
+public class ZigguratStandardVectorGenerator implements BlockRandomVectorGenerator {
+	private static final int LAYERS = 128;
+	private static final double R = 3.442619855899;
+	private static final double AREA = 9.91256303526217e-3;
+	private static final double M1 = 2147483648.0;
+	private static final long[] K = new long[LAYERS];
+	private static final double[] W = new double[LAYERS];
+	private static final double[] F = new double[LAYERS];
+
+	static {
+		double dn = R;
+		double tn = dn;
+		double q = AREA / Math.exp(-0.5 * dn * dn);
+		K[0] = (long)((dn / q) * M1);
+		K[1] = 0;
+		W[0] = q / M1;
+		W[LAYERS - 1] = dn / M1;
+		F[0] = 1.0;
+		F[LAYERS - 1] = Math.exp(-0.5 * dn * dn);
+		for (int i = LAYERS - 2; i >= 1; i--) {
+			dn = Math.sqrt(-2 * Math.log(AREA / dn + Math.exp(-0.5 * dn * dn)));
+			K[i + 1] = (long)((dn / tn) * M1);
+			tn = dn;
+			F[i] = Math.exp(-0.5 * dn * dn);
+			W[i] = dn / M1;
+		}
+	}
+
+	private int dimension = 1;
+	private Long seed;
+	private RandomGenerator generator;
+	private double[] vector;
+
+	/**
+	 * @param dimension The dimension of the model
+	 */
+	public ZigguratStandardVectorGenerator(Integer dimension) {
+		this.dimension = dimension;
+	}
+
+	/**
+	 * Creates a generator that always produces the same sequence for the same seed
+	 * @param dimension The dimension of the model
+	 * @param seed The seed of the underlying random generator
+	 */
+	public ZigguratStandardVectorGenerator(Integer dimension, Long seed) {
+		this.dimension = dimension;
+		this.seed = seed;
+	}
+
+	/**
+	 * Creates a generator drawing the uniform integers from the generator provided
+	 * @param dimension The dimension of the model
+	 * @param uniformGenerator The source of uniform 64-bit integers
+	 */
+	protected ZigguratStandardVectorGenerator(Integer dimension, RandomGenerator uniformGenerator) {
+		this.dimension = dimension;
+		this.generator = uniformGenerator;
+	}
+
+	/**
+	 * @return The source of uniform integers, or null if it has not been created yet
+	 */
+	protected RandomGenerator getUniformGenerator() {
+		return generator;
+	}
+
+	@Override
+	public int getDimension() {
+		return dimension;
+	}
+
+	@Override
+	public void generateNextBlock(double[] block, int numberOfVectors) {
+		if (generator == null)
+			generator = seed == null ? new MersenneTwister() : new MersenneTwister(seed);
+		int length = numberOfVectors * dimension;
+		for (int i = 0; i < length; i++) {
+			long bits = generator.nextLong();
+			int value = (int)(bits >>> 32);
+			int layer = (int)bits & (LAYERS - 1);
+			if (Math.abs((long)value) < K[layer])
+				block[i] = value * W[layer];
+			else
+				block[i] = fix(value, layer);
+		}
+	}
+
+	/**
+	 * The returned array is reused by the next call
+	 */
+	@Override
+	public double[] generateNextVector() {
+		if (vector == null)
+			vector = new double[dimension];
+		generateNextBlock(vector, 1);
+		return vector;
+	}
+
+	/**
+	 * Slow path, for the points falling outside the rectangle inside each layer
+	 */
+	private double fix(int value, int layer) {
+		while (true) {
+			double x = value * W[layer];
+			if (layer == 0) {
+				// tail beyond R
+				double y;
+				do {
+					x = -Math.log(uniform()) / R;
+					y = -Math.log(uniform());
+				} while (y + y < x * x);
+				return value > 0 ? R + x : -R - x;
+			}
+			if (F[layer] + uniform() * (F[layer - 1] - F[layer]) < Math.exp(-0.5 * x * x))
+				return x;
+			long bits = generator.nextLong();
+			value = (int)(bits >>> 32);
+			layer = (int)bits & (LAYERS - 1);
+			if (Math.abs((long)value) < K[layer])
+				return value * W[layer];
+		}
+	}
+
+	/**
+	 * @return A uniform variate strictly between 0 and 1
+	 */
+	private double uniform() {
+		return ((generator.nextInt() >>> 1) + 0.5) / M1;
+	}
+}
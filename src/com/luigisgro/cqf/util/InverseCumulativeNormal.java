@@ -0,0 +1,43 @@
+package com.luigisgro.cqf.util;
+
+/**
+ * Inverse of the cumulative distribution function of the standard normal distribution,
+ * calculated with the rational approximation of P. J. Acklam (relative error below 1.15e-9).
+ * It is used to map uniform quasi-random numbers to normally distributed ones
+ * @author Luigi Sgro
+ *
+ */
+public class InverseCumulativeNormal {
+	private static final double[] A = { -3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02, 1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00 };
+	private static final double[] B = { -5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02, 6.680131188771972e+01, -1.328068155288572e+01 };
+	private static final double[] C = { -7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00, -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00 };
+	private static final double[] D = { 7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00, 3.754408661907416e+00 };
+	private static final double P_LOW = 0.02425;
+	private static final double P_HIGH = 1 - P_LOW;
+
+	/**
+	 * @param p A probability, strictly between 0 and 1
+	 * @return The value x such that the probability of a standard normal variable being less than x is p
+	 */
+	public static double value(double p) {
+		if (p <= 0 || p >= 1)
+			throw new IllegalArgumentException("Probability out of range (0, 1): " + p);
+		if (p < P_LOW) {
+			double q = Math.sqrt(-2 * Math.log(p));
+			return tail(q);
+		} else if (p <= P_HIGH) {
+			double q = p - 0.5;
+			double r = q * q;
+			return (((((A[0] * r + A[1]) * r + A[2]) * r + A[3]) * r + A[4]) * r + A[5]) * q /
+					(((((B[0] * r + B[1]) * r + B[2]) * r + B[3]) * r + B[4]) * r + 1);
+		} else {
+			double q = Math.sqrt(-2 * Math.log(1 - p));
+			return -tail(q);
+		}
+	}
+
+	private static double tail(double q) {
+		return (((((C[0] * q + C[1]) * q + C[2]) * q + C[3]) * q + C[4]) * q + C[5]) /
+				((((D[0] * q + D[1]) * q + D[2]) * q + D[3]) * q + 1);
+	}
+}
@@ -5,24 +5,39 @@ import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
+	com.luigisgro.cqf.test.TestArrayCurveTimeSeries.class,
+	com.luigisgro.cqf.test.TestBatchMonteCarloSimulation.class,
+	com.luigisgro.cqf.test.TestBlockRandomVectorGenerator.class,
 	com.luigisgro.cqf.test.TestBoECurveTimeSeriesFileLoader.class,
+	com.luigisgro.cqf.test.TestBookEvaluator.class,
 	com.luigisgro.cqf.test.TestBS.class,
+	com.luigisgro.cqf.test.TestCheckpoint.class,
 	com.luigisgro.cqf.test.TestDiscount.class,
 	com.luigisgro.cqf.test.TestECBCurveTimeSeriesFileLoader.class,
 	com.luigisgro.cqf.test.TestForwardInterestRate.class,
 	com.luigisgro.cqf.test.TestJacobiDiagonalization.class,
+	com.luigisgro.cqf.test.TestLongstaffSchwartz.class,
 	com.luigisgro.cqf.test.TestMatrix.class,
 	com.luigisgro.cqf.test.TestMatrixBuffer.class,
 	com.luigisgro.cqf.test.TestMonteCarloSimulation.class,
 	com.luigisgro.cqf.test.TestMultiFactorHJM.class,
+	com.luigisgro.cqf.test.TestNonUniformGrid.class,
 	com.luigisgro.cqf.test.TestOptimize.class,
+	com.luigisgro.cqf.test.TestParallelMonteCarloSimulation.class,
 	com.luigisgro.cqf.test.TestPolynomial.class,
 	com.luigisgro.cqf.test.TestPolynomialApproximatedCurve.class,
 	com.luigisgro.cqf.test.TestRegression.class,
+	com.luigisgro.cqf.test.TestSensitivityEvaluator.class,
 	com.luigisgro.cqf.test.TestSeriesOfOptions.class,
+	com.luigisgro.cqf.test.TestShardCoordinator.class,
+	com.luigisgro.cqf.test.TestSobolVectorGenerator.class,
+	com.luigisgro.cqf.test.TestStandardErrorEvaluator.class,
 	com.luigisgro.cqf.test.TestStrategyOptimizer.class,
+	com.luigisgro.cqf.test.TestStreamingMonteCarloSimulation.class,
 	com.luigisgro.cqf.test.TestSymmetricMatrixBuffer.class,
+	com.luigisgro.cqf.test.TestThetaMethod.class,
 	com.luigisgro.cqf.test.TestVanillas.class,
+	com.luigisgro.cqf.test.TestVarianceReduction.class,
 	com.luigisgro.cqf.test.TestVector.class,
 	com.luigisgro.cqf.test.TestVectorBuffer.class,
 	com.luigisgro.cqf.test.TestVolatilityFunction.class,
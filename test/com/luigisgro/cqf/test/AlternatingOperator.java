@@ -0,0 +1,22 @@
+package com.luigisgro.cqf.test;
+
+import com.luigisgro.cqf.curve.CurveTimeSeries;
+import com.luigisgro.cqf.curve.CurveTimeSeriesOperator;
+import com.luigisgro.cqf.curve.DayTimePoint;
+
+/**
+ * An operator ignoring the scenario, returning offset + 1 and offset - 1 alternately
+ */
+class AlternatingOperator implements CurveTimeSeriesOperator<DayTimePoint> {
+	private final double offset;
+	private int count = 0;
+
+	AlternatingOperator(double offset) {
+		this.offset = offset;
+	}
+
+	@Override
+	public double evaluate(CurveTimeSeries<DayTimePoint> curveTimeSeries) {
+		return offset + (count++ % 2 == 0 ? 1.0 : -1.0);
+	}
+}
@@ -0,0 +1,50 @@
+package com.luigisgro.cqf.test;
+
+import java.util.Calendar;
+
+import org.junit.Before;
+
+import com.luigisgro.cqf.curve.Curve;
+import com.luigisgro.cqf.curve.DayTimePoint;
+import com.luigisgro.cqf.curve.TermStructure;
+import com.luigisgro.cqf.function.Polynomial;
+import com.luigisgro.cqf.hjm.MultiFactorHJM;
+
+/**
+ * The scenario shared by the Monte Carlo tests: a two factor HJM model on a 4 points term structure,
+ * simulated with daily steps from 2012-01-02 to an end date chosen by each test
+ */
+public abstract class HJMFixture {
+	TermStructure termStructure = new TermStructure(new double[] { 0.5, 1.0, 1.5, 2.0 });
+	Curve baseScenario = new Curve(new double[] { 0.03, 0.035, 0.038, 0.04 }, termStructure);
+	Polynomial[] volatilityFunctions = new Polynomial[] { new Polynomial(new double[] { 0.01 }), new Polynomial(new double[] { 0.0, 0.005 }) };
+	MultiFactorHJM hjm = new MultiFactorHJM(volatilityFunctions, termStructure);
+	double timeStep = 1.0 / 252;
+	DayTimePoint[] pointDates;
+
+	private final int endYear;
+	private final int endMonth;
+	private final int endDay;
+
+	/**
+	 * @param endYear The year of the last point date
+	 * @param endMonth The month of the last point date, as in {@link Calendar}: 0 is January
+	 * @param endDay The day of the month of the last point date
+	 */
+	protected HJMFixture(int endYear, int endMonth, int endDay) {
+		this.endYear = endYear;
+		this.endMonth = endMonth;
+		this.endDay = endDay;
+	}
+
+	@Before
+	public void createPointDates() {
+		Calendar start = Calendar.getInstance();
+		start.clear();
+		start.set(2012, 0, 2);
+		Calendar end = Calendar.getInstance();
+		end.clear();
+		end.set(endYear, endMonth, endDay);
+		pointDates = DayTimePoint.createDayTimePointCalendar(start.getTime(), end.getTime());
+	}
+}
@@ -0,0 +1,84 @@
+package com.luigisgro.cqf.test;
+
+import java.util.Calendar;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.luigisgro.cqf.curve.ArrayCurveTimeSeries;
+import com.luigisgro.cqf.curve.Curve;
+import com.luigisgro.cqf.curve.CurveTimeSeries;
+import com.luigisgro.cqf.curve.CurveTimeSeriesOperator;
+import com.luigisgro.cqf.curve.DayTimePoint;
+import com.luigisgro.cqf.curve.TermStructure;
+import com.luigisgro.cqf.hjm.Cap;
+import com.luigisgro.cqf.hjm.Floor;
+import com.luigisgro.cqf.hjm.ForwardInterestRate;
+import com.luigisgro.cqf.hjm.ZCB;
+
+
+public class TestArrayCurveTimeSeries {
+	TermStructure termStructure = new TermStructure(new double[] { 0.1, 0.25, 0.50, 0.75, 1.0 });
+	double timeStep = 1.0 / 252;
+	DayTimePoint[] calendar;
+	CurveTimeSeries<DayTimePoint> mapScenario;
+	ArrayCurveTimeSeries<DayTimePoint> arrayScenario;
+
+	@Before
+	public void createScenarios() {
+		Calendar present = Calendar.getInstance();
+		present.set(2012, 0, 2);
+		Calendar lastDay = Calendar.getInstance();
+		lastDay.set(2014, 3, 1);
+		calendar = DayTimePoint.createDayTimePointCalendar(present.getTime(), lastDay.getTime());
+		mapScenario = new CurveTimeSeries<DayTimePoint>(termStructure, timeStep);
+		arrayScenario = new ArrayCurveTimeSeries<DayTimePoint>(termStructure, timeStep, calendar);
+		for (int i = 0; i < calendar.length; i++) {
+			double shift = 0.01 * Math.sin(i * 0.05);
+			Curve curve = new Curve(new double[] { 0.03 + shift, 0.04 + shift, 0.05 - shift, 0.055, 0.054 + shift }, termStructure);
+			mapScenario.put(calendar[i], curve);
+			arrayScenario.put(calendar[i], curve);
+		}
+	}
+
+	private void assertSameValue(CurveTimeSeriesOperator<DayTimePoint> operator) {
+		// discount factors from differences of cumulative sums: equal up to rounding
+		Assert.assertEquals(operator.evaluate(mapScenario), operator.evaluate(arrayScenario), 1e-13);
+	}
+
+	@Test
+	public void testCurves() {
+		Assert.assertEquals(mapScenario.getCurves().keySet(), arrayScenario.getCurves().keySet());
+		Assert.assertArrayEquals(mapScenario.get(calendar[100]).getPoints(), arrayScenario.get(calendar[100]).getPoints(), 0.0);
+		Assert.assertEquals(mapScenario.get(calendar[7]).getPoints()[3], arrayScenario.getPoint(7, 3), 0.0);
+		Assert.assertEquals(-1, arrayScenario.indexOf(new DayTimePoint(new java.util.Date(0))));
+	}
+
+	@Test
+	public void testIndexedOperators() {
+		assertSameValue(new ZCB<DayTimePoint>(calendar[0], calendar[calendar.length - 1], timeStep, calendar));
+		assertSameValue(new ZCB<DayTimePoint>(calendar[10], calendar[300], timeStep, calendar));
+		assertSameValue(new ZCB<DayTimePoint>(calendar[5], calendar[5], timeStep, calendar));
+		assertSameValue(new ForwardInterestRate<DayTimePoint>(calendar[120], 0.6, calendar));
+		assertSameValue(new ForwardInterestRate<DayTimePoint>(calendar[0], 0.05, calendar));
+		assertSameValue(new Cap<DayTimePoint>(0.035, 0.25, 2, calendar, timeStep));
+		assertSameValue(new Floor<DayTimePoint>(0.045, 0.5, 2, calendar, timeStep));
+	}
+
+	@Test
+	public void testOverwrittenPath() {
+		ZCB<DayTimePoint> zcb = new ZCB<DayTimePoint>(calendar[0], calendar[200], timeStep, calendar);
+		double before = zcb.evaluate(arrayScenario);
+		double firstRate = arrayScenario.getCurves().get(calendar[0]).getPoints()[0];
+		double[] points = arrayScenario.getPoints();
+		for (int i = 0; i < points.length; i++)
+			points[i] += 0.01;
+		arrayScenario.pathChanged();
+		Assert.assertEquals(firstRate + 0.01, arrayScenario.getCurves().get(calendar[0]).getPoints()[0], 1e-15);
+		Assert.assertEquals(before * Math.exp(-0.01 * timeStep * 200), zcb.evaluate(arrayScenario), 1e-12);
+		double[] cumulativeShortRates = arrayScenario.getCumulativeShortRates();
+		Assert.assertEquals(0.0, cumulativeShortRates[0], 0.0);
+		Assert.assertEquals(arrayScenario.getPoint(0, 0) + arrayScenario.getPoint(1, 0), cumulativeShortRates[2], 1e-15);
+	}
+}
@@ -0,0 +1,82 @@
+package com.luigisgro.cqf.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.luigisgro.cqf.curve.CurveTimeSeriesOperator;
+import com.luigisgro.cqf.curve.DayTimePoint;
+import com.luigisgro.cqf.hjm.Cap;
+import com.luigisgro.cqf.hjm.ZCB;
+import com.luigisgro.cqf.montecarlo.BatchMonteCarloSimulation;
+import com.luigisgro.cqf.montecarlo.CurveTimeSeriesOperatorEvaluator;
+import com.luigisgro.cqf.montecarlo.MersenneTwisterStandardVectorGenerator;
+import com.luigisgro.cqf.montecarlo.MonteCarloSimulation;
+import com.luigisgro.cqf.montecarlo.StandardErrorEvaluator;
+
+
+public class TestBatchMonteCarloSimulation extends HJMFixture {
+	public TestBatchMonteCarloSimulation() {
+		super(2014, 0, 2);
+	}
+
+	@Test
+	public void testNextCurvesSameAsSinglePath() {
+		int numberOfTenors = termStructure.getTenors().length;
+		int numberOfPaths = 5;
+		MersenneTwisterStandardVectorGenerator generator = new MersenneTwisterStandardVectorGenerator(2, 3L);
+		double[][] curves = new double[numberOfTenors][numberOfPaths];
+		double[][] nextCurves = new double[numberOfTenors][numberOfPaths];
+		double[][] randomVectors = new double[2][numberOfPaths];
+		double[][] singleCurves = new double[numberOfPaths][numberOfTenors * 2];
+		for (int p = 0; p < numberOfPaths; p++) {
+			double[] random = generator.generateNextVector();
+			for (int i = 0; i < numberOfTenors; i++) {
+				curves[i][p] = baseScenario.getPoints()[i] + 0.001 * p * i;
+				singleCurves[p][i] = curves[i][p];
+			}
+			for (int j = 0; j < 2; j++)
+				randomVectors[j][p] = random[j];
+			hjm.nextCurve(singleCurves[p], 0, singleCurves[p], numberOfTenors, random, 0, timeStep);
+		}
+		hjm.nextCurves(curves, nextCurves, randomVectors, numberOfPaths, timeStep);
+		for (int p = 0; p < numberOfPaths; p++)
+			for (int i = 0; i < numberOfTenors; i++)
+				Assert.assertEquals(singleCurves[p][numberOfTenors + i], nextCurves[i][p], 0.0);
+	}
+
+	private void assertSameResult(CurveTimeSeriesOperator<DayTimePoint> derivative, int batchSize) {
+		CurveTimeSeriesOperatorEvaluator<DayTimePoint> evaluator = new CurveTimeSeriesOperatorEvaluator<DayTimePoint>(derivative, 100);
+		new MonteCarloSimulation<DayTimePoint>(hjm, evaluator, new MersenneTwisterStandardVectorGenerator(2, 17L), baseScenario, pointDates, timeStep).simulate();
+		CurveTimeSeriesOperatorEvaluator<DayTimePoint> batchEvaluator = new CurveTimeSeriesOperatorEvaluator<DayTimePoint>(derivative, 100);
+		BatchMonteCarloSimulation<DayTimePoint> sim = new BatchMonteCarloSimulation<DayTimePoint>(hjm, batchEvaluator, new MersenneTwisterStandardVectorGenerator(2, 17L), baseScenario, pointDates, timeStep, batchSize);
+		Assert.assertEquals(100, sim.simulate());
+		Assert.assertEquals(evaluator.getResult(), batchEvaluator.getResult(), 0.0);
+	}
+
+	@Test
+	public void testSameResultAsSinglePaths() {
+		ZCB<DayTimePoint> zcb = new ZCB<DayTimePoint>(pointDates[0], pointDates[pointDates.length - 1], timeStep, pointDates);
+		Cap<DayTimePoint> cap = new Cap<DayTimePoint>(0.035, 0.25, 1.75, pointDates, timeStep);
+		for (int batchSize : new int[] { 1, 7, 32, 100, 150 }) {
+			assertSameResult(zcb, batchSize);
+			assertSameResult(cap, batchSize);
+		}
+	}
+
+	@Test
+	public void testStopInsideBatch() {
+		Cap<DayTimePoint> cap = new Cap<DayTimePoint>(0.035, 0.25, 1.75, pointDates, timeStep);
+		StandardErrorEvaluator<DayTimePoint> evaluator = new StandardErrorEvaluator<DayTimePoint>(cap, 1e-3, 1000);
+		int iterations = new MonteCarloSimulation<DayTimePoint>(hjm, evaluator, new MersenneTwisterStandardVectorGenerator(2, 5L), baseScenario, pointDates, timeStep).simulate();
+		StandardErrorEvaluator<DayTimePoint> batchEvaluator = new StandardErrorEvaluator<DayTimePoint>(cap, 1e-3, 1000);
+		Assert.assertEquals(iterations, new BatchMonteCarloSimulation<DayTimePoint>(hjm, batchEvaluator, new MersenneTwisterStandardVectorGenerator(2, 5L), baseScenario, pointDates, timeStep, 64).simulate());
+		Assert.assertTrue(iterations < 1000);
+		Assert.assertEquals(evaluator.getResult(), batchEvaluator.getResult(), 0.0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAntitheticPathsNotSupported() {
+		ZCB<DayTimePoint> zcb = new ZCB<DayTimePoint>(pointDates[0], pointDates[100], timeStep, pointDates);
+		new BatchMonteCarloSimulation<DayTimePoint>(hjm, new CurveTimeSeriesOperatorEvaluator<DayTimePoint>(zcb, 10), new MersenneTwisterStandardVectorGenerator(2, 17L), baseScenario, pointDates, timeStep).setAntitheticPaths(true);
+	}
+}
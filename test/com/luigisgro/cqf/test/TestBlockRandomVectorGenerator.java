@@ -0,0 +1,129 @@
+package com.luigisgro.cqf.test;
+
+import org.apache.commons.math.MathException;
+import org.apache.commons.math.distribution.NormalDistributionImpl;
+import org.apache.commons.math.random.GaussianRandomGenerator;
+import org.apache.commons.math.random.MersenneTwister;
+import org.apache.commons.math.random.UncorrelatedRandomVectorGenerator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.luigisgro.cqf.montecarlo.BlockRandomVectorGenerator;
+import com.luigisgro.cqf.montecarlo.JumpableRandomVectorGenerator;
+import com.luigisgro.cqf.montecarlo.MersenneTwisterStandardVectorGenerator;
+import com.luigisgro.cqf.montecarlo.Xoshiro256StarStar;
+import com.luigisgro.cqf.montecarlo.XoshiroStandardVectorGenerator;
+import com.luigisgro.cqf.montecarlo.ZigguratStandardVectorGenerator;
+
+
+public class TestBlockRandomVectorGenerator {
+
+	private void assertBlockMatchesVectors(BlockRandomVectorGenerator blockGenerator, BlockRandomVectorGenerator vectorGenerator) {
+		int dimension = blockGenerator.getDimension();
+		double[] block = new double[50 * dimension];
+		for (int round = 0; round < 10; round++) {
+			blockGenerator.generateNextBlock(block, 50);
+			for (int i = 0; i < 50; i++) {
+				double[] vector = vectorGenerator.generateNextVector();
+				for (int j = 0; j < dimension; j++)
+					Assert.assertEquals(vector[j], block[i * dimension + j], 0.0);
+			}
+		}
+	}
+
+	@Test
+	public void testBlockMatchesVectors() {
+		assertBlockMatchesVectors(new MersenneTwisterStandardVectorGenerator(3, 42L), new MersenneTwisterStandardVectorGenerator(3, 42L));
+		assertBlockMatchesVectors(new ZigguratStandardVectorGenerator(3, 42L), new ZigguratStandardVectorGenerator(3, 42L));
+		assertBlockMatchesVectors(new XoshiroStandardVectorGenerator(3, 42L), new XoshiroStandardVectorGenerator(3, 42L));
+	}
+
+	@Test
+	public void testXoshiroReferenceSequence() {
+		// reference implementation output from the state {1, 2, 3, 4}
+		Xoshiro256StarStar generator = new Xoshiro256StarStar(new long[] { 1, 2, 3, 4 });
+		Assert.assertEquals(11520L, generator.nextLong());
+		Assert.assertEquals(0L, generator.nextLong());
+		Assert.assertEquals(1509978240L, generator.nextLong());
+		Assert.assertEquals(1215971899390074240L, generator.nextLong());
+	}
+
+	@Test
+	public void testXoshiroJump() {
+		Xoshiro256StarStar generator = new Xoshiro256StarStar(5L);
+		Xoshiro256StarStar copy = generator.copy();
+		Assert.assertEquals(generator.nextLong(), copy.nextLong());
+		generator.jump();
+		copy.jump();
+		Assert.assertArrayEquals(generator.getState(), copy.getState());
+		copy.longJump();
+		Assert.assertTrue(generator.nextLong() != copy.nextLong());
+	}
+
+	@Test
+	public void testStreamSeeds() {
+		// the seeds of adjacent streams differ in about half of their bits
+		long previous = Xoshiro256StarStar.streamSeed(42L, 0);
+		for (int stream = 1; stream < 64; stream++) {
+			long seed = Xoshiro256StarStar.streamSeed(42L, stream);
+			int differentBits = Long.bitCount(seed ^ previous);
+			Assert.assertTrue("stream " + stream + ": " + differentBits + " different bits", differentBits > 16 && differentBits < 48);
+			previous = seed;
+		}
+		Assert.assertEquals(Xoshiro256StarStar.streamSeed(42L, 3), Xoshiro256StarStar.streamSeed(42L, 3));
+	}
+
+	@Test
+	public void testCopyAndJump() {
+		JumpableRandomVectorGenerator generator = new XoshiroStandardVectorGenerator(2, 9L);
+		JumpableRandomVectorGenerator reference = new XoshiroStandardVectorGenerator(2, 9L);
+		JumpableRandomVectorGenerator first = generator.copyAndJump();
+		JumpableRandomVectorGenerator second = generator.copyAndJump();
+		// the first substream continues the original sequence, the second one is different
+		for (int i = 0; i < 100; i++) {
+			double[] expected = reference.generateNextVector().clone();
+			Assert.assertArrayEquals(expected, first.generateNextVector(), 0.0);
+			Assert.assertTrue(expected[0] != second.generateNextVector()[0]);
+		}
+	}
+
+	@Test
+	public void testMersenneTwisterSequenceUnchanged() {
+		// same values as the commons-math vector generator used before the block interface
+		UncorrelatedRandomVectorGenerator reference = new UncorrelatedRandomVectorGenerator(2, new GaussianRandomGenerator(new MersenneTwister(7L)));
+		MersenneTwisterStandardVectorGenerator generator = new MersenneTwisterStandardVectorGenerator(2, 7L);
+		for (int i = 0; i < 100; i++)
+			Assert.assertArrayEquals(reference.nextVector(), generator.generateNextVector(), 0.0);
+	}
+
+	@Test
+	public void testZigguratDistribution() throws MathException {
+		NormalDistributionImpl normal = new NormalDistributionImpl();
+		ZigguratStandardVectorGenerator generator = new ZigguratStandardVectorGenerator(4, 2012L);
+		int n = 250000;
+		double[] block = new double[n * 4];
+		generator.generateNextBlock(block, n);
+		double[] bounds = { -3.5, -2.5, -1.5, -1.0, -0.5, 0.0, 0.5, 1.0, 1.5, 2.5, 3.5 };
+		int[] below = new int[bounds.length];
+		double sum = 0.0;
+		double sumOfSquares = 0.0;
+		double sumOfFourthPowers = 0.0;
+		for (double x : block) {
+			sum += x;
+			sumOfSquares += x * x;
+			sumOfFourthPowers += x * x * x * x;
+			for (int b = 0; b < bounds.length; b++)
+				if (x < bounds[b])
+					below[b]++;
+		}
+		int total = block.length;
+		Assert.assertEquals(0.0, sum / total, 0.005);
+		Assert.assertEquals(1.0, sumOfSquares / total, 0.005);
+		Assert.assertEquals(3.0, sumOfFourthPowers / total, 0.05);
+		for (int b = 0; b < bounds.length; b++) {
+			double p = normal.cumulativeProbability(bounds[b]);
+			double error = Math.sqrt(p * (1 - p) / total);
+			Assert.assertEquals(p, (double)below[b] / total, 5 * error);
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package com.luigisgro.cqf.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.luigisgro.cqf.curve.CurveTimeSeries;
+import com.luigisgro.cqf.curve.CurveTimeSeriesOperator;
+import com.luigisgro.cqf.curve.DayTimePoint;
+import com.luigisgro.cqf.hjm.Cap;
+import com.luigisgro.cqf.hjm.Floor;
+import com.luigisgro.cqf.hjm.ZCB;
+import com.luigisgro.cqf.montecarlo.BookEvaluator;
+import com.luigisgro.cqf.montecarlo.MergeableMonteCarloEvaluator;
+import com.luigisgro.cqf.montecarlo.MersenneTwisterStandardVectorGenerator;
+import com.luigisgro.cqf.montecarlo.MonteCarloSimulation;
+import com.luigisgro.cqf.montecarlo.ParallelMonteCarloSimulation;
+import com.luigisgro.cqf.montecarlo.StandardErrorEvaluator;
+import com.luigisgro.cqf.montecarlo.StreamingMonteCarloSimulation;
+import com.luigisgro.cqf.montecarlo.XoshiroStandardVectorGenerator;
+
+
+public class TestBookEvaluator extends HJMFixture {
+	List<CurveTimeSeriesOperator<DayTimePoint>> book = new ArrayList<CurveTimeSeriesOperator<DayTimePoint>>();
+
+	public TestBookEvaluator() {
+		super(2014, 0, 2);
+	}
+
+	@Before
+	public void createBook() {
+		book.add(new Cap<DayTimePoint>(0.035, 0.5, 1.5, pointDates, timeStep));
+		book.add(new Floor<DayTimePoint>(0.035, 0.5, 1.5, pointDates, timeStep));
+		book.add(new ZCB<DayTimePoint>(pointDates[0], pointDates[300], timeStep, pointDates));
+	}
+
+	@Test
+	public void testMatchesSingleInstruments() {
+		BookEvaluator<DayTimePoint> bookEvaluator = new BookEvaluator<DayTimePoint>(book, 0.0, 500);
+		new MonteCarloSimulation<DayTimePoint>(hjm, bookEvaluator, new MersenneTwisterStandardVectorGenerator(2, 3L), baseScenario, pointDates, timeStep).simulate();
+		double bookValue = 0.0;
+		for (int i = 0; i < book.size(); i++) {
+			StandardErrorEvaluator<DayTimePoint> single = new StandardErrorEvaluator<DayTimePoint>(book.get(i), 0.0, 500);
+			new MonteCarloSimulation<DayTimePoint>(hjm, single, new MersenneTwisterStandardVectorGenerator(2, 3L), baseScenario, pointDates, timeStep).simulate();
+			Assert.assertEquals(single.getResult(), bookEvaluator.getResult(i), 1e-15);
+			Assert.assertEquals(single.squareStdErr(), bookEvaluator.squareStdErr(i), 1e-15);
+			bookValue += single.getResult();
+		}
+		Assert.assertEquals(bookValue, bookEvaluator.getResult(), 1e-15);
+	}
+
+	@Test
+	public void testStreamingMatchesFull() {
+		BookEvaluator<DayTimePoint> full = new BookEvaluator<DayTimePoint>(book, 0.0, 300);
+		new MonteCarloSimulation<DayTimePoint>(hjm, full, new MersenneTwisterStandardVectorGenerator(2, 8L), baseScenario, pointDates, timeStep).simulate();
+		BookEvaluator<DayTimePoint> streaming = new BookEvaluator<DayTimePoint>(book, 0.0, 300);
+		new StreamingMonteCarloSimulation<DayTimePoint>(hjm, streaming, new MersenneTwisterStandardVectorGenerator(2, 8L), baseScenario, pointDates, timeStep).simulate();
+		for (int i = 0; i < book.size(); i++)
+			Assert.assertEquals(full.getResult(i), streaming.getResult(i), 1e-12);
+	}
+
+	@Test
+	public void testLargeOffsetAndMerge() {
+		List<CurveTimeSeriesOperator<DayTimePoint>> offsets = new ArrayList<CurveTimeSeriesOperator<DayTimePoint>>();
+		offsets.add(new AlternatingOperator(1e9));
+		offsets.add(new AlternatingOperator(5.0));
+		BookEvaluator<DayTimePoint> merged = new BookEvaluator<DayTimePoint>(offsets, 0.0, 10000);
+		int[] sizes = { 3000, 6000, 1000 };
+		for (int size : sizes) {
+			MergeableMonteCarloEvaluator<DayTimePoint> partial = merged.createPartialEvaluator();
+			for (int i = 0; i < size; i++)
+				partial.evaluateAndAccumulate((CurveTimeSeries<DayTimePoint>)null);
+			merged.merge(partial);
+		}
+		Assert.assertEquals(1e9, merged.getResult(0), 1e-6);
+		// variance of the evaluations equal to 1, whatever the offset
+		Assert.assertEquals(1.0 / 10000, merged.squareStdErr(0), 1e-15);
+		Assert.assertEquals(1.0 / 10000, merged.squareStdErr(1), 1e-15);
+	}
+
+	@Test
+	public void testCheckInterval() {
+		// the threshold is reached at iteration 399
+		List<CurveTimeSeriesOperator<DayTimePoint>> alternating = new ArrayList<CurveTimeSeriesOperator<DayTimePoint>>();
+		alternating.add(new AlternatingOperator(5.0));
+		BookEvaluator<DayTimePoint> bookEvaluator = new BookEvaluator<DayTimePoint>(alternating, 0.0501, 10000);
+		bookEvaluator.setCheckInterval(120);
+		int iterations = 0;
+		while (bookEvaluator.moreIterationsNeeded()) {
+			bookEvaluator.evaluateAndAccumulate((CurveTimeSeries<DayTimePoint>)null);
+			iterations++;
+		}
+		Assert.assertEquals(480, iterations);
+	}
+
+	@Test
+	public void testPredictedIterations() {
+		List<CurveTimeSeriesOperator<DayTimePoint>> alternating = new ArrayList<CurveTimeSeriesOperator<DayTimePoint>>();
+		alternating.add(new AlternatingOperator(5.0));
+		alternating.add(new AlternatingOperator(-5.0));
+		BookEvaluator<DayTimePoint> bookEvaluator = new BookEvaluator<DayTimePoint>(alternating, 0.01, 1000000);
+		for (int i = 0; i < 100; i++)
+			bookEvaluator.evaluateAndAccumulate((CurveTimeSeries<DayTimePoint>)null);
+		Assert.assertEquals(10000, bookEvaluator.getPredictedIterations());
+		Assert.assertEquals(9900, bookEvaluator.getPredictedRemainingIterations());
+	}
+
+	@Test
+	public void testStopOnWorstInstrument() {
+		BookEvaluator<DayTimePoint> bookEvaluator = new BookEvaluator<DayTimePoint>(book, 0.0002, 200000);
+		ParallelMonteCarloSimulation<DayTimePoint> sim = new ParallelMonteCarloSimulation<DayTimePoint>(hjm, bookEvaluator, new XoshiroStandardVectorGenerator(2, 1L), 2, baseScenario, pointDates, timeStep);
+		int iterations = sim.simulate();
+		Assert.assertTrue(iterations < 200000);
+		int worst = bookEvaluator.getWorstInstrument();
+		Assert.assertTrue(Math.sqrt(bookEvaluator.squareStdErr(worst)) <= 0.0002);
+		for (int i = 0; i < book.size(); i++)
+			Assert.assertTrue(bookEvaluator.squareStdErr(i) <= bookEvaluator.squareStdErr(worst));
+	}
+}
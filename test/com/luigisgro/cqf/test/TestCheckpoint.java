@@ -0,0 +1,141 @@
+package com.luigisgro.cqf.test;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.luigisgro.cqf.curve.CurveTimeSeries;
+import com.luigisgro.cqf.curve.CurveTimeSeriesOperator;
+import com.luigisgro.cqf.curve.DayTimePoint;
+import com.luigisgro.cqf.function.Polynomial;
+import com.luigisgro.cqf.hjm.Cap;
+import com.luigisgro.cqf.hjm.MultiFactorHJM;
+import com.luigisgro.cqf.montecarlo.BatchMonteCarloSimulation;
+import com.luigisgro.cqf.montecarlo.JDKUncorrelatedStandardVectorGenerator;
+import com.luigisgro.cqf.montecarlo.MersenneTwisterStandardVectorGenerator;
+import com.luigisgro.cqf.montecarlo.MonteCarloSimulation;
+import com.luigisgro.cqf.montecarlo.ParallelMonteCarloSimulation;
+import com.luigisgro.cqf.montecarlo.RandomVectorGenerator;
+import com.luigisgro.cqf.montecarlo.SobolVectorGenerator;
+import com.luigisgro.cqf.montecarlo.StandardErrorEvaluator;
+import com.luigisgro.cqf.montecarlo.XoshiroStandardVectorGenerator;
+
+
+public class TestCheckpoint extends HJMFixture {
+	File checkpointFile;
+
+	public TestCheckpoint() {
+		super(2013, 0, 4);
+		hjm = new MultiFactorHJM(new Polynomial[] { new Polynomial(new double[] { 0.01 }) }, termStructure);
+	}
+
+	@Before
+	public void createCheckpointFile() throws IOException {
+		checkpointFile = File.createTempFile("checkpoint", ".bin");
+		checkpointFile.delete();
+	}
+
+	@After
+	public void deleteCheckpoint() {
+		checkpointFile.delete();
+	}
+
+	/**
+	 * A cap failing after a given number of evaluations, as if the simulation was interrupted
+	 */
+	private class InterruptedCap implements CurveTimeSeriesOperator<DayTimePoint> {
+		private Cap<DayTimePoint> cap = new Cap<DayTimePoint>(0.035, 0.25, 0.75, pointDates, timeStep);
+		private int remainingEvaluations;
+
+		InterruptedCap(int numberOfEvaluations) {
+			remainingEvaluations = numberOfEvaluations;
+		}
+
+		@Override
+		public double evaluate(CurveTimeSeries<DayTimePoint> curveTimeSeries) {
+			if (remainingEvaluations-- == 0)
+				throw new RuntimeException("Interrupted");
+			return cap.evaluate(curveTimeSeries);
+		}
+	}
+
+	private MonteCarloSimulation<DayTimePoint> createSimulation(StandardErrorEvaluator<DayTimePoint> evaluator, RandomVectorGenerator generator, boolean batch) {
+		MonteCarloSimulation<DayTimePoint> sim = batch
+				? new BatchMonteCarloSimulation<DayTimePoint>(hjm, evaluator, generator, baseScenario, pointDates, timeStep, 16)
+				: new MonteCarloSimulation<DayTimePoint>(hjm, evaluator, generator, baseScenario, pointDates, timeStep);
+		sim.setCheckpoint(checkpointFile, 105);
+		return sim;
+	}
+
+	private void assertSameResultAfterInterruption(Class<? extends RandomVectorGenerator> generatorClass, boolean batch) throws Exception {
+		Assert.assertEquals(1, (pointDates.length - 1) % 2); // odd number of variates for each path
+		RandomVectorGenerator generator = generatorClass.getConstructor(Integer.class, Long.class).newInstance(1, 23L);
+		StandardErrorEvaluator<DayTimePoint> evaluator = new StandardErrorEvaluator<DayTimePoint>(new InterruptedCap(-1), 0.0, 500);
+		Assert.assertEquals(500, new MonteCarloSimulation<DayTimePoint>(hjm, evaluator, generator, baseScenario, pointDates, timeStep).simulate());
+
+		generator = generatorClass.getConstructor(Integer.class, Long.class).newInstance(1, 23L);
+		try {
+			createSimulation(new StandardErrorEvaluator<DayTimePoint>(new InterruptedCap(350), 0.0, 500), generator, batch).simulate();
+			Assert.fail("Simulation not interrupted");
+		} catch (RuntimeException e) {
+			Assert.assertEquals("Interrupted", e.getMessage());
+		}
+		Assert.assertTrue(checkpointFile.exists());
+
+		// a new run, with a new generator, resumes from iteration 315, with a normal variate of the generator pending
+		generator = generatorClass.getConstructor(Integer.class, Long.class).newInstance(1, 23L);
+		StandardErrorEvaluator<DayTimePoint> resumedEvaluator = new StandardErrorEvaluator<DayTimePoint>(new InterruptedCap(185), 0.0, 500);
+		Assert.assertEquals(500, createSimulation(resumedEvaluator, generator, batch).simulate());
+		Assert.assertEquals(evaluator.getResult(), resumedEvaluator.getResult(), 0.0);
+		Assert.assertEquals(evaluator.squareStdErr(), resumedEvaluator.squareStdErr(), 0.0);
+
+		// the last checkpoint holds the completed simulation
+		StandardErrorEvaluator<DayTimePoint> completedEvaluator = new StandardErrorEvaluator<DayTimePoint>(new InterruptedCap(0), 0.0, 500);
+		Assert.assertEquals(500, createSimulation(completedEvaluator, generatorClass.getConstructor(Integer.class, Long.class).newInstance(1, 23L), batch).simulate());
+		Assert.assertEquals(evaluator.getResult(), completedEvaluator.getResult(), 0.0);
+		checkpointFile.delete();
+	}
+
+	@Test
+	public void testResumeMersenneTwister() throws Exception {
+		assertSameResultAfterInterruption(MersenneTwisterStandardVectorGenerator.class, false);
+	}
+
+	@Test
+	public void testResumeXoshiro() throws Exception {
+		assertSameResultAfterInterruption(XoshiroStandardVectorGenerator.class, false);
+	}
+
+	@Test
+	public void testResumeJDK() throws Exception {
+		assertSameResultAfterInterruption(JDKUncorrelatedStandardVectorGenerator.class, false);
+	}
+
+	@Test
+	public void testResumeBatch() throws Exception {
+		assertSameResultAfterInterruption(MersenneTwisterStandardVectorGenerator.class, true);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testCheckpointOfDifferentSimulation() {
+		StandardErrorEvaluator<DayTimePoint> evaluator = new StandardErrorEvaluator<DayTimePoint>(new InterruptedCap(-1), 0.0, 150);
+		createSimulation(evaluator, new MersenneTwisterStandardVectorGenerator(1, 23L), false).simulate();
+		createSimulation(evaluator, new XoshiroStandardVectorGenerator(1, 23L), false).simulate();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNotCheckpointableGenerator() {
+		StandardErrorEvaluator<DayTimePoint> evaluator = new StandardErrorEvaluator<DayTimePoint>(new InterruptedCap(-1), 0.0, 100);
+		new MonteCarloSimulation<DayTimePoint>(hjm, evaluator, new SobolVectorGenerator(1, pointDates.length - 1), baseScenario, pointDates, timeStep).setCheckpoint(checkpointFile, 100);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParallelSimulation() {
+		StandardErrorEvaluator<DayTimePoint> evaluator = new StandardErrorEvaluator<DayTimePoint>(new InterruptedCap(-1), 0.0, 100);
+		new ParallelMonteCarloSimulation<DayTimePoint>(hjm, evaluator, new XoshiroStandardVectorGenerator(1, 23L), 2, baseScenario, pointDates, timeStep).setCheckpoint(checkpointFile, 100);
+	}
+}
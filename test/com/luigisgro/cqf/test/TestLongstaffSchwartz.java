@@ -0,0 +1,126 @@
+package com.luigisgro.cqf.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.luigisgro.cqf.curve.Curve;
+import com.luigisgro.cqf.curve.CurveTimeSeries;
+import com.luigisgro.cqf.curve.CurveTimeSeriesOperator;
+import com.luigisgro.cqf.curve.DayTimePoint;
+import com.luigisgro.cqf.function.Polynomial;
+import com.luigisgro.cqf.hjm.BermudanSwaption;
+import com.luigisgro.cqf.hjm.MultiFactorHJM;
+import com.luigisgro.cqf.montecarlo.LongstaffSchwartzRegression;
+import com.luigisgro.cqf.montecarlo.MersenneTwisterStandardVectorGenerator;
+import com.luigisgro.cqf.montecarlo.MonteCarloSimulation;
+import com.luigisgro.cqf.montecarlo.RandomVectorGenerator;
+import com.luigisgro.cqf.montecarlo.StandardErrorEvaluator;
+
+
+public class TestLongstaffSchwartz extends HJMFixture {
+	int pointsPerPeriod = (int)(0.5 / timeStep);
+
+	public TestLongstaffSchwartz() {
+		super(2013, 6, 2);
+	}
+
+	@Test
+	public void testExerciseValuesOnFlatCurve() {
+		double rate = 0.04;
+		Curve flatCurve = new Curve(new double[] { rate, rate, rate, rate }, termStructure);
+		MultiFactorHJM deterministic = new MultiFactorHJM(new Polynomial[] { new Polynomial(new double[] { 0.0 }) }, termStructure);
+		final BermudanSwaption<DayTimePoint> swaption = new BermudanSwaption<DayTimePoint>(0.03, 0.5, 2.0, pointDates, timeStep);
+		Assert.assertEquals(3, swaption.getNumberOfExerciseDates());
+		LongstaffSchwartzRegression<DayTimePoint> regression = new LongstaffSchwartzRegression<DayTimePoint>(swaption, 10, 1);
+		Assert.assertEquals(10, new MonteCarloSimulation<DayTimePoint>(deterministic, regression, new MersenneTwisterStandardVectorGenerator(1, 1L), flatCurve, pointDates, timeStep).simulate());
+
+		// on a flat curve the swap rate is the same at all the dates, and the longest swap is the most valuable
+		double swapRate = (Math.exp(rate * 0.5) - 1) / 0.5;
+		double[] expected = new double[3];
+		for (int date = 0; date < 3; date++) {
+			double annuity = 0.0;
+			for (int payment = 1; payment <= 3 - date; payment++)
+				annuity += 0.5 * Math.exp(-rate * 0.5 * payment);
+			expected[date] = (swapRate - 0.03) * annuity * Math.exp(-rate * timeStep * pointsPerPeriod * (date + 1));
+		}
+		final double[] exerciseValues = new double[3];
+		final double[] stateVariables = new double[3];
+		CurveTimeSeriesOperator<DayTimePoint> exerciseCopy = new CurveTimeSeriesOperator<DayTimePoint>() {
+			@Override
+			public double evaluate(CurveTimeSeries<DayTimePoint> curveTimeSeries) {
+				swaption.evaluateExercise(curveTimeSeries, exerciseValues, stateVariables, 0);
+				return 0;
+			}
+		};
+		MonteCarloSimulation<DayTimePoint> sim = new MonteCarloSimulation<DayTimePoint>(deterministic, new StandardErrorEvaluator<DayTimePoint>(exerciseCopy, 0.0, 1), new MersenneTwisterStandardVectorGenerator(1, 1L), flatCurve, pointDates, timeStep);
+		sim.simulate();
+		Assert.assertArrayEquals(expected, exerciseValues, 1e-12);
+		Assert.assertArrayEquals(new double[] { swapRate, swapRate, swapRate }, stateVariables, 1e-12);
+		// exercising at the first date is optimal
+		regression.applyExerciseRule();
+		StandardErrorEvaluator<DayTimePoint> evaluator = new StandardErrorEvaluator<DayTimePoint>(swaption, 0.0, 10);
+		new MonteCarloSimulation<DayTimePoint>(deterministic, evaluator, new MersenneTwisterStandardVectorGenerator(1, 1L), flatCurve, pointDates, timeStep).simulate();
+		Assert.assertEquals(expected[0], evaluator.getResult(), 1e-12);
+	}
+
+	@Test
+	public void testSingleExerciseDateIsEuropean() {
+		BermudanSwaption<DayTimePoint> swaption = new BermudanSwaption<DayTimePoint>(0.035, 0.5, 1.0, pointDates, timeStep);
+		Assert.assertEquals(1, swaption.getNumberOfExerciseDates());
+		LongstaffSchwartzRegression<DayTimePoint> regression = new LongstaffSchwartzRegression<DayTimePoint>(swaption, 500, 2);
+		new MonteCarloSimulation<DayTimePoint>(hjm, regression, new MersenneTwisterStandardVectorGenerator(2, 4L), baseScenario, pointDates, timeStep).simulate();
+		regression.applyExerciseRule();
+		StandardErrorEvaluator<DayTimePoint> evaluator = new StandardErrorEvaluator<DayTimePoint>(swaption, 0.0, 500);
+		new MonteCarloSimulation<DayTimePoint>(hjm, evaluator, new MersenneTwisterStandardVectorGenerator(2, 4L), baseScenario, pointDates, timeStep).simulate();
+		Assert.assertEquals(regression.getResult(), evaluator.getResult(), 1e-15);
+		Assert.assertTrue(evaluator.getResult() > 0);
+	}
+
+	@Test
+	public void testBermudanBetweenEuropeanAndForesight() {
+		BermudanSwaption<DayTimePoint> swaption = new BermudanSwaption<DayTimePoint>(0.038, 0.5, 2.0, pointDates, timeStep);
+		RandomVectorGenerator generator = new MersenneTwisterStandardVectorGenerator(2, 11L);
+		LongstaffSchwartzRegression<DayTimePoint> regression = new LongstaffSchwartzRegression<DayTimePoint>(swaption, 2000, 2);
+		Assert.assertEquals(2000, new MonteCarloSimulation<DayTimePoint>(hjm, regression, generator, baseScenario, pointDates, timeStep).simulate());
+		regression.applyExerciseRule();
+
+		// price on new scenarios
+		StandardErrorEvaluator<DayTimePoint> bermudan = new StandardErrorEvaluator<DayTimePoint>(swaption, 0.0, 4000);
+		new MonteCarloSimulation<DayTimePoint>(hjm, bermudan, new MersenneTwisterStandardVectorGenerator(2, 12L), baseScenario, pointDates, timeStep).simulate();
+		double stdErr = Math.sqrt(bermudan.squareStdErr());
+		for (int date = 0; date < 3; date++) {
+			StandardErrorEvaluator<DayTimePoint> european = new StandardErrorEvaluator<DayTimePoint>(new ExerciseValue(swaption, date), 0.0, 4000);
+			new MonteCarloSimulation<DayTimePoint>(hjm, european, new MersenneTwisterStandardVectorGenerator(2, 12L), baseScenario, pointDates, timeStep).simulate();
+			Assert.assertTrue(bermudan.getResult() > european.getResult() - stdErr);
+		}
+		StandardErrorEvaluator<DayTimePoint> foresight = new StandardErrorEvaluator<DayTimePoint>(new ExerciseValue(swaption, -1), 0.0, 4000);
+		new MonteCarloSimulation<DayTimePoint>(hjm, foresight, new MersenneTwisterStandardVectorGenerator(2, 12L), baseScenario, pointDates, timeStep).simulate();
+		Assert.assertTrue(bermudan.getResult() <= foresight.getResult());
+		Assert.assertEquals(regression.getResult(), bermudan.getResult(), 4 * stdErr);
+	}
+
+	/**
+	 * The discounted value of exercising at a single date, or the largest one over all the dates if the date is negative
+	 */
+	private static class ExerciseValue implements CurveTimeSeriesOperator<DayTimePoint> {
+		private BermudanSwaption<DayTimePoint> swaption;
+		private int date;
+
+		ExerciseValue(BermudanSwaption<DayTimePoint> swaption, int date) {
+			this.swaption = swaption;
+			this.date = date;
+		}
+
+		@Override
+		public double evaluate(CurveTimeSeries<DayTimePoint> curveTimeSeries) {
+			double[] exerciseValues = new double[swaption.getNumberOfExerciseDates()];
+			swaption.evaluateExercise(curveTimeSeries, exerciseValues, new double[exerciseValues.length], 0);
+			if (date >= 0)
+				return exerciseValues[date];
+			double max = 0.0;
+			for (double value : exerciseValues)
+				max = Math.max(max, value);
+			return max;
+		}
+	}
+}
@@ -42,6 +42,12 @@ public class TestMonteCarloSimulation {
 			return new Curve(points, termStructure);
 		}
 		@Override
+		public void nextCurve(double[] currentPoints, int currentOffset, double[] nextPoints, int nextOffset, double[] randomVector, int randomOffset, double timeStep) {
+			for (int i = 0; i < termStructure.getTenors().length; i++) {
+				nextPoints[nextOffset + i] = currentPoints[currentOffset + i] + randomVector[randomOffset + i];
+			}
+		}
+		@Override
 		public int getDimension() {
 			return 4;
 		}
@@ -46,4 +46,23 @@ public class TestMultiFactorHJM {
 			Assert.assertEquals(theoreticalCurve[t], calculatedCurve.getPoints()[t], 0.000001);
 		}
 	}
+	
+	@Test
+	public void testInPlaceMatchesAllocating() {
+		TermStructure termStructure = new TermStructure(new double[] { 0.5, 1.0, 1.5, 2.0 });
+		Curve curve = new Curve(new double[] { 0.03, 0.035, 0.038, 0.04 }, termStructure);
+		MultiFactorHJM hjm = new MultiFactorHJM(new Polynomial[] { new Polynomial(new double[] { 0.01 }), new Polynomial(new double[] { 0.0, 0.005 }) }, termStructure);
+		double[] randomVector = new double[] { 0.3, -1.2 };
+		double timeStep = 1.0 / 252;
+		
+		Curve calculatedCurve = hjm.nextCurve(curve, randomVector, timeStep);
+		// current and next curve stored in the same array, random vector at an offset
+		double[] points = new double[8];
+		System.arraycopy(curve.getPoints(), 0, points, 0, 4);
+		hjm.nextCurve(points, 0, points, 4, new double[] { 9.9, 0.3, -1.2 }, 1, timeStep);
+		for (int t = 0; t < 4; t++) {
+			Assert.assertEquals(curve.getPoints()[t], points[t], 0.0);
+			Assert.assertEquals(calculatedCurve.getPoints()[t], points[4 + t], 0.0);
+		}
+	}
 }
@@ -0,0 +1,137 @@
+package com.luigisgro.cqf.test;
+
+import org.apache.commons.math.MathException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.luigisgro.cqf.fdm.BinaryCashOrNothingOption;
+import com.luigisgro.cqf.fdm.Derivative;
+import com.luigisgro.cqf.fdm.ExplicitMethodConstantVolatility;
+import com.luigisgro.cqf.fdm.ExplicitMethodUncertainVolatility;
+import com.luigisgro.cqf.fdm.FiniteDifferenceModel;
+import com.luigisgro.cqf.fdm.FiniteDifferencePricer;
+import com.luigisgro.cqf.fdm.Grid;
+import com.luigisgro.cqf.fdm.NonUniformGrid;
+import com.luigisgro.cqf.fdm.Option.Direction;
+import com.luigisgro.cqf.fdm.Portfolio;
+import com.luigisgro.cqf.fdm.Stencils;
+import com.luigisgro.cqf.fdm.ThetaMethod;
+import com.luigisgro.cqf.fdm.ThetaMethodConstantVolatility;
+import com.luigisgro.cqf.fdm.TwoStepsGrid;
+import com.luigisgro.cqf.fdm.VanillaOption;
+import com.luigisgro.cqf.util.BlackScholes;
+
+
+public class TestNonUniformGrid {
+	double tMin = 0;
+	double sMin = 0;
+	double sMax = 220;
+	int numS = 81;
+
+	double strike = 100;
+	double stock = 100;
+	double volMin = 0.18;
+	double volMax = 0.22;
+	double r = 0.04;
+	double maturity = 1;
+	double tStep = 0.0002;
+
+	private NonUniformGrid grid(double tStep) {
+		return NonUniformGrid.sinhStretched(tStep, tMin, maturity + tStep, sMin, sMax, numS, new double[] { strike }, 10);
+	}
+
+	private double price(Derivative derivative, FiniteDifferenceModel method, Grid g) {
+		Portfolio portfolio = new Portfolio();
+		portfolio.setPosition(derivative, 1);
+		Assert.assertTrue(FiniteDifferencePricer.evaluate(g, portfolio, method, r, false, null));
+		return g.getPresentInterpolated(stock);
+	}
+
+	@Test
+	public void testStockValues() {
+		NonUniformGrid g = NonUniformGrid.sinhStretched(tStep, tMin, maturity + tStep, sMin, sMax, numS, new double[] { 90, 110 }, 10);
+		Assert.assertEquals(numS, g.numS());
+		Assert.assertEquals(sMin, g.getS(0), 0);
+		Assert.assertEquals(sMax, g.getS(numS - 1), 0);
+		boolean on90 = false;
+		boolean on110 = false;
+		for (int is = 1; is < numS; is++) {
+			Assert.assertTrue(g.getS(is) > g.getS(is - 1));
+			on90 |= g.getS(is) == 90;
+			on110 |= g.getS(is) == 110;
+		}
+		Assert.assertTrue(on90 && on110);
+		// the steps are finer around the centres
+		Assert.assertTrue(g.sStep() < 220.0 / (numS - 1));
+		Assert.assertTrue(g.getS(1) - g.getS(0) > 220.0 / (numS - 1));
+	}
+
+	@Test
+	public void testInterpolate() {
+		// linear interpolation is exact for a line, whatever the stock steps
+		NonUniformGrid g = grid(tStep);
+		TwoStepsGrid uniform = new TwoStepsGrid(tStep, tMin, maturity + tStep, 2.75, sMin, sMax);
+		double[] values = new double[g.numS()];
+		for (int is = 0; is < values.length; is++)
+			values[is] = 2 * g.getS(is) + 1;
+		double[] uniformValues = new double[uniform.numS()];
+		for (int is = 0; is < uniformValues.length; is++)
+			uniformValues[is] = 2 * uniform.getS(is) + 1;
+		for (double s = 0.5; s < sMax; s += 7.3) {
+			Assert.assertEquals(2 * s + 1, g.interpolate(values, s), 1e-10);
+			Assert.assertEquals(2 * s + 1, uniform.interpolate(uniformValues, s), 1e-10);
+		}
+		Assert.assertEquals(values[0], g.interpolate(values, sMin - 1), 0);
+		Assert.assertEquals(values[values.length - 1], g.interpolate(values, sMax + 1), 0);
+	}
+
+	@Test
+	public void testStencils() {
+		// the three point stencils are exact for a parabola
+		NonUniformGrid g = grid(tStep);
+		Stencils stencils = new Stencils(g);
+		double[] values = new double[g.numS()];
+		for (int is = 0; is < values.length; is++)
+			values[is] = 3 * g.getS(is) * g.getS(is) - g.getS(is) + 2;
+		for (int is = 1; is < values.length - 1; is++) {
+			Assert.assertEquals(6 * g.getS(is) - 1, stencils.delta(values, is), 1e-8);
+			Assert.assertEquals(6, stencils.gamma(values, is), 1e-8);
+		}
+	}
+
+	@Test
+	public void testVanilla() throws MathException {
+		// with the same number of stock steps, the concentrated grid is more accurate than the uniform one
+		double bs = BlackScholes.vanillaOptionValue(stock, strike, maturity, volMax, r, Direction.CALL);
+		double nonUniform = price(new VanillaOption(Direction.CALL, strike, maturity), new ExplicitMethodConstantVolatility(volMax), grid(tStep));
+		double uniform = price(new VanillaOption(Direction.CALL, strike, maturity), new ExplicitMethodConstantVolatility(volMax), new TwoStepsGrid(tStep, tMin, maturity + tStep, (sMax - sMin) / (numS - 1), sMin, sMax));
+		System.out.println("Black-Scholes: " + bs + ", non uniform: " + nonUniform + ", uniform: " + uniform);
+		Assert.assertTrue(Math.abs(nonUniform - bs) < Math.abs(uniform - bs));
+		Assert.assertEquals(bs, nonUniform, 0.005);
+
+		double crankNicolson = price(new VanillaOption(Direction.CALL, strike, maturity), new ThetaMethodConstantVolatility(volMax, ThetaMethod.CRANK_NICOLSON), grid(0.01));
+		Assert.assertEquals(bs, crankNicolson, 0.01);
+	}
+
+	@Test
+	public void testUncertainVolatility() {
+		// the binary is priced as on a fine uniform grid
+		double fine = price(new BinaryCashOrNothingOption(Direction.CALL, strike, maturity), new ExplicitMethodUncertainVolatility(volMin, volMax), new TwoStepsGrid(0.00025, tMin, maturity + 0.00025, 1, sMin, sMax));
+		double nonUniform = price(new BinaryCashOrNothingOption(Direction.CALL, strike, maturity), new ExplicitMethodUncertainVolatility(volMin, volMax), grid(tStep));
+		System.out.println("Fine uniform: " + fine + ", non uniform: " + nonUniform);
+		Assert.assertEquals(fine, nonUniform, 0.005);
+	}
+
+	@Test
+	public void testValidate() {
+		Portfolio portfolio = new Portfolio();
+		portfolio.setPosition(new VanillaOption(Direction.CALL, strike, maturity), 1);
+		Assert.assertTrue(new ExplicitMethodConstantVolatility(volMax).validate(grid(tStep), portfolio));
+		Assert.assertFalse(new ExplicitMethodConstantVolatility(volMax).validate(grid(0.01), portfolio));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNotIncreasing() {
+		new NonUniformGrid(tStep, tMin, maturity, new double[] { 0, 10, 10, 20 });
+	}
+}
@@ -0,0 +1,87 @@
+package com.luigisgro.cqf.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.luigisgro.cqf.curve.CurveTimeSeries;
+import com.luigisgro.cqf.curve.CurveTimeSeriesOperator;
+import com.luigisgro.cqf.curve.DayTimePoint;
+import com.luigisgro.cqf.montecarlo.CurveTimeSeriesOperatorEvaluator;
+import com.luigisgro.cqf.montecarlo.MersenneTwisterStandardVectorGenerator;
+import com.luigisgro.cqf.montecarlo.MonteCarloSimulation;
+import com.luigisgro.cqf.montecarlo.ParallelMonteCarloSimulation;
+import com.luigisgro.cqf.montecarlo.RandomVectorGenerator;
+import com.luigisgro.cqf.montecarlo.StandardErrorEvaluator;
+import com.luigisgro.cqf.montecarlo.XoshiroStandardVectorGenerator;
+
+
+public class TestParallelMonteCarloSimulation extends HJMFixture {
+	CurveTimeSeriesOperator<DayTimePoint> lastShortRate = new CurveTimeSeriesOperator<DayTimePoint>() {
+		@Override
+		public double evaluate(CurveTimeSeries<DayTimePoint> curveTimeSeries) {
+			return curveTimeSeries.getCurves().get(curveTimeSeries.getCurves().lastKey()).getPoints()[0];
+		}
+	};
+
+	public TestParallelMonteCarloSimulation() {
+		super(2012, 6, 2);
+	}
+
+	private RandomVectorGenerator[] createGenerators(int numberOfThreads, long seed) {
+		RandomVectorGenerator[] generators = new RandomVectorGenerator[numberOfThreads];
+		for (int i = 0; i < numberOfThreads; i++)
+			generators[i] = new MersenneTwisterStandardVectorGenerator(hjm.getDimension(), seed + i);
+		return generators;
+	}
+
+	private double runParallel(int numberOfThreads, long seed, int iterations) {
+		CurveTimeSeriesOperatorEvaluator<DayTimePoint> evaluator = new CurveTimeSeriesOperatorEvaluator<DayTimePoint>(lastShortRate, iterations);
+		ParallelMonteCarloSimulation<DayTimePoint> sim = new ParallelMonteCarloSimulation<DayTimePoint>(hjm, evaluator, createGenerators(numberOfThreads, seed), baseScenario, pointDates, timeStep, 300);
+		Assert.assertEquals(iterations, sim.simulate());
+		return evaluator.getResult();
+	}
+
+	@Test
+	public void testReproducible() {
+		double first = runParallel(4, 1234, 2500);
+		double second = runParallel(4, 1234, 2500);
+		Assert.assertEquals(first, second, 0.0);
+		double differentSeed = runParallel(4, 4321, 2500);
+		Assert.assertTrue(first != differentSeed);
+	}
+
+	@Test
+	public void testSingleThreadMatchesSequential() {
+		double parallel = runParallel(1, 99, 1000);
+		CurveTimeSeriesOperatorEvaluator<DayTimePoint> evaluator = new CurveTimeSeriesOperatorEvaluator<DayTimePoint>(lastShortRate, 1000);
+		MonteCarloSimulation<DayTimePoint> sim = new MonteCarloSimulation<DayTimePoint>(hjm, evaluator, new MersenneTwisterStandardVectorGenerator(hjm.getDimension(), 99L), baseScenario, pointDates, timeStep);
+		Assert.assertEquals(1000, sim.simulate());
+		Assert.assertEquals(evaluator.getResult(), parallel, 1e-12);
+	}
+
+	@Test
+	public void testStandardErrorStop() {
+		StandardErrorEvaluator<DayTimePoint> evaluator = new StandardErrorEvaluator<DayTimePoint>(lastShortRate, 0.0005, 100000);
+		ParallelMonteCarloSimulation<DayTimePoint> sim = new ParallelMonteCarloSimulation<DayTimePoint>(hjm, evaluator, createGenerators(3, 7), baseScenario, pointDates, timeStep, 200);
+		int iterations = sim.simulate();
+		Assert.assertTrue(iterations < 100000);
+		Assert.assertTrue(Math.sqrt(evaluator.squareStdErr()) <= 0.0005);
+	}
+
+	private double[] runSubstreams(int numberOfThreads, boolean antithetic) {
+		StandardErrorEvaluator<DayTimePoint> evaluator = new StandardErrorEvaluator<DayTimePoint>(lastShortRate, 0.0, 2345);
+		ParallelMonteCarloSimulation<DayTimePoint> sim = new ParallelMonteCarloSimulation<DayTimePoint>(hjm, evaluator, new XoshiroStandardVectorGenerator(hjm.getDimension(), 2012L), numberOfThreads, baseScenario, pointDates, timeStep, 1000, 64);
+		sim.setAntitheticPaths(antithetic);
+		Assert.assertEquals(2345, sim.simulate());
+		return new double[] { evaluator.getResult(), evaluator.squareStdErr() };
+	}
+
+	@Test
+	public void testSubstreamsIndependentOfThreads() {
+		for (boolean antithetic : new boolean[] { false, true }) {
+			double[] single = runSubstreams(1, antithetic);
+			Assert.assertArrayEquals(single, runSubstreams(3, antithetic), 0.0);
+			Assert.assertArrayEquals(single, runSubstreams(8, antithetic), 0.0);
+		}
+	}
+}
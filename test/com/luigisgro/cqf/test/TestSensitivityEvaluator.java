@@ -0,0 +1,100 @@
+package com.luigisgro.cqf.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.luigisgro.cqf.curve.Curve;
+import com.luigisgro.cqf.curve.DayTimePoint;
+import com.luigisgro.cqf.curve.PathwiseCurveTimeSeriesOperator;
+import com.luigisgro.cqf.function.Polynomial;
+import com.luigisgro.cqf.hjm.Cap;
+import com.luigisgro.cqf.hjm.Floor;
+import com.luigisgro.cqf.hjm.MultiFactorHJM;
+import com.luigisgro.cqf.hjm.ZCB;
+import com.luigisgro.cqf.montecarlo.MersenneTwisterStandardVectorGenerator;
+import com.luigisgro.cqf.montecarlo.MonteCarloSimulation;
+import com.luigisgro.cqf.montecarlo.ParallelMonteCarloSimulation;
+import com.luigisgro.cqf.montecarlo.SensitivityEvaluator;
+import com.luigisgro.cqf.montecarlo.StandardErrorEvaluator;
+import com.luigisgro.cqf.montecarlo.XoshiroStandardVectorGenerator;
+
+
+public class TestSensitivityEvaluator extends HJMFixture {
+	public TestSensitivityEvaluator() {
+		super(2013, 6, 2);
+	}
+
+	private SensitivityEvaluator<DayTimePoint> runSensitivities(PathwiseCurveTimeSeriesOperator<DayTimePoint> derivative, boolean antithetic) {
+		SensitivityEvaluator<DayTimePoint> evaluator = new SensitivityEvaluator<DayTimePoint>(derivative, 0.0, 400);
+		evaluator.setModel(hjm);
+		MonteCarloSimulation<DayTimePoint> sim = new MonteCarloSimulation<DayTimePoint>(hjm, evaluator, new MersenneTwisterStandardVectorGenerator(2, 21L), baseScenario, pointDates, timeStep);
+		sim.setAntitheticPaths(antithetic);
+		sim.simulate();
+		return evaluator;
+	}
+
+	private double price(PathwiseCurveTimeSeriesOperator<DayTimePoint> derivative, MultiFactorHJM model, Curve startingCurve, boolean antithetic) {
+		StandardErrorEvaluator<DayTimePoint> evaluator = new StandardErrorEvaluator<DayTimePoint>(derivative, 0.0, 400);
+		MonteCarloSimulation<DayTimePoint> sim = new MonteCarloSimulation<DayTimePoint>(model, evaluator, new MersenneTwisterStandardVectorGenerator(2, 21L), startingCurve, pointDates, timeStep);
+		sim.setAntitheticPaths(antithetic);
+		sim.simulate();
+		return evaluator.getResult();
+	}
+
+	private Curve bumpedCurve(int tenorIndex, double bump) {
+		double[] points = baseScenario.getPoints().clone();
+		points[tenorIndex] += bump;
+		return new Curve(points, termStructure);
+	}
+
+	private MultiFactorHJM bumpedModel(int factor, double bump) {
+		Polynomial[] bumpedFunctions = volatilityFunctions.clone();
+		bumpedFunctions[factor] = Polynomial.scale(volatilityFunctions[factor], 1 + bump);
+		return new MultiFactorHJM(bumpedFunctions, termStructure);
+	}
+
+	private void checkAgainstBumpAndRevalue(PathwiseCurveTimeSeriesOperator<DayTimePoint> derivative, boolean antithetic) {
+		SensitivityEvaluator<DayTimePoint> evaluator = runSensitivities(derivative, antithetic);
+		Assert.assertEquals(price(derivative, hjm, baseScenario, antithetic), evaluator.getResult(), 1e-15);
+		double curveBump = 1e-6;
+		for (int i = 0; i < termStructure.getTenors().length; i++) {
+			double bumpedDelta = (price(derivative, hjm, bumpedCurve(i, curveBump), antithetic) - price(derivative, hjm, bumpedCurve(i, -curveBump), antithetic)) / (2 * curveBump);
+			Assert.assertEquals(bumpedDelta, evaluator.getDelta(i), 1e-3 * Math.abs(bumpedDelta) + 1e-4);
+		}
+		double volatilityBump = 1e-4;
+		for (int j = 0; j < hjm.getDimension(); j++) {
+			double bumpedVega = (price(derivative, bumpedModel(j, volatilityBump), baseScenario, antithetic) - price(derivative, bumpedModel(j, -volatilityBump), baseScenario, antithetic)) / (2 * volatilityBump);
+			Assert.assertEquals(bumpedVega, evaluator.getVega(j), 1e-3 * Math.abs(bumpedVega) + 1e-6);
+		}
+	}
+
+	@Test
+	public void testZCBAgainstBumpAndRevalue() {
+		checkAgainstBumpAndRevalue(new ZCB<DayTimePoint>(pointDates[20], pointDates[300], timeStep, pointDates), false);
+	}
+
+	@Test
+	public void testCapAgainstBumpAndRevalue() {
+		checkAgainstBumpAndRevalue(new Cap<DayTimePoint>(0.035, 0.5, 1.5, pointDates, timeStep), false);
+		checkAgainstBumpAndRevalue(new Cap<DayTimePoint>(0.035, 0.5, 1.5, pointDates, timeStep), true);
+	}
+
+	@Test
+	public void testFloorAgainstBumpAndRevalue() {
+		checkAgainstBumpAndRevalue(new Floor<DayTimePoint>(0.04, 0.5, 1.5, pointDates, timeStep), false);
+	}
+
+	@Test
+	public void testParallelMatchesSequential() {
+		Cap<DayTimePoint> cap = new Cap<DayTimePoint>(0.035, 0.5, 1.5, pointDates, timeStep);
+		SensitivityEvaluator<DayTimePoint> single = new SensitivityEvaluator<DayTimePoint>(cap, 0.0, 300);
+		single.setModel(hjm);
+		new ParallelMonteCarloSimulation<DayTimePoint>(hjm, single, new XoshiroStandardVectorGenerator(2, 5L), 1, baseScenario, pointDates, timeStep, 1000, 32).simulate();
+		SensitivityEvaluator<DayTimePoint> parallel = new SensitivityEvaluator<DayTimePoint>(cap, 0.0, 300);
+		parallel.setModel(hjm);
+		new ParallelMonteCarloSimulation<DayTimePoint>(hjm, parallel, new XoshiroStandardVectorGenerator(2, 5L), 3, baseScenario, pointDates, timeStep, 1000, 32).simulate();
+		Assert.assertEquals(single.getResult(), parallel.getResult(), 0.0);
+		Assert.assertArrayEquals(single.getDeltas(), parallel.getDeltas(), 1e-15);
+		Assert.assertArrayEquals(single.getVegas(), parallel.getVegas(), 1e-15);
+	}
+}
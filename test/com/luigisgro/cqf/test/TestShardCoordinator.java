@@ -0,0 +1,164 @@
+package com.luigisgro.cqf.test;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.luigisgro.cqf.curve.DayTimePoint;
+import com.luigisgro.cqf.hjm.Cap;
+import com.luigisgro.cqf.montecarlo.MergeableMonteCarloEvaluator;
+import com.luigisgro.cqf.montecarlo.MonteCarloSimulation;
+import com.luigisgro.cqf.montecarlo.RandomizedQMCEvaluator;
+import com.luigisgro.cqf.montecarlo.ShardCoordinator;
+import com.luigisgro.cqf.montecarlo.ShardEvaluator;
+import com.luigisgro.cqf.montecarlo.StandardErrorEvaluator;
+import com.luigisgro.cqf.montecarlo.XoshiroStandardVectorGenerator;
+
+
+public class TestShardCoordinator extends HJMFixture {
+	Cap<DayTimePoint> cap;
+	File directory;
+
+	public TestShardCoordinator() {
+		super(2013, 0, 2);
+	}
+
+	@Before
+	public void createCapAndDirectory() throws IOException {
+		cap = new Cap<DayTimePoint>(0.035, 0.25, 0.75, pointDates, timeStep);
+		directory = File.createTempFile("shards", "");
+		directory.delete();
+		directory.mkdir();
+	}
+
+	@After
+	public void deleteDirectory() {
+		for (File file : directory.listFiles())
+			file.delete();
+		directory.delete();
+	}
+
+	/**
+	 * A shard running in its own thread, as it would in its own process
+	 */
+	private class Shard extends Thread {
+		ShardEvaluator<DayTimePoint> evaluator;
+		XoshiroStandardVectorGenerator generator = new XoshiroStandardVectorGenerator(2, 31L);
+
+		Shard(MergeableMonteCarloEvaluator<DayTimePoint> globalEvaluator, int stream) {
+			evaluator = new ShardEvaluator<DayTimePoint>(globalEvaluator, directory, stream, 50);
+			for (int i = 0; i < stream; i++)
+				generator.longJump();
+		}
+
+		@Override
+		public void run() {
+			new MonteCarloSimulation<DayTimePoint>(hjm, evaluator, generator, baseScenario, pointDates, timeStep).simulate();
+		}
+	}
+
+	@Test
+	public void testMergedStoppingCriteria() throws InterruptedException {
+		StandardErrorEvaluator<DayTimePoint> evaluator = new StandardErrorEvaluator<DayTimePoint>(cap, 2e-4, 1000000);
+		Shard[] shards = new Shard[3];
+		for (int i = 0; i < shards.length; i++) {
+			shards[i] = new Shard(evaluator, i + 1);
+			shards[i].start();
+		}
+		ShardCoordinator<DayTimePoint> coordinator = new ShardCoordinator<DayTimePoint>(evaluator, directory, shards.length);
+		coordinator.setPollInterval(10);
+		int iterations = coordinator.coordinate();
+		for (Shard shard : shards)
+			shard.join();
+
+		// the merged result is made of the final summaries of all the shards
+		StandardErrorEvaluator<DayTimePoint> expected = new StandardErrorEvaluator<DayTimePoint>(cap, 2e-4, 1000000);
+		int shardIterations = 0;
+		for (Shard shard : shards) {
+			Assert.assertFalse(shard.evaluator.moreIterationsNeeded());
+			Assert.assertEquals(0, shard.evaluator.getNumberOfIterations() % 50);
+			shardIterations += shard.evaluator.getNumberOfIterations();
+			expected.merge(shard.evaluator.getPartialEvaluator());
+		}
+		Assert.assertEquals(shardIterations, iterations);
+		Assert.assertEquals(expected.getResult(), evaluator.getResult(), 1e-15);
+		Assert.assertEquals(expected.squareStdErr(), evaluator.squareStdErr(), 1e-20);
+		Assert.assertFalse(evaluator.moreIterationsNeeded());
+		Assert.assertTrue(Math.sqrt(evaluator.squareStdErr()) <= 2e-4);
+		// each shard alone is less accurate
+		for (Shard shard : shards)
+			Assert.assertTrue(((StandardErrorEvaluator<DayTimePoint>)shard.evaluator.getPartialEvaluator()).squareStdErr() > evaluator.squareStdErr());
+	}
+
+	@Test
+	public void testShardWithoutCoordinator() {
+		StandardErrorEvaluator<DayTimePoint> evaluator = new StandardErrorEvaluator<DayTimePoint>(cap, 0.0, 120);
+		Shard shard = new Shard(evaluator, 1);
+		shard.run();
+		Assert.assertEquals(120, shard.evaluator.getNumberOfIterations());
+		// the final summary is read by a coordinator started later
+		Assert.assertEquals(120, new ShardCoordinator<DayTimePoint>(evaluator, directory, 1).coordinate());
+		Assert.assertEquals(shard.evaluator.getResult(), evaluator.getResult(), 0.0);
+	}
+
+	@Test
+	public void testMissingShard() {
+		StandardErrorEvaluator<DayTimePoint> evaluator = new StandardErrorEvaluator<DayTimePoint>(cap, 0.0, 120);
+		new Shard(evaluator, 1).run();
+		ShardCoordinator<DayTimePoint> coordinator = new ShardCoordinator<DayTimePoint>(evaluator, directory, 2);
+		coordinator.setPollInterval(10);
+		coordinator.setStaleTimeout(200);
+		try {
+			coordinator.coordinate();
+			Assert.fail("The coordinator did not detect the missing shard");
+		} catch (IllegalStateException e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().contains("1 of 2 shards without a summary"));
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testMoreSummariesThanShards() {
+		StandardErrorEvaluator<DayTimePoint> evaluator = new StandardErrorEvaluator<DayTimePoint>(cap, 0.0, 120);
+		new Shard(evaluator, 1).run();
+		new Shard(evaluator, 2).run();
+		new ShardCoordinator<DayTimePoint>(evaluator, directory, 1).coordinate();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testStopFileOfPreviousSimulation() throws IOException {
+		new File(directory, "stop").createNewFile();
+		new ShardCoordinator<DayTimePoint>(new StandardErrorEvaluator<DayTimePoint>(cap, 0.0, 120), directory, 1).coordinate();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNotMergeableSummary() {
+		new ShardEvaluator<DayTimePoint>(new MergeableRandomizedQMCEvaluator(), directory, 1, 50);
+	}
+
+	/**
+	 * An evaluator whose partial evaluators can not be written to a summary
+	 */
+	private class MergeableRandomizedQMCEvaluator extends RandomizedQMCEvaluator<DayTimePoint> implements MergeableMonteCarloEvaluator<DayTimePoint> {
+		MergeableRandomizedQMCEvaluator() {
+			super(cap, 2, 0.0, 10);
+		}
+
+		@Override
+		public MergeableMonteCarloEvaluator<DayTimePoint> createPartialEvaluator() {
+			return new MergeableRandomizedQMCEvaluator();
+		}
+
+		@Override
+		public void merge(MergeableMonteCarloEvaluator<DayTimePoint> partialEvaluator) {
+		}
+
+		@Override
+		public int remainingIterations() {
+			return 0;
+		}
+	}
+}
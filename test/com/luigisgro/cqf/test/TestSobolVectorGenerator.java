@@ -0,0 +1,140 @@
+package com.luigisgro.cqf.test;
+
+import org.apache.commons.math.MathException;
+import org.apache.commons.math.distribution.NormalDistributionImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.luigisgro.cqf.curve.DayTimePoint;
+import com.luigisgro.cqf.hjm.ZCB;
+import com.luigisgro.cqf.montecarlo.MersenneTwisterStandardVectorGenerator;
+import com.luigisgro.cqf.montecarlo.MonteCarloSimulation;
+import com.luigisgro.cqf.montecarlo.RandomizedQMCEvaluator;
+import com.luigisgro.cqf.montecarlo.SobolSequence;
+import com.luigisgro.cqf.montecarlo.SobolVectorGenerator;
+import com.luigisgro.cqf.montecarlo.StandardErrorEvaluator;
+import com.luigisgro.cqf.util.InverseCumulativeNormal;
+
+
+public class TestSobolVectorGenerator extends HJMFixture {
+	public TestSobolVectorGenerator() {
+		super(2012, 6, 2);
+	}
+
+	@Test
+	public void testInverseCumulativeNormal() throws MathException {
+		NormalDistributionImpl normal = new NormalDistributionImpl();
+		double[] probabilities = { 1e-10, 1e-6, 0.001, 0.02, 0.02425, 0.1, 0.3, 0.5, 0.7, 0.9, 0.97575, 0.99, 0.999999 };
+		for (double p : probabilities) {
+			double x = InverseCumulativeNormal.value(p);
+			Assert.assertEquals(p, normal.cumulativeProbability(x), 1e-7 * Math.min(p, 1 - p));
+		}
+		Assert.assertEquals(0.0, InverseCumulativeNormal.value(0.5), 1e-15);
+	}
+
+	@Test
+	public void testFirstDimension() {
+		SobolSequence sequence = new SobolSequence(1, null);
+		double[] point = new double[1];
+		double[] expected = { 0.5, 0.75, 0.25, 0.375, 0.875, 0.625, 0.125 };
+		for (double x : expected) {
+			sequence.nextPoint(point);
+			Assert.assertEquals(x, point[0], 1e-9);
+		}
+	}
+
+	@Test
+	public void testStratification() {
+		// the first 2^m points, including the origin, have exactly one coordinate in each interval of length 2^-m
+		int dimension = 60;
+		int m = 8;
+		SobolSequence sequence = new SobolSequence(dimension, null);
+		int[][] counts = new int[dimension][1 << m];
+		double[] point = new double[dimension];
+		for (int n = 1; n < (1 << m); n++) {
+			sequence.nextPoint(point);
+			for (int i = 0; i < dimension; i++)
+				counts[i][(int)(point[i] * (1 << m))]++;
+		}
+		for (int i = 0; i < dimension; i++) {
+			Assert.assertEquals(0, counts[i][0]);
+			for (int k = 1; k < (1 << m); k++)
+				Assert.assertEquals(1, counts[i][k]);
+		}
+	}
+
+	@Test
+	public void testBrownianIncrements() {
+		int factors = 2;
+		int steps = 20;
+		int paths = 16384;
+		SobolVectorGenerator generator = new SobolVectorGenerator(factors, steps, 11L, 1);
+		double[] sum = new double[factors * steps];
+		double[] sumOfSquares = new double[factors * steps];
+		double[] terminalSquares = new double[factors];
+		for (int n = 0; n < paths; n++) {
+			double[] terminal = new double[factors];
+			for (int s = 0; s < steps; s++) {
+				double[] vector = generator.generateNextVector();
+				for (int f = 0; f < factors; f++) {
+					sum[s * factors + f] += vector[f];
+					sumOfSquares[s * factors + f] += vector[f] * vector[f];
+					terminal[f] += vector[f];
+				}
+			}
+			for (int f = 0; f < factors; f++)
+				terminalSquares[f] += terminal[f] * terminal[f];
+		}
+		for (int i = 0; i < factors * steps; i++) {
+			Assert.assertEquals(0.0, sum[i] / paths, 0.01);
+			Assert.assertEquals(1.0, sumOfSquares[i] / paths, 0.02);
+		}
+		// the terminal point is driven by the first coordinate only
+		for (int f = 0; f < factors; f++)
+			Assert.assertEquals(steps, terminalSquares[f] / paths, 0.01 * steps);
+	}
+
+	@Test
+	public void testReproducible() {
+		SobolVectorGenerator first = new SobolVectorGenerator(2, 10, 3L, 4);
+		SobolVectorGenerator second = new SobolVectorGenerator(2, 10, 3L, 4);
+		SobolVectorGenerator other = new SobolVectorGenerator(2, 10, 4L, 4);
+		boolean different = false;
+		for (int i = 0; i < 200; i++) {
+			double[] a = first.generateNextVector();
+			double[] b = second.generateNextVector();
+			double[] c = other.generateNextVector();
+			Assert.assertArrayEquals(a, b, 0.0);
+			different |= a[0] != c[0];
+		}
+		Assert.assertTrue(different);
+	}
+
+	@Test
+	public void testRandomizedQMC() {
+		ZCB<DayTimePoint> zcb = new ZCB<DayTimePoint>(pointDates[0], pointDates[pointDates.length - 1], timeStep, pointDates);
+		double expected = zcb.getExpectedValue(hjm, baseScenario, timeStep);
+		int paths = 1024;
+
+		RandomizedQMCEvaluator<DayTimePoint> rqmc = new RandomizedQMCEvaluator<DayTimePoint>(zcb, 8, 0.0, paths);
+		MonteCarloSimulation<DayTimePoint> sim = new MonteCarloSimulation<DayTimePoint>(hjm, rqmc, new SobolVectorGenerator(hjm.getDimension(), pointDates.length - 1, 17L, 8), baseScenario, pointDates, timeStep);
+		Assert.assertEquals(paths, sim.simulate());
+
+		StandardErrorEvaluator<DayTimePoint> mc = new StandardErrorEvaluator<DayTimePoint>(zcb, 0.0, paths);
+		sim = new MonteCarloSimulation<DayTimePoint>(hjm, mc, new MersenneTwisterStandardVectorGenerator(hjm.getDimension(), 17L), baseScenario, pointDates, timeStep);
+		sim.simulate();
+
+		double rqmcError = Math.sqrt(rqmc.squareStdErr());
+		Assert.assertEquals(expected, rqmc.getResult(), 4 * rqmcError);
+		Assert.assertTrue(rqmcError < 0.2 * Math.sqrt(mc.squareStdErr()));
+	}
+
+	@Test
+	public void testReplicationRounds() {
+		ZCB<DayTimePoint> zcb = new ZCB<DayTimePoint>(pointDates[0], pointDates[pointDates.length - 1], timeStep, pointDates);
+		RandomizedQMCEvaluator<DayTimePoint> rqmc = new RandomizedQMCEvaluator<DayTimePoint>(zcb, 7, 1.0, 100);
+		MonteCarloSimulation<DayTimePoint> sim = new MonteCarloSimulation<DayTimePoint>(hjm, rqmc, new SobolVectorGenerator(hjm.getDimension(), pointDates.length - 1, 1L, 7), baseScenario, pointDates, timeStep);
+		// large threshold: it stops at the first complete round after 100 iterations
+		Assert.assertEquals(105, sim.simulate());
+	}
+}
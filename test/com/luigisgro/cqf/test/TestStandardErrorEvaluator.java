@@ -0,0 +1,131 @@
+package com.luigisgro.cqf.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.luigisgro.cqf.curve.CurveTimeSeries;
+import com.luigisgro.cqf.curve.CurveTimeSeriesOperator;
+import com.luigisgro.cqf.curve.DayTimePoint;
+import com.luigisgro.cqf.montecarlo.ControlVariateEvaluator;
+import com.luigisgro.cqf.montecarlo.MergeableMonteCarloEvaluator;
+import com.luigisgro.cqf.montecarlo.StandardErrorEvaluator;
+
+
+public class TestStandardErrorEvaluator {
+	/**
+	 * An operator ignoring the scenario, returning a fixed sequence of pseudo-random values
+	 */
+	private class Sequence implements CurveTimeSeriesOperator<DayTimePoint> {
+		private final double offset;
+		private long state;
+
+		Sequence(double offset, long seed) {
+			this.offset = offset;
+			state = seed;
+		}
+
+		@Override
+		public double evaluate(CurveTimeSeries<DayTimePoint> curveTimeSeries) {
+			state = state * 6364136223846793005L + 1442695040888963407L;
+			return offset + (double)(state >>> 11) / (1L << 53);
+		}
+	}
+
+	private int simulate(StandardErrorEvaluator<DayTimePoint> evaluator) {
+		int iterations = 0;
+		while (evaluator.moreIterationsNeeded()) {
+			evaluator.evaluateAndAccumulate((CurveTimeSeries<DayTimePoint>)null);
+			iterations++;
+		}
+		return iterations;
+	}
+
+	@Test
+	public void testLargeOffset() {
+		StandardErrorEvaluator<DayTimePoint> evaluator = new StandardErrorEvaluator<DayTimePoint>(new AlternatingOperator(1e9), 0.0, 10000);
+		Assert.assertEquals(10000, simulate(evaluator));
+		Assert.assertEquals(1e9, evaluator.getResult(), 1e-6);
+		// variance of the evaluations equal to 1
+		Assert.assertEquals(1.0 / 10000, evaluator.squareStdErr(), 1e-15);
+	}
+
+	@Test
+	public void testCheckInterval() {
+		// the threshold is reached at iteration 399
+		StandardErrorEvaluator<DayTimePoint> evaluator = new StandardErrorEvaluator<DayTimePoint>(new AlternatingOperator(5.0), 0.0501, 10000);
+		Assert.assertEquals(400, simulate(evaluator));
+		Assert.assertFalse(evaluator.moreIterationsNeeded());
+		evaluator = new StandardErrorEvaluator<DayTimePoint>(new AlternatingOperator(5.0), 0.0501, 10000);
+		evaluator.setCheckInterval(120);
+		Assert.assertEquals(480, simulate(evaluator));
+		evaluator = new StandardErrorEvaluator<DayTimePoint>(new AlternatingOperator(5.0), 0.0501, 10000);
+		evaluator.setCheckInterval(1);
+		Assert.assertEquals(399, simulate(evaluator));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidCheckInterval() {
+		new StandardErrorEvaluator<DayTimePoint>(new AlternatingOperator(5.0), 0.0501, 10000).setCheckInterval(0);
+	}
+
+	@Test
+	public void testPredictedIterations() {
+		StandardErrorEvaluator<DayTimePoint> evaluator = new StandardErrorEvaluator<DayTimePoint>(new AlternatingOperator(5.0), 0.01, 1000000);
+		for (int i = 0; i < 100; i++)
+			evaluator.evaluateAndAccumulate((CurveTimeSeries<DayTimePoint>)null);
+		Assert.assertEquals(10000, evaluator.getPredictedIterations());
+		Assert.assertEquals(9900, evaluator.getPredictedRemainingIterations());
+
+		// the prediction is limited by the maximum number of iterations
+		evaluator = new StandardErrorEvaluator<DayTimePoint>(new AlternatingOperator(5.0), 0.01, 5000);
+		evaluator.setCheckInterval(1000);
+		Assert.assertEquals(5000, simulate(evaluator));
+		Assert.assertEquals(10000, evaluator.getPredictedIterations());
+		Assert.assertEquals(0, evaluator.getPredictedRemainingIterations());
+		Assert.assertTrue(evaluator.getEstimatedTimeToCompletion() >= 0);
+	}
+
+	@Test
+	public void testMerge() {
+		StandardErrorEvaluator<DayTimePoint> sequential = new StandardErrorEvaluator<DayTimePoint>(new Sequence(1e6, 7L), 0.0, 3000);
+		simulate(sequential);
+		StandardErrorEvaluator<DayTimePoint> merged = new StandardErrorEvaluator<DayTimePoint>(new Sequence(1e6, 7L), 0.0, 3000);
+		int[] sizes = { 1000, 1700, 300 };
+		for (int size : sizes) {
+			MergeableMonteCarloEvaluator<DayTimePoint> partial = merged.createPartialEvaluator();
+			for (int i = 0; i < size; i++)
+				partial.evaluateAndAccumulate((CurveTimeSeries<DayTimePoint>)null);
+			merged.merge(partial);
+		}
+		Assert.assertEquals(sequential.getResult(), merged.getResult(), 1e-9);
+		Assert.assertEquals(1.0 / 12 / 3000, merged.squareStdErr(), 0.005 / 3000);
+		Assert.assertEquals(sequential.squareStdErr(), merged.squareStdErr(), 1e-9 * sequential.squareStdErr());
+	}
+
+	@Test
+	public void testControlVariateMerge() {
+		ControlVariateEvaluator<DayTimePoint> sequential = new ControlVariateEvaluator<DayTimePoint>(new Sequence(1e6, 7L), new Sequence(1e6, 7L), 0.0, 3000);
+		sequential.setControlMean(1e6 + 0.5);
+		simulate(sequential);
+		// the control is the derivative itself: no residual error
+		Assert.assertEquals(1.0, sequential.getControlCoefficient(), 1e-9);
+		Assert.assertEquals(1e6 + 0.5, sequential.getResult(), 1e-9);
+		Assert.assertEquals(0.0, sequential.squareStdErr(), 1e-15);
+
+		sequential = new ControlVariateEvaluator<DayTimePoint>(new Sequence(1e6, 7L), new Sequence(2e6, 11L), 0.0, 3000);
+		sequential.setControlMean(2e6 + 0.5);
+		simulate(sequential);
+		ControlVariateEvaluator<DayTimePoint> merged = new ControlVariateEvaluator<DayTimePoint>(new Sequence(1e6, 7L), new Sequence(2e6, 11L), 0.0, 3000);
+		merged.setControlMean(2e6 + 0.5);
+		int[] sizes = { 1000, 1700, 300 };
+		for (int size : sizes) {
+			MergeableMonteCarloEvaluator<DayTimePoint> partial = merged.createPartialEvaluator();
+			for (int i = 0; i < size; i++)
+				partial.evaluateAndAccumulate((CurveTimeSeries<DayTimePoint>)null);
+			merged.merge(partial);
+		}
+		Assert.assertEquals(sequential.getControlCoefficient(), merged.getControlCoefficient(), 1e-9);
+		Assert.assertEquals(sequential.getResult(), merged.getResult(), 1e-9);
+		Assert.assertEquals(sequential.squareStdErr(), merged.squareStdErr(), 1e-9 * sequential.squareStdErr());
+	}
+}
@@ -9,14 +9,19 @@ import org.apache.commons.math.optimization.direct.NelderMead;
 import org.junit.Test;
 
 import com.luigisgro.cqf.fdm.BinaryCashOrNothingOption;
+import com.luigisgro.cqf.fdm.ExplicitMethodConstantVolatility;
 import com.luigisgro.cqf.fdm.ExplicitMethodUncertainVolatility;
+import com.luigisgro.cqf.fdm.FiniteDifferencePricer;
 import com.luigisgro.cqf.fdm.FullGrid;
+import com.luigisgro.cqf.fdm.GradientHedgingOptimizer;
 import com.luigisgro.cqf.fdm.Grid;
+import com.luigisgro.cqf.fdm.MultiStartHedgingOptimizer;
 import com.luigisgro.cqf.fdm.FiniteDifferenceModel;
 import com.luigisgro.cqf.fdm.Option.Direction;
 import com.luigisgro.cqf.fdm.Portfolio;
 import com.luigisgro.cqf.fdm.StaticHedgingStrategy;
 import com.luigisgro.cqf.fdm.StaticHedgingStrategyOptimizationAdapter;
+import com.luigisgro.cqf.fdm.TwoStepsGrid;
 import com.luigisgro.cqf.fdm.VanillaOption;
 import com.luigisgro.cqf.util.BlackScholes;
 
@@ -69,6 +74,108 @@ public class TestStrategyOptimizer {
 		Assert.assertEquals(-9.9250, result.getValue(), 0.0001);
 	}
 	@Test
+	public void testMultiStart() throws IllegalArgumentException, MathException {
+		Portfolio p = new Portfolio();
+		p.getItems().put(new VanillaOption(Direction.CALL, strike, maturity), p.new Item(1, 0, false));
+		p.getItems().put(new VanillaOption(Direction.CALL, strike, maturity), p.new Item(-1, BlackScholes.vanillaOptionValue(stock, strike, maturity, (volMin+volMax)/2, r, Direction.CALL), true));
+		
+		Grid g = new TwoStepsGrid(tStep, tMin, tMax, sStep, sMin, sMax);
+		
+		FiniteDifferenceModel method = new ExplicitMethodUncertainVolatility(volMin, volMax);
+		
+		StaticHedgingStrategy strategy = new StaticHedgingStrategy(g, p, method, r);
+		StaticHedgingStrategyOptimizationAdapter adapter = new StaticHedgingStrategyOptimizationAdapter(strategy, stock);
+		
+		// the evaluation on a copy does not change the strategy
+		double value = adapter.evaluate(new double[] { -0.5 });
+		Assert.assertEquals(-1.0, strategy.hedgePositions()[0]);
+		Assert.assertEquals(value, adapter.value(new double[] { -0.5 }), 1e-12);
+		
+		MultiStartHedgingOptimizer optimizer = new MultiStartHedgingOptimizer(adapter, 2);
+		double[][] startingPoints = MultiStartHedgingOptimizer.startingPoints(new double[] { -1.0 }, 3, 1);
+		Assert.assertEquals(-1.0, startingPoints[0][0]);
+		
+		RealPointValuePair result = optimizer.optimize(GoalType.MAXIMIZE, startingPoints);
+
+		System.out.println("Optimizer converged in " + optimizer.getIterations() + " iterations, " + optimizer.getEvaluations() + " evaluations");
+		System.out.println("Hedge: " + strategy.hedgePositionsDesc() + " Value: " + result.getValue());
+		Assert.assertEquals(9.9250, result.getValue(), 0.0001);
+		Assert.assertEquals(result.getPoint()[0], strategy.hedgePositions()[0]);
+		Assert.assertEquals(result.getValue(), strategy.getPnLAt(stock), 1e-12);
+	}
+	@Test
+	public void testLinearModel() {
+		Portfolio p = new Portfolio();
+		p.getItems().put(new BinaryCashOrNothingOption(Direction.CALL, strike, maturity), p.new Item(1, 0, false));
+		p.getItems().put(new VanillaOption(Direction.PUT, strikeLo, maturity), p.new Item(-0.05, 0, true));
+		p.getItems().put(new VanillaOption(Direction.CALL, strikeHi, maturity), p.new Item(0.05, 0, true));
+		
+		FiniteDifferenceModel method = new ExplicitMethodConstantVolatility(volMax);
+		Assert.assertTrue(method.isLinear());
+		Assert.assertFalse(new ExplicitMethodUncertainVolatility(volMin, volMax).isLinear());
+		
+		StaticHedgingStrategy strategy = new StaticHedgingStrategy(new TwoStepsGrid(tStep, tMin, tMax, sStep, sMin, sMax), p, method, r);
+		Grid g = new TwoStepsGrid(tStep, tMin, tMax, sStep, sMin, sMax);
+		
+		// the instruments priced once and summed give the value of the portfolio
+		double[][] positions = { { -0.05, 0.05 }, { 0.3, -1.2 }, { 0, 0 } };
+		for (double[] position : positions) {
+			strategy.setHedgePositions(position);
+			Assert.assertTrue(strategy.runPricing());
+			Assert.assertTrue(FiniteDifferencePricer.evaluate(g, p, method, r, false, null));
+			for (double s = 80; s <= 120; s += 2.5)
+				Assert.assertEquals(g.getPresentInterpolated(s), strategy.getValueAt(s), 1e-10);
+		}
+	}
+	@Test
+	public void testGradient() throws IllegalArgumentException, MathException {
+		Portfolio p = new Portfolio();
+		p.getItems().put(new BinaryCashOrNothingOption(Direction.CALL, strike, maturity), p.new Item(1, 0, false));
+		p.getItems().put(new VanillaOption(Direction.CALL, strikeLo, maturity), p.new Item(-0.05, BlackScholes.vanillaOptionValue(stock, strikeLo, maturity, (volMin+volMax)/2, r, Direction.CALL), true));
+		p.getItems().put(new VanillaOption(Direction.CALL, strikeHi, maturity), p.new Item(0.05, BlackScholes.vanillaOptionValue(stock, strikeHi, maturity, (volMin+volMax)/2, r, Direction.CALL), true));
+		
+		StaticHedgingStrategy strategy = new StaticHedgingStrategy(new TwoStepsGrid(tStep, tMin, tMax, sStep, sMin, sMax), p, new ExplicitMethodUncertainVolatility(volMin, volMax), r);
+		Assert.assertTrue(strategy.hasGradient());
+		Assert.assertTrue(strategy.runPricingWithGradient());
+		double value = strategy.getPnLAt(stock);
+		double[] gradient = strategy.getPnLGradientAt(stock);
+		Assert.assertEquals(0.3666, value, 0.0001);
+		
+		// the tangent linear pricing gives the derivatives of the piecewise linear scheme
+		double h = 1e-5;
+		for (int k = 0; k < 2; k++) {
+			double[] bumped = strategy.hedgePositions();
+			bumped[k] += h;
+			strategy.setHedgePositions(bumped);
+			strategy.runPricing();
+			double up = strategy.getPnLAt(stock);
+			bumped[k] -= 2 * h;
+			strategy.setHedgePositions(bumped);
+			strategy.runPricing();
+			double down = strategy.getPnLAt(stock);
+			bumped[k] += h;
+			strategy.setHedgePositions(bumped);
+			Assert.assertEquals((up - down) / (2 * h), gradient[k], 1e-4);
+		}
+		
+		StaticHedgingStrategyOptimizationAdapter adapter = new StaticHedgingStrategyOptimizationAdapter(strategy, stock);
+		GradientHedgingOptimizer optimizer = new GradientHedgingOptimizer(adapter);
+		RealPointValuePair result = optimizer.optimize(GoalType.MAXIMIZE, strategy.hedgePositions());
+		
+		System.out.println("Optimizer converged in " + optimizer.getIterations() + " iterations, " + optimizer.getEvaluations() + " evaluations");
+		System.out.println("Hedge: " + strategy.hedgePositionsDesc() + " Value: " + result.getValue());
+		Assert.assertEquals(0.3962, result.getValue(), 0.0001);
+		Assert.assertEquals(result.getValue(), strategy.getPnLAt(stock), 1e-12);
+		
+		p.invertPositions();
+
+		result = optimizer.optimize(GoalType.MAXIMIZE, strategy.hedgePositions());
+
+		System.out.println("Optimizer converged in " + optimizer.getIterations() + " iterations, " + optimizer.getEvaluations() + " evaluations");
+		System.out.println("Hedge: " + strategy.hedgePositionsDesc() + " Value: " + result.getValue());
+		Assert.assertEquals(-0.6834, result.getValue(), 0.0001);
+	}
+	@Test
 	public void testAllVanillaDifferentMaturities() throws IllegalArgumentException, MathException {
 		Portfolio p = new Portfolio();
 		p.getItems().put(new VanillaOption(Direction.CALL, strike, maturity), p.new Item(1, 0, false));
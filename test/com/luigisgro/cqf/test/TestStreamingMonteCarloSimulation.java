@@ -0,0 +1,56 @@
+package com.luigisgro.cqf.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.luigisgro.cqf.curve.CurveTimeSeries;
+import com.luigisgro.cqf.curve.CurveTimeSeriesOperator;
+import com.luigisgro.cqf.curve.DayTimePoint;
+import com.luigisgro.cqf.hjm.Cap;
+import com.luigisgro.cqf.hjm.ForwardInterestRate;
+import com.luigisgro.cqf.hjm.ZCB;
+import com.luigisgro.cqf.montecarlo.CurveTimeSeriesOperatorEvaluator;
+import com.luigisgro.cqf.montecarlo.MersenneTwisterStandardVectorGenerator;
+import com.luigisgro.cqf.montecarlo.MonteCarloSimulation;
+import com.luigisgro.cqf.montecarlo.StreamingMonteCarloSimulation;
+
+
+public class TestStreamingMonteCarloSimulation extends HJMFixture {
+	public TestStreamingMonteCarloSimulation() {
+		super(2014, 0, 2);
+	}
+
+	private void assertSameResult(CurveTimeSeriesOperator<DayTimePoint> derivative) {
+		CurveTimeSeriesOperatorEvaluator<DayTimePoint> fullEvaluator = new CurveTimeSeriesOperatorEvaluator<DayTimePoint>(derivative, 200);
+		new MonteCarloSimulation<DayTimePoint>(hjm, fullEvaluator, new MersenneTwisterStandardVectorGenerator(2, 17L), baseScenario, pointDates, timeStep).simulate();
+		CurveTimeSeriesOperatorEvaluator<DayTimePoint> streamingEvaluator = new CurveTimeSeriesOperatorEvaluator<DayTimePoint>(derivative, 200);
+		StreamingMonteCarloSimulation<DayTimePoint> sim = new StreamingMonteCarloSimulation<DayTimePoint>(hjm, streamingEvaluator, new MersenneTwisterStandardVectorGenerator(2, 17L), baseScenario, pointDates, timeStep);
+		Assert.assertEquals(200, sim.simulate());
+		Assert.assertEquals(fullEvaluator.getResult(), streamingEvaluator.getResult(), 1e-14);
+	}
+
+	@Test
+	public void testSameResultAsFullScenarios() {
+		assertSameResult(new ZCB<DayTimePoint>(pointDates[0], pointDates[pointDates.length - 1], timeStep, pointDates));
+		assertSameResult(new ZCB<DayTimePoint>(pointDates[20], pointDates[300], timeStep, pointDates));
+		assertSameResult(new ForwardInterestRate<DayTimePoint>(pointDates[250], 1.5, pointDates));
+		assertSameResult(new Cap<DayTimePoint>(0.035, 0.25, 1.75, pointDates, timeStep));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testOperatorWithoutCalendar() {
+		ZCB<DayTimePoint> zcb = new ZCB<DayTimePoint>(pointDates[0], pointDates[100], timeStep);
+		new StreamingMonteCarloSimulation<DayTimePoint>(hjm, new CurveTimeSeriesOperatorEvaluator<DayTimePoint>(zcb, 10), new MersenneTwisterStandardVectorGenerator(2, 17L), baseScenario, pointDates, timeStep);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testNonStreamingOperator() {
+		CurveTimeSeriesOperator<DayTimePoint> lastShortRate = new CurveTimeSeriesOperator<DayTimePoint>() {
+			@Override
+			public double evaluate(CurveTimeSeries<DayTimePoint> curveTimeSeries) {
+				return curveTimeSeries.getCurves().get(curveTimeSeries.getCurves().lastKey()).getPoints()[0];
+			}
+		};
+		new StreamingMonteCarloSimulation<DayTimePoint>(hjm, new CurveTimeSeriesOperatorEvaluator<DayTimePoint>(lastShortRate, 10), new MersenneTwisterStandardVectorGenerator(2, 17L), baseScenario, pointDates, timeStep);
+	}
+}
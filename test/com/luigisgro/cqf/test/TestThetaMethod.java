@@ -0,0 +1,123 @@
+package com.luigisgro.cqf.test;
+
+import org.apache.commons.math.MathException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.luigisgro.cqf.fdm.BinaryCashOrNothingOption;
+import com.luigisgro.cqf.fdm.Derivative;
+import com.luigisgro.cqf.fdm.ExplicitMethodConstantVolatility;
+import com.luigisgro.cqf.fdm.ExplicitMethodUncertainVolatility;
+import com.luigisgro.cqf.fdm.FiniteDifferenceModel;
+import com.luigisgro.cqf.fdm.FiniteDifferencePricer;
+import com.luigisgro.cqf.fdm.Grid;
+import com.luigisgro.cqf.fdm.Option.Direction;
+import com.luigisgro.cqf.fdm.Portfolio;
+import com.luigisgro.cqf.fdm.ThetaMethod;
+import com.luigisgro.cqf.fdm.ThetaMethodConstantVolatility;
+import com.luigisgro.cqf.fdm.ThetaMethodUncertainVolatility;
+import com.luigisgro.cqf.fdm.TwoStepsGrid;
+import com.luigisgro.cqf.fdm.VanillaOption;
+import com.luigisgro.cqf.util.BlackScholes;
+
+
+public class TestThetaMethod {
+	double tMin = 0;
+	double sStep = 1;
+	double sMin = 0;
+	double sMax = 220;
+
+	double volMin = 0.18;
+	double volMax = 0.22;
+	double r = 0.04;
+	double maturity = 1;
+	double explicitTStep = 0.00025;
+
+	private double price(Derivative derivative, FiniteDifferenceModel method, double tStep, double stock) {
+		Portfolio portfolio = new Portfolio();
+		portfolio.setPosition(derivative, 1);
+		Grid g = new TwoStepsGrid(tStep, tMin, maturity + tStep, sStep, sMin, sMax);
+		Assert.assertTrue(FiniteDifferencePricer.evaluate(g, portfolio, method, r, false, null));
+		return g.getPresentInterpolated(stock);
+	}
+
+	@Test
+	public void testCrankNicolsonVanilla() throws MathException {
+		double tStep = 0.01;
+		Portfolio portfolio = new Portfolio();
+		portfolio.setPosition(new VanillaOption(Direction.CALL, 100, maturity), 1);
+		Grid g = new TwoStepsGrid(tStep, tMin, maturity + tStep, sStep, sMin, sMax);
+		Assert.assertFalse(new ExplicitMethodConstantVolatility(volMax).validate(g, portfolio));
+		Assert.assertTrue(new ThetaMethodConstantVolatility(volMax, ThetaMethod.CRANK_NICOLSON).validate(g, portfolio));
+
+		double v = price(new VanillaOption(Direction.CALL, 100, maturity), new ThetaMethodConstantVolatility(volMax, ThetaMethod.CRANK_NICOLSON), tStep, 100);
+		Assert.assertEquals(BlackScholes.vanillaOptionValue(100, 100, maturity, volMax, r, Direction.CALL), v, 0.005);
+		v = price(new VanillaOption(Direction.PUT, 110, maturity), new ThetaMethodConstantVolatility(volMax, ThetaMethod.CRANK_NICOLSON), tStep, 100);
+		Assert.assertEquals(BlackScholes.vanillaOptionValue(100, 110, maturity, volMax, r, Direction.PUT), v, 0.005);
+	}
+
+	@Test
+	public void testImplicitVanilla() throws MathException {
+		double v = price(new VanillaOption(Direction.CALL, 100, maturity), new ThetaMethodConstantVolatility(volMax, ThetaMethod.IMPLICIT), 0.01, 100);
+		Assert.assertEquals(BlackScholes.vanillaOptionValue(100, 100, maturity, volMax, r, Direction.CALL), v, 0.02);
+	}
+
+	@Test
+	public void testBinary() {
+		// Rannacher start-up damps the oscillations of the discontinuous payoff
+		double explicit = price(new BinaryCashOrNothingOption(Direction.CALL, 100, maturity), new ExplicitMethodConstantVolatility(volMax), explicitTStep, 100);
+		double crankNicolson = price(new BinaryCashOrNothingOption(Direction.CALL, 100, maturity), new ThetaMethodConstantVolatility(volMax, ThetaMethod.CRANK_NICOLSON), 0.02, 100);
+		Assert.assertEquals(explicit, crankNicolson, 0.001);
+	}
+
+	@Test
+	public void testUncertainVolatility() {
+		double explicit = price(new BinaryCashOrNothingOption(Direction.CALL, 100, maturity), new ExplicitMethodUncertainVolatility(volMin, volMax), explicitTStep, 100);
+		double crankNicolson = price(new BinaryCashOrNothingOption(Direction.CALL, 100, maturity), new ThetaMethodUncertainVolatility(volMin, volMax, ThetaMethod.CRANK_NICOLSON), 0.01, 100);
+		Assert.assertEquals(explicit, crankNicolson, 0.001);
+
+		// with a single volatility the policy iteration stops at the first solution
+		double uncertain = price(new VanillaOption(Direction.CALL, 100, maturity), new ThetaMethodUncertainVolatility(volMax, volMax, ThetaMethod.CRANK_NICOLSON), 0.01, 100);
+		double constant = price(new VanillaOption(Direction.CALL, 100, maturity), new ThetaMethodConstantVolatility(volMax, ThetaMethod.CRANK_NICOLSON), 0.01, 100);
+		Assert.assertEquals(constant, uncertain, 1e-12);
+	}
+
+	@Test
+	public void testPolicyIterationCap() {
+		ThetaMethodUncertainVolatility method = new ThetaMethodUncertainVolatility(volMin, volMax, ThetaMethod.CRANK_NICOLSON);
+		double converged = price(new BinaryCashOrNothingOption(Direction.CALL, 100, maturity), method, 0.01, 100);
+		Assert.assertEquals(0, method.getUnconvergedSteps());
+
+		// a single policy iteration leaves the volatilities of the previous step where gamma changes sign
+		method.setMaxPolicyIterations(1);
+		double capped = price(new BinaryCashOrNothingOption(Direction.CALL, 100, maturity), method, 0.01, 100);
+		Assert.assertTrue(method.getUnconvergedSteps() > 0);
+		Assert.assertEquals(converged, capped, 0.01);
+		Assert.assertEquals(1, ((ThetaMethod)method.copy()).getMaxPolicyIterations());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidPolicyIterations() {
+		new ThetaMethodUncertainVolatility(volMin, volMax, ThetaMethod.CRANK_NICOLSON).setMaxPolicyIterations(0);
+	}
+
+	@Test
+	public void testSolveTridiagonal() {
+		double[] lower = { 0, 1, 1, 1 };
+		double[] diagonal = { 4, 4, 4, 4 };
+		double[] upper = { 1, 1, 1, 0 };
+		double[] x = { 1, -2, 3, 0.5 };
+		double[] rhs = new double[4];
+		for (int i = 0; i < 4; i++)
+			rhs[i] = diagonal[i] * x[i] + (i > 0 ? lower[i] * x[i - 1] : 0) + (i < 3 ? upper[i] * x[i + 1] : 0);
+		double[] solution = new double[4];
+		ThetaMethod.solveTridiagonal(lower, diagonal, upper, rhs, solution, new double[4], 0, 4);
+		for (int i = 0; i < 4; i++)
+			Assert.assertEquals(x[i], solution[i], 1e-14);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidTheta() {
+		new ThetaMethodConstantVolatility(volMax, 0.25);
+	}
+}
@@ -1,15 +1,24 @@
 package com.luigisgro.cqf.test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
 import org.apache.commons.math.MathException;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.luigisgro.cqf.fdm.BinaryCashOrNothingOption;
+import com.luigisgro.cqf.fdm.CashflowSchedule;
 import com.luigisgro.cqf.fdm.ExplicitMethodConstantVolatility;
+import com.luigisgro.cqf.fdm.ExplicitMethodUncertainVolatility;
 import com.luigisgro.cqf.fdm.FiniteDifferencePricer;
 import com.luigisgro.cqf.fdm.Grid;
 import com.luigisgro.cqf.fdm.FiniteDifferenceModel;
+import com.luigisgro.cqf.fdm.FullGrid;
 import com.luigisgro.cqf.fdm.Option.Direction;
 import com.luigisgro.cqf.fdm.Portfolio;
+import com.luigisgro.cqf.fdm.ThetaMethod;
+import com.luigisgro.cqf.fdm.ThetaMethodConstantVolatility;
 import com.luigisgro.cqf.fdm.TwoStepsGrid;
 import com.luigisgro.cqf.fdm.VanillaOption;
 import com.luigisgro.cqf.util.BlackScholes;
@@ -133,4 +142,73 @@ public class TestVanillas {
 		Assert.assertEquals(bsv, v, 0.005);
 	}
 
+	@Test
+	public void testRowsOfTwoStepsGrid() {
+		Portfolio portfolio = new Portfolio(); 
+		portfolio.setPosition(new VanillaOption(Direction.CALL, 100, maturity), position);
+		portfolio.setPosition(new BinaryCashOrNothingOption(Direction.PUT, 90, maturity), -20);
+
+		// the rows of the two steps grid give the same values as the cells of the full grid
+		FiniteDifferenceModel method = new ExplicitMethodUncertainVolatility(volMin, volMax);
+		Grid full = new FullGrid(tStep, tMin, tMax, sStep, sMin, sMax);
+		Assert.assertTrue(FiniteDifferencePricer.evaluate(full, portfolio, method, r, false, null));
+		TwoStepsGrid twoSteps = new TwoStepsGrid(tStep, tMin, tMax, sStep, sMin, sMax);
+		Assert.assertTrue(FiniteDifferencePricer.evaluate(twoSteps, portfolio, method, r, false, null));
+		for (int is = 0; is < twoSteps.numS(); is++)
+			Assert.assertEquals(full.getPresent(is), twoSteps.getPresent(is), 1e-10);
+		Assert.assertSame(twoSteps.getRow(twoSteps.numT() - 1), twoSteps.getRow(twoSteps.numT() - 1));
+		Assert.assertNotSame(twoSteps.getRow(twoSteps.numT() - 1), twoSteps.getRow(twoSteps.numT() - 2));
+	}
+
+	@Test
+	public void testStepsAfterLastCashflow() {
+		Portfolio portfolio = new Portfolio(); 
+		portfolio.setPosition(new VanillaOption(Direction.CALL, 100, maturity), position);
+		portfolio.setPosition(new BinaryCashOrNothingOption(Direction.PUT, 90, maturity), -20);
+
+		// the steps after the maturity are not calculated, unless they are printed
+		double padding = 0.5;
+		Grid full = new FullGrid(tStep, tMin, tMax + padding, sStep, sMin, sMax);
+		TwoStepsGrid twoSteps = new TwoStepsGrid(tStep, tMin, tMax + padding, sStep, sMin, sMax);
+		Assert.assertEquals((int)Math.round(padding / tStep), FiniteDifferencePricer.firstActiveStep(twoSteps, portfolio));
+		PrintStream ps = new PrintStream(new ByteArrayOutputStream());
+		FiniteDifferenceModel[] methods = { new ExplicitMethodUncertainVolatility(volMin, volMax), new ThetaMethodConstantVolatility(volMax, ThetaMethod.CRANK_NICOLSON) };
+		for (FiniteDifferenceModel method : methods) {
+			Assert.assertTrue(FiniteDifferencePricer.evaluate(full, portfolio, method, r, false, ps));
+			Assert.assertTrue(FiniteDifferencePricer.evaluate(twoSteps, portfolio, method, r, false, null));
+			for (int is = 0; is < twoSteps.numS(); is++)
+				Assert.assertEquals(full.getPresent(is), twoSteps.getPresent(is), 1e-10);
+		}
+	}
+
+	@Test
+	public void testCashflowSchedule() {
+		Portfolio portfolio = new Portfolio(); 
+		portfolio.setPosition(new VanillaOption(Direction.CALL, 100, maturity), position);
+		portfolio.setPosition(new VanillaOption(Direction.PUT, 90, maturity), 2);
+		portfolio.setPosition(new BinaryCashOrNothingOption(Direction.PUT, 90, maturity / 2), -20);
+		Assert.assertEquals(2, portfolio.cashflowTimes().length);
+
+		Grid g = new TwoStepsGrid(tStep, tMin, tMax, sStep, sMin, sMax);
+		CashflowSchedule schedule = new CashflowSchedule(portfolio);
+		double[] s = CashflowSchedule.stockValues(g);
+		int scheduledSteps = 0;
+		for (int it = 0; it < g.numT(); it++) {
+			double t = g.getT(it);
+			double[] cashflows = new double[s.length];
+			portfolio.addCashflows(t, tStep, s, 1.0, cashflows);
+			boolean hasCashflow = false;
+			for (int is = 0; is < s.length; is++) {
+				// the row of cash flows is the same as the cash flows of each stock value
+				Assert.assertEquals(portfolio.cashflow(t, tStep, s[is]), cashflows[is], 1e-12);
+				hasCashflow |= cashflows[is] != 0.0;
+			}
+			if (schedule.hasCashflow(t, tStep))
+				scheduledSteps++;
+			else
+				Assert.assertFalse(hasCashflow);
+		}
+		Assert.assertEquals(2, scheduledSteps);
+	}
+
 }
@@ -0,0 +1,121 @@
+package com.luigisgro.cqf.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.luigisgro.cqf.curve.CurveTimeSeries;
+import com.luigisgro.cqf.curve.DayTimePoint;
+import com.luigisgro.cqf.function.Polynomial;
+import com.luigisgro.cqf.hjm.Cap;
+import com.luigisgro.cqf.hjm.MultiFactorHJM;
+import com.luigisgro.cqf.hjm.ZCB;
+import com.luigisgro.cqf.montecarlo.ControlVariateEvaluator;
+import com.luigisgro.cqf.montecarlo.MersenneTwisterStandardVectorGenerator;
+import com.luigisgro.cqf.montecarlo.MonteCarloEvaluator;
+import com.luigisgro.cqf.montecarlo.MonteCarloSimulation;
+import com.luigisgro.cqf.montecarlo.ParallelMonteCarloSimulation;
+import com.luigisgro.cqf.montecarlo.RandomVectorGenerator;
+import com.luigisgro.cqf.montecarlo.StandardErrorEvaluator;
+
+
+public class TestVarianceReduction extends HJMFixture {
+	public TestVarianceReduction() {
+		super(2014, 0, 2);
+	}
+
+	private StandardErrorEvaluator<DayTimePoint> run(StandardErrorEvaluator<DayTimePoint> evaluator, boolean antithetic) {
+		MonteCarloSimulation<DayTimePoint> sim = new MonteCarloSimulation<DayTimePoint>(hjm, evaluator, new MersenneTwisterStandardVectorGenerator(2, 5L), baseScenario, pointDates, timeStep);
+		sim.setAntitheticPaths(antithetic);
+		sim.simulate();
+		return evaluator;
+	}
+
+	@Test
+	public void testAntitheticPaths() {
+		ZCB<DayTimePoint> zcb = new ZCB<DayTimePoint>(pointDates[0], pointDates[400], timeStep, pointDates);
+		StandardErrorEvaluator<DayTimePoint> plain = run(new StandardErrorEvaluator<DayTimePoint>(zcb, 0.0, 2000), false);
+		StandardErrorEvaluator<DayTimePoint> antithetic = run(new StandardErrorEvaluator<DayTimePoint>(zcb, 0.0, 1000), true);
+		// same number of paths, the ZCB is almost linear in the random vectors
+		Assert.assertTrue(Math.sqrt(antithetic.squareStdErr()) < 0.1 * Math.sqrt(plain.squareStdErr()));
+		Assert.assertEquals(plain.getResult(), antithetic.getResult(), 3 * Math.sqrt(plain.squareStdErr()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAntitheticNotSupported() {
+		MonteCarloEvaluator<DayTimePoint> evaluator = new MonteCarloEvaluator<DayTimePoint>() {
+			@Override
+			public double evaluateAndAccumulate(CurveTimeSeries<DayTimePoint> scenario) {
+				return 0;
+			}
+			@Override
+			public boolean moreIterationsNeeded() {
+				return false;
+			}
+			@Override
+			public double getResult() {
+				return 0;
+			}
+			@Override
+			public void printProgress() {
+			}
+		};
+		MonteCarloSimulation<DayTimePoint> sim = new MonteCarloSimulation<DayTimePoint>(hjm, evaluator, new MersenneTwisterStandardVectorGenerator(2, 5L), baseScenario, pointDates, timeStep);
+		sim.setAntitheticPaths(true);
+	}
+
+	@Test
+	public void testControlVariateOnControl() {
+		ZCB<DayTimePoint> zcb = new ZCB<DayTimePoint>(pointDates[0], pointDates[400], timeStep, pointDates);
+		ControlVariateEvaluator<DayTimePoint> evaluator = new ControlVariateEvaluator<DayTimePoint>(zcb, zcb, 0.0, 500);
+		evaluator.setControlMean(zcb.getExpectedValue(hjm, baseScenario, timeStep));
+		run(evaluator, false);
+		// the control explains the whole variance
+		Assert.assertEquals(1.0, evaluator.getControlCoefficient(), 1e-9);
+		Assert.assertEquals(zcb.getExpectedValue(hjm, baseScenario, timeStep), evaluator.getResult(), 1e-12);
+		Assert.assertEquals(0.0, evaluator.squareStdErr(), 1e-15);
+	}
+
+	@Test
+	public void testExpectedValue() {
+		ZCB<DayTimePoint> zcb = new ZCB<DayTimePoint>(pointDates[0], pointDates[400], timeStep, pointDates);
+		// without volatility the evolution is deterministic
+		MultiFactorHJM deterministic = new MultiFactorHJM(new Polynomial[] { new Polynomial(new double[] { 0.0 }) }, termStructure);
+		StandardErrorEvaluator<DayTimePoint> evaluator = new StandardErrorEvaluator<DayTimePoint>(zcb, 0.0, 1);
+		new MonteCarloSimulation<DayTimePoint>(deterministic, evaluator, new MersenneTwisterStandardVectorGenerator(1, 5L), baseScenario, pointDates, timeStep).simulate();
+		Assert.assertEquals(evaluator.getResult(), zcb.getExpectedValue(deterministic, baseScenario, timeStep), 1e-14);
+		// with volatility the simulated price agrees up to the error of the simulation
+		StandardErrorEvaluator<DayTimePoint> plain = run(new StandardErrorEvaluator<DayTimePoint>(zcb, 0.0, 20000), false);
+		Assert.assertEquals(zcb.getExpectedValue(hjm, baseScenario, timeStep), plain.getResult(), 3 * Math.sqrt(plain.squareStdErr()));
+	}
+
+	@Test
+	public void testControlVariateOnCap() {
+		Cap<DayTimePoint> cap = new Cap<DayTimePoint>(0.032, 0.25, 1.5, pointDates, timeStep);
+		ZCB<DayTimePoint> zcb = new ZCB<DayTimePoint>(pointDates[0], pointDates[(int)(1.5 / timeStep)], timeStep, pointDates);
+		StandardErrorEvaluator<DayTimePoint> plain = run(new StandardErrorEvaluator<DayTimePoint>(cap, 0.0, 3000), false);
+		ControlVariateEvaluator<DayTimePoint> controlled = new ControlVariateEvaluator<DayTimePoint>(cap, zcb, 0.0, 3000);
+		controlled.setControlMean(zcb.getExpectedValue(hjm, baseScenario, timeStep));
+		run(controlled, false);
+		Assert.assertTrue(controlled.getControlCoefficient() < 0);
+		Assert.assertTrue(controlled.squareStdErr() < plain.squareStdErr());
+		Assert.assertEquals(plain.getResult(), controlled.getResult(), 3 * Math.sqrt(plain.squareStdErr()));
+	}
+
+	@Test
+	public void testParallelAntitheticControlVariate() {
+		Cap<DayTimePoint> cap = new Cap<DayTimePoint>(0.032, 0.25, 1.5, pointDates, timeStep);
+		ZCB<DayTimePoint> zcb = new ZCB<DayTimePoint>(pointDates[0], pointDates[(int)(1.5 / timeStep)], timeStep, pointDates);
+		ControlVariateEvaluator<DayTimePoint> sequential = new ControlVariateEvaluator<DayTimePoint>(cap, zcb, 0.0, 600);
+		sequential.setControlMean(zcb.getExpectedValue(hjm, baseScenario, timeStep));
+		run(sequential, true);
+		ControlVariateEvaluator<DayTimePoint> parallel = new ControlVariateEvaluator<DayTimePoint>(cap, zcb, 0.0, 600);
+		parallel.setControlMean(zcb.getExpectedValue(hjm, baseScenario, timeStep));
+		ParallelMonteCarloSimulation<DayTimePoint> sim = new ParallelMonteCarloSimulation<DayTimePoint>(hjm, parallel, new RandomVectorGenerator[] { new MersenneTwisterStandardVectorGenerator(2, 5L) }, baseScenario, pointDates, timeStep, 250);
+		sim.setAntitheticPaths(true);
+		Assert.assertEquals(600, sim.simulate());
+		// the partial sums are added in a different order
+		Assert.assertEquals(sequential.getResult(), parallel.getResult(), 1e-7 * sequential.getResult());
+		Assert.assertEquals(sequential.squareStdErr(), parallel.squareStdErr(), 1e-5 * sequential.squareStdErr());
+	}
+
+}